@@ -2,13 +2,17 @@ package com.j256.testcheckpublisher.lambda;
 
 import java.util.Map;
 
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
 
 /**
  * API gateway request in stream.
  * 
  * @author graywatson
  */
+@JsonAdapter(GatewayTypeAdapters.ApiGatewayRequestAdapter.class)
 public class ApiGatewayRequest {
 
 	private String rawPath;
@@ -18,6 +22,10 @@ public class ApiGatewayRequest {
 	private String body;
 	@SerializedName("isBase64Encoded")
 	private boolean isBodyBase64Encoded;
+	// set if the body was parsed as it was read instead of being stored in the body field
+	private transient boolean bodyStreamed;
+	private transient PublishedTestResults publishedResults;
+	private transient JsonParseException bodyParseException;
 
 	public ApiGatewayRequest() {
 		// for gson
@@ -57,9 +65,37 @@ public class ApiGatewayRequest {
 		return isBodyBase64Encoded;
 	}
 
+	/**
+	 * Returns true if the body was parsed into published test results as it was read.
+	 */
+	public boolean isBodyStreamed() {
+		return bodyStreamed;
+	}
+
+	/**
+	 * Results parsed from a streamed body. Null if parsing failed.
+	 */
+	public PublishedTestResults getPublishedResults() {
+		return publishedResults;
+	}
+
+	/**
+	 * Exception from parsing a streamed body or null if none.
+	 */
+	public JsonParseException getBodyParseException() {
+		return bodyParseException;
+	}
+
+	void setStreamedBody(PublishedTestResults publishedResults, JsonParseException bodyParseException) {
+		this.bodyStreamed = true;
+		this.publishedResults = publishedResults;
+		this.bodyParseException = bodyParseException;
+	}
+
 	/**
 	 * Request context.
 	 */
+	@JsonAdapter(GatewayTypeAdapters.RequestContextAdapter.class)
 	public static class RequestContext {
 		private String domainName;
 		private String requestId;
@@ -92,6 +128,7 @@ public class ApiGatewayRequest {
 	/**
 	 * HTTP request information.
 	 */
+	@JsonAdapter(GatewayTypeAdapters.HttpContextAdapter.class)
 	public static class HttpContext {
 
 		private String method;
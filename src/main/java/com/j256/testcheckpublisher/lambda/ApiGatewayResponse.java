@@ -2,6 +2,7 @@ package com.j256.testcheckpublisher.lambda;
 
 import java.util.Map;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -9,6 +10,7 @@ import com.google.gson.annotations.SerializedName;
  * 
  * @author graywatson
  */
+@JsonAdapter(GatewayTypeAdapters.ApiGatewayResponseAdapter.class)
 public class ApiGatewayResponse {
 
 	private int statusCode;
@@ -0,0 +1,157 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Handling of compressed request bodies. CI uploads are mostly repeated stack-traces so they compress very well which
+ * keeps large suites under the gateway payload limit. The decompressed size is limited so a small body can't blow up
+ * into something that runs the lambda out of memory.
+ *
+ * @author graywatson
+ */
+public class ContentEncodingUtils {
+
+	private static final String CONTENT_ENCODING_HEADER = "content-encoding";
+	private static final String IDENTITY_ENCODING = "identity";
+	private static final String GZIP_ENCODING = "gzip";
+	private static final String X_GZIP_ENCODING = "x-gzip";
+	private static final String DEFLATE_ENCODING = "deflate";
+	private static final int BUFFER_SIZE = 8192;
+
+	private ContentEncodingUtils() {
+		// only static methods
+	}
+
+	/**
+	 * Find the content-encoding from the request headers.
+	 *
+	 * @return The lower-case encoding or null if the body isn't encoded.
+	 */
+	public static String findContentEncoding(Map<String, String> headers) {
+		if (headers == null) {
+			return null;
+		}
+		String value = null;
+		for (Map.Entry<String, String> entry : headers.entrySet()) {
+			// the gateway should lower-case the header names but let's not count on it
+			if (CONTENT_ENCODING_HEADER.equalsIgnoreCase(entry.getKey())) {
+				value = entry.getValue();
+				break;
+			}
+		}
+		if (value == null) {
+			return null;
+		}
+		value = value.trim().toLowerCase(Locale.ENGLISH);
+		if (value.length() == 0 || value.equals(IDENTITY_ENCODING)) {
+			return null;
+		} else {
+			return value;
+		}
+	}
+
+	/**
+	 * Returns true if we can decompress the encoding returned by {@link #findContentEncoding(Map)}.
+	 */
+	public static boolean isSupported(String encoding) {
+		return (encoding == null || encoding.equals(GZIP_ENCODING) || encoding.equals(X_GZIP_ENCODING)
+				|| encoding.equals(DEFLATE_ENCODING));
+	}
+
+	/**
+	 * Wrap the stream to decompress it as it is read.
+	 *
+	 * @param maxSize
+	 *            Maximum number of decompressed bytes after which reading throws {@link BodyTooLargeException}.
+	 */
+	public static InputStream decompressStream(InputStream inputStream, String encoding, long maxSize)
+			throws IOException {
+		InputStream decompressed;
+		if (encoding == null) {
+			decompressed = inputStream;
+		} else if (encoding.equals(GZIP_ENCODING) || encoding.equals(X_GZIP_ENCODING)) {
+			decompressed = new GZIPInputStream(inputStream, BUFFER_SIZE);
+		} else if (encoding.equals(DEFLATE_ENCODING)) {
+			decompressed = new InflaterInputStream(inputStream);
+		} else {
+			throw new IOException("unsupported content-encoding: " + encoding);
+		}
+		return new SizeLimitedInputStream(decompressed, maxSize);
+	}
+
+	/**
+	 * Returns true if the exception was caused by a body that decompressed to more than the maximum size.
+	 */
+	public static boolean isTooLarge(Throwable throwable) {
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+			if (cause instanceof BodyTooLargeException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Thrown when a body decompresses to more than the maximum size.
+	 */
+	public static class BodyTooLargeException extends IOException {
+
+		private static final long serialVersionUID = -2946414406383553522L;
+
+		public BodyTooLargeException(long maxSize) {
+			super("decompressed body is larger than " + maxSize + " bytes");
+		}
+	}
+
+	/**
+	 * Stream that throws once more than the maximum number of bytes has been read.
+	 */
+	private static class SizeLimitedInputStream extends FilterInputStream {
+
+		private final long maxSize;
+		private long count;
+
+		public SizeLimitedInputStream(InputStream inputStream, long maxSize) {
+			super(inputStream);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value >= 0) {
+				addCount(1);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			int num = super.read(bytes, offset, length);
+			if (num > 0) {
+				addCount(num);
+			}
+			return num;
+		}
+
+		@Override
+		public long skip(long num) throws IOException {
+			long skipped = super.skip(num);
+			addCount(skipped);
+			return skipped;
+		}
+
+		private void addCount(long num) throws BodyTooLargeException {
+			count += num;
+			if (count > maxSize) {
+				throw new BodyTooLargeException(maxSize);
+			}
+		}
+	}
+}
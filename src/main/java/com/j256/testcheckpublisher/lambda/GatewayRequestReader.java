@@ -0,0 +1,387 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+
+/**
+ * Reads the API gateway request from the lambda event without holding the body in memory. An upload body is megabytes
+ * of usually base64 encoded JSON so instead of reading it into a string, decoding that into bytes, and making another
+ * string for gson, it is decoded as it is read and parsed straight into the published test results. The rest of the
+ * request is small so it is copied aside and given to gson as usual.
+ *
+ * The gateway puts the body before isBase64Encoded so if we haven't seen the flag we go by the first character of the
+ * body: a JSON object starts with '{' which isn't a base64 character. A body that we can't stream, or one for a path
+ * that isn't an upload, is read into the body field like before. The headers come before the body so a compressed body
+ * is decompressed in the same pass. A body with an encoding we don't support is skipped.
+ *
+ * @author graywatson
+ */
+public class GatewayRequestReader {
+
+	private static final String RAW_PATH_FIELD = "\"rawPath\"";
+	private static final String BODY_FIELD = "\"body\"";
+	private static final String BASE64_FIELD = "\"isBase64Encoded\"";
+	private static final String HEADERS_FIELD = "\"headers\"";
+	private static final Type HEADERS_TYPE = new TypeToken<Map<String, String>>() {
+	}.getType();
+
+	private final Reader reader;
+	private final Gson gson;
+	private final Predicate<String> streamPathPredicate;
+	private final long maxBodySize;
+	private int peeked = -1;
+
+	private GatewayRequestReader(Reader reader, Gson gson, Predicate<String> streamPathPredicate, long maxBodySize) {
+		this.reader = reader;
+		this.gson = gson;
+		this.streamPathPredicate = streamPathPredicate;
+		this.maxBodySize = maxBodySize;
+	}
+
+	/**
+	 * Read a request from the reader which should be buffered.
+	 *
+	 * @param streamPathPredicate
+	 *            Returns true if the body for the raw-path should be parsed as published test results.
+	 * @param maxBodySize
+	 *            Maximum size of a compressed body once it is decompressed.
+	 * @return The request or null if the event was empty.
+	 * @throws JsonSyntaxException
+	 *             If the request is not a JSON object.
+	 */
+	public static ApiGatewayRequest readRequest(Reader reader, Gson gson, Predicate<String> streamPathPredicate,
+			long maxBodySize) throws IOException {
+		return new GatewayRequestReader(reader, gson, streamPathPredicate, maxBodySize).readRequest();
+	}
+
+	private ApiGatewayRequest readRequest() throws IOException {
+		int ch = skipWhitespace();
+		if (ch < 0) {
+			return null;
+		}
+		if (ch != '{') {
+			throw new JsonSyntaxException("expected the request to be a JSON object");
+		}
+
+		// everything but a streamed body
+		StringBuilder sb = new StringBuilder();
+		sb.append('{');
+		String rawPath = null;
+		Boolean base64 = null;
+		String encoding = null;
+		boolean streamed = false;
+		PublishedTestResults publishedResults = null;
+		JsonParseException parseException = null;
+
+		ch = skipWhitespace();
+		while (ch != '}') {
+			if (ch != '"') {
+				throw new JsonSyntaxException("expected a field name in the request but got: " + (char) ch);
+			}
+			StringBuilder keySb = new StringBuilder();
+			copyString(keySb);
+			String key = keySb.toString();
+			if (skipWhitespace() != ':') {
+				throw new JsonSyntaxException("expected ':' after request field " + key);
+			}
+			ch = skipWhitespace();
+
+			boolean bodyStreamed = false;
+			if (key.equals(BODY_FIELD) && ch == '"' && !streamed && rawPath != null
+					&& streamPathPredicate.test(rawPath)) {
+				int first = readRequired();
+				pushback(first);
+				JsonStringReader stringReader = new JsonStringReader();
+				boolean isBase64 = (isBase64(first) && base64 != Boolean.FALSE);
+				Reader bodyReader = null;
+				boolean skip = false;
+				if (encoding == null) {
+					if (first == '{') {
+						bodyReader = stringReader;
+					} else if (isBase64) {
+						bodyReader = new InputStreamReader(new Base64InputStream(new AsciiInputStream(stringReader)),
+								StandardCharsets.UTF_8);
+					}
+				} else if (!ContentEncodingUtils.isSupported(encoding)) {
+					// the handler rejects the encoding so there's no reason to hold onto the body
+					skip = true;
+				} else if (isBase64) {
+					// compressed bodies are binary so they have to be base64 encoded
+					try {
+						bodyReader = new InputStreamReader(ContentEncodingUtils.decompressStream(
+								new Base64InputStream(new AsciiInputStream(stringReader)), encoding, maxBodySize),
+								StandardCharsets.UTF_8);
+					} catch (IOException ioe) {
+						// bad compression header, a problem reading the request will happen again when draining
+						parseException = new JsonIOException("could not decompress the request body", ioe);
+						skip = true;
+					}
+				}
+				// otherwise it is empty or something else that we copy and leave to the handler
+				if (bodyReader != null) {
+					try {
+						publishedResults = gson.fromJson(bodyReader, PublishedTestResults.class);
+					} catch (JsonIOException jioe) {
+						if (encoding == null) {
+							throw new IOException("could not read request body", jioe);
+						}
+						// bad compressed data or too large, a problem reading the request will happen again below
+						parseException = jioe;
+					} catch (JsonParseException jpe) {
+						parseException = jpe;
+					}
+				}
+				if (bodyReader != null || skip) {
+					stringReader.drain();
+					streamed = true;
+					bodyStreamed = true;
+				}
+			}
+
+			if (!bodyStreamed) {
+				StringBuilder valueSb = new StringBuilder();
+				copyValue(ch, valueSb);
+				String value = valueSb.toString();
+				if (key.equals(RAW_PATH_FIELD) && value.startsWith("\"")) {
+					rawPath = gson.fromJson(value, String.class);
+				} else if (key.equals(BASE64_FIELD)) {
+					base64 = value.equals("true");
+				} else if (key.equals(HEADERS_FIELD) && value.startsWith("{")) {
+					Map<String, String> headers = gson.fromJson(value, HEADERS_TYPE);
+					encoding = ContentEncodingUtils.findContentEncoding(headers);
+				}
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append(key).append(':').append(value);
+			}
+
+			ch = skipWhitespace();
+			if (ch == ',') {
+				ch = skipWhitespace();
+			} else if (ch != '}') {
+				throw new JsonSyntaxException("expected ',' or '}' in the request");
+			}
+		}
+		sb.append('}');
+
+		ApiGatewayRequest request = gson.fromJson(sb.toString(), ApiGatewayRequest.class);
+		if (streamed) {
+			request.setStreamedBody(publishedResults, parseException);
+		}
+		return request;
+	}
+
+	/**
+	 * Copy a JSON value as is. The first character has already been read.
+	 */
+	private void copyValue(int ch, StringBuilder sb) throws IOException {
+		if (ch == '"') {
+			copyString(sb);
+		} else if (ch == '{' || ch == '[') {
+			sb.append((char) ch);
+			int depth = 1;
+			while (depth > 0) {
+				ch = readRequired();
+				if (ch == '"') {
+					copyString(sb);
+					continue;
+				}
+				sb.append((char) ch);
+				if (ch == '{' || ch == '[') {
+					depth++;
+				} else if (ch == '}' || ch == ']') {
+					depth--;
+				}
+			}
+		} else {
+			// number, true, false, or null
+			while (ch >= 0 && ch != ',' && ch != '}' && ch != ']' && !Character.isWhitespace(ch)) {
+				sb.append((char) ch);
+				ch = read();
+			}
+			pushback(ch);
+		}
+	}
+
+	/**
+	 * Copy a string including its quotes and escapes. The opening quote has already been read.
+	 */
+	private void copyString(StringBuilder sb) throws IOException {
+		sb.append('"');
+		copyStringBody(sb);
+	}
+
+	private void copyStringBody(StringBuilder sb) throws IOException {
+		while (true) {
+			int ch = readRequired();
+			sb.append((char) ch);
+			if (ch == '\\') {
+				sb.append((char) readRequired());
+			} else if (ch == '"') {
+				return;
+			}
+		}
+	}
+
+	private static boolean isBase64(int ch) {
+		return (ch >= 0 && ch < 128 && Base64.isBase64((byte) ch));
+	}
+
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			int ch = read();
+			if (ch < 0 || !Character.isWhitespace(ch)) {
+				return ch;
+			}
+		}
+	}
+
+	private int readRequired() throws IOException {
+		int ch = read();
+		if (ch < 0) {
+			throw new EOFException("request ended in the middle of a value");
+		}
+		return ch;
+	}
+
+	private int read() throws IOException {
+		if (peeked >= 0) {
+			int ch = peeked;
+			peeked = -1;
+			return ch;
+		}
+		return reader.read();
+	}
+
+	private void pushback(int ch) {
+		peeked = ch;
+	}
+
+	/**
+	 * Reader of the characters of a JSON string with the escapes decoded that ends at the closing quote. The opening
+	 * quote has already been read.
+	 */
+	private class JsonStringReader extends Reader {
+
+		private boolean done;
+
+		@Override
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			int count = 0;
+			while (count < length && !done) {
+				int ch = readChar();
+				if (ch < 0) {
+					done = true;
+				} else {
+					buffer[offset + count++] = (char) ch;
+				}
+			}
+			if (count == 0 && length > 0) {
+				return -1;
+			} else {
+				return count;
+			}
+		}
+
+		@Override
+		public void close() {
+			// nothing to close, the request reader is closed by the caller
+		}
+
+		/**
+		 * Skip to the end of the string if the parser didn't read all of it.
+		 */
+		public void drain() throws IOException {
+			while (!done) {
+				if (readChar() < 0) {
+					done = true;
+				}
+			}
+		}
+
+		private int readChar() throws IOException {
+			int ch = readRequired();
+			if (ch == '"') {
+				return -1;
+			} else if (ch != '\\') {
+				return ch;
+			}
+			ch = readRequired();
+			switch (ch) {
+				case 'b':
+					return '\b';
+				case 'f':
+					return '\f';
+				case 'n':
+					return '\n';
+				case 'r':
+					return '\r';
+				case 't':
+					return '\t';
+				case 'u':
+					int value = 0;
+					for (int i = 0; i < 4; i++) {
+						int digit = Character.digit(readRequired(), 16);
+						if (digit < 0) {
+							throw new JsonSyntaxException("invalid unicode escape in request body");
+						}
+						value = (value << 4) | digit;
+					}
+					return value;
+				default:
+					// quote, backslash, slash
+					return ch;
+			}
+		}
+	}
+
+	/**
+	 * The base64 characters of a string as bytes.
+	 */
+	private static class AsciiInputStream extends InputStream {
+
+		private final Reader reader;
+		private final char[] chars = new char[4096];
+
+		public AsciiInputStream(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int ch = reader.read();
+			if (ch < 0) {
+				return -1;
+			} else {
+				return (ch & 0xFF);
+			}
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			int count = reader.read(chars, 0, Math.min(length, chars.length));
+			for (int i = 0; i < count; i++) {
+				bytes[offset + i] = (byte) chars[i];
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.HttpContext;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.RequestContext;
+import com.j256.testcheckpublisher.lambda.UploadStatus.State;
+import com.j256.testcheckpublisher.lambda.github.GsonUtils;
+
+/**
+ * Hand-written gson type adapters for the API gateway request and response, and our upload status, which are named by
+ * their @JsonAdapter annotations. They produce the same JSON as gson's reflection.
+ *
+ * @author graywatson
+ */
+class GatewayTypeAdapters {
+
+	private GatewayTypeAdapters() {
+		// only static classes
+	}
+
+	/**
+	 * Adapter for {@link ApiGatewayRequest}.
+	 */
+	static class ApiGatewayRequestAdapter extends TypeAdapter<ApiGatewayRequest> {
+
+		private final RequestContextAdapter requestContextAdapter = new RequestContextAdapter();
+
+		@Override
+		public void write(JsonWriter out, ApiGatewayRequest request) throws IOException {
+			if (request == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("rawPath").value(request.getRawPath());
+			out.name("rawQueryString").value(request.getRawQueryString());
+			if (request.getHeaders() != null) {
+				out.name("headers");
+				GsonUtils.writeStringMap(out, request.getHeaders());
+			}
+			if (request.getRequestContext() != null) {
+				out.name("requestContext");
+				requestContextAdapter.write(out, request.getRequestContext());
+			}
+			out.name("body").value(request.getBody());
+			out.name("isBase64Encoded").value(request.isBodyBase64Encoded());
+			out.endObject();
+		}
+
+		@Override
+		public ApiGatewayRequest read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String rawPath = null;
+			String rawQueryString = null;
+			Map<String, String> headers = null;
+			RequestContext requestContext = null;
+			String body = null;
+			boolean isBodyBase64Encoded = false;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "rawPath":
+						rawPath = GsonUtils.readString(in);
+						break;
+					case "rawQueryString":
+						rawQueryString = GsonUtils.readString(in);
+						break;
+					case "headers":
+						headers = GsonUtils.readStringMap(in);
+						break;
+					case "requestContext":
+						requestContext = requestContextAdapter.read(in);
+						break;
+					case "body":
+						body = GsonUtils.readString(in);
+						break;
+					case "isBase64Encoded":
+						isBodyBase64Encoded = GsonUtils.readBoolean(in, isBodyBase64Encoded);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new ApiGatewayRequest(rawPath, rawQueryString, headers, requestContext, body, isBodyBase64Encoded);
+		}
+	}
+
+	/**
+	 * Adapter for {@link RequestContext}.
+	 */
+	static class RequestContextAdapter extends TypeAdapter<RequestContext> {
+
+		private final HttpContextAdapter httpContextAdapter = new HttpContextAdapter();
+
+		@Override
+		public void write(JsonWriter out, RequestContext context) throws IOException {
+			if (context == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("domainName").value(context.getDomainName());
+			out.name("requestId").value(context.getRequestId());
+			if (context.getHttpContext() != null) {
+				out.name("http");
+				httpContextAdapter.write(out, context.getHttpContext());
+			}
+			out.endObject();
+		}
+
+		@Override
+		public RequestContext read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String domainName = null;
+			String requestId = null;
+			HttpContext httpContext = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "domainName":
+						domainName = GsonUtils.readString(in);
+						break;
+					case "requestId":
+						requestId = GsonUtils.readString(in);
+						break;
+					case "http":
+						httpContext = httpContextAdapter.read(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new RequestContext(domainName, requestId, httpContext);
+		}
+	}
+
+	/**
+	 * Adapter for {@link HttpContext}.
+	 */
+	static class HttpContextAdapter extends TypeAdapter<HttpContext> {
+
+		@Override
+		public void write(JsonWriter out, HttpContext context) throws IOException {
+			if (context == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("method").value(context.getMethod());
+			out.name("path").value(context.getPath());
+			out.name("sourceIp").value(context.getSourceIp());
+			out.name("userAgent").value(context.getUserAgent());
+			out.endObject();
+		}
+
+		@Override
+		public HttpContext read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String method = null;
+			String path = null;
+			String sourceIp = null;
+			String userAgent = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "method":
+						method = GsonUtils.readString(in);
+						break;
+					case "path":
+						path = GsonUtils.readString(in);
+						break;
+					case "sourceIp":
+						sourceIp = GsonUtils.readString(in);
+						break;
+					case "userAgent":
+						userAgent = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new HttpContext(method, path, sourceIp, userAgent);
+		}
+	}
+
+	/**
+	 * Adapter for {@link ApiGatewayResponse}.
+	 */
+	static class ApiGatewayResponseAdapter extends TypeAdapter<ApiGatewayResponse> {
+
+		@Override
+		public void write(JsonWriter out, ApiGatewayResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("statusCode").value(response.getStatusCode());
+			if (response.getCookies() != null) {
+				out.name("cookies");
+				out.beginArray();
+				for (String cookie : response.getCookies()) {
+					out.value(cookie);
+				}
+				out.endArray();
+			}
+			if (response.getHeaders() != null) {
+				out.name("headers");
+				GsonUtils.writeStringMap(out, response.getHeaders());
+			}
+			out.name("body").value(response.getBody());
+			out.name("isBase64Encoded").value(response.isBodyBase64Encoded());
+			out.endObject();
+		}
+
+		@Override
+		public ApiGatewayResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			int statusCode = 0;
+			String[] cookies = null;
+			Map<String, String> headers = null;
+			String body = null;
+			boolean isBodyBase64Encoded = false;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "statusCode":
+						statusCode = GsonUtils.readInt(in, statusCode);
+						break;
+					case "cookies":
+						cookies = readStringArray(in);
+						break;
+					case "headers":
+						headers = GsonUtils.readStringMap(in);
+						break;
+					case "body":
+						body = GsonUtils.readString(in);
+						break;
+					case "isBase64Encoded":
+						isBodyBase64Encoded = GsonUtils.readBoolean(in, isBodyBase64Encoded);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new ApiGatewayResponse(statusCode, cookies, headers, body, isBodyBase64Encoded);
+		}
+
+		private static String[] readStringArray(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			List<String> values = new ArrayList<>();
+			in.beginArray();
+			while (in.hasNext()) {
+				values.add(GsonUtils.readString(in));
+			}
+			in.endArray();
+			return values.toArray(new String[values.size()]);
+		}
+	}
+
+	/**
+	 * Adapter for {@link UploadStatus}.
+	 */
+	static class UploadStatusAdapter extends TypeAdapter<UploadStatus> {
+
+		@Override
+		public void write(JsonWriter out, UploadStatus status) throws IOException {
+			if (status == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("id").value(status.getId());
+			out.name("state").value(stateName(status.getState()));
+			out.name("statusCode").value(status.getStatusCode());
+			out.name("message").value(status.getMessage());
+			out.endObject();
+		}
+
+		@Override
+		public UploadStatus read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String id = null;
+			State state = null;
+			int statusCode = 0;
+			String message = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "id":
+						id = GsonUtils.readString(in);
+						break;
+					case "state":
+						state = readState(GsonUtils.readString(in));
+						break;
+					case "statusCode":
+						statusCode = GsonUtils.readInt(in, statusCode);
+						break;
+					case "message":
+						message = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new UploadStatus(id, state, statusCode, message);
+		}
+
+		private static String stateName(State state) {
+			if (state == null) {
+				return null;
+			} else {
+				return state.name().toLowerCase(Locale.ENGLISH);
+			}
+		}
+
+		private static State readState(String name) {
+			for (State state : State.values()) {
+				if (stateName(state).equals(name)) {
+					return state;
+				}
+			}
+			return null;
+		}
+	}
+}
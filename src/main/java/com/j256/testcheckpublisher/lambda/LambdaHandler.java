@@ -1,34 +1,40 @@
 package com.j256.testcheckpublisher.lambda;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.http.HttpStatus;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonParseException;
 import com.j256.simplelogging.Level;
 import com.j256.simplelogging.Logger;
@@ -41,10 +47,15 @@ import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse;
 import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
 import com.j256.testcheckpublisher.lambda.github.GithubClient;
 import com.j256.testcheckpublisher.lambda.github.GithubClientImpl;
+import com.j256.testcheckpublisher.lambda.github.GithubTransport;
+import com.j256.testcheckpublisher.lambda.github.GraphqlGithubClient;
+import com.j256.testcheckpublisher.lambda.github.GsonUtils;
+import com.j256.testcheckpublisher.lambda.github.InstallationDirectory;
 import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
 import com.j256.testcheckpublisher.plugin.PublishedTestResults;
 import com.j256.testcheckpublisher.plugin.TestCheckPubMojo;
 import com.j256.testcheckpublisher.plugin.frameworks.FrameworkTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
 
 /**
  * Main lambda handler.
@@ -55,12 +66,31 @@ public class LambdaHandler implements RequestStreamHandler {
 
 	private static final String PUBLISHER_PEM_ENV = "github_application_secret";
 	private static final String INSTALLTION_ID_SECRET_ENV = "installation_id_secret";
+	// optional path to persist the installation directory, ex: /tmp/installations.json
+	private static final String INSTALLATION_DIRECTORY_PATH_ENV = "installation_directory_path";
+	// set to graphql to batch the directory lookups into a single graphql query
+	private static final String GITHUB_API_ENV = "github_api";
+	// optional directory to persist the tree path indexes, ex: /tmp/path-index
+	private static final String PATH_INDEX_DIR_ENV = "path_index_dir";
+	// maximum size of a compressed upload once it is decompressed
+	private static final String MAX_BODY_SIZE_ENV = "max_decompressed_body_size";
+	private static final long DEFAULT_MAX_BODY_SIZE = 128 * 1024 * 1024;
+	// number of threads that post accepted uploads in the background, unset to post them before responding
+	private static final String ASYNC_UPLOAD_THREADS_ENV = "async_upload_threads";
+	// optional directory to save the accepted uploads until they are posted, ex: /var/lib/test-check/uploads
+	private static final String ASYNC_UPLOAD_DIR_ENV = "async_upload_dir";
+	// maximum number of accepted uploads waiting to be posted before new ones get a 503
+	private static final String ASYNC_UPLOAD_MAX_QUEUED_ENV = "async_upload_max_queued";
+	// maximum bytes of the saved uploads waiting to be posted before new ones get a 503
+	private static final String ASYNC_UPLOAD_MAX_SAVED_BYTES_ENV = "async_upload_max_saved_bytes";
 	private static final String DIGEST_ALGORITHM = "SHA1";
 
 	private static final String INSTALLATION_PATH_PREFIX = "/install";
 	private static final String FILES_PATH_PREFIX = "/files";
 	private static final int FILE_PATH_PREFIX_LENGTH = FILES_PATH_PREFIX.length();
 	private static final String RESULTS_PATH_PREFIX = "/results";
+	private static final String STATUS_PATH_PREFIX = "/status";
+	private static final int STATUS_PATH_PREFIX_LENGTH = STATUS_PATH_PREFIX.length();
 	private static final String TEST_PATH_PREFIX = "/test";
 	private static final int TEST_PATH_PREFIX_LENGTH = TEST_PATH_PREFIX.length();
 	private static final String PROD_PATH_PREFIX = "/prod";
@@ -77,7 +107,13 @@ public class LambdaHandler implements RequestStreamHandler {
 	private static final Map<String, String> extToContentType = new HashMap<>();
 	private static final Logger logger = LoggerFactory.getLogger(LambdaHandler.class);
 
-	private static CloseableHttpClient httpclient = HttpClients.createDefault();
+	private static final GithubTransport transport = GithubTransport.fromEnvironment();
+	private static final InstallationDirectory installationDirectory = createInstallationDirectory();
+	private static final ResolvedPathCache resolvedPathCache = new ResolvedPathCache();
+	private static PathIndexStore pathIndexStore = createPathIndexStore();
+	private static long maxBodySize = getMaxBodySize();
+	private static UploadQueue uploadQueue = createUploadQueue();
+	private static final boolean useGraphql = "graphql".equalsIgnoreCase(System.getenv(GITHUB_API_ENV));
 	private GithubClient testGithub;
 
 	static {
@@ -93,9 +129,11 @@ public class LambdaHandler implements RequestStreamHandler {
 		try {
 			// turn off logging sicne these will fail
 			Logger.setGlobalLogLevel(Level.OFF);
-			GithubClient github = GithubClientImpl.createClient(httpclient, getApplicationKey(), "init");
+			GithubClientImpl github =
+					GithubClientImpl.createClient(transport, installationDirectory, getApplicationKey(), "init");
 			if (github != null) {
-				github.login("init", "init");
+				// this also warms up the classes
+				github.preloadInstallations();
 			}
 		} catch (Throwable th) {
 			// ignore it
@@ -110,41 +148,53 @@ public class LambdaHandler implements RequestStreamHandler {
 
 		// read in request of files, sha, repo, secret
 
-		InputStreamReader reader = new InputStreamReader(inputStream);
-		Gson gson = new GsonBuilder().create();
+		Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+		Gson gson = GsonUtils.getGson();
 
-		// PublishedTestResults results = new Gson().fromJson(reader, PublishedTestResults.class);
-		ApiGatewayRequest request = gson.fromJson(reader, ApiGatewayRequest.class);
+		// upload bodies are parsed into the published test results as they are read
+		ApiGatewayRequest request =
+				GatewayRequestReader.readRequest(reader, gson, LambdaHandler::isUploadPath, maxBodySize);
+		ApiGatewayResponse response;
 		if (request == null) {
-			writeResponse(outputStream, gson, HttpStatus.SC_BAD_REQUEST, "text/plain", "Invalid request");
+			response = createResponse(HttpStatus.SC_BAD_REQUEST, "text/plain", "Invalid request");
 			logger.error("gateway-request is null");
-			return;
+		} else {
+			response = handleRequest(request);
 		}
 
+		try (Writer writer = new OutputStreamWriter(outputStream);) {
+			gson.toJson(response, writer);
+		}
+	}
+
+	/**
+	 * Route the request to the installation, files, status, or upload handlers and return the response. This is also
+	 * called by the {@link StandaloneServer} which has no API gateway wrapping.
+	 */
+	public ApiGatewayResponse handleRequest(ApiGatewayRequest request) throws IOException {
+
 		String path = request.getRawPath();
 		if (path == null || path.length() == 0) {
-			writeResponse(outputStream, gson, HttpStatus.SC_NOT_FOUND, "text/plain", "Path not found");
 			logRequest(request);
-			return;
-		}
-
-		// cut off any API prefix
-		if (path.startsWith(TEST_PATH_PREFIX)) {
-			path = path.substring(TEST_PATH_PREFIX_LENGTH);
-		} else if (path.startsWith(PROD_PATH_PREFIX)) {
-			path = path.substring(PROD_PATH_PREFIX_LENGTH);
+			return createResponse(HttpStatus.SC_NOT_FOUND, "text/plain", "Path not found");
 		}
 
+		Gson gson = GsonUtils.getGson();
+		ApiGatewayResponse response;
+		path = cutApiPrefix(path);
 		if (path.startsWith(INSTALLATION_PATH_PREFIX)) {
-			handleInstallation(outputStream, gson, request);
+			response = handleInstallation(request);
 		} else if (path.startsWith(FILES_PATH_PREFIX)) {
-			handleFile(outputStream, gson, path);
-		} else if (path.equals("/") || path.startsWith(RESULTS_PATH_PREFIX)) {
-			handleUpload(outputStream, gson, request);
+			response = handleFile(path);
+		} else if (path.startsWith(STATUS_PATH_PREFIX)) {
+			response = handleStatus(gson, path);
+		} else if (isUploadPath(path)) {
+			response = handleUpload(gson, request);
 		} else {
-			writeResponse(outputStream, gson, HttpStatus.SC_NOT_FOUND, "text/plain", "Path not found: " + path);
+			response = createResponse(HttpStatus.SC_NOT_FOUND, "text/plain", "Path not found: " + path);
 		}
 		logRequest(request);
+		return response;
 	}
 
 	/**
@@ -161,6 +211,27 @@ public class LambdaHandler implements RequestStreamHandler {
 		LambdaHandler.installationIdSecret = installationIdSecret;
 	}
 
+	/**
+	 * For testing purposes.
+	 */
+	public static void setPathIndexStore(PathIndexStore pathIndexStore) {
+		LambdaHandler.pathIndexStore = pathIndexStore;
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setMaxBodySize(long maxBodySize) {
+		LambdaHandler.maxBodySize = maxBodySize;
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setUploadQueue(UploadQueue uploadQueue) {
+		LambdaHandler.uploadQueue = uploadQueue;
+	}
+
 	public void setTestGithub(GithubClient testGithub) {
 		this.testGithub = testGithub;
 	}
@@ -179,8 +250,7 @@ public class LambdaHandler implements RequestStreamHandler {
 		}
 	}
 
-	private void handleInstallation(OutputStream outputStream, Gson gson, ApiGatewayRequest request)
-			throws IOException {
+	private ApiGatewayResponse handleInstallation(ApiGatewayRequest request) {
 
 		StringBuilder htmlSb = new StringBuilder();
 		htmlSb.append("<html>\n");
@@ -198,7 +268,7 @@ public class LambdaHandler implements RequestStreamHandler {
 		htmlSb.append("</body>\n");
 		htmlSb.append("</html>\n");
 
-		writeResponse(outputStream, gson, HttpStatus.SC_OK, "text/html", htmlSb.toString());
+		return createResponse(HttpStatus.SC_OK, "text/html", htmlSb.toString());
 	}
 
 	private void handleInstallBody(ApiGatewayRequest request, StringBuilder htmlSb) {
@@ -268,10 +338,10 @@ public class LambdaHandler implements RequestStreamHandler {
 				.append("</code></blockquote></p>");
 	}
 
-	private void handleFile(OutputStream outputStream, Gson gson, String path) throws IOException {
+	private ApiGatewayResponse handleFile(String path) throws IOException {
 
 		if (path.length() <= FILE_PATH_PREFIX_LENGTH) {
-			return;
+			return createResponse(HttpStatus.SC_NOT_FOUND, "text/plain", "File path not found: " + path);
 		}
 		String resourcePath = path.substring(FILE_PATH_PREFIX_LENGTH);
 		String filePath = FILE_RESOURCE_PREFIX + resourcePath;
@@ -279,9 +349,7 @@ public class LambdaHandler implements RequestStreamHandler {
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(filePath);) {
 			if (inputStream == null) {
-				writeResponse(outputStream, gson, HttpStatus.SC_NOT_FOUND, "text/plain",
-						"File path not found: " + filePath);
-				return;
+				return createResponse(HttpStatus.SC_NOT_FOUND, "text/plain", "File path not found: " + filePath);
 			}
 			byte[] buf = new byte[4096];
 			while (true) {
@@ -304,116 +372,228 @@ public class LambdaHandler implements RequestStreamHandler {
 		}
 
 		String base64 = Base64.encodeBase64String(baos.toByteArray());
-		writeResponse(outputStream, gson, HttpStatus.SC_OK, headerMap, base64, true);
+		return createResponse(HttpStatus.SC_OK, headerMap, base64, true);
 	}
 
-	private void handleUpload(OutputStream outputStream, Gson gson, ApiGatewayRequest request) throws IOException {
+	/**
+	 * Cut off any API prefix from the path.
+	 */
+	private static String cutApiPrefix(String path) {
+		if (path.startsWith(TEST_PATH_PREFIX)) {
+			return path.substring(TEST_PATH_PREFIX_LENGTH);
+		} else if (path.startsWith(PROD_PATH_PREFIX)) {
+			return path.substring(PROD_PATH_PREFIX_LENGTH);
+		} else {
+			return path;
+		}
+	}
+
+	/**
+	 * Return the API prefix, if any, of the raw-path.
+	 */
+	private static String findApiPrefix(String rawPath) {
+		return rawPath.substring(0, rawPath.length() - cutApiPrefix(rawPath).length());
+	}
+
+	/**
+	 * Returns true if the raw-path, with or without the API prefix, is where the test results are posted.
+	 */
+	private static boolean isUploadPath(String path) {
+		path = cutApiPrefix(path);
+		return (path.equals("/") || path.startsWith(RESULTS_PATH_PREFIX));
+	}
+
+	/**
+	 * Report the status of an upload that was accepted to be posted in the background: /status/tracking-id
+	 */
+	private ApiGatewayResponse handleStatus(Gson gson, String path) {
+		String id = path.substring(STATUS_PATH_PREFIX_LENGTH);
+		if (id.startsWith("/")) {
+			id = id.substring(1);
+		}
+		UploadQueue queue = uploadQueue;
+		UploadStatus status = null;
+		if (queue != null && UploadQueue.isValidId(id)) {
+			status = queue.getStatus(id);
+		}
+		if (status == null) {
+			return createResponse(HttpStatus.SC_NOT_FOUND, "text/plain", "Upload not found: " + id);
+		} else {
+			return createResponse(HttpStatus.SC_OK, "application/json", gson.toJson(status));
+		}
+	}
+
+	private ApiGatewayResponse handleUpload(Gson gson, ApiGatewayRequest request) throws IOException {
 
 		String body = request.getBody();
-		if (body == null || body.length() == 0) {
+		if (!request.isBodyStreamed() && (body == null || body.length() == 0)) {
 			// get requests should redirect
 			Map<String, String> headerMap = Collections.singletonMap("Location", APP_HOME_PAGE);
-			writeResponse(outputStream, gson, HttpStatus.SC_MOVED_PERMANENTLY, headerMap, null, false);
-			return;
+			return createResponse(HttpStatus.SC_MOVED_PERMANENTLY, headerMap, null, false);
 		}
 
-		// the body is probably base64 encoded because it is json payload
-		if (request.isBodyBase64Encoded()) {
-			body = new String(Base64.decodeBase64(body));
+		String encoding = ContentEncodingUtils.findContentEncoding(request.getHeaders());
+		if (!ContentEncodingUtils.isSupported(encoding)) {
+			logger.error("unsupported content-encoding: " + encoding);
+			return createResponse(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, "text/plain",
+					"Unsupported content-encoding: " + encoding);
 		}
 
 		PublishedTestResults publishedResults;
 		try {
-			publishedResults = gson.fromJson(body, PublishedTestResults.class);
+			publishedResults = readPublishedResults(gson, request, encoding);
 		} catch (JsonParseException jpe) {
+			if (ContentEncodingUtils.isTooLarge(jpe)) {
+				logger.error("posted body is too large: " + jpe.getMessage());
+				return createResponse(HttpStatus.SC_REQUEST_TOO_LONG, "text/plain",
+						"Posted body is larger than " + maxBodySize + " bytes once decompressed");
+			}
 			logger.error(jpe, "json parse error on published test results");
-			writeResponse(outputStream, gson, HttpStatus.SC_BAD_REQUEST, "text/plain",
+			return createResponse(HttpStatus.SC_BAD_REQUEST, "text/plain",
 					"Invalid JSON posted to the server: " + jpe.getMessage());
-			return;
 		}
 		if (publishedResults == null) {
 			// request sanity check failed
 			logger.error("got null results");
-			writeResponse(outputStream, gson, HttpStatus.SC_BAD_REQUEST, "text/plain",
-					"Expecting published test results");
-			return;
+			return createResponse(HttpStatus.SC_BAD_REQUEST, "text/plain", "Expecting published test results");
 		}
 
-		if (!publishedResults.isMagicCorrect()) {
-			// request sanity check failed
-			logger.error("request sanity check failed: " + publishedResults.getMagic());
-			writeResponse(outputStream, gson, HttpStatus.SC_BAD_REQUEST, "text/plain", "Posted request is invalid");
-			return;
-		}
+		// the results adapter already rejected a missing or wrong magic value as invalid JSON
 		String repository = publishedResults.getRepository();
 
 		FrameworkTestResults frameworkResults = publishedResults.getResults();
 		if (StringUtils.isBlank(frameworkResults.getName())) {
-			writeResponse(outputStream, gson, HttpStatus.SC_BAD_REQUEST, "text/plain", "No framework name supplied.");
-			return;
+			return createResponse(HttpStatus.SC_BAD_REQUEST, "text/plain", "No framework name supplied.");
 		}
 
 		String label = publishedResults.getOwner() + "/" + repository;
 		logger.info(label + ": uploading @" + publishedResults.getCommitSha());
 
-		PrivateKey applicationKey = getApplicationKey();
-		if (applicationKey == null) {
+		UploadQueue queue = uploadQueue;
+		if (queue == null) {
+			UploadResult result = postResults(publishedResults, label);
+			return createResponse(result.getStatusCode(), "text/plain", result.getMessage());
+		}
+
+		// validate before accepting so a bad secret or installation is reported to the CI job
+		GithubClient github = createGithubClient(label);
+		if (github == null) {
 			// already logged
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
-					"Server configuration failure");
-			return;
+			return createResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain", "Server configuration failure");
+		}
+		UploadResult result = loginAndValidate(github, publishedResults, label);
+		if (result != null) {
+			return createResponse(result.getStatusCode(), "text/plain", result.getMessage());
 		}
 
-		GithubClient github = getGithubClient(label, applicationKey);
+		// post in the background so the CI job doesn't wait on the github calls, without the secret which is validated
+		PublishedTestResults queuedResults = new PublishedTestResults(publishedResults.getOwner(), repository,
+				publishedResults.getCommitSha(), null, publishedResults.getFormat(), frameworkResults);
+		String id;
+		try {
+			id = queue.submit(queuedResults, label, this::postQueuedResults);
+		} catch (RejectedExecutionException ree) {
+			logger.error(label + ": rejected upload: " + ree.getMessage());
+			return createResponse(HttpStatus.SC_SERVICE_UNAVAILABLE, "text/plain",
+					"Too many uploads are waiting to be posted, try again later");
+		}
+		if (id == null) {
+			return createResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain", "Could not save the upload");
+		}
+		logger.info(label + ": accepted upload " + id);
+		Map<String, String> headerMap = new HashMap<>();
+		headerMap.put("Content-Type", "application/json");
+		headerMap.put("Location", findApiPrefix(request.getRawPath()) + STATUS_PATH_PREFIX + "/" + id);
+		String statusJson = gson.toJson(queue.getStatus(id));
+		return createResponse(HttpStatus.SC_ACCEPTED, headerMap, statusJson, false);
+	}
+
+	/**
+	 * Validate the results and post their check-run to github.
+	 */
+	private UploadResult postResults(PublishedTestResults publishedResults, String label) throws IOException {
+		GithubClient github = createGithubClient(label);
 		if (github == null) {
 			// already logged
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
-					"Github client create failure");
-			return;
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Server configuration failure");
+		}
+		UploadResult result = loginAndValidate(github, publishedResults, label);
+		if (result == null) {
+			result = postCheckRun(github, publishedResults, label);
+		}
+		return result;
+	}
+
+	/**
+	 * Post the check-run for queued results. They were validated before they were accepted and their secret was dropped
+	 * so it wasn't saved.
+	 */
+	private UploadResult postQueuedResults(PublishedTestResults publishedResults, String label) throws IOException {
+		GithubClient github = createGithubClient(label);
+		if (github == null) {
+			// already logged
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Server configuration failure");
+		}
+		// login again since the access-token may have expired while it was queued
+		if (!github.login(publishedResults.getOwner(), publishedResults.getRepository())) {
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+					"Could not login to github for some reason: " + github.getLastStatusLine());
 		}
+		return postCheckRun(github, publishedResults, label);
+	}
+
+	/**
+	 * Login to github for the repository of the results and verify their secret against our installation-id.
+	 *
+	 * @return The error result or null if the results are valid.
+	 */
+	private UploadResult loginAndValidate(GithubClient github, PublishedTestResults publishedResults, String label)
+			throws IOException {
+
+		String repository = publishedResults.getRepository();
 
 		// login which creates our access-token
 		if (!github.login(publishedResults.getOwner(), repository)) {
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR,
 					"Could not login to github for some reason: " + github.getLastStatusLine());
-			return;
 		}
 
 		// lookup our installation-id and verify our secret
 		int installationId = github.getInstallationId();
 		if (installationId < 0) {
 			logger.error(label + ": no installation-id");
-			writeResponse(outputStream, gson, HttpStatus.SC_FORBIDDEN, "text/plain",
+			return new UploadResult(HttpStatus.SC_FORBIDDEN,
 					"Could not find installation for application in repository " + repository
 							+ ".  You should reinstall the " + INTEGREATION_NAME + " integration.");
-			return;
 		}
 
 		if (!validateSecret(publishedResults.getSecret(), installationId)) {
 			logger.error(label + ": secret did not validate");
-			writeResponse(outputStream, gson, HttpStatus.SC_FORBIDDEN, "text/plain",
+			return new UploadResult(HttpStatus.SC_FORBIDDEN,
 					"The secret environmental variable value did not validate.  Check your CI envrionment settings.\n"
 							+ "You may need to reinstall " + "the " + INTEGREATION_NAME
 							+ " integration or check your secret envrionment variable.");
-			return;
 		}
+		return null;
+	}
+
+	/**
+	 * Post the check-run for the validated results to github.
+	 */
+	private UploadResult postCheckRun(GithubClient github, PublishedTestResults publishedResults, String label)
+			throws IOException {
+
+		String owner = publishedResults.getOwner();
+		String repository = publishedResults.getRepository();
+		FrameworkTestResults frameworkResults = publishedResults.getResults();
 
 		// get detail about the commit
-		CommitInfoResponse commitInfo = github.requestCommitInfo(publishedResults.getCommitSha());
+		String commitSha = publishedResults.getCommitSha();
+		CommitInfoResponse commitInfo = github.requestCommitInfo(commitSha);
 		if (commitInfo == null) {
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
-					"Could not lookup commit information on github for sha " + publishedResults.getCommitSha() + ": "
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+					"Could not lookup commit information on github for sha " + commitSha + ": "
 							+ github.getLastStatusLine());
-			return;
-		}
-
-		// list all of the files at the commit point
-		Collection<TreeFile> treeFiles = github.requestTreeFiles(commitInfo.getTreeSha());
-		if (treeFiles == null) {
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
-					"Could not get file information for tree sha " + commitInfo.getTreeSha() + ": "
-							+ github.getLastStatusLine());
-			return;
 		}
 
 		Set<String> commitPathSet = new HashSet<>();
@@ -426,43 +606,236 @@ public class LambdaHandler implements RequestStreamHandler {
 			}
 		}
 
+		// see if we indexed this tree on a previous upload
+		String treeSha = commitInfo.getTreeSha();
+		PathIndex pathIndex = null;
+		if (pathIndexStore != null) {
+			pathIndex = pathIndexStore.findIndex(owner, repository, treeSha);
+		}
+
+		CheckRunOutput output;
+		if (pathIndex == null) {
+			// find the files that the test results refer to, only listing the whole tree if we have to
+			List<String> testPaths = new ArrayList<>();
+			if (frameworkResults.getFileResults() != null) {
+				for (TestFileResult fileResult : frameworkResults.getFileResults()) {
+					testPaths.add(fileResult.getPath());
+				}
+			}
+			PathResolver pathResolver = new PathResolver(github, resolvedPathCache, label);
+			Collection<TreeFile> treeFiles =
+					pathResolver.resolveFiles(owner, repository, commitSha, treeSha, commitPathSet, testPaths);
+			if (treeFiles == null) {
+				return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR, pathResolver.getError());
+			}
+			if (pathIndexStore != null && pathResolver.isTreeFetched()) {
+				// index the whole tree so the next upload for it doesn't have to get it again
+				pathIndex = pathIndexStore.addIndex(owner, repository, treeSha, treeFiles);
+			}
+			if (pathIndex == null) {
+				output = OutputCreatorUtil.createOutput(publishedResults, treeFiles, commitPathSet, label);
+			} else {
+				output = OutputCreatorUtil.createOutput(publishedResults, pathIndex, commitPathSet, label);
+			}
+		} else {
+			logger.info(label + ": using stored index of tree " + treeSha);
+			output = OutputCreatorUtil.createOutput(publishedResults, pathIndex, commitPathSet, label);
+		}
+
 		// create the check-run request
-		CheckRunOutput output = OutputCreatorUtil.createOutput(publishedResults, treeFiles, commitPathSet, label);
 		CheckRunRequest checkRunRequest =
 				new CheckRunRequest(frameworkResults.getName(), publishedResults.getCommitSha(), output);
 
 		// post the check-run-request
 		if (!github.addCheckRun(checkRunRequest)) {
-			writeResponse(outputStream, gson, HttpStatus.SC_INTERNAL_SERVER_ERROR, "text/plain",
+			return new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR,
 					"Could not post check-runs to github: " + github.getLastStatusLine());
-			return;
 		}
 
 		logger.info(label + ": posted check-run " + output.getTitle());
-		writeResponse(outputStream, gson, HttpStatus.SC_OK, "text/plain", "Check-run posted to github.");
+		return new UploadResult(HttpStatus.SC_OK, "Check-run posted to github.");
+	}
+
+	/**
+	 * Create a github client or return null if we aren't configured properly.
+	 */
+	private GithubClient createGithubClient(String label) {
+		PrivateKey applicationKey = getApplicationKey();
+		if (applicationKey == null) {
+			// already logged
+			return null;
+		} else {
+			return getGithubClient(label, applicationKey);
+		}
 	}
 
 	private GithubClient getGithubClient(String label, PrivateKey applicationKey) {
 		if (testGithub != null) {
 			// for testing purposes
 			return testGithub;
+		} else if (useGraphql) {
+			return GraphqlGithubClient.createClient(transport, installationDirectory, applicationKey, label);
 		} else {
-			return GithubClientImpl.createClient(httpclient, applicationKey, label);
+			return GithubClientImpl.createClient(transport, installationDirectory, applicationKey, label);
 		}
 	}
 
-	private void writeResponse(OutputStream outputStream, Gson gson, int statusCode, String contentType, String message)
-			throws IOException {
-		Map<String, String> headerMap = Collections.singletonMap("Content-Type", contentType);
-		writeResponse(outputStream, gson, statusCode, headerMap, message, false);
+	/**
+	 * Return the results from the request body which may already have been parsed while reading the request.
+	 */
+	private static PublishedTestResults readPublishedResults(Gson gson, ApiGatewayRequest request, String encoding) {
+		if (request.isBodyStreamed()) {
+			if (request.getBodyParseException() != null) {
+				throw request.getBodyParseException();
+			}
+			return request.getPublishedResults();
+		}
+		String body = request.getBody();
+		if (encoding != null) {
+			byte[] bytes;
+			if (request.isBodyBase64Encoded()) {
+				bytes = Base64.decodeBase64(body);
+			} else {
+				bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+			}
+			try (InputStream inputStream =
+					ContentEncodingUtils.decompressStream(new ByteArrayInputStream(bytes), encoding, maxBodySize);) {
+				return gson.fromJson(new InputStreamReader(inputStream, StandardCharsets.UTF_8),
+						PublishedTestResults.class);
+			} catch (IOException ioe) {
+				throw new JsonIOException("could not decompress the request body", ioe);
+			}
+		}
+		// the body is probably base64 encoded because it is json payload
+		if (request.isBodyBase64Encoded()) {
+			body = new String(Base64.decodeBase64(body), StandardCharsets.UTF_8);
+		}
+		return gson.fromJson(body, PublishedTestResults.class);
 	}
 
-	private void writeResponse(OutputStream outputStream, Gson gson, int statusCode, Map<String, String> headerMap,
-			String message, boolean isBodyBase64Encoded) throws IOException {
-		ApiGatewayResponse response = new ApiGatewayResponse(statusCode, null, headerMap, message, isBodyBase64Encoded);
-		try (Writer writer = new OutputStreamWriter(outputStream);) {
-			gson.toJson(response, writer);
+	/**
+	 * Parse an upload body straight from the input-stream of a request that has no API gateway wrapping. Bodies for
+	 * other paths are left unread.
+	 */
+	static void readUploadBody(ApiGatewayRequest request, InputStream inputStream) {
+		if (request.getRawPath() == null || !isUploadPath(request.getRawPath())) {
+			return;
 		}
+		String encoding = ContentEncodingUtils.findContentEncoding(request.getHeaders());
+		if (!ContentEncodingUtils.isSupported(encoding)) {
+			// the handler rejects the encoding so there's no reason to read the body
+			request.setStreamedBody(null, null);
+			return;
+		}
+		PublishedTestResults publishedResults = null;
+		JsonParseException parseException = null;
+		// this also limits the size of an identity body
+		try (Reader reader = new InputStreamReader(
+				ContentEncodingUtils.decompressStream(inputStream, encoding, maxBodySize), StandardCharsets.UTF_8);) {
+			publishedResults = GsonUtils.getGson().fromJson(reader, PublishedTestResults.class);
+		} catch (IOException ioe) {
+			// bad compression header
+			parseException = new JsonIOException("could not decompress the request body", ioe);
+		} catch (JsonParseException jpe) {
+			parseException = jpe;
+		}
+		request.setStreamedBody(publishedResults, parseException);
+	}
+
+	/**
+	 * Queue any uploads that were saved but not posted before a restart instead of waiting for the next upload.
+	 *
+	 * @return The number of uploads queued.
+	 */
+	public int requeueSavedUploads() {
+		UploadQueue queue = uploadQueue;
+		if (queue == null) {
+			return 0;
+		} else {
+			return queue.requeueSaved(this::postQueuedResults);
+		}
+	}
+
+	/**
+	 * Stop accepting uploads and wait for the queued ones to be posted so an accepted upload isn't dropped or left
+	 * half-posted when the process exits.
+	 *
+	 * @return True if they were all posted before the timeout.
+	 */
+	public boolean shutdownUploads(long timeoutMillis) throws InterruptedException {
+		UploadQueue queue = uploadQueue;
+		if (queue == null) {
+			return true;
+		} else {
+			return queue.shutdown(timeoutMillis);
+		}
+	}
+
+	private static PathIndexStore createPathIndexStore() {
+		String dir = System.getenv(PATH_INDEX_DIR_ENV);
+		if (StringUtils.isBlank(dir)) {
+			return null;
+		} else {
+			return new PathIndexStore(new File(dir));
+		}
+	}
+
+	private static UploadQueue createUploadQueue() {
+		String value = System.getenv(ASYNC_UPLOAD_THREADS_ENV);
+		if (StringUtils.isBlank(value)) {
+			return null;
+		}
+		int numThreads;
+		try {
+			numThreads = Integer.parseInt(value.trim());
+		} catch (NumberFormatException nfe) {
+			logger.error("invalid " + ASYNC_UPLOAD_THREADS_ENV + " value: " + value);
+			return null;
+		}
+		if (numThreads <= 0) {
+			return null;
+		}
+		int maxQueued = (int) getLongEnv(ASYNC_UPLOAD_MAX_QUEUED_ENV, UploadQueue.DEFAULT_MAX_QUEUED);
+		long maxSavedBytes = getLongEnv(ASYNC_UPLOAD_MAX_SAVED_BYTES_ENV, UploadQueue.DEFAULT_MAX_SAVED_BYTES);
+		String dir = System.getenv(ASYNC_UPLOAD_DIR_ENV);
+		return new UploadQueue(numThreads, maxQueued, maxSavedBytes,
+				(StringUtils.isBlank(dir) ? null : new File(dir)));
+	}
+
+	private static long getMaxBodySize() {
+		return getLongEnv(MAX_BODY_SIZE_ENV, DEFAULT_MAX_BODY_SIZE);
+	}
+
+	private static long getLongEnv(String name, long defaultValue) {
+		String value = System.getenv(name);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException nfe) {
+			logger.error("invalid " + name + " value: " + value);
+			return defaultValue;
+		}
+	}
+
+	private static InstallationDirectory createInstallationDirectory() {
+		String path = System.getenv(INSTALLATION_DIRECTORY_PATH_ENV);
+		if (StringUtils.isBlank(path)) {
+			return new InstallationDirectory();
+		} else {
+			return new InstallationDirectory(new File(path));
+		}
+	}
+
+	private static ApiGatewayResponse createResponse(int statusCode, String contentType, String message) {
+		Map<String, String> headerMap = Collections.singletonMap("Content-Type", contentType);
+		return createResponse(statusCode, headerMap, message, false);
+	}
+
+	private static ApiGatewayResponse createResponse(int statusCode, Map<String, String> headerMap, String message,
+			boolean isBodyBase64Encoded) {
+		return new ApiGatewayResponse(statusCode, null, headerMap, message, isBodyBase64Encoded);
 	}
 
 	private boolean validateSecret(String requestSecret, int installationId) {
@@ -1,9 +1,7 @@
 package com.j256.testcheckpublisher.lambda;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 import com.j256.simplelogging.Logger;
@@ -32,6 +30,25 @@ public class OutputCreatorUtil {
 	public static CheckRunOutput createOutput(PublishedTestResults publishedResults, Collection<TreeFile> treeFiles,
 			Set<String> commitPathSet, String label) {
 
+		// only index the tree files that our test paths could refer to
+		Set<String> nameSet = new HashSet<>();
+		FrameworkTestResults frameworkResults = publishedResults.getResults();
+		if (frameworkResults != null && frameworkResults.getFileResults() != null) {
+			for (TestFileResult fileResult : frameworkResults.getFileResults()) {
+				if (fileResult.getPath() != null) {
+					nameSet.add(PathIndex.fileName(fileResult.getPath()));
+				}
+			}
+		}
+		return createOutput(publishedResults, new PathIndex(treeFiles, nameSet), commitPathSet, label);
+	}
+
+	/**
+	 * Create our output request using an index of the tree files.
+	 */
+	public static CheckRunOutput createOutput(PublishedTestResults publishedResults, PathIndex pathIndex,
+			Set<String> commitPathSet, String label) {
+
 		String owner = publishedResults.getOwner();
 		String repository = publishedResults.getRepository();
 		String commitSha = publishedResults.getCommitSha();
@@ -40,8 +57,6 @@ public class OutputCreatorUtil {
 
 		CheckRunOutput output = new CheckRunOutput();
 
-		Map<String, FileInfo> nameMap = createNameMap(treeFiles, commitPathSet);
-
 		StringBuilder textSb = new StringBuilder();
 
 		if (frameworkResults == null) {
@@ -54,7 +69,7 @@ public class OutputCreatorUtil {
 						// no reason to generate multiple errors
 						continue;
 					}
-					FileInfo fileInfo = mapFileByPath(nameMap, fileResult.getPath());
+					FileInfo fileInfo = mapFileByPath(pathIndex, commitPathSet, fileResult.getPath());
 					if (fileInfo == null) {
 						logger.warn(
 								label + ": could not locate file associated with test path: " + fileResult.getPath());
@@ -80,56 +95,6 @@ public class OutputCreatorUtil {
 		return output;
 	}
 
-	/**
-	 * Create a map of path portions to file names. The idea being that we may have classes not laid out in a nice
-	 * hierarchy and we don't want to read all files looking for package ...
-	 */
-	private static Map<String, FileInfo> createNameMap(Collection<TreeFile> treeFiles, Set<String> commitPathSet) {
-		Map<String, FileInfo> nameMap = new HashMap<>();
-		for (TreeFile treeFile : treeFiles) {
-			String path = treeFile.getPath();
-			FileInfo fileInfo = new FileInfo(path, commitPathSet.contains(path));
-			nameMap.put(path, fileInfo);
-			String name = pathToName(path);
-			if (name != null) {
-				nameMap.put(name, fileInfo);
-			}
-			int index = 0;
-			while (true) {
-				int nextIndex = path.indexOf('/', index);
-				if (nextIndex < 0) {
-					nextIndex = path.indexOf('\\', index);
-					if (nextIndex < 0) {
-						break;
-					}
-				}
-				index = nextIndex + 1;
-				nameMap.put(path.substring(index), fileInfo);
-			}
-			// should be just the name
-			String fileName = path.substring(index);
-			nameMap.put(fileName, fileInfo);
-			// also cut off the extension
-			index = fileName.indexOf('.');
-			if (index > 0) {
-				fileName = fileName.substring(0, index);
-				nameMap.put(fileName, fileInfo);
-			}
-		}
-		return nameMap;
-	}
-
-	private static String pathToName(String path) {
-		// extract our file-name
-		int index = path.lastIndexOf('/');
-		// tree paths only have forward slash paths coming from github
-		if (index > 0 && index + 1 < path.length()) {
-			return path.substring(index + 1);
-		} else {
-			return null;
-		}
-	}
-
 	private static void appendNumber(StringBuilder sb, String prefix, int num, String label, char pluralSuffix,
 			boolean showAlways) {
 		if (!showAlways && num == 0) {
@@ -145,37 +110,25 @@ public class OutputCreatorUtil {
 	}
 
 	/**
-	 * Try to find the file in our name map by taking various portions of the path. The idea here is that we might be in
-	 * src/main/java/com/foo/Class.java and we really want com/foo/Class.java.
+	 * Try to find the file in our path index by taking various portions of the path. The idea here is that we might be
+	 * in src/main/java/com/foo/Class.java and we really want com/foo/Class.java.
 	 */
-	private static FileInfo mapFileByPath(Map<String, FileInfo> nameMap, String testPath) {
-
-		FileInfo result = nameMap.get(testPath);
-		if (result != null) {
-			return result;
-		}
+	private static FileInfo mapFileByPath(PathIndex pathIndex, Set<String> commitPathSet, String testPath) {
 
+		String path = pathIndex.findPath(testPath);
 		int index = 0;
-		while (true) {
+		while (path == null) {
 			int nextIndex = testPath.indexOf('/', index);
 			if (nextIndex < 0) {
 				nextIndex = testPath.indexOf('\\', index);
 				if (nextIndex < 0) {
-					break;
+					return null;
 				}
 			}
 			index = nextIndex + 1;
-			result = nameMap.get(testPath.substring(index));
-			if (result != null) {
-				return result;
-			}
-		}
-		// could be just the name
-		if (index >= testPath.length()) {
-			return null;
-		} else {
-			return nameMap.get(testPath.substring(index));
+			path = pathIndex.findPath(testPath.substring(index));
 		}
+		return new FileInfo(path, commitPathSet.contains(path));
 	}
 
 	private static void addTestResult(String owner, String repository, String commitSha, CheckRunOutput output,
@@ -0,0 +1,570 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Index of the tree files that answers the same lookups as a map of every path suffix, file name, and file name without
+ * its extension would, but without building those strings. The path segments are interned and the directories are
+ * nodes with parent pointers in int arrays. A lookup finds the files with the key's file name and then walks up their
+ * directories comparing the key's segments in reverse. If a key matches more than one file then the last one in the
+ * tree wins like it did with the map.
+ *
+ * Paths are split on '/' and then the part after the last '/' is split on '\' which is how the suffixes were cut from
+ * both the tree paths and the test paths.
+ *
+ * Since every key that we look up ends in the file name of a test path, the index can be limited to the tree files
+ * whose names, with or without their extensions, are one of those. Then the size of the index follows the number of
+ * test paths and not the size of the repository.
+ *
+ * The index is held in a single buffer in the format that {@link #writeTo(OutputStream)} writes so it can be read back
+ * with {@link #fromBuffer(ByteBuffer)} from a memory-mapped file without being rebuilt.
+ *
+ * @author graywatson
+ */
+public class PathIndex {
+
+	private static final int MAGIC = 0x50494458;
+	private static final int VERSION = 1;
+	// magic, version, checksum, and the 8 section sizes
+	private static final int HEADER_SIZE = 11 * 4;
+
+	private final ByteBuffer buffer;
+	private final int fileCount;
+	private final int segmentCount;
+	// node of each file, files and directories are nodes
+	private final IntBuffer fileNodes;
+	private final IntBuffer nodeParents;
+	// segment-id << 1 plus 1 if the segment came after a '\'
+	private final IntBuffer nodeTokens;
+	// files by the segment-id of their name in ascending order: files[starts[id]] to files[starts[id + 1] - 1]
+	private final IntBuffer nameStarts;
+	private final IntBuffer nameFiles;
+	// same but by the name without the extension
+	private final IntBuffer strippedStarts;
+	private final IntBuffer strippedFiles;
+	// open addressing hash table of segment-id + 1 by the hash of the segment, 0 if empty
+	private final IntBuffer segmentTable;
+	private final IntBuffer segmentOffsets;
+	private final IntBuffer pathOffsets;
+	// UTF-8 bytes of the segments and paths
+	private final ByteBuffer segmentBytes;
+	private final ByteBuffer pathBytes;
+
+	public PathIndex(Collection<TreeFile> treeFiles) {
+		this(treeFiles, null);
+	}
+
+	/**
+	 * Index the tree files with one of the names or null to index all of them. The names should come from
+	 * {@link #fileName(String)} of the paths that will be looked up.
+	 */
+	public PathIndex(Collection<TreeFile> treeFiles, Set<String> nameSet) {
+		this(new Builder(treeFiles, nameSet).build());
+	}
+
+	private PathIndex(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.fileCount = buffer.getInt(12);
+		int nodeCount = buffer.getInt(16);
+		this.segmentCount = buffer.getInt(20);
+		int nameFileCount = buffer.getInt(24);
+		int strippedFileCount = buffer.getInt(28);
+		int tableSize = buffer.getInt(32);
+		int segmentBytesLength = buffer.getInt(36);
+
+		int offset = HEADER_SIZE;
+		fileNodes = intSection(buffer, offset, fileCount);
+		offset += fileCount * 4;
+		nodeParents = intSection(buffer, offset, nodeCount);
+		offset += nodeCount * 4;
+		nodeTokens = intSection(buffer, offset, nodeCount);
+		offset += nodeCount * 4;
+		nameStarts = intSection(buffer, offset, segmentCount + 1);
+		offset += (segmentCount + 1) * 4;
+		nameFiles = intSection(buffer, offset, nameFileCount);
+		offset += nameFileCount * 4;
+		strippedStarts = intSection(buffer, offset, segmentCount + 1);
+		offset += (segmentCount + 1) * 4;
+		strippedFiles = intSection(buffer, offset, strippedFileCount);
+		offset += strippedFileCount * 4;
+		segmentTable = intSection(buffer, offset, tableSize);
+		offset += tableSize * 4;
+		segmentOffsets = intSection(buffer, offset, segmentCount + 1);
+		offset += (segmentCount + 1) * 4;
+		pathOffsets = intSection(buffer, offset, fileCount + 1);
+		offset += (fileCount + 1) * 4;
+		segmentBytes = byteSection(buffer, offset, segmentBytesLength);
+		offset += segmentBytesLength;
+		pathBytes = byteSection(buffer, offset, buffer.capacity() - offset);
+	}
+
+	/**
+	 * Read an index from a buffer, usually a memory-mapped file, that was written by {@link #writeTo(OutputStream)}.
+	 *
+	 * @throws IOException
+	 *             If the buffer is not an index in our format or it fails its checksum.
+	 */
+	public static PathIndex fromBuffer(ByteBuffer buffer) throws IOException {
+		buffer = buffer.duplicate();
+		buffer.clear();
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("buffer is not a path index");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("path index has version " + buffer.getInt(4) + " instead of " + VERSION);
+		}
+		for (int offset = 12; offset < HEADER_SIZE; offset += 4) {
+			if (buffer.getInt(offset) < 0) {
+				throw new IOException("path index has an invalid header");
+			}
+		}
+		int fileCount = buffer.getInt(12);
+		int segmentCount = buffer.getInt(20);
+		int tableSize = buffer.getInt(32);
+		long length = HEADER_SIZE + 4L * (fileCount + 2L * buffer.getInt(16) + 2L * (segmentCount + 1)
+				+ buffer.getInt(24) + buffer.getInt(28) + tableSize + segmentCount + 1 + fileCount + 1);
+		length += (long) buffer.getInt(36) + buffer.getInt(40);
+		if (length != buffer.capacity() || Integer.bitCount(tableSize) != 1 || tableSize <= segmentCount) {
+			throw new IOException("path index has an invalid length or table size");
+		}
+		if (buffer.getInt(8) != checksum(buffer)) {
+			throw new IOException("path index failed its checksum");
+		}
+		return new PathIndex(buffer);
+	}
+
+	/**
+	 * Write the index so it can be read back with {@link #fromBuffer(ByteBuffer)}.
+	 */
+	public void writeTo(OutputStream outputStream) throws IOException {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		byte[] bytes = new byte[Math.min(duplicate.capacity(), 64 * 1024)];
+		while (duplicate.hasRemaining()) {
+			int length = Math.min(bytes.length, duplicate.remaining());
+			duplicate.get(bytes, 0, length);
+			outputStream.write(bytes, 0, length);
+		}
+	}
+
+	/**
+	 * Return the path of the file that the key refers to or null if none. The key matches a file if it is the end of the
+	 * file's path starting at a segment, or if it is the file name without its extension.
+	 */
+	public String findPath(String key) {
+		int fileIndex = findFile(key);
+		if (fileIndex < 0) {
+			return null;
+		}
+		int start = pathOffsets.get(fileIndex);
+		return decode(pathBytes, start, pathOffsets.get(fileIndex + 1) - start);
+	}
+
+	/**
+	 * Return the file name portion of the path which is what comes after the last '/' and then after the last '\' in
+	 * that.
+	 */
+	public static String fileName(String path) {
+		int index = path.lastIndexOf('/') + 1;
+		int backslashIndex = path.lastIndexOf('\\');
+		if (backslashIndex >= index) {
+			index = backslashIndex + 1;
+		}
+		return path.substring(index);
+	}
+
+	/**
+	 * Return the number of files in the index.
+	 */
+	public int getFileCount() {
+		return fileCount;
+	}
+
+	/**
+	 * Return the number of distinct path segments in the index.
+	 */
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	/**
+	 * Return the number of file and directory nodes in the index.
+	 */
+	public int getNodeCount() {
+		return nodeParents.capacity();
+	}
+
+	/**
+	 * Return the number of bytes that the index takes up in memory or on disk.
+	 */
+	public int getByteCount() {
+		return buffer.capacity();
+	}
+
+	private int findFile(String key) {
+		List<String> segments = new ArrayList<>();
+		List<Boolean> backslashes = new ArrayList<>();
+		splitPath(key, segments, backslashes);
+		int[] keyTokens = new int[segments.size()];
+		for (int i = 0; i < keyTokens.length; i++) {
+			int segmentId = findSegmentId(segments.get(i));
+			if (segmentId < 0) {
+				// a segment that isn't anywhere in the tree
+				return -1;
+			}
+			keyTokens[i] = makeToken(segmentId, backslashes.get(i));
+		}
+
+		int last = keyTokens.length - 1;
+		int nameId = (keyTokens[last] >> 1);
+		if (last == 0) {
+			// just a name so the last file with that name or stripped name wins
+			int fileIndex = lastPosting(nameStarts, nameFiles, nameId);
+			return Math.max(fileIndex, lastPosting(strippedStarts, strippedFiles, nameId));
+		}
+
+		// go backwards so the first match is the last file in the tree
+		for (int i = nameStarts.get(nameId + 1) - 1; i >= nameStarts.get(nameId); i--) {
+			if (matchesFile(nameFiles.get(i), keyTokens)) {
+				return nameFiles.get(i);
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Walk up from the file comparing the key's segments in reverse. The separator before the first segment of the key
+	 * doesn't matter since the key starts there.
+	 */
+	private boolean matchesFile(int fileIndex, int[] keyTokens) {
+		int node = fileNodes.get(fileIndex);
+		for (int i = keyTokens.length - 1; i >= 0; i--) {
+			if (node < 0) {
+				return false;
+			}
+			int token = nodeTokens.get(node);
+			if (i == 0 ? (token >> 1) != (keyTokens[i] >> 1) : token != keyTokens[i]) {
+				return false;
+			}
+			node = nodeParents.get(node);
+		}
+		return true;
+	}
+
+	private int findSegmentId(String segment) {
+		byte[] bytes = segment.getBytes(StandardCharsets.UTF_8);
+		int mask = segmentTable.capacity() - 1;
+		for (int slot = hashSlot(segment, mask);; slot = ((slot + 1) & mask)) {
+			int entry = segmentTable.get(slot);
+			if (entry == 0) {
+				return -1;
+			}
+			int segmentId = entry - 1;
+			int start = segmentOffsets.get(segmentId);
+			if (segmentOffsets.get(segmentId + 1) - start == bytes.length && bytesMatch(start, bytes)) {
+				return segmentId;
+			}
+		}
+	}
+
+	private boolean bytesMatch(int start, byte[] bytes) {
+		for (int i = 0; i < bytes.length; i++) {
+			if (segmentBytes.get(start + i) != bytes[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Split the path on '/' and then split the part after the last '/' on '\'. The backslash list records whether each
+	 * segment came after a '\'.
+	 */
+	private static void splitPath(String path, List<String> segments, List<Boolean> backslashes) {
+		segments.clear();
+		backslashes.clear();
+		int index = 0;
+		boolean backslash = false;
+		while (true) {
+			int nextIndex = path.indexOf('/', index);
+			boolean nextBackslash = false;
+			if (nextIndex < 0) {
+				nextIndex = path.indexOf('\\', index);
+				if (nextIndex < 0) {
+					break;
+				}
+				nextBackslash = true;
+			}
+			segments.add(path.substring(index, nextIndex));
+			backslashes.add(backslash);
+			index = nextIndex + 1;
+			backslash = nextBackslash;
+		}
+		segments.add(path.substring(index));
+		backslashes.add(backslash);
+	}
+
+	private static int makeToken(int segmentId, boolean backslash) {
+		return (segmentId << 1) | (backslash ? 1 : 0);
+	}
+
+	/**
+	 * String's hash-code is part of its spec so the slots are the same in whatever JVM reads the file.
+	 */
+	private static int hashSlot(String segment, int mask) {
+		int hash = segment.hashCode();
+		return ((hash ^ (hash >>> 16)) & mask);
+	}
+
+	private static int lastPosting(IntBuffer starts, IntBuffer files, int id) {
+		int end = starts.get(id + 1);
+		if (end == starts.get(id)) {
+			return -1;
+		} else {
+			return files.get(end - 1);
+		}
+	}
+
+	private static String decode(ByteBuffer bytes, int start, int length) {
+		byte[] array = new byte[length];
+		for (int i = 0; i < length; i++) {
+			array[i] = bytes.get(start + i);
+		}
+		return new String(array, StandardCharsets.UTF_8);
+	}
+
+	private static IntBuffer intSection(ByteBuffer buffer, int offset, int count) {
+		return byteSection(buffer, offset, count * 4).asIntBuffer();
+	}
+
+	private static ByteBuffer byteSection(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer duplicate = buffer.duplicate();
+		duplicate.clear();
+		duplicate.position(offset);
+		duplicate.limit(offset + length);
+		return duplicate.slice();
+	}
+
+	/**
+	 * Checksum of everything after the header.
+	 */
+	private static int checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		crc.update(byteSection(buffer, HEADER_SIZE, buffer.capacity() - HEADER_SIZE));
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Builds the arrays of the index from the tree files and then lays them out in a buffer.
+	 */
+	private static class Builder {
+
+		private final List<String> pathList = new ArrayList<>();
+		private final Map<String, Integer> segmentIdMap = new HashMap<>();
+		private final List<String> segmentList = new ArrayList<>();
+
+		public Builder(Collection<TreeFile> treeFiles, Set<String> nameSet) {
+			for (TreeFile treeFile : treeFiles) {
+				String path = treeFile.getPath();
+				if (path != null && (nameSet == null || nameMatches(fileName(path), nameSet))) {
+					pathList.add(path);
+				}
+			}
+		}
+
+		public ByteBuffer build() {
+			int fileCount = pathList.size();
+			int[] fileNodes = new int[fileCount];
+			int[] nameIds = new int[fileCount];
+			int[] strippedIds = new int[fileCount];
+			IntList parentList = new IntList(fileCount * 2);
+			IntList tokenList = new IntList(fileCount * 2);
+			// (parent-node + 1) << 32 | token -> directory node
+			Map<Long, Integer> directoryMap = new HashMap<>();
+			List<String> segments = new ArrayList<>();
+			List<Boolean> backslashes = new ArrayList<>();
+
+			for (int fileIndex = 0; fileIndex < fileCount; fileIndex++) {
+				splitPath(pathList.get(fileIndex), segments, backslashes);
+				int parent = -1;
+				int last = segments.size() - 1;
+				for (int i = 0; i < last; i++) {
+					int token = makeToken(internSegment(segments.get(i)), backslashes.get(i));
+					Long key = (((long) parent + 1) << 32) | token;
+					Integer node = directoryMap.get(key);
+					if (node == null) {
+						node = parentList.size();
+						parentList.add(parent);
+						tokenList.add(token);
+						directoryMap.put(key, node);
+					}
+					parent = node;
+				}
+				String name = segments.get(last);
+				int nameId = internSegment(name);
+				fileNodes[fileIndex] = parentList.size();
+				parentList.add(parent);
+				tokenList.add(makeToken(nameId, backslashes.get(last)));
+				nameIds[fileIndex] = nameId;
+				int dotIndex = name.indexOf('.');
+				if (dotIndex > 0) {
+					strippedIds[fileIndex] = internSegment(name.substring(0, dotIndex));
+				} else {
+					strippedIds[fileIndex] = -1;
+				}
+			}
+
+			int segmentCount = segmentList.size();
+			int[] nameStarts = new int[segmentCount + 1];
+			int[] nameFiles = buildPostings(nameIds, segmentCount, nameStarts);
+			int[] strippedStarts = new int[segmentCount + 1];
+			int[] strippedFiles = buildPostings(strippedIds, segmentCount, strippedStarts);
+
+			// at most half full
+			int tableSize = Integer.highestOneBit(Math.max(segmentCount, 1)) * 4;
+			int[] segmentTable = new int[tableSize];
+			int[] segmentOffsets = new int[segmentCount + 1];
+			byte[][] segmentBytes = new byte[segmentCount][];
+			for (int segmentId = 0; segmentId < segmentCount; segmentId++) {
+				String segment = segmentList.get(segmentId);
+				int slot = hashSlot(segment, tableSize - 1);
+				while (segmentTable[slot] != 0) {
+					slot = ((slot + 1) & (tableSize - 1));
+				}
+				segmentTable[slot] = segmentId + 1;
+				segmentBytes[segmentId] = segment.getBytes(StandardCharsets.UTF_8);
+				segmentOffsets[segmentId + 1] = segmentOffsets[segmentId] + segmentBytes[segmentId].length;
+			}
+			int[] pathOffsets = new int[fileCount + 1];
+			byte[][] pathBytes = new byte[fileCount][];
+			for (int fileIndex = 0; fileIndex < fileCount; fileIndex++) {
+				pathBytes[fileIndex] = pathList.get(fileIndex).getBytes(StandardCharsets.UTF_8);
+				pathOffsets[fileIndex + 1] = pathOffsets[fileIndex] + pathBytes[fileIndex].length;
+			}
+
+			int[] nodeParents = parentList.toArray();
+			int[] nodeTokens = tokenList.toArray();
+			int[][] sections = new int[][] { fileNodes, nodeParents, nodeTokens, nameStarts, nameFiles,
+					strippedStarts, strippedFiles, segmentTable, segmentOffsets, pathOffsets };
+			int length = HEADER_SIZE + segmentOffsets[segmentCount] + pathOffsets[fileCount];
+			for (int[] section : sections) {
+				length += section.length * 4;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			// checksum is filled in below
+			buffer.putInt(0);
+			buffer.putInt(fileCount);
+			buffer.putInt(nodeParents.length);
+			buffer.putInt(segmentCount);
+			buffer.putInt(nameFiles.length);
+			buffer.putInt(strippedFiles.length);
+			buffer.putInt(tableSize);
+			buffer.putInt(segmentOffsets[segmentCount]);
+			buffer.putInt(pathOffsets[fileCount]);
+			for (int[] section : sections) {
+				buffer.asIntBuffer().put(section);
+				buffer.position(buffer.position() + section.length * 4);
+			}
+			for (byte[] bytes : segmentBytes) {
+				buffer.put(bytes);
+			}
+			for (byte[] bytes : pathBytes) {
+				buffer.put(bytes);
+			}
+			buffer.putInt(8, checksum(buffer));
+			buffer.clear();
+			return buffer;
+		}
+
+		private int internSegment(String segment) {
+			Integer segmentId = segmentIdMap.get(segment);
+			if (segmentId == null) {
+				segmentId = segmentList.size();
+				segmentIdMap.put(segment, segmentId);
+				segmentList.add(segment);
+			}
+			return segmentId;
+		}
+
+		/**
+		 * A key's file name can match the name of a file or the name without its extension.
+		 */
+		private static boolean nameMatches(String name, Set<String> nameSet) {
+			if (nameSet.contains(name)) {
+				return true;
+			}
+			int dotIndex = name.indexOf('.');
+			return (dotIndex > 0 && nameSet.contains(name.substring(0, dotIndex)));
+		}
+
+		/**
+		 * Group the file indexes by their ids into the files array with the starts array holding the start of each
+		 * group. Ids of -1 are skipped.
+		 */
+		private static int[] buildPostings(int[] ids, int idCount, int[] starts) {
+			int total = 0;
+			for (int id : ids) {
+				if (id >= 0) {
+					starts[id + 1]++;
+					total++;
+				}
+			}
+			for (int i = 0; i < idCount; i++) {
+				starts[i + 1] += starts[i];
+			}
+			int[] files = new int[total];
+			int[] positions = Arrays.copyOf(starts, idCount);
+			for (int fileIndex = 0; fileIndex < ids.length; fileIndex++) {
+				int id = ids[fileIndex];
+				if (id >= 0) {
+					files[positions[id]++] = fileIndex;
+				}
+			}
+			return files;
+		}
+	}
+
+	/**
+	 * Growable list of ints so we don't box the nodes while building.
+	 */
+	private static class IntList {
+
+		private int[] values;
+		private int size;
+
+		public IntList(int capacity) {
+			values = new int[Math.max(capacity, 16)];
+		}
+
+		public void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Directory (ex: in /tmp) of full {@link PathIndex} files keyed by the repository and tree SHA. Git trees are immutable
+ * so an index never goes stale but a file from an older format, or one that fails its checksum, is deleted and the
+ * caller builds the index again. Files are memory-mapped when read so a large index doesn't have to be parsed or copied
+ * onto the heap and the most recently used ones stay mapped.
+ *
+ * @author graywatson
+ */
+public class PathIndexStore {
+
+	private static final long DEFAULT_MAX_DISK_BYTES = 128 * 1024 * 1024;
+	private static final int MAX_MAPPED_INDEXES = 16;
+	private static final String FILE_SUFFIX = ".pidx";
+	// github owner and repository names and real SHAs so the key is safe to use as a file name
+	private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9._-]+");
+	private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-fA-F]{40,64}");
+	private static final Logger logger = LoggerFactory.getLogger(PathIndexStore.class);
+
+	private final File dir;
+	private final long maxDiskBytes;
+	private final Map<String, PathIndex> mappedMap = new LinkedHashMap<String, PathIndex>(16, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, PathIndex> eldest) {
+			return size() > MAX_MAPPED_INDEXES;
+		}
+	};
+	private long hitCount;
+	private long diskHitCount;
+	private long missCount;
+	private long invalidCount;
+
+	public PathIndexStore(File dir) {
+		this(dir, 0);
+	}
+
+	/**
+	 * Create a store.
+	 *
+	 * @param dir
+	 *            Directory where the index files are written.
+	 * @param maxDiskBytes
+	 *            Maximum number of bytes to keep on disk or 0 for the default.
+	 */
+	public PathIndexStore(File dir, long maxDiskBytes) {
+		this.dir = dir;
+		if (maxDiskBytes <= 0) {
+			this.maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+		} else {
+			this.maxDiskBytes = maxDiskBytes;
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			logger.warn("could not create path index directory: " + dir);
+		}
+	}
+
+	/**
+	 * Find the index for the repository tree or return null if there isn't a valid one.
+	 */
+	public PathIndex findIndex(String owner, String repository, String treeSha) {
+		String key = buildKey(owner, repository, treeSha);
+		if (key == null) {
+			return null;
+		}
+		synchronized (this) {
+			PathIndex index = mappedMap.get(key);
+			if (index != null) {
+				hitCount++;
+				return index;
+			}
+		}
+		PathIndex index = readIndex(key);
+		synchronized (this) {
+			if (index == null) {
+				missCount++;
+			} else {
+				diskHitCount++;
+				mappedMap.put(key, index);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Build the index of all of the tree files and write it to disk.
+	 *
+	 * @return The index or null if the repository tree can't be stored in which case the caller should build its own.
+	 */
+	public PathIndex addIndex(String owner, String repository, String treeSha, Collection<TreeFile> treeFiles) {
+		String key = buildKey(owner, repository, treeSha);
+		if (key == null) {
+			return null;
+		}
+		PathIndex index = new PathIndex(treeFiles);
+		writeIndex(key, index);
+		synchronized (this) {
+			mappedMap.put(key, index);
+		}
+		return index;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getDiskHitCount() {
+		return diskHitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Number of files that were deleted because they were an old version or corrupt.
+	 */
+	public synchronized long getInvalidCount() {
+		return invalidCount;
+	}
+
+	/**
+	 * Clear the in-memory portion of the store.
+	 */
+	public synchronized void clear() {
+		mappedMap.clear();
+	}
+
+	private PathIndex readIndex(String key) {
+		File file = new File(dir, key + FILE_SUFFIX);
+		if (!file.exists()) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);) {
+			// the mapping stays valid after the channel is closed
+			ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			PathIndex index = PathIndex.fromBuffer(buffer);
+			// touch it so pruning removes the least recently used files
+			file.setLastModified(System.currentTimeMillis());
+			return index;
+		} catch (IOException ioe) {
+			logger.warn(ioe, "invalid path index file, will rebuild: " + file);
+			synchronized (this) {
+				invalidCount++;
+			}
+			file.delete();
+			return null;
+		}
+	}
+
+	private void writeIndex(String key, PathIndex index) {
+		File file = new File(dir, key + FILE_SUFFIX);
+		if (file.exists()) {
+			return;
+		}
+		// write to a temp file and rename so a reader never sees a partial file
+		File tmpFile = new File(dir, key + FILE_SUFFIX + "." + Thread.currentThread().getId() + ".tmp");
+		try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tmpFile));) {
+			index.writeTo(outputStream);
+		} catch (IOException ioe) {
+			logger.warn(ioe, "could not write path index file: " + tmpFile);
+			tmpFile.delete();
+			return;
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			return;
+		}
+		pruneDisk();
+	}
+
+	/**
+	 * Remove the oldest files until we are under our limit.
+	 */
+	private void pruneDisk() {
+		File[] files = dir.listFiles((directory, name) -> name.endsWith(FILE_SUFFIX));
+		if (files == null) {
+			return;
+		}
+		long totalBytes = 0;
+		for (File file : files) {
+			totalBytes += file.length();
+		}
+		if (totalBytes <= maxDiskBytes) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (totalBytes <= maxDiskBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				totalBytes -= length;
+			}
+		}
+	}
+
+	private static String buildKey(String owner, String repository, String treeSha) {
+		if (owner == null || repository == null || treeSha == null || !NAME_PATTERN.matcher(owner).matches()
+				|| !NAME_PATTERN.matcher(repository).matches() || !SHA_PATTERN.matcher(treeSha).matches()) {
+			return null;
+		}
+		return (owner + "_" + repository + "_" + treeSha).toLowerCase(Locale.US);
+	}
+}
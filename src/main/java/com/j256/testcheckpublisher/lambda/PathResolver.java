@@ -0,0 +1,326 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.github.GithubClient;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Finds the repository files that our test paths refer to without downloading the whole tree if we can help it. We
+ * try in order: the files changed by the commit, the paths that we resolved on earlier uploads, the directories that
+ * the test paths point into under the source roots we know about, and finally the full tree.
+ *
+ * In the first three tiers a test path only resolves if it is the end of exactly one of the paths in that tier, ex:
+ * com/foo/FooTest.java matches src/test/java/com/foo/FooTest.java. Anything looser falls through to the full tree
+ * where {@link OutputCreatorUtil} does its fuzzier matching. The commit only holds the changed files so a match there
+ * may hide another file with the same ending in a different module. Those matches are used for this upload but only
+ * the ones from the directory listings or the tree are remembered for later uploads.
+ *
+ * @author graywatson
+ */
+public class PathResolver {
+
+	// more than this and we might as well get the tree
+	private static final int MAX_DIRECTORY_REQUESTS = 20;
+	private static final String BLOB_TYPE = "blob";
+
+	private static final Logger logger = LoggerFactory.getLogger(PathResolver.class);
+
+	private final GithubClient github;
+	private final ResolvedPathCache resolvedPathCache;
+	private final String label;
+
+	private String error;
+	private int commitCount;
+	private int cacheCount;
+	private int directoryCount;
+	private boolean treeFetched;
+
+	public PathResolver(GithubClient github, ResolvedPathCache resolvedPathCache, String label) {
+		this.github = github;
+		this.resolvedPathCache = resolvedPathCache;
+		this.label = label;
+	}
+
+	/**
+	 * Return the repository files that the test paths refer to. This may be the full tree if some of the paths could not
+	 * be resolved any other way.
+	 *
+	 * @param commitSha
+	 *            SHA of the commit that the directories are listed from.
+	 * @param treeSha
+	 *            SHA of the commit's tree which is listed if we need all of the files.
+	 * @return The files or null on error in which case {@link #getError()} has the details.
+	 */
+	public Collection<TreeFile> resolveFiles(String owner, String repository, String commitSha,
+			String treeSha, Collection<String> commitPaths, Collection<String> testPaths) throws IOException {
+
+		// test-path -> normalized path
+		Map<String, String> unresolvedMap = new LinkedHashMap<>();
+		for (String testPath : testPaths) {
+			if (testPath != null && !testPath.isEmpty()) {
+				unresolvedMap.put(testPath, testPath.replace('\\', '/'));
+			}
+		}
+		// test-path -> repository path
+		Map<String, String> resolvedMap = new HashMap<>();
+
+		// first the files in the commit since failing tests are often the ones that were changed, not remembered
+		commitCount = resolveFromPaths(commitPaths, unresolvedMap, resolvedMap);
+
+		// next what we resolved on previous uploads
+		for (String testPath : new ArrayList<>(unresolvedMap.keySet())) {
+			String path = resolvedPathCache.findPath(owner, repository, testPath);
+			if (path != null) {
+				resolvedMap.put(testPath, path);
+				unresolvedMap.remove(testPath);
+				cacheCount++;
+			}
+		}
+
+		// next the directories under our source roots that the test paths point into
+		if (!unresolvedMap.isEmpty()) {
+			Set<String> directories = findDirectories(owner, repository, unresolvedMap.values(), resolvedMap);
+			if (!directories.isEmpty() && directories.size() <= MAX_DIRECTORY_REQUESTS) {
+				Map<String, Collection<TreeFile>> directoryFilesMap =
+						github.requestDirectoriesFiles(commitSha, directories);
+				if (directoryFilesMap != null) {
+					List<TreeFile> directoryFiles = new ArrayList<>();
+					for (Collection<TreeFile> files : directoryFilesMap.values()) {
+						directoryFiles.addAll(files);
+					}
+					Map<String, String> directoryResolvedMap = new HashMap<>();
+					directoryCount = resolveFromFiles(directoryFiles, unresolvedMap, directoryResolvedMap);
+					recordResolved(owner, repository, directoryResolvedMap);
+					resolvedMap.putAll(directoryResolvedMap);
+				}
+			}
+		}
+
+		if (unresolvedMap.isEmpty()) {
+			logResults(resolvedMap.size());
+			// in the order of the test paths
+			Set<String> pathSet = new LinkedHashSet<>();
+			for (String testPath : testPaths) {
+				String path = resolvedMap.get(testPath);
+				if (path != null) {
+					pathSet.add(path);
+				}
+			}
+			List<TreeFile> files = new ArrayList<>(pathSet.size());
+			for (String path : pathSet) {
+				files.add(new TreeFile(path, BLOB_TYPE, null));
+			}
+			return files;
+		}
+
+		// last resort is the whole tree which also includes everything we resolved above
+		treeFetched = true;
+		Collection<TreeFile> treeFiles = github.requestTreeFiles(treeSha);
+		if (treeFiles == null) {
+			error = "Could not get file information for tree " + treeSha + ": " + github.getLastStatusLine();
+			return null;
+		}
+		Map<String, String> treeResolvedMap = new HashMap<>();
+		resolveFromFiles(treeFiles, unresolvedMap, treeResolvedMap);
+		recordResolved(owner, repository, treeResolvedMap);
+		logResults(resolvedMap.size() + treeResolvedMap.size());
+		return treeFiles;
+	}
+
+	/**
+	 * Error message if {@link #resolveFiles} returned null.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * Number of test paths resolved from the files changed by the commit.
+	 */
+	public int getCommitCount() {
+		return commitCount;
+	}
+
+	/**
+	 * Number of test paths resolved from our cache.
+	 */
+	public int getCacheCount() {
+		return cacheCount;
+	}
+
+	/**
+	 * Number of test paths resolved from directory listings.
+	 */
+	public int getDirectoryCount() {
+		return directoryCount;
+	}
+
+	/**
+	 * True if we had to get the full tree.
+	 */
+	public boolean isTreeFetched() {
+		return treeFetched;
+	}
+
+	/**
+	 * Return the portion of the repository path before the test path or null if the test path isn't the end of it. For
+	 * example the root of com/foo/FooTest.java in src/test/java/com/foo/FooTest.java is src/test/java/.
+	 */
+	public static String findRoot(String testPath, String repositoryPath) {
+		String normalized = testPath.replace('\\', '/');
+		if (pathEndsWith(repositoryPath, normalized)) {
+			return repositoryPath.substring(0, repositoryPath.length() - normalized.length());
+		}
+		String withoutExtension = stripExtension(repositoryPath);
+		if (pathEndsWith(withoutExtension, normalized)) {
+			return withoutExtension.substring(0, withoutExtension.length() - normalized.length());
+		}
+		return null;
+	}
+
+	private int resolveFromPaths(Collection<String> paths, Map<String, String> unresolvedMap,
+			Map<String, String> resolvedMap) {
+		List<TreeFile> files = new ArrayList<>(paths.size());
+		for (String path : paths) {
+			files.add(new TreeFile(path, BLOB_TYPE, null));
+		}
+		return resolveFromFiles(files, unresolvedMap, resolvedMap);
+	}
+
+	/**
+	 * Resolve the test paths that are the end of exactly one of the files. The resolved ones are moved from the
+	 * unresolved map into the resolved map.
+	 */
+	private int resolveFromFiles(Collection<TreeFile> files, Map<String, String> unresolvedMap,
+			Map<String, String> resolvedMap) {
+		if (unresolvedMap.isEmpty()) {
+			return 0;
+		}
+		// index the test paths by their file name so we only look at each file once
+		Map<String, List<String>> nameMap = new HashMap<>();
+		for (Map.Entry<String, String> entry : unresolvedMap.entrySet()) {
+			String name = fileName(entry.getValue());
+			List<String> testPaths = nameMap.get(name);
+			if (testPaths == null) {
+				testPaths = new ArrayList<>(1);
+				nameMap.put(name, testPaths);
+			}
+			testPaths.add(entry.getKey());
+		}
+		Map<String, String> matchMap = new HashMap<>();
+		Set<String> ambiguousSet = new LinkedHashSet<>();
+		for (TreeFile file : files) {
+			String path = file.getPath();
+			if (path == null) {
+				continue;
+			}
+			String name = fileName(path);
+			addMatches(nameMap.get(name), path, unresolvedMap, matchMap, ambiguousSet);
+			String withoutExtension = stripExtension(name);
+			if (withoutExtension != name) {
+				addMatches(nameMap.get(withoutExtension), path, unresolvedMap, matchMap, ambiguousSet);
+			}
+		}
+		int count = 0;
+		for (Map.Entry<String, String> entry : matchMap.entrySet()) {
+			if (!ambiguousSet.contains(entry.getKey())) {
+				resolvedMap.put(entry.getKey(), entry.getValue());
+				unresolvedMap.remove(entry.getKey());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void addMatches(List<String> testPaths, String path, Map<String, String> unresolvedMap,
+			Map<String, String> matchMap, Set<String> ambiguousSet) {
+		if (testPaths == null) {
+			return;
+		}
+		for (String testPath : testPaths) {
+			if (findRoot(unresolvedMap.get(testPath), path) == null) {
+				continue;
+			}
+			String previous = matchMap.put(testPath, path);
+			if (previous != null && !previous.equals(path)) {
+				ambiguousSet.add(testPath);
+			}
+		}
+	}
+
+	/**
+	 * Find the directories that the unresolved test paths would be in under the source roots we know about.
+	 */
+	private Set<String> findDirectories(String owner, String repository, Collection<String> unresolvedPaths,
+			Map<String, String> resolvedMap) {
+		Set<String> roots = resolvedPathCache.findRoots(owner, repository);
+		for (Map.Entry<String, String> entry : resolvedMap.entrySet()) {
+			String root = findRoot(entry.getKey(), entry.getValue());
+			if (root != null) {
+				roots.add(root);
+			}
+		}
+		Set<String> directories = new LinkedHashSet<>();
+		for (String testPath : unresolvedPaths) {
+			int index = testPath.lastIndexOf('/');
+			String directory = (index < 0 ? "" : testPath.substring(0, index));
+			for (String root : roots) {
+				String path = root + directory;
+				if (path.endsWith("/")) {
+					path = path.substring(0, path.length() - 1);
+				}
+				directories.add(path);
+			}
+		}
+		return directories;
+	}
+
+	private void recordResolved(String owner, String repository, Map<String, String> resolvedMap) {
+		for (Map.Entry<String, String> entry : resolvedMap.entrySet()) {
+			resolvedPathCache.addPath(owner, repository, entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void logResults(int resolvedCount) {
+		logger.info(label + ": resolved " + resolvedCount + " test paths, " + commitCount + " from commit, "
+				+ cacheCount + " from cache, " + directoryCount + " from directories, "
+				+ (treeFetched ? "fetched tree" : "no tree"));
+	}
+
+	private static boolean pathEndsWith(String path, String suffix) {
+		return path.equals(suffix)
+				|| (path.endsWith(suffix) && path.charAt(path.length() - suffix.length() - 1) == '/');
+	}
+
+	private static String fileName(String path) {
+		int index = path.lastIndexOf('/');
+		if (index < 0) {
+			return path;
+		} else {
+			return path.substring(index + 1);
+		}
+	}
+
+	/**
+	 * Strip the extension from the last part of the path or return the same string if none.
+	 */
+	private static String stripExtension(String path) {
+		int index = path.lastIndexOf('.');
+		if (index <= 0 || path.indexOf('/', index) >= 0 || path.charAt(index - 1) == '/') {
+			return path;
+		} else {
+			return path.substring(0, index);
+		}
+	}
+}
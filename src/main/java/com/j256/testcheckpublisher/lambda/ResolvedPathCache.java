@@ -0,0 +1,130 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-repository cache of the test paths that we have resolved to files in the repository. Most uploads report the same
+ * test paths as the last one so we don't need to look at the tree again. We also remember the source roots (ex:
+ * src/test/java/) so we can guess the directory of a test path that we haven't seen before. Entries expire after a bit
+ * so a moved test file doesn't leave us annotating the old path for long.
+ *
+ * @author graywatson
+ */
+public class ResolvedPathCache {
+
+	private static final int DEFAULT_MAX_REPOSITORIES = 1000;
+	private static final int MAX_PATHS_PER_REPOSITORY = 10000;
+	private static final int MAX_ROOTS_PER_REPOSITORY = 20;
+	private static final long DEFAULT_EXPIRE_MILLIS = 60 * 60 * 1000;
+
+	private final int maxRepositories;
+	private final long expireMillis;
+	private final Map<String, RepositoryPaths> repositoryMap;
+
+	public ResolvedPathCache() {
+		this(DEFAULT_MAX_REPOSITORIES, DEFAULT_EXPIRE_MILLIS);
+	}
+
+	public ResolvedPathCache(int maxRepositories, long expireMillis) {
+		this.maxRepositories = maxRepositories;
+		this.expireMillis = expireMillis;
+		this.repositoryMap = new LinkedHashMap<String, RepositoryPaths>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, RepositoryPaths> eldest) {
+				return size() > ResolvedPathCache.this.maxRepositories;
+			}
+		};
+	}
+
+	/**
+	 * Find the repository path that the test path resolved to or null if not known.
+	 */
+	public synchronized String findPath(String owner, String repository, String testPath) {
+		RepositoryPaths paths = repositoryMap.get(buildKey(owner, repository));
+		if (paths == null) {
+			return null;
+		}
+		PathEntry entry = paths.pathMap.get(testPath);
+		if (entry == null) {
+			return null;
+		} else if (entry.expiresMillis < System.currentTimeMillis()) {
+			paths.pathMap.remove(testPath);
+			return null;
+		} else {
+			return entry.repositoryPath;
+		}
+	}
+
+	/**
+	 * Record that the test path was resolved to the repository path.
+	 */
+	public synchronized void addPath(String owner, String repository, String testPath, String repositoryPath) {
+		String key = buildKey(owner, repository);
+		RepositoryPaths paths = repositoryMap.get(key);
+		if (paths == null) {
+			paths = new RepositoryPaths();
+			repositoryMap.put(key, paths);
+		}
+		paths.pathMap.put(testPath, new PathEntry(repositoryPath, System.currentTimeMillis() + expireMillis));
+		String root = PathResolver.findRoot(testPath, repositoryPath);
+		if (root != null && paths.rootSet.size() < MAX_ROOTS_PER_REPOSITORY) {
+			paths.rootSet.add(root);
+		}
+	}
+
+	/**
+	 * Return the source roots that we've seen for the repository. These are the portions of the repository paths
+	 * before the test paths.
+	 */
+	public synchronized Set<String> findRoots(String owner, String repository) {
+		RepositoryPaths paths = repositoryMap.get(buildKey(owner, repository));
+		if (paths == null) {
+			return new HashSet<>();
+		} else {
+			return new HashSet<>(paths.rootSet);
+		}
+	}
+
+	public synchronized int getRepositoryCount() {
+		return repositoryMap.size();
+	}
+
+	public synchronized void clear() {
+		repositoryMap.clear();
+	}
+
+	private String buildKey(String owner, String repository) {
+		return owner.toLowerCase(Locale.US) + "/" + repository.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * What we know about a repository.
+	 */
+	private static class RepositoryPaths {
+		final Map<String, PathEntry> pathMap = new LinkedHashMap<String, PathEntry>(16, 0.75F, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PathEntry> eldest) {
+				return size() > MAX_PATHS_PER_REPOSITORY;
+			}
+		};
+		final Set<String> rootSet = new HashSet<>();
+	}
+
+	private static class PathEntry {
+		final String repositoryPath;
+		final long expiresMillis;
+
+		public PathEntry(String repositoryPath, long expiresMillis) {
+			this.repositoryPath = repositoryPath;
+			this.expiresMillis = expiresMillis;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpStatus;
+
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.HttpContext;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.RequestContext;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Long-running HTTP server that serves the same install, files, status, and results paths as the lambda but without
+ * the API gateway JSON wrapping. It uses the JDK's built-in server so one warm JVM shares the caches and connection
+ * pools across all of the requests.
+ *
+ * @author graywatson
+ */
+public class StandaloneServer {
+
+	private static final String SERVER_PORT_ENV = "server_port";
+	private static final int DEFAULT_SERVER_PORT = 8080;
+	private static final String SERVER_THREADS_ENV = "server_threads";
+	private static final int DEFAULT_SERVER_THREADS = 16;
+	private static final int STOP_DELAY_SECS = 5;
+	private static final long UPLOAD_DRAIN_MILLIS = 30000;
+	private static final Logger logger = LoggerFactory.getLogger(StandaloneServer.class);
+
+	private final LambdaHandler handler;
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * @param port
+	 *            Port to listen on or 0 to pick a free one.
+	 */
+	public StandaloneServer(LambdaHandler handler, int port, int numThreads) throws IOException {
+		this.handler = handler;
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.executor = Executors.newFixedThreadPool(numThreads,
+				runnable -> new Thread(runnable, StandaloneServer.class.getSimpleName()));
+		server.setExecutor(executor);
+		server.createContext("/", this::handleExchange);
+	}
+
+	/**
+	 * Run the server: [port]
+	 */
+	public static void main(String[] args) throws IOException {
+		int port;
+		if (args.length > 0) {
+			port = Integer.parseInt(args[0]);
+		} else {
+			port = getIntEnv(SERVER_PORT_ENV, DEFAULT_SERVER_PORT);
+		}
+		LambdaHandler handler = new LambdaHandler();
+		int numThreads = getIntEnv(SERVER_THREADS_ENV, DEFAULT_SERVER_THREADS);
+		StandaloneServer server = new StandaloneServer(handler, port, numThreads);
+		// before we start listening so the new uploads can't race the scan of the saved ones
+		int numQueued = handler.requeueSavedUploads();
+		if (numQueued > 0) {
+			logger.info("queued " + numQueued + " saved uploads");
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		server.start();
+	}
+
+	public void start() {
+		server.start();
+		logger.info("listening on port " + getPort());
+	}
+
+	/**
+	 * Stop accepting requests and give the ones in progress a few seconds to finish. Then wait for the accepted uploads
+	 * to be posted.
+	 */
+	public void stop() {
+		server.stop(STOP_DELAY_SECS);
+		executor.shutdown();
+		try {
+			if (!handler.shutdownUploads(UPLOAD_DRAIN_MILLIS)) {
+				logger.error("uploads were still being posted after " + UPLOAD_DRAIN_MILLIS + "ms");
+			}
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return the port that we are listening on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private void handleExchange(HttpExchange exchange) {
+		try {
+			ApiGatewayRequest request = createRequest(exchange);
+			if (hasBody(request)) {
+				LambdaHandler.readUploadBody(request, exchange.getRequestBody());
+			}
+			writeResponse(exchange, handler.handleRequest(request));
+		} catch (Exception e) {
+			logger.error(e, "problems handling request: " + exchange.getRequestURI());
+			try {
+				byte[] bytes = "Internal server error".getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain");
+				exchange.sendResponseHeaders(HttpStatus.SC_INTERNAL_SERVER_ERROR, bytes.length);
+				exchange.getResponseBody().write(bytes);
+			} catch (IOException ioe) {
+				// the response may have already been started so there's nothing more we can do
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Create a request like the one API gateway would give us, with the lower-case header names, minus the body.
+	 */
+	private static ApiGatewayRequest createRequest(HttpExchange exchange) {
+		Map<String, String> headers = new HashMap<>();
+		for (Map.Entry<String, List<String>> entry : exchange.getRequestHeaders().entrySet()) {
+			// multiple values are joined like API gateway does
+			headers.put(entry.getKey().toLowerCase(Locale.ENGLISH), String.join(",", entry.getValue()));
+		}
+		String rawPath = exchange.getRequestURI().getRawPath();
+		String rawQueryString = exchange.getRequestURI().getRawQuery();
+		if (rawQueryString == null) {
+			rawQueryString = "";
+		}
+		String sourceIp = exchange.getRemoteAddress().getAddress().getHostAddress();
+		HttpContext httpContext =
+				new HttpContext(exchange.getRequestMethod(), rawPath, sourceIp, headers.get("user-agent"));
+		RequestContext requestContext =
+				new RequestContext(headers.get("host"), UUID.randomUUID().toString(), httpContext);
+		return new ApiGatewayRequest(rawPath, rawQueryString, headers, requestContext, null, false);
+	}
+
+	/**
+	 * Returns true if the request has a body. Get requests to the results path redirect so they have to look empty.
+	 */
+	private static boolean hasBody(ApiGatewayRequest request) {
+		Map<String, String> headers = request.getHeaders();
+		String contentLength = headers.get("content-length");
+		if (contentLength == null) {
+			return headers.containsKey("transfer-encoding");
+		} else {
+			return !contentLength.trim().equals("0");
+		}
+	}
+
+	private static void writeResponse(HttpExchange exchange, ApiGatewayResponse response) throws IOException {
+		Headers responseHeaders = exchange.getResponseHeaders();
+		if (response.getHeaders() != null) {
+			for (Map.Entry<String, String> entry : response.getHeaders().entrySet()) {
+				responseHeaders.set(entry.getKey(), entry.getValue());
+			}
+		}
+		String body = response.getBody();
+		if (body == null || "HEAD".equals(exchange.getRequestMethod())) {
+			// -1 means no body
+			exchange.sendResponseHeaders(response.getStatusCode(), -1);
+			return;
+		}
+		byte[] bytes;
+		if (response.isBodyBase64Encoded()) {
+			bytes = Base64.decodeBase64(body);
+		} else {
+			bytes = body.getBytes(StandardCharsets.UTF_8);
+		}
+		exchange.sendResponseHeaders(response.getStatusCode(), bytes.length);
+		try (OutputStream outputStream = exchange.getResponseBody();) {
+			outputStream.write(bytes);
+		}
+	}
+
+	private static int getIntEnv(String name, int defaultValue) {
+		String value = System.getenv(name);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException nfe) {
+			logger.error("invalid " + name + " value: " + value);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,302 @@
+package com.j256.testcheckpublisher.lambda;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpStatus;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.UploadStatus.State;
+import com.j256.testcheckpublisher.lambda.github.GsonUtils;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+
+/**
+ * Queue of accepted uploads that are posted to github by background threads so the CI job doesn't have to wait on the
+ * github calls. Each upload gets a tracking id whose {@link UploadStatus} can be looked up until it ages out. If there
+ * is a directory then the uploads are saved there until they have been posted so they are queued again after a
+ * restart. The number of queued uploads and the bytes of the saved ones are limited so a flood of uploads is turned
+ * away instead of using up the memory or disk. This needs a long-running process since a lambda is frozen once it has
+ * returned its response.
+ *
+ * @author graywatson
+ */
+public class UploadQueue {
+
+	private static final int MAX_STATUSES = 1000;
+	public static final int DEFAULT_MAX_QUEUED = 100;
+	public static final long DEFAULT_MAX_SAVED_BYTES = 1024L * 1024 * 1024;
+	private static final String FILE_SUFFIX = ".json";
+	private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{32}");
+	private static final Logger logger = LoggerFactory.getLogger(UploadQueue.class);
+
+	private final ExecutorService executor;
+	private final File dir;
+	private final int maxQueued;
+	private final long maxSavedBytes;
+	private final AtomicInteger queuedCount = new AtomicInteger();
+	private final AtomicLong savedBytes = new AtomicLong();
+	private final Gson gson = GsonUtils.getGson();
+	private final AtomicBoolean savedRequeued = new AtomicBoolean();
+	// in the order that they were accepted
+	private final Map<String, UploadStatus> statusMap = new LinkedHashMap<String, UploadStatus>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, UploadStatus> eldest) {
+			// we never forget an upload that hasn't finished
+			return (size() > MAX_STATUSES && eldest.getValue().isDone());
+		}
+	};
+
+	/**
+	 * @param dir
+	 *            Directory where the uploads are saved until they are posted or null to keep them in memory only.
+	 */
+	public UploadQueue(int numThreads, File dir) {
+		this(numThreads, DEFAULT_MAX_QUEUED, DEFAULT_MAX_SAVED_BYTES, dir);
+	}
+
+	/**
+	 * @param maxQueued
+	 *            Maximum number of uploads waiting for a thread before we reject new ones.
+	 * @param maxSavedBytes
+	 *            Maximum bytes of the saved uploads in the directory before we reject new ones.
+	 * @param dir
+	 *            Directory where the uploads are saved until they are posted or null to keep them in memory only.
+	 */
+	public UploadQueue(int numThreads, int maxQueued, long maxSavedBytes, File dir) {
+		this.executor = Executors.newFixedThreadPool(numThreads, runnable -> {
+			Thread thread = new Thread(runnable, UploadQueue.class.getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.dir = dir;
+		this.maxQueued = maxQueued;
+		this.maxSavedBytes = maxSavedBytes;
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			logger.error("could not create upload directory: " + dir);
+		}
+	}
+
+	/**
+	 * Accept the results to be posted to github in the background. The first upload also queues any uploads that were
+	 * saved before a restart.
+	 *
+	 * @return The tracking id of the upload or null if it could not be saved.
+	 * @throws RejectedExecutionException
+	 *             If there are too many uploads queued or saved already.
+	 */
+	public String submit(PublishedTestResults results, String label, UploadPoster poster)
+			throws RejectedExecutionException {
+		requeueSaved(poster);
+		if (queuedCount.incrementAndGet() > maxQueued) {
+			queuedCount.decrementAndGet();
+			throw new RejectedExecutionException("more than " + maxQueued + " uploads are queued");
+		}
+		String id = UUID.randomUUID().toString().replace("-", "");
+		// registered before it is saved so the requeue of the saved uploads can never post it as well
+		setStatus(new UploadStatus(id, State.QUEUED, 0, null));
+		if (dir != null) {
+			long length = save(id, results);
+			if (length < 0) {
+				// already logged
+				discard(id, false);
+				return null;
+			}
+			if (savedBytes.addAndGet(length) > maxSavedBytes) {
+				discard(id, true);
+				throw new RejectedExecutionException("saved uploads are larger than " + maxSavedBytes + " bytes");
+			}
+		}
+		try {
+			enqueue(id, results, label, poster);
+		} catch (RejectedExecutionException ree) {
+			// we have been shutdown
+			discard(id, (dir != null));
+			throw ree;
+		}
+		return id;
+	}
+
+	/**
+	 * Return the status of the upload or null if the id is unknown or has aged out.
+	 */
+	public UploadStatus getStatus(String id) {
+		synchronized (statusMap) {
+			return statusMap.get(id);
+		}
+	}
+
+	/**
+	 * Returns true if the id could be one of our tracking ids.
+	 */
+	public static boolean isValidId(String id) {
+		return (id != null && ID_PATTERN.matcher(id).matches());
+	}
+
+	/**
+	 * Queue the uploads that were saved but not posted before a restart. This only looks at the directory the first
+	 * time it is called.
+	 *
+	 * @return The number of uploads queued.
+	 */
+	public int requeueSaved(UploadPoster poster) {
+		if (dir == null || !savedRequeued.compareAndSet(false, true)) {
+			return 0;
+		}
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		int count = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (!name.endsWith(FILE_SUFFIX)) {
+				continue;
+			}
+			String id = name.substring(0, name.length() - FILE_SUFFIX.length());
+			if (!isValidId(id) || getStatus(id) != null) {
+				continue;
+			}
+			PublishedTestResults results;
+			try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);) {
+				results = gson.fromJson(reader, PublishedTestResults.class);
+			} catch (IOException | JsonParseException e) {
+				logger.error(e, "could not load saved upload, deleting: " + file);
+				results = null;
+			}
+			if (results == null) {
+				file.delete();
+				continue;
+			}
+			String label = results.getOwner() + "/" + results.getRepository();
+			logger.info(label + ": queueing saved upload " + id);
+			// these were accepted already so they are counted but not limited
+			savedBytes.addAndGet(file.length());
+			queuedCount.incrementAndGet();
+			setStatus(new UploadStatus(id, State.QUEUED, 0, null));
+			try {
+				enqueue(id, results, label, poster);
+			} catch (RejectedExecutionException ree) {
+				// we have been shutdown so leave the file for the next restart
+				savedBytes.addAndGet(-file.length());
+				discard(id, false);
+				break;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Stop accepting uploads and wait for the queued ones to be posted.
+	 *
+	 * @return True if they were all posted before the timeout.
+	 */
+	public boolean shutdown(long timeoutMillis) throws InterruptedException {
+		executor.shutdown();
+		return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void enqueue(String id, PublishedTestResults results, String label, UploadPoster poster) {
+		executor.execute(() -> post(id, results, label, poster));
+	}
+
+	private void post(String id, PublishedTestResults results, String label, UploadPoster poster) {
+		queuedCount.decrementAndGet();
+		setStatus(new UploadStatus(id, State.POSTING, 0, null));
+		UploadResult result;
+		try {
+			result = poster.postResults(results, label);
+		} catch (Exception e) {
+			logger.error(e, label + ": posting upload " + id + " threw");
+			result = new UploadResult(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Posting the upload failed: " + e);
+		}
+		setStatus(UploadStatus.fromResult(id, result));
+		logger.info(label + ": upload " + id + " finished with " + result);
+		if (dir != null) {
+			deleteSaved(id);
+		}
+	}
+
+	private void setStatus(UploadStatus status) {
+		synchronized (statusMap) {
+			statusMap.put(status.getId(), status);
+		}
+	}
+
+	/**
+	 * Forget an upload that was registered but could not be queued.
+	 */
+	private void discard(String id, boolean deleteSaved) {
+		if (deleteSaved) {
+			deleteSaved(id);
+		}
+		synchronized (statusMap) {
+			statusMap.remove(id);
+		}
+		queuedCount.decrementAndGet();
+	}
+
+	/**
+	 * Save the results to our directory.
+	 *
+	 * @return The number of bytes saved or -1 if it could not be saved.
+	 */
+	private long save(String id, PublishedTestResults results) {
+		File file = new File(dir, id + FILE_SUFFIX);
+		// write to a temp file and rename so a restart never sees a partial file
+		File tmpFile = new File(dir, id + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8);) {
+			gson.toJson(results, writer);
+		} catch (IOException | JsonIOException e) {
+			// gson wraps the write failures, ex: a full disk, in its unchecked exception
+			logger.error(e, "could not save upload to: " + tmpFile);
+			tmpFile.delete();
+			return -1;
+		}
+		if (!tmpFile.renameTo(file)) {
+			logger.error("could not rename " + tmpFile + " to " + file);
+			tmpFile.delete();
+			return -1;
+		}
+		return file.length();
+	}
+
+	private void deleteSaved(String id) {
+		File file = new File(dir, id + FILE_SUFFIX);
+		long length = file.length();
+		if (file.delete()) {
+			savedBytes.addAndGet(-length);
+		}
+	}
+
+	/**
+	 * Posts the results of an upload to github.
+	 */
+	public interface UploadPoster {
+		public UploadResult postResults(PublishedTestResults results, String label) throws IOException;
+	}
+}
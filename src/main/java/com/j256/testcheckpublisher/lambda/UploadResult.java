@@ -0,0 +1,38 @@
+package com.j256.testcheckpublisher.lambda;
+
+/**
+ * Result of posting an upload to github: the HTTP status code and message that are returned to the CI job or reported
+ * by the status route.
+ * 
+ * @author graywatson
+ */
+public class UploadResult {
+
+	private final int statusCode;
+	private final String message;
+
+	public UploadResult(int statusCode, String message) {
+		this.statusCode = statusCode;
+		this.message = message;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns true if the check-run was posted.
+	 */
+	public boolean isSuccess() {
+		return (statusCode >= 200 && statusCode < 300);
+	}
+
+	@Override
+	public String toString() {
+		return statusCode + ": " + message;
+	}
+}
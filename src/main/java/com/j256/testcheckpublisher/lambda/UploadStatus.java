@@ -0,0 +1,78 @@
+package com.j256.testcheckpublisher.lambda;
+
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * Status of an upload that was accepted to be posted in the background, returned by the status route.
+ * 
+ * @author graywatson
+ */
+@JsonAdapter(GatewayTypeAdapters.UploadStatusAdapter.class)
+public class UploadStatus {
+
+	private final String id;
+	private final State state;
+	// 0 until the upload has been posted
+	private final int statusCode;
+	private final String message;
+
+	public UploadStatus(String id, State state, int statusCode, String message) {
+		this.id = id;
+		this.state = state;
+		this.statusCode = statusCode;
+		this.message = message;
+	}
+
+	/**
+	 * Create the status of a finished upload from its result.
+	 */
+	public static UploadStatus fromResult(String id, UploadResult result) {
+		State state = (result.isSuccess() ? State.POSTED : State.FAILED);
+		return new UploadStatus(id, state, result.getStatusCode(), result.getMessage());
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Returns true if the upload has been posted or failed.
+	 */
+	public boolean isDone() {
+		return (state == State.POSTED || state == State.FAILED);
+	}
+
+	@Override
+	public String toString() {
+		return id + ": " + state;
+	}
+
+	/**
+	 * Where the upload is in the queue.
+	 */
+	public static enum State {
+		@SerializedName("queued")
+		QUEUED,
+		@SerializedName("posting")
+		POSTING,
+		@SerializedName("posted")
+		POSTED,
+		@SerializedName("failed")
+		FAILED,
+		// end
+		;
+	}
+}
@@ -0,0 +1,112 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of installation access-tokens keyed by installation-id. The tokens are minted without a
+ * repository restriction so one token serves all of the repositories in the installation until it gets close to
+ * expiring.
+ *
+ * @author graywatson
+ */
+public class AccessTokenCache {
+
+	// github says that installation tokens expire after an hour
+	private static final long DEFAULT_TOKEN_TTL_MILLIS = 60 * 60 * 1000;
+	// refresh the token this long before it expires so in-flight requests don't fail
+	private static final long DEFAULT_REFRESH_MARGIN_MILLIS = 5 * 60 * 1000;
+
+	private final ConcurrentHashMap<Integer, CachedToken> tokenMap = new ConcurrentHashMap<>();
+	private final long refreshMarginMillis;
+
+	public AccessTokenCache() {
+		this(DEFAULT_REFRESH_MARGIN_MILLIS);
+	}
+
+	public AccessTokenCache(long refreshMarginMillis) {
+		this.refreshMarginMillis = refreshMarginMillis;
+	}
+
+	/**
+	 * Return the cached access-token for the installation or null if there is none or if it is about to expire.
+	 */
+	public String findToken(int installationId) {
+		return findToken(installationId, System.currentTimeMillis());
+	}
+
+	/**
+	 * Add an access-token response to the cache using its expires-at time if available.
+	 */
+	public void addToken(int installationId, AccessTokenResponse response) {
+		long nowMillis = System.currentTimeMillis();
+		addToken(installationId, response.getToken(), parseExpiresMillis(response.getExpiresAt(), nowMillis));
+	}
+
+	/**
+	 * Remove the token for the installation. This is called if github rejects the token for some reason.
+	 */
+	public void invalidate(int installationId) {
+		tokenMap.remove(installationId);
+	}
+
+	/**
+	 * Clear all of the tokens from the cache.
+	 */
+	public void clear() {
+		tokenMap.clear();
+	}
+
+	/**
+	 * Return the number of tokens in the cache.
+	 */
+	public int size() {
+		return tokenMap.size();
+	}
+
+	String findToken(int installationId, long nowMillis) {
+		CachedToken cachedToken = tokenMap.get(installationId);
+		if (cachedToken == null) {
+			return null;
+		} else if (nowMillis + refreshMarginMillis >= cachedToken.expiresMillis) {
+			// remove it only if another thread hasn't replaced it already
+			tokenMap.remove(installationId, cachedToken);
+			return null;
+		} else {
+			return cachedToken.token;
+		}
+	}
+
+	void addToken(int installationId, String token, long expiresMillis) {
+		tokenMap.put(installationId, new CachedToken(token, expiresMillis));
+	}
+
+	/**
+	 * Parse the ISO-8601 expires-at string from github (ex: 2016-07-11T22:14:10Z) into epoch millis.
+	 */
+	static long parseExpiresMillis(String expiresAt, long nowMillis) {
+		if (expiresAt == null) {
+			return nowMillis + DEFAULT_TOKEN_TTL_MILLIS;
+		}
+		try {
+			return Instant.parse(expiresAt).toEpochMilli();
+		} catch (DateTimeParseException dtpe) {
+			return nowMillis + DEFAULT_TOKEN_TTL_MILLIS;
+		}
+	}
+
+	/**
+	 * Token and when it expires.
+	 */
+	private static class CachedToken {
+
+		final String token;
+		final long expiresMillis;
+
+		public CachedToken(String token, long expiresMillis) {
+			this.token = token;
+			this.expiresMillis = expiresMillis;
+		}
+	}
+}
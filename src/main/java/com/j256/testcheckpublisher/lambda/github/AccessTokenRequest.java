@@ -1,5 +1,6 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -8,12 +9,19 @@ import com.google.gson.annotations.SerializedName;
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.AccessTokenRequestAdapter.class)
 public class AccessTokenRequest {
 
 	@SerializedName("installation_id")
 	final int installationId;
+	// null means all of the repositories in the installation
 	final String[] repositories;
 
+	public AccessTokenRequest(int installationId) {
+		this.installationId = installationId;
+		this.repositories = null;
+	}
+
 	public AccessTokenRequest(int installationId, String[] repositories) {
 		this.installationId = installationId;
 		this.repositories = repositories;
@@ -1,14 +1,21 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+
 /**
  * Response from the access-token request:
  * https://docs.github.com/en/rest/reference/apps#create-an-installation-access-token-for-an-app
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.AccessTokenResponseAdapter.class)
 public class AccessTokenResponse {
 
 	private String token;
+	// ISO-8601 format: 2016-07-11T22:14:10Z
+	@SerializedName("expires_at")
+	private String expiresAt;
 
 	public String getToken() {
 		return token;
@@ -17,4 +24,12 @@ public class AccessTokenResponse {
 	public void setToken(String token) {
 		this.token = token;
 	}
+
+	public String getExpiresAt() {
+		return expiresAt;
+	}
+
+	public void setExpiresAt(String expiresAt) {
+		this.expiresAt = expiresAt;
+	}
 }
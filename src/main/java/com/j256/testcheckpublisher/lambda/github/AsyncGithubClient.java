@@ -0,0 +1,66 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Non-blocking sibling of {@link GithubClient}. Each call returns a future with the value and the status of the github
+ * request so the calls can be composed without reading mutable client state. IO problems complete the future
+ * exceptionally.
+ *
+ * @author graywatson
+ */
+public interface AsyncGithubClient {
+
+	/**
+	 * Get the owner of an installation or a null value on error.
+	 * https://docs.github.com/en/rest/reference/apps#get-an-installation-for-the-authenticated-app
+	 */
+	public CompletableFuture<GithubResult<String>> findInstallationOwner(int installationId);
+
+	/**
+	 * Login to github meaning get the access token. The value is true if it worked else false.
+	 */
+	public CompletableFuture<GithubResult<Boolean>> login(String owner, String repository);
+
+	/**
+	 * Return the installation-id that was determined when we logged in or -1 if not logged in.
+	 */
+	public int getInstallationId();
+
+	/**
+	 * Return information about a commit or a null value on error.
+	 */
+	public CompletableFuture<GithubResult<CommitInfoResponse>> requestCommitInfo(String topSha);
+
+	/**
+	 * Return information about file tree or a null value on error.
+	 */
+	public CompletableFuture<GithubResult<Collection<TreeFile>>> requestTreeFiles(String sha);
+
+	/**
+	 * Return the files in a directory at the commit without recursing into sub-directories or a null value on error. If
+	 * the directory does not exist then the value is an empty collection.
+	 */
+	public CompletableFuture<GithubResult<Collection<TreeFile>>> requestDirectoryFiles(String sha, String directory);
+
+	/**
+	 * Return the files in each of the directories at the commit, mapped by directory, or a null value if any of the
+	 * requests failed. Directories that do not exist map to empty collections.
+	 */
+	public CompletableFuture<GithubResult<Map<String, Collection<TreeFile>>>> requestDirectoriesFiles(String sha,
+			Collection<String> directories);
+
+	/**
+	 * Added check information to github. The value is true if it worked else false.
+	 */
+	public CompletableFuture<GithubResult<Boolean>> addCheckRun(CheckRunRequest request);
+
+	/**
+	 * Return the last rate-limit budget that github reported for our access token or null if not known.
+	 */
+	public RateLimitScheduler.Budget getRateLimitBudget();
+}
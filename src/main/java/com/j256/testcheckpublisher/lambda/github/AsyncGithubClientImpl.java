@@ -0,0 +1,986 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.util.EntityUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.annotations.JsonAdapter;
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.StreamingResponseParser.ParsedTree;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Asynchronous github client implementation which handles the access and bearer token. The requests run on an
+ * executor using our pooled blocking transport. The calls on one client share the login state so they should be made
+ * after the login future completes.
+ * 
+ * @author graywatson
+ */
+public class AsyncGithubClientImpl implements AsyncGithubClient {
+
+	private static final String GITHUB_APP_ID_ENV = "github_app_id";
+	// optional directory for the disk tier of the tree cache, ex: /tmp/trees
+	private static final String TREE_CACHE_DIR_ENV = "tree_cache_dir";
+	private static final Header ACCEPT_HEADER = new BasicHeader("Accept", "application/vnd.github.v3+json");
+	private static final int MAX_CHECK_ANNOTATIONS_PER_REQUEST = 50;
+	private static final int MAX_CONCURRENT_PATCHES = 4;
+	private static final int MAX_CONCURRENT_SUBTREES = 8;
+	private static final String INSTALLATIONS_URL = "https://api.github.com/app/installations?per_page=100";
+	private static final StatusLine NOT_INSTALLED_STATUS_LINE =
+			new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Not Found (cached)");
+	private static String githubAppId;
+	private static final AccessTokenCache accessTokenCache = new AccessTokenCache();
+	private static TreeCache treeCache;
+	private static CommitInfoCache commitInfoCache = new CommitInfoCache();
+	private static final Executor defaultExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, AsyncGithubClientImpl.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final GithubTransport transport;
+	private final InstallationDirectory installationDirectory;
+	private final PrivateKey applicationKey;
+	private final String label;
+	private final Executor executor;
+
+	private static Logger logger = LoggerFactory.getLogger(AsyncGithubClientImpl.class);
+
+	private final Gson gson = GsonUtils.getGson();
+	private volatile String owner;
+	private volatile String repository;
+	private volatile int installationId;
+	private volatile Header accessTokenHeader;
+	// status of the last request made by the call running in this thread
+	private final ThreadLocal<StatusLine> callStatusLine = new ThreadLocal<>();
+
+	static {
+		githubAppId = System.getenv(GITHUB_APP_ID_ENV);
+		String treeCacheDir = System.getenv(TREE_CACHE_DIR_ENV);
+		if (treeCacheDir == null || treeCacheDir.length() == 0) {
+			treeCache = new TreeCache();
+		} else {
+			treeCache = new TreeCache(new File(treeCacheDir));
+		}
+	}
+
+	private AsyncGithubClientImpl(GithubTransport transport, InstallationDirectory installationDirectory,
+			PrivateKey applicationKey, String label, Executor executor) {
+		this.transport = transport;
+		this.installationDirectory = installationDirectory;
+		this.applicationKey = applicationKey;
+		this.label = label;
+		this.executor = executor;
+	}
+
+	/**
+	 * Create a client whose requests run on our shared executor.
+	 */
+	public static AsyncGithubClientImpl createClient(GithubTransport transport,
+			InstallationDirectory installationDirectory, PrivateKey applicationKey, String label) {
+		return createClient(transport, installationDirectory, applicationKey, label, defaultExecutor);
+	}
+
+	/**
+	 * Create a client whose requests run on the executor. A direct executor (Runnable::run) runs the requests in the
+	 * calling thread.
+	 */
+	public static AsyncGithubClientImpl createClient(GithubTransport transport,
+			InstallationDirectory installationDirectory, PrivateKey applicationKey, String label, Executor executor) {
+		if (githubAppId == null) {
+			logger.error("Could not find github-app-id env variable");
+			return null;
+		} else if (applicationKey == null) {
+			logger.error("Application-key cannot be null");
+			return null;
+		} else {
+			return new AsyncGithubClientImpl(transport, installationDirectory, applicationKey, label, executor);
+		}
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<String>> findInstallationOwner(int installationId) {
+		return submit(() -> doFindInstallationOwner(installationId));
+	}
+
+	/**
+	 * Preload our installation directory from the paginated list of all of the application's installations. The value
+	 * is the number of installations loaded or -1 on error.
+	 */
+	public CompletableFuture<GithubResult<Integer>> preloadInstallations() {
+		return submit(this::doPreloadInstallations);
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<Boolean>> login(String owner, String repository) {
+		return submit(() -> doLogin(owner, repository));
+	}
+
+	@Override
+	public int getInstallationId() {
+		if (owner == null) {
+			logger.error(repository + ": get installation-id not logged in");
+			return -1;
+		} else {
+			return installationId;
+		}
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<CommitInfoResponse>> requestCommitInfo(String topSha) {
+		return submit(() -> doRequestCommitInfo(topSha));
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<Collection<TreeFile>>> requestTreeFiles(String sha) {
+		return submit(() -> doRequestTreeFiles(sha));
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<Collection<TreeFile>>> requestDirectoryFiles(String sha, String directory) {
+		return submit(() -> doRequestDirectoryFiles(sha, directory));
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<Map<String, Collection<TreeFile>>>> requestDirectoriesFiles(String sha,
+			Collection<String> directories) {
+		return submit(() -> doRequestDirectoriesFiles(sha, directories));
+	}
+
+	@Override
+	public CompletableFuture<GithubResult<Boolean>> addCheckRun(CheckRunRequest request) {
+		return submit(() -> doAddCheckRun(request));
+	}
+
+	@Override
+	public RateLimitScheduler.Budget getRateLimitBudget() {
+		return transport.getBudget(accessTokenHeader);
+	}
+
+	private String doFindInstallationOwner(int installationId) throws IOException {
+
+		String owner = installationDirectory.findOwner(installationId);
+		if (owner != null) {
+			return owner;
+		}
+
+		HttpGet get = new HttpGet("https://api.github.com/app/installations/" + installationId);
+		get.addHeader(getBearerTokenHeader());
+		get.addHeader(ACCEPT_HEADER);
+		// conditional so github can answer with a not-modified which doesn't count against our rate limit
+		try (CloseableHttpResponse httpResponse = transport.executeConditional(get)) {
+
+			StatusLine statusLine = httpResponse.getStatusLine();
+			callStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(label + ": get installation request failed: " + httpResponse.getStatusLine());
+				return null;
+			}
+
+			InstallationResponse response;
+			try {
+				response = gson.fromJson(new InputStreamReader(httpResponse.getEntity().getContent()),
+						InstallationResponse.class);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": get installation response json parse threw");
+				return null;
+			}
+			owner = response.getOwner();
+			if (owner == null) {
+				logger.error(label + ": get installation request json returned null owner");
+			} else {
+				installationDirectory.addInstallation(installationId, owner, response.isAllRepositories());
+			}
+			return owner;
+		}
+	}
+
+	private int doPreloadInstallations() throws IOException {
+		String url = INSTALLATIONS_URL;
+		int count = 0;
+		while (url != null) {
+			HttpGet get = new HttpGet(url);
+			get.addHeader(getBearerTokenHeader());
+			get.addHeader(ACCEPT_HEADER);
+			try (CloseableHttpResponse response = transport.executeConditional(get)) {
+				StatusLine statusLine = response.getStatusLine();
+				callStatusLine.set(statusLine);
+				if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+					logger.error(label + ": list installations request failed: " + response.getStatusLine());
+					return -1;
+				}
+				InstallationResponse[] installations;
+				try {
+					installations = gson.fromJson(new InputStreamReader(response.getEntity().getContent()),
+							InstallationResponse[].class);
+				} catch (JsonParseException jpe) {
+					logger.error(jpe, label + ": list installations response json parse threw");
+					return -1;
+				}
+				if (installations != null) {
+					count += installationDirectory.addInstallations(Arrays.asList(installations));
+				}
+				url = LinkHeaderUtils.findRelUrl(response, "next");
+			}
+		}
+		return count;
+	}
+
+	private boolean doLogin(String owner, String repository) throws IOException {
+		Header header = getAccessTokenHeader(owner, repository);
+		if (header == null) {
+			// already logged
+			return false;
+		} else {
+			this.owner = owner;
+			this.repository = repository;
+			return true;
+		}
+	}
+
+	private CommitInfoResponse doRequestCommitInfo(String topSha) throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": commit-info request not logged in");
+			return null;
+		}
+
+		// commits are immutable and we often get multiple uploads for the same sha
+		GithubResult<CommitInfoResponse> result = commitInfoCache.findCommitInfo(owner, repository, topSha, sha -> {
+			CommitInfoResponse commitInfo = fetchCommitInfo(sha);
+			return new GithubResult<>(commitInfo, callStatusLine.get());
+		});
+		if (result.getStatusLine() != null) {
+			// the status of the request, even if another thread made it, so failures are reported correctly
+			callStatusLine.set(result.getStatusLine());
+		}
+		return result.getValue();
+	}
+
+	private CommitInfoResponse fetchCommitInfo(String topSha) throws IOException {
+
+		CommitPage result = fetchCommitPage(
+				"https://api.github.com/repos/" + owner + "/" + repository + "/commits/" + topSha);
+		CommitInfoResponse commitInfo = result.getValue();
+		if (commitInfo == null || result.nextUrl == null) {
+			return commitInfo;
+		}
+
+		/*
+		 * Github only returns the first 300 files with the commit and the rest are on other pages. If we know how many
+		 * pages there are then we get them at the same time otherwise we follow the next links.
+		 */
+		List<ChangedFile> files = new ArrayList<>();
+		if (commitInfo.getFiles() != null) {
+			files.addAll(Arrays.asList(commitInfo.getFiles()));
+		}
+		int pageCount = 1;
+		List<String> pageUrls = LinkHeaderUtils.buildPageUrls(result.nextUrl, result.lastUrl);
+		if (pageUrls == null) {
+			String url = result.nextUrl;
+			while (url != null) {
+				CommitPage page = fetchCommitPage(url);
+				if (!addPageFiles(page, files)) {
+					return null;
+				}
+				pageCount++;
+				url = page.nextUrl;
+			}
+		} else {
+			List<CompletableFuture<CommitPage>> futures = new ArrayList<>(pageUrls.size());
+			for (String url : pageUrls) {
+				futures.add(CompletableFuture.supplyAsync(() -> {
+					try {
+						return fetchCommitPage(url);
+					} catch (IOException ioe) {
+						throw new UncheckedIOException(ioe);
+					}
+				}, defaultExecutor));
+			}
+			// added in page order as they come in so we only hold onto the file names and statuses
+			for (CompletableFuture<CommitPage> future : futures) {
+				CommitPage page;
+				try {
+					page = future.get();
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted waiting for commit pages");
+				} catch (ExecutionException ee) {
+					if (ee.getCause() instanceof UncheckedIOException) {
+						throw ((UncheckedIOException) ee.getCause()).getCause();
+					}
+					throw new IOException("commit page request failed", ee.getCause());
+				}
+				if (!addPageFiles(page, files)) {
+					return null;
+				}
+				pageCount++;
+			}
+		}
+		logger.info(label + ": commit " + topSha + " has " + files.size() + " files across " + pageCount + " pages");
+		return new CommitInfoResponse(commitInfo.getSha(), commitInfo.getCommit(),
+				files.toArray(new ChangedFile[files.size()]));
+	}
+
+	/**
+	 * Add the files from the page and return true or return false if the page request failed. A missing page means
+	 * that we'd think that some of the changed files were not in the commit so we fail the whole thing.
+	 */
+	private boolean addPageFiles(CommitPage page, List<ChangedFile> files) {
+		if (page.getValue() == null) {
+			callStatusLine.set(page.getStatusLine());
+			return false;
+		}
+		if (page.getValue().getFiles() != null) {
+			files.addAll(Arrays.asList(page.getValue().getFiles()));
+		}
+		return true;
+	}
+
+	/**
+	 * Get a page of the commit information along with the links to the other pages.
+	 */
+	private CommitPage fetchCommitPage(String url) throws IOException {
+
+		HttpGet get = new HttpGet(url);
+		get.addHeader(getAccessTokenHeader(owner, repository));
+		get.addHeader(ACCEPT_HEADER);
+
+		/*
+		 * Not conditional: the pages can have megabytes of patch text that would be buffered into the etag store and
+		 * the commit-info cache already remembers the trimmed results for the immutable SHA.
+		 */
+		try (CloseableHttpResponse response = transport.execute(get);
+				Reader contentReader = new InputStreamReader(response.getEntity().getContent());) {
+			StatusLine statusLine = response.getStatusLine();
+			callStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+				invalidateAccessToken();
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(label + ": commit-info request failed: " + response.getStatusLine());
+				return new CommitPage(null, statusLine, null, null);
+			}
+			CommitInfoResponse commitInfo;
+			try {
+				// streamed so we don't hold onto the patch text of each file
+				commitInfo = StreamingResponseParser.parseCommitInfo(contentReader);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": get commit-info request json parse threw");
+				return new CommitPage(null, statusLine, null, null);
+			}
+			return new CommitPage(commitInfo, statusLine, LinkHeaderUtils.findRelUrl(response, "next"),
+					LinkHeaderUtils.findRelUrl(response, "last"));
+		}
+	}
+
+	private Collection<TreeFile> doRequestTreeFiles(String sha) throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": tree request not logged in");
+			return null;
+		}
+
+		// trees are immutable so if we've seen it before we don't need to download it again
+		List<TreeFile> cachedFiles = treeCache.findTree(sha);
+		if (cachedFiles != null) {
+			return cachedFiles;
+		}
+
+		GithubResult<ParsedTree> result = fetchTree(sha, true);
+		callStatusLine.set(result.getStatusLine());
+		ParsedTree parsedTree = result.getValue();
+		if (parsedTree == null) {
+			return null;
+		}
+
+		List<TreeFile> fileInfos;
+		if (parsedTree.isTruncated()) {
+			/*
+			 * Too big for one response. We can't tell which directories are complete in the partial list so we walk
+			 * the tree again one subtree at a time.
+			 */
+			logger.info(label + ": tree " + sha + " was truncated, walking its subtrees");
+			SubtreeWalker walker = new SubtreeWalker(this::fetchTree, defaultExecutor, MAX_CONCURRENT_SUBTREES);
+			fileInfos = walker.walk(sha);
+			if (fileInfos == null) {
+				callStatusLine.set(walker.getFailedStatusLine());
+				return null;
+			}
+		} else {
+			fileInfos = parsedTree.getFiles();
+		}
+		treeCache.addTree(sha, fileInfos);
+		return fileInfos;
+	}
+
+	/**
+	 * Get a tree from github. The directories are returned if it is not recursive.
+	 */
+	private GithubResult<ParsedTree> fetchTree(String sha, boolean recursive) throws IOException {
+
+		// GET /repos/{owner}/{repo}/git/trees/{tree_sha}
+		HttpGet get = new HttpGet("https://api.github.com/repos/" + owner + "/" + repository + "/git/trees/" + sha
+				+ (recursive ? "?recursive=1" : ""));
+		get.addHeader(getAccessTokenHeader(owner, repository));
+		get.addHeader(ACCEPT_HEADER);
+
+		try (CloseableHttpResponse response = transport.execute(get);
+				Reader reader = new InputStreamReader(response.getEntity().getContent());) {
+
+			StatusLine statusLine = response.getStatusLine();
+			if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+				invalidateAccessToken();
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(repository + ": tree request failed: " + response.getStatusLine());
+				return new GithubResult<>(null, statusLine);
+			}
+
+			try {
+				// streamed so we only build the file paths and not the shas and urls of every entry
+				return new GithubResult<>(StreamingResponseParser.parseTree(reader, !recursive), statusLine);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": tree request json parse threw");
+				return new GithubResult<>(null, statusLine);
+			}
+		}
+	}
+
+	private Collection<TreeFile> doRequestDirectoryFiles(String sha, String directory) throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": directory request not logged in");
+			return null;
+		}
+
+		GithubResult<Collection<TreeFile>> result = fetchDirectory(sha, directory);
+		callStatusLine.set(result.getStatusLine());
+		return result.getValue();
+	}
+
+	private Map<String, Collection<TreeFile>> doRequestDirectoriesFiles(String sha, Collection<String> directories)
+			throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": directories request not logged in");
+			return null;
+		}
+
+		// each directory is a separate request so we make them at the same time
+		Map<String, CompletableFuture<GithubResult<Collection<TreeFile>>>> futureMap = new LinkedHashMap<>();
+		for (String directory : directories) {
+			futureMap.put(directory, CompletableFuture.supplyAsync(() -> {
+				try {
+					return fetchDirectory(sha, directory);
+				} catch (IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
+			}, defaultExecutor));
+		}
+		Map<String, Collection<TreeFile>> filesMap = new LinkedHashMap<>();
+		boolean success = true;
+		for (Map.Entry<String, CompletableFuture<GithubResult<Collection<TreeFile>>>> entry : futureMap.entrySet()) {
+			GithubResult<Collection<TreeFile>> result;
+			try {
+				result = entry.getValue().get();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for directory requests");
+			} catch (ExecutionException ee) {
+				if (ee.getCause() instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) ee.getCause()).getCause();
+				}
+				throw new IOException("directory request failed", ee.getCause());
+			}
+			if (result.getValue() == null) {
+				success = false;
+				callStatusLine.set(result.getStatusLine());
+			} else {
+				if (success) {
+					callStatusLine.set(result.getStatusLine());
+				}
+				filesMap.put(entry.getKey(), result.getValue());
+			}
+		}
+		if (success) {
+			return filesMap;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the files in a directory from github. Directories that don't exist have no files.
+	 */
+	private GithubResult<Collection<TreeFile>> fetchDirectory(String sha, String directory) throws IOException {
+
+		// GET /repos/{owner}/{repo}/contents/{path}?ref={sha}
+		HttpGet get = new HttpGet("https://api.github.com/repos/" + owner + "/" + repository + "/contents/"
+				+ encodePath(directory) + "?ref=" + sha);
+		get.addHeader(getAccessTokenHeader(owner, repository));
+		get.addHeader(ACCEPT_HEADER);
+
+		try (CloseableHttpResponse response = transport.execute(get);
+				Reader reader = new InputStreamReader(response.getEntity().getContent());) {
+
+			StatusLine statusLine = response.getStatusLine();
+			if (statusLine.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+				// the directory isn't in the commit
+				return new GithubResult<>(Collections.<TreeFile> emptyList(), statusLine);
+			}
+			if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+				invalidateAccessToken();
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(label + ": directory request failed: " + response.getStatusLine());
+				return new GithubResult<>(null, statusLine);
+			}
+
+			try {
+				return new GithubResult<>(StreamingResponseParser.parseDirectoryFiles(reader), statusLine);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": directory request json parse threw");
+				return new GithubResult<>(null, statusLine);
+			}
+		}
+	}
+
+	private boolean doAddCheckRun(CheckRunRequest request) throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": check-runs request not logged in");
+			return false;
+		}
+
+		// make sure the number of annotations is below the per request limit
+		List<CheckRunAnnotation> annotations = request.output.annotations;
+		if (annotations == null || annotations.size() <= MAX_CHECK_ANNOTATIONS_PER_REQUEST) {
+			return (doCheckRunPost(request) >= 0);
+		}
+
+		// the first batch creates the check-run
+		long checkRunId =
+				doCheckRunPost(request.withAnnotations(annotations.subList(0, MAX_CHECK_ANNOTATIONS_PER_REQUEST)));
+		if (checkRunId <= 0) {
+			return false;
+		}
+
+		/*
+		 * The rest of the annotations get appended with PATCH requests. These only carry the title and summary, which
+		 * github requires, and a batch of the annotations. Each is serialized as it is sent.
+		 */
+		ConcurrentLinkedQueue<CheckRunPatch> patches = new ConcurrentLinkedQueue<>();
+		for (int start = MAX_CHECK_ANNOTATIONS_PER_REQUEST; start < annotations.size();
+				start += MAX_CHECK_ANNOTATIONS_PER_REQUEST) {
+			int end = Math.min(start + MAX_CHECK_ANNOTATIONS_PER_REQUEST, annotations.size());
+			patches.add(new CheckRunPatch(request.output, annotations.subList(start, end)));
+		}
+
+		// the patches are independent so we send a couple at the same time
+		String url = "https://api.github.com/repos/" + owner + "/" + repository + "/check-runs/" + checkRunId;
+		Header tokenHeader = getAccessTokenHeader(owner, repository);
+		int numWorkers = Math.min(MAX_CONCURRENT_PATCHES, patches.size());
+		List<CompletableFuture<StatusLine>> futures = new ArrayList<>(numWorkers);
+		for (int i = 0; i < numWorkers; i++) {
+			futures.add(CompletableFuture.supplyAsync(() -> sendCheckRunPatches(url, tokenHeader, patches),
+					defaultExecutor));
+		}
+		boolean success = true;
+		for (CompletableFuture<StatusLine> future : futures) {
+			StatusLine statusLine;
+			try {
+				statusLine = future.get();
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for check-run patches");
+			} catch (ExecutionException ee) {
+				if (ee.getCause() instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) ee.getCause()).getCause();
+				}
+				throw new IOException("check-run patch failed", ee.getCause());
+			}
+			if (statusLine == null) {
+				// the other workers emptied the queue before this one got going
+			} else if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				success = false;
+				callStatusLine.set(statusLine);
+			} else if (success) {
+				callStatusLine.set(statusLine);
+			}
+		}
+		return success;
+	}
+
+	/**
+	 * Send the patches from the queue until it is empty or one fails.
+	 * 
+	 * @return The status line of the last patch or null if there were none.
+	 */
+	private StatusLine sendCheckRunPatches(String url, Header tokenHeader,
+			ConcurrentLinkedQueue<CheckRunPatch> patches) {
+		StatusLine statusLine = null;
+		CheckRunPatch checkRunPatch;
+		while ((checkRunPatch = patches.poll()) != null) {
+			HttpPatch patch = new HttpPatch(url);
+			patch.addHeader(tokenHeader);
+			patch.addHeader(ACCEPT_HEADER);
+			patch.setEntity(new GsonEntity(gson, checkRunPatch));
+			try (CloseableHttpResponse response = transport.execute(patch)) {
+				statusLine = response.getStatusLine();
+				if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+					if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+						invalidateAccessToken();
+					}
+					logger.error(label + ": check-run patch request failed: " + statusLine);
+					logger.error(label + ": results: " + responseToString(response));
+					return statusLine;
+				}
+				EntityUtils.consume(response.getEntity());
+			} catch (IOException ioe) {
+				throw new UncheckedIOException(ioe);
+			}
+		}
+		return statusLine;
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setGithubAppId(String githubAppId) {
+		AsyncGithubClientImpl.githubAppId = githubAppId;
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setTreeCache(TreeCache treeCache) {
+		AsyncGithubClientImpl.treeCache = treeCache;
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setCommitInfoCache(CommitInfoCache commitInfoCache) {
+		AsyncGithubClientImpl.commitInfoCache = commitInfoCache;
+	}
+
+	/**
+	 * Run the call on our executor and complete the future with its value and the status of its last request.
+	 */
+	private <T> CompletableFuture<GithubResult<T>> submit(GithubCall<T> call) {
+		CompletableFuture<GithubResult<T>> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				callStatusLine.remove();
+				try {
+					T value = call.call();
+					future.complete(new GithubResult<>(value, callStatusLine.get()));
+				} catch (Throwable th) {
+					future.completeExceptionally(th);
+				} finally {
+					callStatusLine.remove();
+				}
+			});
+		} catch (RejectedExecutionException ree) {
+			future.completeExceptionally(ree);
+		}
+		return future;
+	}
+
+	/**
+	 * Post the check-run request to create the check-run.
+	 * 
+	 * @return The id of the new check-run, 0 if it was created but we could not get its id, or -1 on error.
+	 */
+	private long doCheckRunPost(CheckRunRequest request) throws IOException {
+		HttpPost post = new HttpPost("https://api.github.com/repos/" + owner + "/" + repository + "/check-runs");
+		post.addHeader(getAccessTokenHeader(owner, repository));
+		post.addHeader(ACCEPT_HEADER);
+
+		// streamed straight to the connection since the annotations can make it big
+		post.setEntity(new GsonEntity(gson, request));
+
+		try (CloseableHttpResponse response = transport.execute(post)) {
+			StatusLine statusLine = response.getStatusLine();
+			callStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() != HttpStatus.SC_CREATED) {
+				if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+					invalidateAccessToken();
+				}
+				logger.error(label + ": check-runs request failed: " + response.getStatusLine());
+				logger.error(label + ": results: " + responseToString(response));
+				return -1;
+			}
+			// check-run ids are too big for IdResponse's int
+			JsonObject idObject;
+			try {
+				idObject = gson.fromJson(new InputStreamReader(response.getEntity().getContent()), JsonObject.class);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": check-runs response json parse threw");
+				return 0;
+			}
+			if (idObject == null || idObject.get("id") == null) {
+				logger.error(label + ": check-runs response has no id");
+				return 0;
+			}
+			return idObject.get("id").getAsLong();
+		}
+	}
+
+	/**
+	 * URL encode the segments of a path leaving the slashes alone.
+	 */
+	private static String encodePath(String path) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (String segment : path.split("/")) {
+			if (segment.isEmpty()) {
+				continue;
+			}
+			if (sb.length() > 0) {
+				sb.append('/');
+			}
+			sb.append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20"));
+		}
+		return sb.toString();
+	}
+
+	private String responseToString(CloseableHttpResponse response) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(response.getEntity().getContent()));
+				StringWriter writer = new StringWriter()) {
+			char[] buf = new char[1024];
+			while (true) {
+				int num = reader.read(buf);
+				if (num < 0) {
+					return writer.toString();
+				}
+				writer.write(buf, 0, num);
+			}
+		}
+	}
+
+	private Header getAccessTokenHeader(String owner, String repository)
+			throws JsonSyntaxException, UnsupportedOperationException, IOException {
+		return getAccessTokenHeader(owner, repository, true);
+	}
+
+	private Header getAccessTokenHeader(String owner, String repository, boolean retryIfNotFound)
+			throws JsonSyntaxException, UnsupportedOperationException, IOException {
+
+		if (accessTokenHeader != null) {
+			return accessTokenHeader;
+		}
+
+		int installationId = findInstallationId(owner, repository);
+		if (installationId <= 0) {
+			// already logged
+			return null;
+		}
+
+		// tokens are per installation and not per repository so we can share them across clients
+		String accessToken = accessTokenCache.findToken(installationId);
+		if (accessToken != null) {
+			accessTokenHeader = new BasicHeader("Authorization", "token " + accessToken);
+			return accessTokenHeader;
+		}
+
+		HttpPost post = new HttpPost("https://api.github.com/app/installations/" + installationId + "/access_tokens");
+		post.addHeader(getBearerTokenHeader());
+		post.addHeader(ACCEPT_HEADER);
+
+		// no repository restriction so the token can be cached for the installation
+		AccessTokenRequest request = new AccessTokenRequest(installationId);
+		post.setEntity(new GsonEntity(gson, request));
+
+		try (CloseableHttpResponse response = transport.execute(post)) {
+			StatusLine statusLine = response.getStatusLine();
+			callStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() == HttpStatus.SC_NOT_FOUND && retryIfNotFound) {
+				// installation may have been removed and re-added so our directory is stale
+				logger.info(label + ": installation " + installationId + " not found, looking it up again");
+				installationDirectory.removeInstallation(installationId);
+				this.installationId = 0;
+				return getAccessTokenHeader(owner, repository, false);
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_CREATED) {
+				logger.error(label + ": could not create access-token: " + response.getStatusLine());
+				return null;
+			}
+			AccessTokenResponse tokens;
+			try {
+				tokens = gson.fromJson(new InputStreamReader(response.getEntity().getContent()),
+						AccessTokenResponse.class);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": access-token request json parse threw");
+				return null;
+			}
+
+			accessToken = tokens.getToken();
+			if (accessToken == null || accessToken.length() == 0) {
+				logger.error(label + ": access-token is null or blank: '" + accessToken + "'");
+				return null;
+			}
+			accessTokenCache.addToken(installationId, tokens);
+			accessTokenHeader = new BasicHeader("Authorization", "token " + accessToken);
+			return accessTokenHeader;
+		}
+	}
+
+	/**
+	 * Return the access-token header for the repository we logged into or null if not logged in or on error.
+	 */
+	Header findAccessTokenHeader() throws IOException {
+		if (owner == null) {
+			return null;
+		} else {
+			return getAccessTokenHeader(owner, repository);
+		}
+	}
+
+	/**
+	 * Called when github returns unauthorized for one of our access-token requests. The token may have been revoked
+	 * so we don't want other clients to reuse it.
+	 */
+	void invalidateAccessToken() {
+		if (installationId > 0) {
+			accessTokenCache.invalidate(installationId);
+		}
+		accessTokenHeader = null;
+	}
+
+	private Header getBearerTokenHeader() {
+		// the signer is shared across clients so we only sign every couple of minutes
+		return BearerTokenSigner.forKey(applicationKey, githubAppId).getBearerTokenHeader();
+	}
+
+	private int findInstallationId(String owner, String repository) throws IOException {
+
+		if (installationId != 0) {
+			return installationId;
+		}
+
+		int installationId = installationDirectory.findInstallationId(owner, repository);
+		if (installationId == InstallationDirectory.NOT_INSTALLED) {
+			callStatusLine.set(NOT_INSTALLED_STATUS_LINE);
+			logger.error(label + ": installation request failed: " + NOT_INSTALLED_STATUS_LINE);
+			return -1;
+		} else if (installationId > 0) {
+			this.installationId = installationId;
+			return installationId;
+		}
+
+		HttpGet get = new HttpGet("https://api.github.com/repos/" + owner + "/" + repository + "/installation");
+		get.addHeader(getBearerTokenHeader());
+		get.addHeader(ACCEPT_HEADER);
+		try (CloseableHttpResponse response = transport.executeConditional(get)) {
+
+			StatusLine statusLine = response.getStatusLine();
+			callStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+				// remember this for a bit so repeated uploads from a misconfigured repo are cheap
+				installationDirectory.addNotInstalled(owner, repository);
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(label + ": installation request failed: " + response.getStatusLine());
+				return -1;
+			}
+
+			IdResponse idResponse;
+			try {
+				idResponse = gson.fromJson(new InputStreamReader(response.getEntity().getContent()), IdResponse.class);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": installation response json parse threw");
+				return -1;
+			}
+			installationId = idResponse.getId();
+			if (installationId <= 0) {
+				logger.error(label + ": installation response json returned: " + installationId);
+				return -1;
+			} else {
+				installationDirectory.addRepository(owner, repository, installationId);
+				this.installationId = installationId;
+				return installationId;
+			}
+		}
+	}
+
+	/**
+	 * One of our blocking calls to github.
+	 */
+	private static interface GithubCall<T> {
+		public T call() throws IOException;
+	}
+
+	/**
+	 * A page of the commit information with the links to the next and last pages.
+	 */
+	private static class CommitPage extends GithubResult<CommitInfoResponse> {
+
+		final String nextUrl;
+		final String lastUrl;
+
+		public CommitPage(CommitInfoResponse value, StatusLine statusLine, String nextUrl, String lastUrl) {
+			super(value, statusLine);
+			this.nextUrl = nextUrl;
+			this.lastUrl = lastUrl;
+		}
+	}
+
+	/**
+	 * Body of the PATCH requests that append annotations to a check-run.
+	 */
+	@JsonAdapter(GithubTypeAdapters.CheckRunPatchAdapter.class)
+	static class CheckRunPatch {
+
+		final CheckRunOutput output;
+
+		CheckRunPatch(CheckRunOutput output) {
+			this.output = output;
+		}
+
+		public CheckRunPatch(CheckRunOutput output, List<CheckRunAnnotation> annotations) {
+			// the text isn't needed and the counts are transient
+			this.output = new CheckRunOutput(output.title, output.summary, null, annotations, 0, 0, 0);
+		}
+	}
+}
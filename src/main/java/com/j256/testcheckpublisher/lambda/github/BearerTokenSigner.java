@@ -0,0 +1,164 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.security.PrivateKey;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * Signs the JWT bearer token that authenticates us as the github application. There is one signer per application key
+ * and the token is shared across all of the clients and threads. It gets re-signed in the background before it
+ * expires so the RSA signing should only happen every couple of minutes.
+ *
+ * @author graywatson
+ */
+public class BearerTokenSigner {
+
+	// github's maximum
+	private static final long JWT_TTL_MILLIS = 10 * 60 * 1000;
+	// issued-at is backdated to allow for clock drift between us and github
+	private static final long CLOCK_SKEW_MILLIS = 60 * 1000;
+	// when the token has less than this time left, we start signing a new one in the background
+	private static final long REFRESH_MARGIN_MILLIS = 3 * 60 * 1000;
+	// when the token has less than this time left, we sign a new one in the foreground
+	private static final long MIN_REMAINING_MILLIS = 30 * 1000;
+
+	private static final Logger logger = LoggerFactory.getLogger(BearerTokenSigner.class);
+	private static final ConcurrentHashMap<PrivateKey, BearerTokenSigner> signerMap = new ConcurrentHashMap<>();
+	private static final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, BearerTokenSigner.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final PrivateKey applicationKey;
+	private final String githubAppId;
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final AtomicLong signCount = new AtomicLong();
+	private volatile SignedToken signedToken;
+
+	private BearerTokenSigner(PrivateKey applicationKey, String githubAppId) {
+		this.applicationKey = applicationKey;
+		this.githubAppId = githubAppId;
+	}
+
+	/**
+	 * Return the shared signer for the application key.
+	 */
+	public static BearerTokenSigner forKey(PrivateKey applicationKey, String githubAppId) {
+		BearerTokenSigner signer = signerMap.get(applicationKey);
+		if (signer != null && signer.githubAppId.equals(githubAppId)) {
+			return signer;
+		}
+		// the app-id really only changes during testing
+		return signerMap.compute(applicationKey, (key, existing) -> {
+			if (existing != null && existing.githubAppId.equals(githubAppId)) {
+				return existing;
+			} else {
+				return new BearerTokenSigner(key, githubAppId);
+			}
+		});
+	}
+
+	/**
+	 * Return the authorization header with our bearer token or null on error.
+	 */
+	public Header getBearerTokenHeader() {
+		return getBearerTokenHeader(System.currentTimeMillis());
+	}
+
+	/**
+	 * Return the number of times that we have signed a token. For testing purposes.
+	 */
+	public long getSignCount() {
+		return signCount.get();
+	}
+
+	Header getBearerTokenHeader(long nowMillis) {
+		SignedToken token = signedToken;
+		if (token == null || nowMillis + MIN_REMAINING_MILLIS >= token.expiresMillis) {
+			// no token or it is about to expire so we need to sign it now
+			synchronized (this) {
+				token = signedToken;
+				if (token == null || nowMillis + MIN_REMAINING_MILLIS >= token.expiresMillis) {
+					token = signToken(nowMillis);
+					if (token == null) {
+						// already logged
+						return null;
+					}
+					signedToken = token;
+				}
+			}
+		} else if (nowMillis + REFRESH_MARGIN_MILLIS >= token.expiresMillis) {
+			// still good for a bit so re-sign it in the background and use the current one
+			refreshInBackground();
+		}
+		return token.header;
+	}
+
+	private void refreshInBackground() {
+		if (!refreshing.compareAndSet(false, true)) {
+			// someone else is already refreshing
+			return;
+		}
+		try {
+			refreshExecutor.execute(() -> {
+				try {
+					SignedToken token = signToken(System.currentTimeMillis());
+					if (token != null) {
+						signedToken = token;
+					}
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RuntimeException re) {
+			refreshing.set(false);
+			logger.error(re, "could not schedule bearer token refresh");
+		}
+	}
+
+	private SignedToken signToken(long nowMillis) {
+		try {
+			long issuedMillis = nowMillis - CLOCK_SKEW_MILLIS;
+			long expiresMillis = issuedMillis + JWT_TTL_MILLIS;
+			String bearerToken = Jwts.builder()
+					.setIssuedAt(new Date(issuedMillis))
+					.setIssuer(githubAppId)
+					.setExpiration(new Date(expiresMillis))
+					.signWith(applicationKey, SignatureAlgorithm.RS256)
+					.compact();
+			signCount.incrementAndGet();
+			return new SignedToken(new BasicHeader("Authorization", "Bearer " + bearerToken), expiresMillis);
+		} catch (Exception e) {
+			logger.error(e, "creating bearer token threw");
+			return null;
+		}
+	}
+
+	/**
+	 * Signed bearer header and when it expires.
+	 */
+	private static class SignedToken {
+
+		final Header header;
+		final long expiresMillis;
+
+		public SignedToken(Header header, long expiresMillis) {
+			this.header = header;
+			this.expiresMillis = expiresMillis;
+		}
+	}
+}
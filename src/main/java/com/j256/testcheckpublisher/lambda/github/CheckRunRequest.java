@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
 
@@ -13,6 +14,7 @@ import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.CheckRunRequestAdapter.class)
 public class CheckRunRequest {
 
 	final String name;
@@ -34,6 +36,14 @@ public class CheckRunRequest {
 		}
 	}
 
+	CheckRunRequest(String name, String sha, CheckRunOutput output, Status status, Conclusion conclusion) {
+		this.name = name;
+		this.sha = sha;
+		this.output = output;
+		this.status = status;
+		this.conclusion = conclusion;
+	}
+
 	public Conclusion getConclusion() {
 		return conclusion;
 	}
@@ -42,6 +52,14 @@ public class CheckRunRequest {
 		return output;
 	}
 
+	/**
+	 * Return a copy of this request with the annotations replaced.
+	 */
+	CheckRunRequest withAnnotations(List<CheckRunAnnotation> annotations) {
+		return new CheckRunRequest(name, sha, new CheckRunOutput(output.title, output.summary, output.text,
+				annotations, output.testCount, output.failureCount, output.errorCount));
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -88,6 +106,7 @@ public class CheckRunRequest {
 	/**
 	 * Output of the check run.
 	 */
+	@JsonAdapter(GithubTypeAdapters.CheckRunOutputAdapter.class)
 	public static class CheckRunOutput {
 
 		String title = "";
@@ -234,6 +253,7 @@ public class CheckRunRequest {
 	 * Annotation to the check-run that highlights specific test information. It is designed to be for files that are
 	 * referenced in the particular commit in question.
 	 */
+	@JsonAdapter(GithubTypeAdapters.CheckRunAnnotationAdapter.class)
 	public static class CheckRunAnnotation implements Comparable<CheckRunAnnotation> {
 		String path;
 		@SerializedName("start_line")
@@ -0,0 +1,199 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Commit;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Tree;
+
+/**
+ * Cache of commit information keyed by owner/repository/SHA. Commits are immutable and our pipelines often post
+ * multiple frameworks and build matrices for the same SHA. We only keep what we need: the tree SHA and the changed
+ * files that were not removed. Concurrent lookups of the same commit share a single github request and its status line
+ * so every waiter can report the real failure.
+ *
+ * @author graywatson
+ */
+public class CommitInfoCache {
+
+	private static final int DEFAULT_MAX_ENTRIES = 1000;
+	private static final String REMOVED_STATUS = "removed";
+	// only cache real SHAs because branch and tag names can move
+	private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-fA-F]{40,64}");
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, CommitInfoResponse> commitMap = new LinkedHashMap<>(16, 0.75F, true);
+	private final ConcurrentHashMap<String, CompletableFuture<GithubResult<CommitInfoResponse>>> inFlightMap =
+			new ConcurrentHashMap<>();
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong sharedFetchCount = new AtomicLong();
+
+	public CommitInfoCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	public CommitInfoCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Find the commit information in the cache or fetch it from github. If another thread is already fetching the same
+	 * commit then we wait for its results.
+	 *
+	 * @return The trimmed commit information, which is null if the fetch failed, with the status line of the github
+	 *         request or a null status line if it came from the cache.
+	 */
+	public GithubResult<CommitInfoResponse> findCommitInfo(String owner, String repository, String sha,
+			CommitFetcher fetcher) throws IOException {
+
+		if (sha == null || !SHA_PATTERN.matcher(sha).matches()) {
+			return fetcher.fetchCommitInfo(sha);
+		}
+
+		String key = owner.toLowerCase(Locale.US) + "/" + repository.toLowerCase(Locale.US) + "/" + sha;
+		CommitInfoResponse response = findCached(key);
+		if (response != null) {
+			return new GithubResult<>(response, null);
+		}
+
+		CompletableFuture<GithubResult<CommitInfoResponse>> future = new CompletableFuture<>();
+		CompletableFuture<GithubResult<CommitInfoResponse>> existing = inFlightMap.putIfAbsent(key, future);
+		if (existing != null) {
+			sharedFetchCount.incrementAndGet();
+			return waitForFetch(existing);
+		}
+
+		try {
+			// it might have been added while we were getting the future
+			GithubResult<CommitInfoResponse> result;
+			response = findCached(key);
+			if (response == null) {
+				missCount.incrementAndGet();
+				result = fetcher.fetchCommitInfo(sha);
+				if (result.getValue() != null) {
+					result = new GithubResult<>(trimResponse(result.getValue()), result.getStatusLine());
+					addToCache(key, result.getValue());
+				}
+			} else {
+				result = new GithubResult<>(response, null);
+			}
+			future.complete(result);
+			return result;
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightMap.remove(key, future);
+		}
+	}
+
+	/**
+	 * Number of lookups that were found in the cache.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Number of lookups that had to go to github.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Number of lookups that waited on another thread's request to github.
+	 */
+	public long getSharedFetchCount() {
+		return sharedFetchCount.get();
+	}
+
+	/**
+	 * Number of entries in the cache.
+	 */
+	public synchronized int getSize() {
+		return commitMap.size();
+	}
+
+	/**
+	 * Clear the entries from the cache.
+	 */
+	public synchronized void clear() {
+		commitMap.clear();
+	}
+
+	/**
+	 * Trim the response down to just the tree SHA and the changed files that were not removed.
+	 */
+	static CommitInfoResponse trimResponse(CommitInfoResponse response) {
+		List<ChangedFile> files = new ArrayList<>();
+		if (response.getFiles() != null) {
+			for (ChangedFile file : response.getFiles()) {
+				if (!REMOVED_STATUS.equals(file.getStatus())) {
+					files.add(file);
+				}
+			}
+		}
+		return new CommitInfoResponse(response.getSha(), new Commit(new Tree(response.getTreeSha())),
+				files.toArray(new ChangedFile[files.size()]));
+	}
+
+	private synchronized CommitInfoResponse findCached(String key) {
+		CommitInfoResponse response = commitMap.get(key);
+		if (response != null) {
+			hitCount.incrementAndGet();
+		}
+		return response;
+	}
+
+	private synchronized void addToCache(String key, CommitInfoResponse response) {
+		commitMap.put(key, response);
+		Iterator<CommitInfoResponse> iterator = commitMap.values().iterator();
+		while (commitMap.size() > maxEntries && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+	}
+
+	private GithubResult<CommitInfoResponse> waitForFetch(CompletableFuture<GithubResult<CommitInfoResponse>> future)
+			throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for commit-info");
+		} catch (ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else {
+				throw new IOException("commit-info fetch failed", cause);
+			}
+		}
+	}
+
+	/**
+	 * Fetches the commit information from github when it is not in the cache.
+	 */
+	public static interface CommitFetcher {
+
+		/**
+		 * Return the commit information, or a null value on error, with the status line of the request.
+		 */
+		public GithubResult<CommitInfoResponse> fetchCommitInfo(String sha) throws IOException;
+	}
+}
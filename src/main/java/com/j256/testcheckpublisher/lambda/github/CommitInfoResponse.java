@@ -1,10 +1,13 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Response from the get commit command: https://docs.github.com/en/rest/reference/repos#get-a-commit
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.CommitInfoResponseAdapter.class)
 public class CommitInfoResponse {
 
 	private String sha;
@@ -41,6 +44,7 @@ public class CommitInfoResponse {
 		}
 	}
 
+	@JsonAdapter(GithubTypeAdapters.CommitAdapter.class)
 	public static class Commit {
 		Tree tree;
 
@@ -57,6 +61,7 @@ public class CommitInfoResponse {
 		}
 	}
 
+	@JsonAdapter(GithubTypeAdapters.TreeAdapter.class)
 	public static class Tree {
 		String sha;
 
@@ -73,6 +78,7 @@ public class CommitInfoResponse {
 		}
 	}
 
+	@JsonAdapter(GithubTypeAdapters.ChangedFileAdapter.class)
 	public static class ChangedFile {
 		String filename;
 		// added, removed, modified, renamed
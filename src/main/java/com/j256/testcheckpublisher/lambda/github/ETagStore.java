@@ -0,0 +1,127 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.apache.http.Header;
+
+/**
+ * Bounded store of GET response bodies and their ETag and Last-Modified validators so we can make conditional requests
+ * to github. Github does not count 304 Not Modified responses against our rate limit. The store is an LRU that is
+ * bounded by the number of body bytes that it holds.
+ *
+ * @author graywatson
+ */
+public class ETagStore {
+
+	private static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> entryMap = new LinkedHashMap<>(16, 0.75F, true);
+	private long bytes;
+	private long revalidatedCount;
+	private long revalidatedBytes;
+
+	public ETagStore() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	public ETagStore(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Find the entry for the key or null if none.
+	 */
+	public synchronized Entry findEntry(String key) {
+		return entryMap.get(key);
+	}
+
+	/**
+	 * Add an entry to the store if it fits.
+	 */
+	public synchronized void addEntry(String key, Entry entry) {
+		if (entry.body.length > maxBytes) {
+			return;
+		}
+		Entry prev = entryMap.put(key, entry);
+		if (prev != null) {
+			bytes -= prev.body.length;
+		}
+		bytes += entry.body.length;
+		// evict the least recently used entries until we fit
+		Iterator<Entry> iterator = entryMap.values().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			bytes -= iterator.next().body.length;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Record that github told us that the entry has not been modified so we didn't have to download it again.
+	 */
+	public synchronized void recordRevalidated(Entry entry) {
+		revalidatedCount++;
+		revalidatedBytes += entry.body.length;
+	}
+
+	/**
+	 * Number of full downloads that were saved by revalidating.
+	 */
+	public synchronized long getRevalidatedCount() {
+		return revalidatedCount;
+	}
+
+	/**
+	 * Number of body bytes that we did not have to download because of revalidation.
+	 */
+	public synchronized long getRevalidatedBytes() {
+		return revalidatedBytes;
+	}
+
+	/**
+	 * Number of body bytes in the store.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return entryMap.size();
+	}
+
+	public synchronized void clear() {
+		entryMap.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Cached response and its validators.
+	 */
+	public static class Entry {
+
+		final String etag;
+		final String lastModified;
+		final Header[] headers;
+		final byte[] body;
+
+		public Entry(String etag, String lastModified, Header[] headers, byte[] body) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.j256.testcheckpublisher.lambda.github;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 
 import org.apache.http.StatusLine;
 
@@ -44,6 +45,19 @@ public interface GithubClient {
 	 */
 	public Collection<TreeFile> requestTreeFiles(String sha) throws IOException;
 
+	/**
+	 * Return the files in a directory at the commit without recursing into sub-directories or null on error. If the
+	 * directory does not exist then an empty collection is returned.
+	 */
+	public Collection<TreeFile> requestDirectoryFiles(String sha, String directory) throws IOException;
+
+	/**
+	 * Return the files in each of the directories at the commit, mapped by directory, or null if any of the requests
+	 * failed. Directories that do not exist map to empty collections.
+	 */
+	public Map<String, Collection<TreeFile>> requestDirectoriesFiles(String sha, Collection<String> directories)
+			throws IOException;
+
 	/**
 	 * Added check information to github.
 	 * 
@@ -52,7 +66,12 @@ public interface GithubClient {
 	public boolean addCheckRun(CheckRunRequest request) throws IOException;
 
 	/**
-	 * Get the status line from the last request for logging purposes.
+	 * Get the status line from the last request made by the calling thread for logging purposes.
 	 */
 	public StatusLine getLastStatusLine();
+
+	/**
+	 * Return the last rate-limit budget that github reported for our access token or null if not known.
+	 */
+	public RateLimitScheduler.Budget getRateLimitBudget();
 }
@@ -0,0 +1,46 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import org.apache.http.StatusLine;
+
+/**
+ * Result from one of our asynchronous github calls which carries the value and the status line of the last request
+ * that was made to produce it.
+ *
+ * @author graywatson
+ */
+public class GithubResult<T> {
+
+	private final T value;
+	private final StatusLine statusLine;
+
+	public GithubResult(T value, StatusLine statusLine) {
+		this.value = value;
+		this.statusLine = statusLine;
+	}
+
+	/**
+	 * Return the value or null on error.
+	 */
+	public T getValue() {
+		return value;
+	}
+
+	/**
+	 * Status line from the last github request or null if the results came from a cache.
+	 */
+	public StatusLine getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * Returns true if there is a value and it is not false.
+	 */
+	public boolean isSuccess() {
+		return (value != null && !Boolean.FALSE.equals(value));
+	}
+
+	@Override
+	public String toString() {
+		return "value " + value + ", status " + statusLine;
+	}
+}
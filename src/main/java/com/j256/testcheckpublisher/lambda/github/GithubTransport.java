@@ -0,0 +1,299 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * HTTP transport for our github calls. It keeps a pool of connections to api.github.com that is reused across lambda
+ * invocations so we don't pay for the TLS handshake on each call. Connections that have been idle are validated before
+ * use because they may have been closed by the server while the lambda container was frozen. Every call gets connect
+ * and socket timeouts so a slow github response cannot use up the whole lambda timeout. GET responses with validators
+ * can be stored and revalidated with conditional requests.
+ *
+ * @author graywatson
+ */
+public class GithubTransport implements Closeable {
+
+	private static final String MAX_CONNECTIONS_ENV = "github_max_connections";
+	private static final String CONNECT_TIMEOUT_MILLIS_ENV = "github_connect_timeout_millis";
+	private static final String SOCKET_TIMEOUT_MILLIS_ENV = "github_socket_timeout_millis";
+	private static final String WRITE_SPACING_MILLIS_ENV = "github_write_spacing_millis";
+	private static final String MAX_RETRIES_ENV = "github_max_retries";
+
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 10000;
+	// how long we wait for a connection from the pool
+	private static final int CONNECTION_REQUEST_TIMEOUT_MILLIS = 5000;
+	// connections idle longer than this are checked before they are used, ex: after a lambda freeze/thaw
+	private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+	// github doesn't send a keep-alive header so we pick our own limit
+	private static final long MAX_KEEP_ALIVE_MILLIS = 60 * 1000;
+	private static final long MAX_IDLE_MILLIS = 60 * 1000;
+	// bodies that are known to be larger than this are streamed through to the caller instead of being stored
+	private static final long MAX_STORED_BODY_BYTES = 1024 * 1024;
+
+	private final CloseableHttpClient httpclient;
+	private final PoolingHttpClientConnectionManager connectionManager;
+	private final ETagStore etagStore = new ETagStore();
+	private final RateLimitScheduler scheduler;
+
+	/**
+	 * Create a pooled transport with the default settings.
+	 */
+	public GithubTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Create a pooled transport.
+	 *
+	 * @param maxConnections
+	 *            Maximum number of connections in the pool. These are pretty much all to the same host.
+	 * @param connectTimeoutMillis
+	 *            Timeout for making the connection.
+	 * @param socketTimeoutMillis
+	 *            Timeout waiting for data from the server.
+	 */
+	public GithubTransport(int maxConnections, int connectTimeoutMillis, int socketTimeoutMillis) {
+		this(maxConnections, connectTimeoutMillis, socketTimeoutMillis, new RateLimitScheduler());
+	}
+
+	/**
+	 * Create a pooled transport with our own rate-limit scheduler.
+	 */
+	public GithubTransport(int maxConnections, int connectTimeoutMillis, int socketTimeoutMillis,
+			RateLimitScheduler scheduler) {
+		this.scheduler = scheduler;
+		connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnections);
+		connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectTimeout(connectTimeoutMillis)
+				.setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MILLIS)
+				.setSocketTimeout(socketTimeoutMillis)
+				.build();
+		ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+			long millis = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+			if (millis <= 0 || millis > MAX_KEEP_ALIVE_MILLIS) {
+				return MAX_KEEP_ALIVE_MILLIS;
+			} else {
+				return millis;
+			}
+		};
+		httpclient = HttpClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.setKeepAliveStrategy(keepAliveStrategy)
+				.evictExpiredConnections()
+				.evictIdleConnections(MAX_IDLE_MILLIS, TimeUnit.MILLISECONDS)
+				.build();
+	}
+
+	/**
+	 * Wrap an existing client. This is mostly for testing purposes.
+	 */
+	public GithubTransport(CloseableHttpClient httpclient) {
+		// no write spacing so tests don't have to wait
+		this(httpclient, new RateLimitScheduler(0, RateLimitScheduler.DEFAULT_MAX_RETRIES,
+				RateLimitScheduler.DEFAULT_BASE_BACKOFF_MILLIS, RateLimitScheduler.DEFAULT_MAX_WAIT_MILLIS));
+	}
+
+	/**
+	 * Wrap an existing client with our own rate-limit scheduler. This is mostly for testing purposes.
+	 */
+	public GithubTransport(CloseableHttpClient httpclient, RateLimitScheduler scheduler) {
+		this.httpclient = httpclient;
+		this.connectionManager = null;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Create a pooled transport with the settings from the environment.
+	 */
+	public static GithubTransport fromEnvironment() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(
+				getIntEnv(WRITE_SPACING_MILLIS_ENV, (int) RateLimitScheduler.DEFAULT_WRITE_SPACING_MILLIS),
+				getIntEnv(MAX_RETRIES_ENV, RateLimitScheduler.DEFAULT_MAX_RETRIES),
+				RateLimitScheduler.DEFAULT_BASE_BACKOFF_MILLIS, RateLimitScheduler.DEFAULT_MAX_WAIT_MILLIS);
+		return new GithubTransport(getIntEnv(MAX_CONNECTIONS_ENV, DEFAULT_MAX_CONNECTIONS),
+				getIntEnv(CONNECT_TIMEOUT_MILLIS_ENV, DEFAULT_CONNECT_TIMEOUT_MILLIS),
+				getIntEnv(SOCKET_TIMEOUT_MILLIS_ENV, DEFAULT_SOCKET_TIMEOUT_MILLIS), scheduler);
+	}
+
+	/**
+	 * Execute the request when the rate limits allow and retry it if it was limited or github had a problem. The
+	 * caller must close the response.
+	 */
+	public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			scheduler.awaitTurn(request);
+			CloseableHttpResponse response = sendRequest(request);
+			scheduler.recordResponse(request, response);
+			long delayMillis = scheduler.findRetryDelayMillis(request, response, attempt);
+			if (delayMillis < 0) {
+				return response;
+			}
+			// drain the response so the connection can be reused for the retry
+			EntityUtils.consumeQuietly(response.getEntity());
+			response.close();
+			scheduler.sleep(delayMillis);
+		}
+	}
+
+	/**
+	 * Return the last rate-limit budget that github reported for the authorization header or null if none.
+	 */
+	public RateLimitScheduler.Budget getBudget(Header authorizationHeader) {
+		return scheduler.getBudget(authorizationHeader);
+	}
+
+	/**
+	 * Number of requests that were retried.
+	 */
+	public long getRetryCount() {
+		return scheduler.getRetryCount();
+	}
+
+	/**
+	 * Send the request once.
+	 */
+	protected CloseableHttpResponse sendRequest(HttpUriRequest request) throws IOException {
+		return httpclient.execute(request);
+	}
+
+	/**
+	 * Execute a GET request that is revalidated with the ETag or Last-Modified validators from an earlier response. If
+	 * github says that it has not been modified then a 200 response is returned with the stored headers and body. Large
+	 * bodies are not stored so they can be streamed. The caller must close the response.
+	 */
+	public CloseableHttpResponse executeConditional(HttpGet get) throws IOException {
+		Header acceptHeader = get.getFirstHeader(HttpHeaders.ACCEPT);
+		String key = get.getURI() + (acceptHeader == null ? "" : " " + acceptHeader.getValue());
+		ETagStore.Entry entry = etagStore.findEntry(key);
+		if (entry != null) {
+			if (entry.etag != null) {
+				get.setHeader(HttpHeaders.IF_NONE_MATCH, entry.etag);
+			}
+			if (entry.lastModified != null) {
+				get.setHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+			}
+		}
+
+		CloseableHttpResponse response = execute(get);
+		int statusCode = response.getStatusLine().getStatusCode();
+		if (statusCode == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+			etagStore.recordRevalidated(entry);
+			return new RevalidatedResponse(response, entry);
+		}
+		if (statusCode != HttpStatus.SC_OK || response.getEntity() == null) {
+			return response;
+		}
+		Header etagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+		Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+		HttpEntity entity = response.getEntity();
+		if ((etagHeader == null && lastModifiedHeader == null) || entity.getContentLength() > MAX_STORED_BODY_BYTES) {
+			return response;
+		}
+
+		// read in the body so we can store it
+		byte[] body = EntityUtils.toByteArray(entity);
+		ByteArrayEntity bodyEntity = new ByteArrayEntity(body);
+		bodyEntity.setContentType(entity.getContentType());
+		response.setEntity(bodyEntity);
+		etagStore.addEntry(key, new ETagStore.Entry((etagHeader == null ? null : etagHeader.getValue()),
+				(lastModifiedHeader == null ? null : lastModifiedHeader.getValue()), response.getAllHeaders(), body));
+		return response;
+	}
+
+	/**
+	 * Number of full downloads that were saved by conditional requests.
+	 */
+	public long getSavedDownloadCount() {
+		return etagStore.getRevalidatedCount();
+	}
+
+	/**
+	 * Number of body bytes that we did not have to download because of conditional requests.
+	 */
+	public long getSavedDownloadBytes() {
+		return etagStore.getRevalidatedBytes();
+	}
+
+	/**
+	 * Return the connection pool statistics or null if we are wrapping a client.
+	 */
+	public PoolStats getPoolStats() {
+		if (connectionManager == null) {
+			return null;
+		} else {
+			return connectionManager.getTotalStats();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (httpclient != null) {
+			httpclient.close();
+		}
+	}
+
+	/**
+	 * Response that we return when github says that our stored body has not been modified.
+	 */
+	private static class RevalidatedResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+		private final CloseableHttpResponse notModifiedResponse;
+
+		public RevalidatedResponse(CloseableHttpResponse notModifiedResponse, ETagStore.Entry entry) {
+			super(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK (not modified)");
+			this.notModifiedResponse = notModifiedResponse;
+			setHeaders(entry.headers);
+			// rate-limit and other headers should come from the new response
+			for (Header header : notModifiedResponse.getAllHeaders()) {
+				setHeader(header);
+			}
+			ByteArrayEntity entity = new ByteArrayEntity(entry.body);
+			entity.setContentType(getFirstHeader(HttpHeaders.CONTENT_TYPE));
+			setEntity(entity);
+		}
+
+		@Override
+		public void close() throws IOException {
+			notModifiedResponse.close();
+		}
+	}
+
+	private static int getIntEnv(String name, int defaultValue) {
+		String value = System.getenv(name);
+		if (value == null || value.length() == 0) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException nfe) {
+			return defaultValue;
+		}
+	}
+}
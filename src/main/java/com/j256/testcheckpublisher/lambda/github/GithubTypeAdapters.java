@@ -0,0 +1,1082 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.j256.testcheckpublisher.lambda.github.AsyncGithubClientImpl.CheckRunPatch;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckLevel;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.Conclusion;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.Status;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Commit;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Tree;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.Data;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.GraphqlError;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.TreeEntry;
+import com.j256.testcheckpublisher.lambda.github.InstallationResponse.Account;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Hand-written gson type adapters for the github requests and responses which are named by their @JsonAdapter
+ * annotations. They produce the same JSON as gson's reflection. The big tree and commit responses from github are
+ * read by {@link StreamingResponseParser} and not with these.
+ *
+ * @author graywatson
+ */
+class GithubTypeAdapters {
+
+	private GithubTypeAdapters() {
+		// only static classes
+	}
+
+	/**
+	 * Adapter for {@link CheckRunRequest}.
+	 */
+	static class CheckRunRequestAdapter extends TypeAdapter<CheckRunRequest> {
+
+		private final CheckRunOutputAdapter outputAdapter = new CheckRunOutputAdapter();
+
+		@Override
+		public void write(JsonWriter out, CheckRunRequest request) throws IOException {
+			if (request == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("name").value(request.name);
+			out.name("head_sha").value(request.sha);
+			if (request.output != null) {
+				out.name("output");
+				outputAdapter.write(out, request.output);
+			}
+			out.name("status").value(enumName(request.status));
+			out.name("conclusion").value(enumName(request.conclusion));
+			out.endObject();
+		}
+
+		@Override
+		public CheckRunRequest read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String name = null;
+			String sha = null;
+			CheckRunOutput output = null;
+			Status status = null;
+			Conclusion conclusion = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "name":
+						name = GsonUtils.readString(in);
+						break;
+					case "head_sha":
+						sha = GsonUtils.readString(in);
+						break;
+					case "output":
+						output = outputAdapter.read(in);
+						break;
+					case "status":
+						status = enumValue(Status.values(), GsonUtils.readString(in));
+						break;
+					case "conclusion":
+						conclusion = enumValue(Conclusion.values(), GsonUtils.readString(in));
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new CheckRunRequest(name, sha, output, status, conclusion);
+		}
+	}
+
+	/**
+	 * Adapter for {@link CheckRunOutput}. The counts are transient.
+	 */
+	static class CheckRunOutputAdapter extends TypeAdapter<CheckRunOutput> {
+
+		private final CheckRunAnnotationAdapter annotationAdapter = new CheckRunAnnotationAdapter();
+
+		@Override
+		public void write(JsonWriter out, CheckRunOutput output) throws IOException {
+			if (output == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("title").value(output.title);
+			out.name("summary").value(output.summary);
+			out.name("text").value(output.text);
+			if (output.annotations != null) {
+				out.name("annotations");
+				out.beginArray();
+				for (CheckRunAnnotation annotation : output.annotations) {
+					annotationAdapter.write(out, annotation);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public CheckRunOutput read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			// same defaults as the fields
+			CheckRunOutput output = new CheckRunOutput();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "title":
+						output.title = GsonUtils.readString(in);
+						break;
+					case "summary":
+						output.summary = GsonUtils.readString(in);
+						break;
+					case "text":
+						output.text = GsonUtils.readString(in);
+						break;
+					case "annotations":
+						if (GsonUtils.skipNull(in)) {
+							output.annotations = null;
+							break;
+						}
+						output.annotations = new ArrayList<>();
+						in.beginArray();
+						while (in.hasNext()) {
+							output.annotations.add(annotationAdapter.read(in));
+						}
+						in.endArray();
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return output;
+		}
+	}
+
+	/**
+	 * Adapter for {@link CheckRunAnnotation}.
+	 */
+	static class CheckRunAnnotationAdapter extends TypeAdapter<CheckRunAnnotation> {
+
+		@Override
+		public void write(JsonWriter out, CheckRunAnnotation annotation) throws IOException {
+			if (annotation == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("path").value(annotation.path);
+			out.name("start_line").value(annotation.startLine);
+			out.name("end_line").value(annotation.endLine);
+			out.name("start_column").value(annotation.startColumn);
+			out.name("end_column").value(annotation.endColumn);
+			out.name("annotation_level").value(checkLevelName(annotation.level));
+			out.name("title").value(annotation.title);
+			out.name("message").value(annotation.message);
+			out.name("raw_details").value(annotation.details);
+			out.endObject();
+		}
+
+		@Override
+		public CheckRunAnnotation read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			CheckRunAnnotation annotation = new CheckRunAnnotation(null, 0, 0, null, null, null, null);
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "path":
+						annotation.path = GsonUtils.readString(in);
+						break;
+					case "start_line":
+						annotation.startLine = GsonUtils.readInt(in, annotation.startLine);
+						break;
+					case "end_line":
+						annotation.endLine = GsonUtils.readInt(in, annotation.endLine);
+						break;
+					case "start_column":
+						annotation.startColumn = GsonUtils.readInt(in, annotation.startColumn);
+						break;
+					case "end_column":
+						annotation.endColumn = GsonUtils.readInt(in, annotation.endColumn);
+						break;
+					case "annotation_level":
+						annotation.level = readCheckLevel(GsonUtils.readString(in));
+						break;
+					case "title":
+						annotation.title = GsonUtils.readString(in);
+						break;
+					case "message":
+						annotation.message = GsonUtils.readString(in);
+						break;
+					case "raw_details":
+						annotation.details = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return annotation;
+		}
+
+		/**
+		 * Errors are posted to github as failures.
+		 */
+		private static String checkLevelName(CheckLevel level) {
+			if (level == CheckLevel.ERROR) {
+				return enumName(CheckLevel.FAILURE);
+			} else {
+				return enumName(level);
+			}
+		}
+
+		private static CheckLevel readCheckLevel(String name) {
+			// like gson, the last level with the name wins
+			if (enumName(CheckLevel.ERROR).equals(name)) {
+				return CheckLevel.ERROR;
+			} else {
+				return enumValue(CheckLevel.values(), name);
+			}
+		}
+	}
+
+	/**
+	 * Adapter for {@link TreeInfoResponse}.
+	 */
+	static class TreeInfoResponseAdapter extends TypeAdapter<TreeInfoResponse> {
+
+		private final TreeFileAdapter treeFileAdapter = new TreeFileAdapter();
+
+		@Override
+		public void write(JsonWriter out, TreeInfoResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("sha").value(response.getSha());
+			if (response.getTreeFiles() != null) {
+				out.name("tree");
+				out.beginArray();
+				for (TreeFile treeFile : response.getTreeFiles()) {
+					treeFileAdapter.write(out, treeFile);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public TreeInfoResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String sha = null;
+			TreeFile[] treeFiles = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "sha":
+						sha = GsonUtils.readString(in);
+						break;
+					case "tree":
+						if (GsonUtils.skipNull(in)) {
+							treeFiles = null;
+							break;
+						}
+						List<TreeFile> treeFileList = new ArrayList<>();
+						in.beginArray();
+						while (in.hasNext()) {
+							treeFileList.add(treeFileAdapter.read(in));
+						}
+						in.endArray();
+						treeFiles = treeFileList.toArray(new TreeFile[treeFileList.size()]);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new TreeInfoResponse(sha, treeFiles);
+		}
+	}
+
+	/**
+	 * Adapter for {@link TreeFile}.
+	 */
+	static class TreeFileAdapter extends TypeAdapter<TreeFile> {
+
+		@Override
+		public void write(JsonWriter out, TreeFile treeFile) throws IOException {
+			if (treeFile == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("path").value(treeFile.getPath());
+			out.name("type").value(treeFile.getType());
+			out.name("sha").value(treeFile.getSha());
+			out.endObject();
+		}
+
+		@Override
+		public TreeFile read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String path = null;
+			String type = null;
+			String sha = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "path":
+						path = GsonUtils.readString(in);
+						break;
+					case "type":
+						type = GsonUtils.readString(in);
+						break;
+					case "sha":
+						sha = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new TreeFile(path, type, sha);
+		}
+	}
+
+	/**
+	 * Adapter for {@link CommitInfoResponse}.
+	 */
+	static class CommitInfoResponseAdapter extends TypeAdapter<CommitInfoResponse> {
+
+		private final CommitAdapter commitAdapter = new CommitAdapter();
+		private final ChangedFileAdapter changedFileAdapter = new ChangedFileAdapter();
+
+		@Override
+		public void write(JsonWriter out, CommitInfoResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("sha").value(response.getSha());
+			if (response.getCommit() != null) {
+				out.name("commit");
+				commitAdapter.write(out, response.getCommit());
+			}
+			if (response.getFiles() != null) {
+				out.name("files");
+				out.beginArray();
+				for (ChangedFile changedFile : response.getFiles()) {
+					changedFileAdapter.write(out, changedFile);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public CommitInfoResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String sha = null;
+			Commit commit = null;
+			ChangedFile[] files = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "sha":
+						sha = GsonUtils.readString(in);
+						break;
+					case "commit":
+						commit = commitAdapter.read(in);
+						break;
+					case "files":
+						if (GsonUtils.skipNull(in)) {
+							files = null;
+							break;
+						}
+						List<ChangedFile> fileList = new ArrayList<>();
+						in.beginArray();
+						while (in.hasNext()) {
+							fileList.add(changedFileAdapter.read(in));
+						}
+						in.endArray();
+						files = fileList.toArray(new ChangedFile[fileList.size()]);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new CommitInfoResponse(sha, commit, files);
+		}
+	}
+
+	/**
+	 * Adapter for {@link Commit}.
+	 */
+	static class CommitAdapter extends TypeAdapter<Commit> {
+
+		private final TreeAdapter treeAdapter = new TreeAdapter();
+
+		@Override
+		public void write(JsonWriter out, Commit commit) throws IOException {
+			if (commit == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			if (commit.tree != null) {
+				out.name("tree");
+				treeAdapter.write(out, commit.tree);
+			}
+			out.endObject();
+		}
+
+		@Override
+		public Commit read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			Tree tree = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (in.nextName().equals("tree")) {
+					tree = treeAdapter.read(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return new Commit(tree);
+		}
+	}
+
+	/**
+	 * Adapter for {@link Tree}.
+	 */
+	static class TreeAdapter extends TypeAdapter<Tree> {
+
+		@Override
+		public void write(JsonWriter out, Tree tree) throws IOException {
+			if (tree == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("sha").value(tree.sha);
+			out.endObject();
+		}
+
+		@Override
+		public Tree read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String sha = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (in.nextName().equals("sha")) {
+					sha = GsonUtils.readString(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return new Tree(sha);
+		}
+	}
+
+	/**
+	 * Adapter for {@link ChangedFile}.
+	 */
+	static class ChangedFileAdapter extends TypeAdapter<ChangedFile> {
+
+		@Override
+		public void write(JsonWriter out, ChangedFile changedFile) throws IOException {
+			if (changedFile == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("filename").value(changedFile.filename);
+			out.name("status").value(changedFile.status);
+			out.endObject();
+		}
+
+		@Override
+		public ChangedFile read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String filename = null;
+			String status = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "filename":
+						filename = GsonUtils.readString(in);
+						break;
+					case "status":
+						status = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new ChangedFile(filename, status);
+		}
+	}
+
+	/**
+	 * Adapter for the check-run patch which only has the output.
+	 */
+	static class CheckRunPatchAdapter extends TypeAdapter<CheckRunPatch> {
+
+		private final CheckRunOutputAdapter outputAdapter = new CheckRunOutputAdapter();
+
+		@Override
+		public void write(JsonWriter out, CheckRunPatch patch) throws IOException {
+			if (patch == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			if (patch.output != null) {
+				out.name("output");
+				outputAdapter.write(out, patch.output);
+			}
+			out.endObject();
+		}
+
+		@Override
+		public CheckRunPatch read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			CheckRunOutput output = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (in.nextName().equals("output")) {
+					output = outputAdapter.read(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return new CheckRunPatch(output);
+		}
+	}
+
+	/**
+	 * Adapter for {@link AccessTokenRequest}.
+	 */
+	static class AccessTokenRequestAdapter extends TypeAdapter<AccessTokenRequest> {
+
+		@Override
+		public void write(JsonWriter out, AccessTokenRequest request) throws IOException {
+			if (request == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("installation_id").value(request.getInstallationId());
+			if (request.getRepositories() != null) {
+				out.name("repositories");
+				out.beginArray();
+				for (String repository : request.getRepositories()) {
+					out.value(repository);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public AccessTokenRequest read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			int installationId = 0;
+			String[] repositories = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "installation_id":
+						installationId = GsonUtils.readInt(in, installationId);
+						break;
+					case "repositories":
+						repositories = readStringArray(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new AccessTokenRequest(installationId, repositories);
+		}
+	}
+
+	/**
+	 * Adapter for {@link AccessTokenResponse}.
+	 */
+	static class AccessTokenResponseAdapter extends TypeAdapter<AccessTokenResponse> {
+
+		@Override
+		public void write(JsonWriter out, AccessTokenResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("token").value(response.getToken());
+			out.name("expires_at").value(response.getExpiresAt());
+			out.endObject();
+		}
+
+		@Override
+		public AccessTokenResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			AccessTokenResponse response = new AccessTokenResponse();
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "token":
+						response.setToken(GsonUtils.readString(in));
+						break;
+					case "expires_at":
+						response.setExpiresAt(GsonUtils.readString(in));
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return response;
+		}
+	}
+
+	/**
+	 * Adapter for {@link IdResponse}.
+	 */
+	static class IdResponseAdapter extends TypeAdapter<IdResponse> {
+
+		@Override
+		public void write(JsonWriter out, IdResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("id").value(response.getId());
+			out.endObject();
+		}
+
+		@Override
+		public IdResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			IdResponse response = new IdResponse();
+			in.beginObject();
+			while (in.hasNext()) {
+				if (in.nextName().equals("id")) {
+					response.setId(GsonUtils.readInt(in, response.getId()));
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return response;
+		}
+	}
+
+	/**
+	 * Adapter for {@link InstallationResponse}.
+	 */
+	static class InstallationResponseAdapter extends TypeAdapter<InstallationResponse> {
+
+		private final AccountAdapter accountAdapter = new AccountAdapter();
+
+		@Override
+		public void write(JsonWriter out, InstallationResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("id").value(response.getId());
+			if (response.getAccount() != null) {
+				out.name("account");
+				accountAdapter.write(out, response.getAccount());
+			}
+			out.name("repository_selection").value(response.getRepositorySelection());
+			out.endObject();
+		}
+
+		@Override
+		public InstallationResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			int id = 0;
+			Account account = null;
+			String repositorySelection = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "id":
+						id = GsonUtils.readInt(in, id);
+						break;
+					case "account":
+						account = accountAdapter.read(in);
+						break;
+					case "repository_selection":
+						repositorySelection = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new InstallationResponse(id, account, repositorySelection);
+		}
+	}
+
+	/**
+	 * Adapter for {@link Account}.
+	 */
+	static class AccountAdapter extends TypeAdapter<Account> {
+
+		@Override
+		public void write(JsonWriter out, Account account) throws IOException {
+			if (account == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("login").value(account.getOwner());
+			out.endObject();
+		}
+
+		@Override
+		public Account read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String owner = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (in.nextName().equals("login")) {
+					owner = GsonUtils.readString(in);
+				} else {
+					in.skipValue();
+				}
+			}
+			in.endObject();
+			return new Account(owner);
+		}
+	}
+
+	/**
+	 * Adapter for {@link GraphqlTreesResponse} which also handles its data and errors.
+	 */
+	static class GraphqlTreesResponseAdapter extends TypeAdapter<GraphqlTreesResponse> {
+
+		private final GraphqlTreeAdapter treeAdapter = new GraphqlTreeAdapter();
+
+		@Override
+		public void write(JsonWriter out, GraphqlTreesResponse response) throws IOException {
+			if (response == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			if (response.getData() != null) {
+				out.name("data");
+				writeData(out, response.getData());
+			}
+			if (response.getErrors() != null) {
+				out.name("errors");
+				out.beginArray();
+				for (GraphqlError error : response.getErrors()) {
+					if (error == null) {
+						out.nullValue();
+					} else {
+						out.beginObject();
+						out.name("message").value(error.message);
+						out.endObject();
+					}
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public GraphqlTreesResponse read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			Data data = null;
+			GraphqlError[] errors = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "data":
+						data = readData(in);
+						break;
+					case "errors":
+						errors = readErrors(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new GraphqlTreesResponse(data, errors);
+		}
+
+		private void writeData(JsonWriter out, Data data) throws IOException {
+			out.beginObject();
+			if (data.repository != null) {
+				out.name("repository");
+				out.beginObject();
+				for (Map.Entry<String, GraphqlTreesResponse.Tree> entry : data.repository.entrySet()) {
+					// a missing tree is dropped like gson's map adapter does
+					out.name(entry.getKey());
+					treeAdapter.write(out, entry.getValue());
+				}
+				out.endObject();
+			}
+			out.endObject();
+		}
+
+		private Data readData(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			Map<String, GraphqlTreesResponse.Tree> repository = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (!in.nextName().equals("repository")) {
+					in.skipValue();
+				} else if (GsonUtils.skipNull(in)) {
+					repository = null;
+				} else {
+					// the aliases of paths that don't exist have null trees
+					repository = new LinkedHashMap<>();
+					in.beginObject();
+					while (in.hasNext()) {
+						String alias = in.nextName();
+						if (repository.put(alias, treeAdapter.read(in)) != null) {
+							throw new JsonSyntaxException("duplicate key: " + alias);
+						}
+					}
+					in.endObject();
+				}
+			}
+			in.endObject();
+			return new Data(repository);
+		}
+
+		private static GraphqlError[] readErrors(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			List<GraphqlError> errors = new ArrayList<>();
+			in.beginArray();
+			while (in.hasNext()) {
+				if (GsonUtils.skipNull(in)) {
+					errors.add(null);
+					continue;
+				}
+				String message = null;
+				in.beginObject();
+				while (in.hasNext()) {
+					if (in.nextName().equals("message")) {
+						message = GsonUtils.readString(in);
+					} else {
+						in.skipValue();
+					}
+				}
+				in.endObject();
+				errors.add(new GraphqlError(message));
+			}
+			in.endArray();
+			return errors.toArray(new GraphqlError[errors.size()]);
+		}
+	}
+
+	/**
+	 * Adapter for {@link GraphqlTreesResponse.Tree}.
+	 */
+	static class GraphqlTreeAdapter extends TypeAdapter<GraphqlTreesResponse.Tree> {
+
+		private final TreeEntryAdapter treeEntryAdapter = new TreeEntryAdapter();
+
+		@Override
+		public void write(JsonWriter out, GraphqlTreesResponse.Tree tree) throws IOException {
+			if (tree == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			if (tree.getEntries() != null) {
+				out.name("entries");
+				out.beginArray();
+				for (TreeEntry entry : tree.getEntries()) {
+					treeEntryAdapter.write(out, entry);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		public GraphqlTreesResponse.Tree read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			TreeEntry[] entries = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				if (!in.nextName().equals("entries")) {
+					in.skipValue();
+				} else if (GsonUtils.skipNull(in)) {
+					entries = null;
+				} else {
+					List<TreeEntry> entryList = new ArrayList<>();
+					in.beginArray();
+					while (in.hasNext()) {
+						entryList.add(treeEntryAdapter.read(in));
+					}
+					in.endArray();
+					entries = entryList.toArray(new TreeEntry[entryList.size()]);
+				}
+			}
+			in.endObject();
+			return new GraphqlTreesResponse.Tree(entries);
+		}
+	}
+
+	/**
+	 * Adapter for {@link TreeEntry}.
+	 */
+	static class TreeEntryAdapter extends TypeAdapter<TreeEntry> {
+
+		@Override
+		public void write(JsonWriter out, TreeEntry entry) throws IOException {
+			if (entry == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("name").value(entry.getName());
+			out.name("type").value(entry.getType());
+			out.endObject();
+		}
+
+		@Override
+		public TreeEntry read(JsonReader in) throws IOException {
+			if (GsonUtils.skipNull(in)) {
+				return null;
+			}
+			String name = null;
+			String type = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "name":
+						name = GsonUtils.readString(in);
+						break;
+					case "type":
+						type = GsonUtils.readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new TreeEntry(name, type);
+		}
+	}
+
+	private static String[] readStringArray(JsonReader in) throws IOException {
+		if (GsonUtils.skipNull(in)) {
+			return null;
+		}
+		List<String> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(GsonUtils.readString(in));
+		}
+		in.endArray();
+		return values.toArray(new String[values.size()]);
+	}
+
+	/**
+	 * Our enums are serialized to github as their lower-case names.
+	 */
+	private static String enumName(Enum<?> value) {
+		if (value == null) {
+			return null;
+		} else {
+			return value.name().toLowerCase(Locale.ENGLISH);
+		}
+	}
+
+	/**
+	 * Return the enum whose lower-case name matches or null if none.
+	 */
+	private static <E extends Enum<E>> E enumValue(E[] values, String name) {
+		if (name == null) {
+			return null;
+		}
+		for (E value : values) {
+			if (enumName(value).equals(name)) {
+				return value;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,266 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.Tree;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.TreeEntry;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Github client which gets the directories that we need to resolve the test paths with one GraphQL query instead of a
+ * REST request per directory. Everything else goes through the REST client that it wraps, including the changed files
+ * of the commit which GraphQL does not expose.
+ * 
+ * @author graywatson
+ */
+public class GraphqlGithubClient implements GithubClient {
+
+	private static final String GRAPHQL_URL_ENV = "github_graphql_url";
+	private static final String DEFAULT_GRAPHQL_URL = "https://api.github.com/graphql";
+	private static final String TREE_TYPE = "tree";
+	private static String graphqlUrl;
+
+	private static final Logger logger = LoggerFactory.getLogger(GraphqlGithubClient.class);
+
+	private final GithubClientImpl restClient;
+	private final GithubTransport transport;
+	private final String label;
+	private final Gson gson = GsonUtils.getGson();
+	private volatile String owner;
+	private volatile String repository;
+	// per-thread because the upload makes some of its requests in parallel
+	private final ThreadLocal<StatusLine> lastStatusLine = new ThreadLocal<>();
+
+	static {
+		graphqlUrl = System.getenv(GRAPHQL_URL_ENV);
+		if (graphqlUrl == null || graphqlUrl.length() == 0) {
+			graphqlUrl = DEFAULT_GRAPHQL_URL;
+		}
+	}
+
+	private GraphqlGithubClient(GithubClientImpl restClient, GithubTransport transport, String label) {
+		this.restClient = restClient;
+		this.transport = transport;
+		this.label = label;
+	}
+
+	/**
+	 * Create a client that uses a shared transport and directory of installations.
+	 */
+	public static GraphqlGithubClient createClient(GithubTransport transport,
+			InstallationDirectory installationDirectory, PrivateKey applicationKey, String label) {
+		GithubClientImpl restClient = GithubClientImpl.createClient(transport, installationDirectory, applicationKey,
+				label);
+		if (restClient == null) {
+			// already logged
+			return null;
+		} else {
+			return new GraphqlGithubClient(restClient, transport, label);
+		}
+	}
+
+	@Override
+	public String findInstallationOwner(int installationId) throws IOException {
+		String owner = restClient.findInstallationOwner(installationId);
+		lastStatusLine.set(restClient.getLastStatusLine());
+		return owner;
+	}
+
+	@Override
+	public boolean login(String owner, String repository) throws IOException {
+		boolean success = restClient.login(owner, repository);
+		lastStatusLine.set(restClient.getLastStatusLine());
+		if (success) {
+			this.owner = owner;
+			this.repository = repository;
+		}
+		return success;
+	}
+
+	@Override
+	public int getInstallationId() throws IOException {
+		return restClient.getInstallationId();
+	}
+
+	@Override
+	public CommitInfoResponse requestCommitInfo(String topSha)
+			throws JsonSyntaxException, UnsupportedOperationException, IOException {
+		CommitInfoResponse response = restClient.requestCommitInfo(topSha);
+		lastStatusLine.set(restClient.getLastStatusLine());
+		return response;
+	}
+
+	@Override
+	public Collection<TreeFile> requestTreeFiles(String sha) throws IOException {
+		// a full tree is a single REST request already
+		Collection<TreeFile> files = restClient.requestTreeFiles(sha);
+		lastStatusLine.set(restClient.getLastStatusLine());
+		return files;
+	}
+
+	@Override
+	public Collection<TreeFile> requestDirectoryFiles(String sha, String directory) throws IOException {
+		Map<String, Collection<TreeFile>> filesMap = requestDirectoriesFiles(sha, Collections.singletonList(directory));
+		if (filesMap == null) {
+			return null;
+		} else {
+			return filesMap.get(directory);
+		}
+	}
+
+	@Override
+	public Map<String, Collection<TreeFile>> requestDirectoriesFiles(String sha, Collection<String> directories)
+			throws IOException {
+
+		if (owner == null) {
+			logger.error(repository + ": graphql directories request not logged in");
+			return null;
+		}
+		if (directories.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		Header tokenHeader = restClient.findAccessTokenHeader();
+		if (tokenHeader == null) {
+			// already logged
+			lastStatusLine.set(restClient.getLastStatusLine());
+			return null;
+		}
+
+		List<String> directoryList = new ArrayList<>(directories);
+		HttpPost post = new HttpPost(graphqlUrl);
+		post.addHeader(tokenHeader);
+		post.setEntity(new StringEntity(buildTreesQuery(owner, repository, sha, directoryList),
+				ContentType.APPLICATION_JSON));
+
+		try (CloseableHttpResponse response = transport.execute(post);
+				Reader reader = new InputStreamReader(response.getEntity().getContent());) {
+
+			StatusLine statusLine = response.getStatusLine();
+			lastStatusLine.set(statusLine);
+			if (statusLine.getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+				restClient.invalidateAccessToken();
+			}
+			if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
+				logger.error(label + ": graphql directories request failed: " + statusLine);
+				return null;
+			}
+
+			GraphqlTreesResponse treesResponse;
+			try {
+				treesResponse = gson.fromJson(reader, GraphqlTreesResponse.class);
+			} catch (JsonParseException jpe) {
+				logger.error(jpe, label + ": graphql directories request json parse threw");
+				return null;
+			}
+			// errors come back with a 200 so we need to look for them
+			if (treesResponse == null || !treesResponse.hasRepository()) {
+				logger.error(label + ": graphql directories request returned no repository: "
+						+ (treesResponse == null ? null : treesResponse.getErrorMessages()));
+				return null;
+			}
+
+			Map<String, Collection<TreeFile>> filesMap = new LinkedHashMap<>();
+			for (int i = 0; i < directoryList.size(); i++) {
+				String directory = directoryList.get(i);
+				filesMap.put(directory, toTreeFiles(directory, treesResponse.findTree("d" + i)));
+			}
+			return filesMap;
+		}
+	}
+
+	@Override
+	public boolean addCheckRun(CheckRunRequest request) throws IOException {
+		boolean success = restClient.addCheckRun(request);
+		lastStatusLine.set(restClient.getLastStatusLine());
+		return success;
+	}
+
+	@Override
+	public StatusLine getLastStatusLine() {
+		return lastStatusLine.get();
+	}
+
+	@Override
+	public RateLimitScheduler.Budget getRateLimitBudget() {
+		return restClient.getRateLimitBudget();
+	}
+
+	/**
+	 * For testing purposes.
+	 */
+	public static void setGraphqlUrl(String graphqlUrl) {
+		GraphqlGithubClient.graphqlUrl = graphqlUrl;
+	}
+
+	/**
+	 * Build the body of the query which gets the entries of each of the directories at the commit. The trees are
+	 * aliased d0, d1, ... and their expressions (sha:path) are passed as variables so we don't have to escape the paths.
+	 */
+	static String buildTreesQuery(String owner, String repository, String sha, List<String> directories) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("query($owner: String!, $name: String!");
+		for (int i = 0; i < directories.size(); i++) {
+			sb.append(", $e").append(i).append(": String!");
+		}
+		sb.append(") { repository(owner: $owner, name: $name) {");
+		for (int i = 0; i < directories.size(); i++) {
+			sb.append(" d").append(i).append(": object(expression: $e").append(i);
+			sb.append(") { ... on Tree { entries { name type } } }");
+		}
+		sb.append(" } }");
+
+		JsonObject variables = new JsonObject();
+		variables.addProperty("owner", owner);
+		variables.addProperty("name", repository);
+		for (int i = 0; i < directories.size(); i++) {
+			variables.addProperty("e" + i, sha + ":" + directories.get(i));
+		}
+		JsonObject body = new JsonObject();
+		body.addProperty("query", sb.toString());
+		body.add("variables", variables);
+		return body.toString();
+	}
+
+	/**
+	 * Convert the tree entries into files with paths from the root. Sub-directories are skipped like in
+	 * {@link StreamingResponseParser#parseDirectoryFiles}.
+	 */
+	private static List<TreeFile> toTreeFiles(String directory, Tree tree) {
+		if (tree == null || tree.getEntries() == null) {
+			// directory does not exist or is a file
+			return Collections.emptyList();
+		}
+		String prefix = (directory.isEmpty() ? "" : directory + "/");
+		List<TreeFile> files = new ArrayList<>(tree.getEntries().length);
+		for (TreeEntry entry : tree.getEntries()) {
+			if (entry.getName() == null || TREE_TYPE.equals(entry.getType())) {
+				continue;
+			}
+			files.add(new TreeFile(prefix + entry.getName(), entry.getType(), null));
+		}
+		return files;
+	}
+}
@@ -0,0 +1,125 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.Map;
+
+import com.google.gson.annotations.JsonAdapter;
+
+/**
+ * Response from our GraphQL query for the entries of a number of trees. The trees are aliased d0, d1, ... under the
+ * repository so they show up as a map: https://docs.github.com/en/graphql/reference/objects#tree
+ * 
+ * @author graywatson
+ */
+@JsonAdapter(GithubTypeAdapters.GraphqlTreesResponseAdapter.class)
+public class GraphqlTreesResponse {
+
+	private final Data data;
+	private final GraphqlError[] errors;
+
+	public GraphqlTreesResponse(Data data, GraphqlError[] errors) {
+		this.data = data;
+		this.errors = errors;
+	}
+
+	/**
+	 * Return the tree with the alias or null if it does not exist or is not a tree.
+	 */
+	public Tree findTree(String alias) {
+		if (data == null || data.repository == null) {
+			return null;
+		} else {
+			return data.repository.get(alias);
+		}
+	}
+
+	/**
+	 * Return true if the repository was in the response.
+	 */
+	public boolean hasRepository() {
+		return (data != null && data.repository != null);
+	}
+
+	/**
+	 * Return the error messages from github or null if none.
+	 */
+	public String getErrorMessages() {
+		if (errors == null || errors.length == 0) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (GraphqlError error : errors) {
+			if (sb.length() > 0) {
+				sb.append(", ");
+			}
+			sb.append(error.message);
+		}
+		return sb.toString();
+	}
+
+	Data getData() {
+		return data;
+	}
+
+	GraphqlError[] getErrors() {
+		return errors;
+	}
+
+	static class Data {
+		final Map<String, Tree> repository;
+
+		Data(Map<String, Tree> repository) {
+			this.repository = repository;
+		}
+	}
+
+	/**
+	 * Tree from the response.
+	 */
+	@JsonAdapter(GithubTypeAdapters.GraphqlTreeAdapter.class)
+	public static class Tree {
+
+		private final TreeEntry[] entries;
+
+		public Tree(TreeEntry[] entries) {
+			this.entries = entries;
+		}
+
+		public TreeEntry[] getEntries() {
+			return entries;
+		}
+	}
+
+	/**
+	 * Entry in a tree.
+	 */
+	@JsonAdapter(GithubTypeAdapters.TreeEntryAdapter.class)
+	public static class TreeEntry {
+
+		private final String name;
+		private final String type;
+
+		public TreeEntry(String name, String type) {
+			this.name = name;
+			this.type = type;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * The type which is blob, tree, or commit for submodules.
+		 */
+		public String getType() {
+			return type;
+		}
+	}
+
+	static class GraphqlError {
+		final String message;
+
+		GraphqlError(String message) {
+			this.message = message;
+		}
+	}
+}
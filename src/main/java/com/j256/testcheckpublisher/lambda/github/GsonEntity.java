@@ -0,0 +1,108 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+
+/**
+ * Request entity which writes an object as UTF-8 JSON straight to the connection instead of building a String and then
+ * a copy of its bytes. The object is serialized again each time it is written so the entity can be retried.
+ * 
+ * @author graywatson
+ */
+public class GsonEntity extends AbstractHttpEntity {
+
+	private final Gson gson;
+	private final Object value;
+	private long contentLength = -1;
+
+	public GsonEntity(Gson gson, Object value) {
+		this.gson = gson;
+		this.value = value;
+		setContentType(ContentType.APPLICATION_JSON.toString());
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * Returns the length of the JSON in bytes. The first call serializes the object to count the bytes without keeping
+	 * them so we can send a Content-Length instead of chunking.
+	 */
+	@Override
+	public long getContentLength() {
+		if (contentLength < 0) {
+			CountingOutputStream countingStream = new CountingOutputStream();
+			try {
+				writeTo(countingStream);
+				contentLength = countingStream.count;
+			} catch (IOException ioe) {
+				// shouldn't happen but we can always chunk it
+				return -1;
+			}
+		}
+		return contentLength;
+	}
+
+	/**
+	 * Returns the JSON in a stream. This makes a copy so it is only for logging and the like.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		writeTo(baos);
+		return new ByteArrayInputStream(baos.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		// not closed because the caller owns the stream
+		Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
+		try {
+			gson.toJson(value, writer);
+		} catch (JsonIOException jioe) {
+			// gson wraps the stream's exceptions so unwrap them for our callers
+			if (jioe.getCause() instanceof IOException) {
+				throw (IOException) jioe.getCause();
+			}
+			throw jioe;
+		}
+		writer.flush();
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Output stream which just counts the bytes.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			count += length;
+		}
+	}
+}
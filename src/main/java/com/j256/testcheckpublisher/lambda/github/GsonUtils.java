@@ -0,0 +1,428 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.FrameworkTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult.TestLevel;
+
+/**
+ * The gson instance that is shared by the handler and the github clients along with the helpers for our hand-written
+ * type adapters. Our own request and response classes name their adapters with @JsonAdapter so gson doesn't bind them
+ * through reflection. The published results come from the plugin so their adapters are registered here. The helpers
+ * read values the same way that gson's reflection does so the results are the same: nulls are skipped for primitives,
+ * numbers and booleans can be strings, and unknown fields are ignored.
+ *
+ * @author graywatson
+ */
+public class GsonUtils {
+
+	private static final Gson gson = new GsonBuilder() //
+			.registerTypeAdapter(PublishedTestResults.class, new PublishedTestResultsAdapter()) //
+			.registerTypeAdapter(FrameworkTestResults.class, new FrameworkTestResultsAdapter()) //
+			.registerTypeAdapter(TestFileResult.class, new TestFileResultAdapter()) //
+			.create();
+
+	private GsonUtils() {
+		// only static methods
+	}
+
+	/**
+	 * Return the shared gson instance. It is thread-safe.
+	 */
+	public static Gson getGson() {
+		return gson;
+	}
+
+	/**
+	 * Read a string which may be null, a number, or a boolean.
+	 */
+	public static String readString(JsonReader in) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		} else if (token == JsonToken.BOOLEAN) {
+			return Boolean.toString(in.nextBoolean());
+		} else {
+			return in.nextString();
+		}
+	}
+
+	/**
+	 * Read an integer returning the default if it is null.
+	 */
+	public static int readInt(JsonReader in, int defaultValue) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		}
+		try {
+			return in.nextInt();
+		} catch (NumberFormatException nfe) {
+			throw new JsonSyntaxException(nfe);
+		}
+	}
+
+	/**
+	 * Read a long returning the default if it is null.
+	 */
+	public static long readLong(JsonReader in, long defaultValue) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		}
+		try {
+			return in.nextLong();
+		} catch (NumberFormatException nfe) {
+			throw new JsonSyntaxException(nfe);
+		}
+	}
+
+	/**
+	 * Read a float returning the default if it is null.
+	 */
+	public static float readFloat(JsonReader in, float defaultValue) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		}
+		try {
+			return (float) in.nextDouble();
+		} catch (NumberFormatException nfe) {
+			throw new JsonSyntaxException(nfe);
+		}
+	}
+
+	/**
+	 * Read a boolean, which may be a string, returning the default if it is null.
+	 */
+	public static boolean readBoolean(JsonReader in, boolean defaultValue) throws IOException {
+		JsonToken token = in.peek();
+		if (token == JsonToken.NULL) {
+			in.nextNull();
+			return defaultValue;
+		} else if (token == JsonToken.STRING) {
+			return Boolean.parseBoolean(in.nextString());
+		} else {
+			return in.nextBoolean();
+		}
+	}
+
+	/**
+	 * Read a map of strings. Returns null if it is null.
+	 */
+	public static Map<String, String> readStringMap(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return null;
+		}
+		Map<String, String> map = new LinkedHashMap<>();
+		in.beginObject();
+		while (in.hasNext()) {
+			String key = in.nextName();
+			if (map.put(key, readString(in)) != null) {
+				throw new JsonSyntaxException("duplicate key: " + key);
+			}
+		}
+		in.endObject();
+		return map;
+	}
+
+	/**
+	 * Write a map of strings.
+	 */
+	public static void writeStringMap(JsonWriter out, Map<String, String> map) throws IOException {
+		if (map == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			out.name(entry.getKey()).value(entry.getValue());
+		}
+		out.endObject();
+	}
+
+	/**
+	 * Skip over a null and return true if the next value is null.
+	 */
+	public static boolean skipNull(JsonReader in) throws IOException {
+		if (in.peek() == JsonToken.NULL) {
+			in.nextNull();
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Adapter for the results posted by the plugin.
+	 */
+	private static class PublishedTestResultsAdapter extends TypeAdapter<PublishedTestResults> {
+
+		private final FrameworkTestResultsAdapter frameworkAdapter = new FrameworkTestResultsAdapter();
+
+		@Override
+		public void write(JsonWriter out, PublishedTestResults results) throws IOException {
+			if (results == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("magic").value(results.getMagic());
+			out.name("owner").value(results.getOwner());
+			out.name("repository").value(results.getRepository());
+			out.name("commitSha").value(results.getCommitSha());
+			out.name("secret").value(results.getSecret());
+			out.name("format").value(results.getFormat());
+			if (results.getResults() != null) {
+				out.name("results");
+				frameworkAdapter.write(out, results.getResults());
+			}
+			out.endObject();
+		}
+
+		@Override
+		public PublishedTestResults read(JsonReader in) throws IOException {
+			if (skipNull(in)) {
+				return null;
+			}
+			long magic = 0;
+			String owner = null;
+			String repository = null;
+			String commitSha = null;
+			String secret = null;
+			String format = null;
+			FrameworkTestResults frameworkResults = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "magic":
+						magic = readLong(in, magic);
+						break;
+					case "owner":
+						owner = readString(in);
+						break;
+					case "repository":
+						repository = readString(in);
+						break;
+					case "commitSha":
+						commitSha = readString(in);
+						break;
+					case "secret":
+						secret = readString(in);
+						break;
+					case "format":
+						format = readString(in);
+						break;
+					case "results":
+						frameworkResults = frameworkAdapter.read(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			// the plugin's constructor sets the magic so a missing or wrong one has to be rejected here
+			if (magic != PublishedTestResults.MAGIC_VALUE) {
+				throw new JsonSyntaxException("invalid magic value: " + magic);
+			}
+			return new PublishedTestResults(owner, repository, commitSha, secret, format, frameworkResults);
+		}
+	}
+
+	/**
+	 * Adapter for the results from a test framework. The format field is deprecated in the plugin but older plugins
+	 * still send it and the saved uploads are read back through here so it has to round-trip like gson's reflection
+	 * did.
+	 */
+	private static class FrameworkTestResultsAdapter extends TypeAdapter<FrameworkTestResults> {
+
+		private final TestFileResultAdapter fileResultAdapter = new TestFileResultAdapter();
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public void write(JsonWriter out, FrameworkTestResults results) throws IOException {
+			if (results == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("name").value(results.getName());
+			out.name("numTests").value(results.getNumTests());
+			out.name("numFailures").value(results.getNumFailures());
+			out.name("numErrors").value(results.getNumErrors());
+			out.name("numSkipped").value(results.getNumSkipped());
+			out.name("format").value(results.getFormat());
+			if (results.getFileResults() != null) {
+				out.name("fileResults");
+				out.beginArray();
+				for (TestFileResult fileResult : results.getFileResults()) {
+					fileResultAdapter.write(out, fileResult);
+				}
+				out.endArray();
+			}
+			out.endObject();
+		}
+
+		@Override
+		@SuppressWarnings("deprecation")
+		public FrameworkTestResults read(JsonReader in) throws IOException {
+			if (skipNull(in)) {
+				return null;
+			}
+			String name = null;
+			int numTests = 0;
+			int numFailures = 0;
+			int numErrors = 0;
+			int numSkipped = 0;
+			String format = null;
+			List<TestFileResult> fileResults = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "name":
+						name = readString(in);
+						break;
+					case "numTests":
+						numTests = readInt(in, numTests);
+						break;
+					case "numFailures":
+						numFailures = readInt(in, numFailures);
+						break;
+					case "numErrors":
+						numErrors = readInt(in, numErrors);
+						break;
+					case "numSkipped":
+						numSkipped = readInt(in, numSkipped);
+						break;
+					case "format":
+						format = readString(in);
+						break;
+					case "fileResults":
+						if (skipNull(in)) {
+							fileResults = null;
+							break;
+						}
+						fileResults = new ArrayList<>();
+						in.beginArray();
+						while (in.hasNext()) {
+							fileResults.add(fileResultAdapter.read(in));
+						}
+						in.endArray();
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			FrameworkTestResults results =
+					new FrameworkTestResults(name, numTests, numFailures, numErrors, numSkipped, fileResults);
+			results.setFormat(format);
+			return results;
+		}
+	}
+
+	/**
+	 * Adapter for a single test result. The line-number field of the plugin is not used anymore and can't be read or
+	 * set outside of the plugin so it is skipped.
+	 */
+	private static class TestFileResultAdapter extends TypeAdapter<TestFileResult> {
+
+		@Override
+		public void write(JsonWriter out, TestFileResult result) throws IOException {
+			if (result == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			out.name("path").value(result.getPath());
+			out.name("startLineNumber").value(result.getStartLineNumber());
+			out.name("endLineNumber").value(result.getEndLineNumber());
+			out.name("testLevel").value(result.getTestLevel() == null ? null : result.getTestLevel().name());
+			out.name("timeSeconds").value(Float.valueOf(result.getTimeSeconds()));
+			out.name("testName").value(result.getTestName());
+			out.name("message").value(result.getMessage());
+			out.name("details").value(result.getDetails());
+			out.endObject();
+		}
+
+		@Override
+		public TestFileResult read(JsonReader in) throws IOException {
+			if (skipNull(in)) {
+				return null;
+			}
+			String path = null;
+			int startLineNumber = 0;
+			int endLineNumber = 0;
+			TestLevel testLevel = null;
+			float timeSeconds = 0;
+			String testName = null;
+			String message = null;
+			String details = null;
+			in.beginObject();
+			while (in.hasNext()) {
+				switch (in.nextName()) {
+					case "path":
+						path = readString(in);
+						break;
+					case "startLineNumber":
+						startLineNumber = readInt(in, startLineNumber);
+						break;
+					case "endLineNumber":
+						endLineNumber = readInt(in, endLineNumber);
+						break;
+					case "testLevel":
+						testLevel = readTestLevel(readString(in));
+						break;
+					case "timeSeconds":
+						timeSeconds = readFloat(in, timeSeconds);
+						break;
+					case "testName":
+						testName = readString(in);
+						break;
+					case "message":
+						message = readString(in);
+						break;
+					case "details":
+						details = readString(in);
+						break;
+					default:
+						in.skipValue();
+						break;
+				}
+			}
+			in.endObject();
+			return new TestFileResult(path, startLineNumber, endLineNumber, testLevel, timeSeconds, testName, message,
+					details);
+		}
+
+		private static TestLevel readTestLevel(String name) {
+			if (name == null) {
+				return null;
+			}
+			// gson returns null for unknown enum names
+			for (TestLevel testLevel : TestLevel.values()) {
+				if (testLevel.name().equals(name)) {
+					return testLevel;
+				}
+			}
+			return null;
+		}
+	}
+}
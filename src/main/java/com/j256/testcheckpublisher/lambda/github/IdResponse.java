@@ -1,10 +1,13 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
+
 /**
  * Generic response that returns the id of the result.
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.IdResponseAdapter.class)
 public class IdResponse {
 
 	private int id;
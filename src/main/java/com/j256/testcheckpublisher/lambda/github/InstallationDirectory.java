@@ -0,0 +1,310 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+
+/**
+ * Directory of our application installations that maps owner/repository to installation-id and installation-id to
+ * owner. It can be preloaded from the list of installations, fills in misses as they are looked up, and remembers
+ * repositories that are not installed for a short time so misconfigured repositories don't cost us github requests.
+ * It can optionally be persisted to a file (ex: in /tmp) so a restarted container does not start empty.
+ *
+ * @author graywatson
+ */
+public class InstallationDirectory {
+
+	/**
+	 * Returned by {@link #findInstallationId(String, String)} when we don't know about the repository.
+	 */
+	public static final int UNKNOWN = 0;
+	/**
+	 * Returned by {@link #findInstallationId(String, String)} when we recently were told that the application was not
+	 * installed in the repository.
+	 */
+	public static final int NOT_INSTALLED = -1;
+
+	private static final long DEFAULT_NOT_FOUND_TTL_MILLIS = 5 * 60 * 1000;
+	private static final Logger logger = LoggerFactory.getLogger(InstallationDirectory.class);
+
+	private final File persistFile;
+	private final long notFoundTtlMillis;
+	private final Gson gson = GsonUtils.getGson();
+	// owner/repo -> installation-id
+	private final ConcurrentHashMap<String, Integer> repositoryMap = new ConcurrentHashMap<>();
+	// owner/repo -> when the not-installed entry expires
+	private final ConcurrentHashMap<String, Long> notFoundMap = new ConcurrentHashMap<>();
+	// owner -> installation-id for installations that cover all of the owner's repositories
+	private final ConcurrentHashMap<String, Integer> allRepositoriesOwnerMap = new ConcurrentHashMap<>();
+	// installation-id -> owner
+	private final ConcurrentHashMap<Integer, String> ownerMap = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a directory that is only held in memory.
+	 */
+	public InstallationDirectory() {
+		this(null, DEFAULT_NOT_FOUND_TTL_MILLIS);
+	}
+
+	/**
+	 * Create a directory that is loaded from and saved to a file. If the file is null then it is held only in memory.
+	 */
+	public InstallationDirectory(File persistFile) {
+		this(persistFile, DEFAULT_NOT_FOUND_TTL_MILLIS);
+	}
+
+	public InstallationDirectory(File persistFile, long notFoundTtlMillis) {
+		this.persistFile = persistFile;
+		this.notFoundTtlMillis = notFoundTtlMillis;
+		if (persistFile != null && persistFile.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Find the installation-id for the repository. Returns {@link #UNKNOWN} if we don't know and {@link #NOT_INSTALLED}
+	 * if we were recently told that it isn't installed.
+	 */
+	public int findInstallationId(String owner, String repository) {
+		String key = repositoryKey(owner, repository);
+		Integer installationId = repositoryMap.get(key);
+		if (installationId != null) {
+			return installationId;
+		}
+		Long expiresMillis = notFoundMap.get(key);
+		if (expiresMillis != null) {
+			if (System.currentTimeMillis() < expiresMillis) {
+				return NOT_INSTALLED;
+			}
+			notFoundMap.remove(key, expiresMillis);
+		}
+		installationId = allRepositoriesOwnerMap.get(ownerKey(owner));
+		if (installationId == null) {
+			return UNKNOWN;
+		} else {
+			return installationId;
+		}
+	}
+
+	/**
+	 * Find the owner of an installation or null if not known.
+	 */
+	public String findOwner(int installationId) {
+		return ownerMap.get(installationId);
+	}
+
+	/**
+	 * Record that the repository is part of the installation.
+	 */
+	public void addRepository(String owner, String repository, int installationId) {
+		String key = repositoryKey(owner, repository);
+		notFoundMap.remove(key);
+		Integer prev = repositoryMap.put(key, installationId);
+		if (prev == null || prev != installationId) {
+			save();
+		}
+	}
+
+	/**
+	 * Record that the application is not installed in the repository. This is only remembered for a short time.
+	 */
+	public void addNotInstalled(String owner, String repository) {
+		String key = repositoryKey(owner, repository);
+		repositoryMap.remove(key);
+		notFoundMap.put(key, System.currentTimeMillis() + notFoundTtlMillis);
+	}
+
+	/**
+	 * Record an installation from the installation list or lookup.
+	 *
+	 * @param allRepositories
+	 *            True if the installation covers all of the owner's repositories.
+	 */
+	public void addInstallation(int installationId, String owner, boolean allRepositories) {
+		boolean changed = addInstallationNoSave(installationId, owner, allRepositories);
+		if (changed) {
+			save();
+		}
+	}
+
+	/**
+	 * Add all of the installations and save the results once.
+	 *
+	 * @return The number of installations that were added.
+	 */
+	public int addInstallations(Iterable<InstallationResponse> installations) {
+		int count = 0;
+		boolean changed = false;
+		for (InstallationResponse installation : installations) {
+			if (installation.getId() > 0 && installation.getOwner() != null) {
+				changed |= addInstallationNoSave(installation.getId(), installation.getOwner(),
+						installation.isAllRepositories());
+				count++;
+			}
+		}
+		if (changed) {
+			save();
+		}
+		return count;
+	}
+
+	/**
+	 * Remove an installation and all of the repositories that point to it. This is called when github tells us that
+	 * the installation no longer exists.
+	 */
+	public void removeInstallation(int installationId) {
+		String owner = ownerMap.remove(installationId);
+		if (owner != null) {
+			allRepositoriesOwnerMap.remove(ownerKey(owner), installationId);
+		}
+		removeValues(allRepositoriesOwnerMap, installationId);
+		removeValues(repositoryMap, installationId);
+		save();
+	}
+
+	/**
+	 * Return the number of installations that we know about.
+	 */
+	public int getInstallationCount() {
+		return ownerMap.size();
+	}
+
+	/**
+	 * Return the number of repositories that we know about.
+	 */
+	public int getRepositoryCount() {
+		return repositoryMap.size();
+	}
+
+	/**
+	 * Load the directory from our persist file.
+	 *
+	 * @return True if loaded otherwise false.
+	 */
+	public boolean load() {
+		if (persistFile == null) {
+			return false;
+		}
+		Snapshot snapshot;
+		try (Reader reader = new InputStreamReader(new FileInputStream(persistFile), StandardCharsets.UTF_8);) {
+			snapshot = gson.fromJson(reader, Snapshot.class);
+		} catch (IOException | JsonParseException e) {
+			logger.warn(e, "could not load installation directory from: " + persistFile);
+			return false;
+		}
+		if (snapshot == null) {
+			return false;
+		}
+		if (snapshot.installations != null) {
+			for (Installation installation : snapshot.installations) {
+				addInstallationNoSave(installation.id, installation.owner, installation.allRepositories);
+			}
+		}
+		if (snapshot.repositories != null) {
+			repositoryMap.putAll(snapshot.repositories);
+		}
+		return true;
+	}
+
+	/**
+	 * Save the directory to our persist file if we have one. The not-installed entries are not saved.
+	 */
+	public synchronized void save() {
+		if (persistFile == null) {
+			return;
+		}
+		Snapshot snapshot = new Snapshot();
+		snapshot.installations = new ArrayList<>(ownerMap.size());
+		for (Map.Entry<Integer, String> entry : ownerMap.entrySet()) {
+			String owner = entry.getValue();
+			Integer allId = allRepositoriesOwnerMap.get(ownerKey(owner));
+			snapshot.installations.add(new Installation(entry.getKey(), owner,
+					(allId != null && allId.intValue() == entry.getKey().intValue())));
+		}
+		snapshot.repositories = new HashMap<>(repositoryMap);
+
+		// write to a temp file and rename so a reader never sees a partial file
+		File tmpFile = new File(persistFile.getPath() + ".tmp");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), StandardCharsets.UTF_8);) {
+			gson.toJson(snapshot, writer);
+		} catch (IOException ioe) {
+			logger.warn(ioe, "could not save installation directory to: " + tmpFile);
+			return;
+		}
+		if (!tmpFile.renameTo(persistFile)) {
+			logger.warn("could not rename " + tmpFile + " to " + persistFile);
+		}
+	}
+
+	private boolean addInstallationNoSave(int installationId, String owner, boolean allRepositories) {
+		String prev = ownerMap.put(installationId, owner);
+		boolean changed = !owner.equals(prev);
+		String ownerKey = ownerKey(owner);
+		if (allRepositories) {
+			Integer prevId = allRepositoriesOwnerMap.put(ownerKey, installationId);
+			changed |= (prevId == null || prevId != installationId);
+		} else {
+			changed |= allRepositoriesOwnerMap.remove(ownerKey, installationId);
+		}
+		return changed;
+	}
+
+	private static <K> void removeValues(Map<K, Integer> map, int installationId) {
+		Iterator<Integer> iterator = map.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next() == installationId) {
+				iterator.remove();
+			}
+		}
+	}
+
+	private static String repositoryKey(String owner, String repository) {
+		// github owner and repository names are case insensitive
+		return ownerKey(owner) + "/" + repository.toLowerCase(Locale.US);
+	}
+
+	private static String ownerKey(String owner) {
+		return owner.toLowerCase(Locale.US);
+	}
+
+	/**
+	 * What we persist to disk.
+	 */
+	private static class Snapshot {
+		List<Installation> installations;
+		Map<String, Integer> repositories;
+	}
+
+	/**
+	 * Persisted installation information.
+	 */
+	private static class Installation {
+		int id;
+		String owner;
+		boolean allRepositories;
+
+		public Installation(int id, String owner, boolean allRepositories) {
+			this.id = id;
+			this.owner = owner;
+			this.allRepositories = allRepositories;
+		}
+	}
+}
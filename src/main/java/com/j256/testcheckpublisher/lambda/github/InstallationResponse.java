@@ -1,5 +1,6 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -9,9 +10,30 @@ import com.google.gson.annotations.SerializedName;
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.InstallationResponseAdapter.class)
 public class InstallationResponse {
 
+	private static final String ALL_REPOSITORY_SELECTION = "all";
+
+	private int id;
 	private Account account;
+	// all or selected
+	@SerializedName("repository_selection")
+	private String repositorySelection;
+
+	public InstallationResponse() {
+		// for gson
+	}
+
+	public InstallationResponse(int id, Account account, String repositorySelection) {
+		this.id = id;
+		this.account = account;
+		this.repositorySelection = repositorySelection;
+	}
+
+	public int getId() {
+		return id;
+	}
 
 	public String getOwner() {
 		if (account == null) {
@@ -21,14 +43,38 @@ public class InstallationResponse {
 		}
 	}
 
+	public Account getAccount() {
+		return account;
+	}
+
+	public String getRepositorySelection() {
+		return repositorySelection;
+	}
+
+	/**
+	 * Return true if the installation covers all of the owner's repositories.
+	 */
+	public boolean isAllRepositories() {
+		return ALL_REPOSITORY_SELECTION.equals(repositorySelection);
+	}
+
 	/**
 	 * Account associated with the installation.
 	 */
+	@JsonAdapter(GithubTypeAdapters.AccountAdapter.class)
 	public static class Account {
 
 		@SerializedName("login")
 		private String owner;
 
+		public Account() {
+			// for gson
+		}
+
+		public Account(String owner) {
+			this.owner = owner;
+		}
+
 		public String getOwner() {
 			return owner;
 		}
@@ -0,0 +1,90 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+
+/**
+ * Utilities for dealing with the Link header that github uses for pagination:
+ * https://docs.github.com/en/rest/guides/traversing-with-pagination
+ * 
+ * @author graywatson
+ */
+public class LinkHeaderUtils {
+
+	private static final String LINK_HEADER = "Link";
+	private static final Pattern PAGE_PATTERN = Pattern.compile("([?&]page=)(\\d+)");
+
+	/**
+	 * Find the URL for the relation (ex: next, last) from the Link header of the response or null if none.
+	 */
+	public static String findRelUrl(HttpResponse response, String rel) {
+		Header header = response.getFirstHeader(LINK_HEADER);
+		if (header == null) {
+			return null;
+		} else {
+			return findRelUrl(header.getValue(), rel);
+		}
+	}
+
+	/**
+	 * Find the URL for the relation from a header value that looks like: {@code <https://...?page=2>; rel="next",
+	 * <https://...?page=5>; rel="last"}
+	 */
+	public static String findRelUrl(String headerValue, String rel) {
+		if (headerValue == null) {
+			return null;
+		}
+		String relMatch = "rel=\"" + rel + "\"";
+		for (String link : headerValue.split(",")) {
+			int start = link.indexOf('<');
+			int end = link.indexOf('>', start + 1);
+			if (start < 0 || end < 0) {
+				continue;
+			}
+			for (String param : link.substring(end + 1).split(";")) {
+				if (param.trim().equals(relMatch)) {
+					return link.substring(start + 1, end);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Return the URLs of the pages from the next one to the last one so they can be requested at the same time. Returns
+	 * null if the page numbers could not be found in the URLs in which case the next links will need to be followed one
+	 * at a time.
+	 */
+	public static List<String> buildPageUrls(String nextUrl, String lastUrl) {
+		if (nextUrl == null || lastUrl == null) {
+			return null;
+		}
+		Matcher nextMatcher = PAGE_PATTERN.matcher(nextUrl);
+		Matcher lastMatcher = PAGE_PATTERN.matcher(lastUrl);
+		if (!nextMatcher.find() || !lastMatcher.find()) {
+			return null;
+		}
+		int nextPage;
+		int lastPage;
+		try {
+			nextPage = Integer.parseInt(nextMatcher.group(2));
+			lastPage = Integer.parseInt(lastMatcher.group(2));
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+		if (lastPage < nextPage) {
+			return null;
+		}
+		List<String> urls = new ArrayList<>(lastPage - nextPage + 1);
+		for (int page = nextPage; page <= lastPage; page++) {
+			urls.add(nextUrl.substring(0, nextMatcher.start()) + nextMatcher.group(1) + page
+					+ nextUrl.substring(nextMatcher.end()));
+		}
+		return urls;
+	}
+}
@@ -0,0 +1,328 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * Schedules our requests around the github rate limits. It tracks the remaining request budget per authorization token
+ * from the X-RateLimit headers, waits for the reset if a budget is used up, spaces out the content-creating posts for
+ * a token, and decides when a failed request should be retried and after how long. Updates to existing resources, such
+ * as the check-run annotation PATCHes, are not spaced and rely on the retry-after handling if github pushes back.
+ *
+ * https://docs.github.com/en/rest/guides/best-practices-for-integrators#dealing-with-rate-limits
+ *
+ * @author graywatson
+ */
+public class RateLimitScheduler {
+
+	private static final String LIMIT_HEADER = "X-RateLimit-Limit";
+	private static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+	private static final String RESET_HEADER = "X-RateLimit-Reset";
+	// not in our version of httpcore
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+	// github asks that we wait at least a second between content-creating requests for the same token
+	public static final long DEFAULT_WRITE_SPACING_MILLIS = 1000;
+	public static final int DEFAULT_MAX_RETRIES = 3;
+	public static final long DEFAULT_BASE_BACKOFF_MILLIS = 500;
+	// we don't want to wait out a long reset because the lambda will time out anyway
+	public static final long DEFAULT_MAX_WAIT_MILLIS = 20 * 1000;
+	// tokens expire after an hour so we don't need to remember very many
+	private static final int MAX_BUDGETS = 100;
+
+	private final long writeSpacingMillis;
+	private final int maxRetries;
+	private final long baseBackoffMillis;
+	private final long maxWaitMillis;
+
+	private final Map<String, TokenState> tokenStateMap = new LinkedHashMap<String, TokenState>(16, 0.75F, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TokenState> eldest) {
+			return size() > MAX_BUDGETS;
+		}
+	};
+	private long retryCount;
+	private long waitMillis;
+
+	public RateLimitScheduler() {
+		this(DEFAULT_WRITE_SPACING_MILLIS, DEFAULT_MAX_RETRIES, DEFAULT_BASE_BACKOFF_MILLIS, DEFAULT_MAX_WAIT_MILLIS);
+	}
+
+	/**
+	 * @param writeSpacingMillis
+	 *            Minimum time between the content-creating POST requests made with the same token.
+	 * @param maxRetries
+	 *            Number of times we retry a request that was rate limited or failed on the server.
+	 * @param baseBackoffMillis
+	 *            Base of our exponential backoff. The actual delay is a random amount up to the backoff.
+	 * @param maxWaitMillis
+	 *            Longest we wait for a budget reset, a write slot, or before a retry. If github wants us to wait
+	 *            longer then the request goes ahead or fails.
+	 */
+	public RateLimitScheduler(long writeSpacingMillis, int maxRetries, long baseBackoffMillis, long maxWaitMillis) {
+		this.writeSpacingMillis = writeSpacingMillis;
+		this.maxRetries = maxRetries;
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * Wait until the request can be sent. This waits out a used up budget if the reset is soon enough and spaces out
+	 * the content-creating posts. We never wait longer than the max-wait.
+	 */
+	public void awaitTurn(HttpUriRequest request) throws InterruptedIOException {
+		String key = budgetKey(request);
+		if (key == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long sendMillis = now;
+		synchronized (this) {
+			TokenState state = tokenStateMap.get(key);
+			if (state == null) {
+				state = new TokenState();
+				tokenStateMap.put(key, state);
+			}
+			Budget budget = state.budget;
+			if (budget != null && budget.remaining <= 0 && budget.resetMillis > now
+					&& budget.resetMillis - now <= maxWaitMillis) {
+				sendMillis = budget.resetMillis;
+			}
+			if (writeSpacingMillis > 0 && isCreate(request)) {
+				// reserve the next write slot so parallel creators queue up behind each other
+				sendMillis = Math.min(Math.max(sendMillis, state.nextWriteMillis), now + maxWaitMillis);
+				state.nextWriteMillis = sendMillis + writeSpacingMillis;
+			}
+		}
+		sleep(sendMillis - now);
+	}
+
+	/**
+	 * Record the rate-limit headers from the response.
+	 */
+	public void recordResponse(HttpUriRequest request, HttpResponse response) {
+		String key = budgetKey(request);
+		Header remainingHeader = response.getFirstHeader(REMAINING_HEADER);
+		if (key == null || remainingHeader == null) {
+			return;
+		}
+		int remaining = parseInt(remainingHeader, -1);
+		if (remaining < 0) {
+			return;
+		}
+		int limit = parseInt(response.getFirstHeader(LIMIT_HEADER), -1);
+		long resetMillis = parseInt(response.getFirstHeader(RESET_HEADER), 0) * 1000L;
+		Budget budget = new Budget(limit, remaining, resetMillis);
+		synchronized (this) {
+			TokenState state = tokenStateMap.get(key);
+			if (state == null) {
+				state = new TokenState();
+				tokenStateMap.put(key, state);
+			}
+			state.budget = budget;
+		}
+	}
+
+	/**
+	 * Determine if the request should be retried.
+	 *
+	 * @param attempt
+	 *            Number of attempts that have already been made starting at 1.
+	 * @return Number of millis to wait before retrying or -1 if the request should not be retried.
+	 */
+	public long findRetryDelayMillis(HttpUriRequest request, HttpResponse response, int attempt) {
+		if (attempt > maxRetries || !isRepeatable(request)) {
+			return -1;
+		}
+		int statusCode = response.getStatusLine().getStatusCode();
+		long delayMillis;
+		if (statusCode == SC_TOO_MANY_REQUESTS || statusCode == HttpStatus.SC_FORBIDDEN) {
+			Header retryAfterHeader = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+			int remaining = parseInt(response.getFirstHeader(REMAINING_HEADER), -1);
+			if (retryAfterHeader != null) {
+				// secondary rate limit tells us how long to wait
+				delayMillis = parseInt(retryAfterHeader, 0) * 1000L;
+			} else if (remaining == 0) {
+				// primary rate limit is used up until the reset
+				long resetMillis = parseInt(response.getFirstHeader(RESET_HEADER), 0) * 1000L;
+				delayMillis = Math.max(0, resetMillis - System.currentTimeMillis());
+			} else if (statusCode == SC_TOO_MANY_REQUESTS) {
+				delayMillis = backoffMillis(attempt);
+			} else {
+				// regular permission problem
+				return -1;
+			}
+		} else if (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE
+				|| (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR && !isWrite(request))) {
+			// writes that got a 500 might have been applied so we only retry them if the service was unavailable
+			delayMillis = backoffMillis(attempt);
+		} else {
+			return -1;
+		}
+		if (delayMillis > maxWaitMillis) {
+			return -1;
+		}
+		synchronized (this) {
+			retryCount++;
+		}
+		return delayMillis;
+	}
+
+	/**
+	 * Return the last budget that github told us about for the authorization header or null if none.
+	 */
+	public Budget getBudget(Header authorizationHeader) {
+		if (authorizationHeader == null) {
+			return null;
+		}
+		synchronized (this) {
+			TokenState state = tokenStateMap.get(authorizationHeader.getValue());
+			if (state == null) {
+				return null;
+			} else {
+				return state.budget;
+			}
+		}
+	}
+
+	/**
+	 * Number of retries that we have scheduled.
+	 */
+	public synchronized long getRetryCount() {
+		return retryCount;
+	}
+
+	/**
+	 * Total millis that requests waited for their turn or before a retry.
+	 */
+	public synchronized long getWaitMillis() {
+		return waitMillis;
+	}
+
+	/**
+	 * Sleep for the millis if positive.
+	 */
+	public void sleep(long millis) throws InterruptedIOException {
+		if (millis <= 0) {
+			return;
+		}
+		synchronized (this) {
+			waitMillis += millis;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted waiting for the github rate limit");
+		}
+	}
+
+	private long backoffMillis(int attempt) {
+		// full jitter so a bunch of clients that failed together don't retry together
+		long maxMillis = Math.min(maxWaitMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+		return ThreadLocalRandom.current().nextLong(maxMillis + 1);
+	}
+
+	private static String budgetKey(HttpUriRequest request) {
+		Header header = request.getFirstHeader(HttpHeaders.AUTHORIZATION);
+		if (header == null) {
+			return null;
+		} else {
+			return header.getValue();
+		}
+	}
+
+	private static boolean isWrite(HttpUriRequest request) {
+		String method = request.getMethod();
+		if (method.equals("POST") && request.getURI().getPath().endsWith("/graphql")) {
+			// we only send graphql queries which are reads even though they are posted
+			return false;
+		}
+		return !(method.equals("GET") || method.equals("HEAD") || method.equals("OPTIONS"));
+	}
+
+	/**
+	 * Returns true if the request creates content which github wants spaced out. Access tokens aren't content.
+	 */
+	private static boolean isCreate(HttpUriRequest request) {
+		return (request.getMethod().equals("POST") && isWrite(request)
+				&& !request.getURI().getPath().endsWith("/access_tokens"));
+	}
+
+	private static boolean isRepeatable(HttpUriRequest request) {
+		if (!(request instanceof HttpEntityEnclosingRequest)) {
+			return true;
+		}
+		HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+		return (entity == null || entity.isRepeatable());
+	}
+
+	private static int parseInt(Header header, int defaultValue) {
+		if (header == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(header.getValue().trim());
+		} catch (NumberFormatException nfe) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Rate-limit budget that github reported for a token.
+	 */
+	public static class Budget {
+
+		final int limit;
+		final int remaining;
+		final long resetMillis;
+
+		public Budget(int limit, int remaining, long resetMillis) {
+			this.limit = limit;
+			this.remaining = remaining;
+			this.resetMillis = resetMillis;
+		}
+
+		/**
+		 * Number of requests per hour or -1 if unknown.
+		 */
+		public int getLimit() {
+			return limit;
+		}
+
+		public int getRemaining() {
+			return remaining;
+		}
+
+		/**
+		 * Epoch millis when the budget resets.
+		 */
+		public long getResetMillis() {
+			return resetMillis;
+		}
+
+		@Override
+		public String toString() {
+			return remaining + "/" + limit + " reset " + resetMillis;
+		}
+	}
+
+	/**
+	 * What we know about a token.
+	 */
+	private static class TokenState {
+		Budget budget;
+		long nextWriteMillis;
+	}
+}
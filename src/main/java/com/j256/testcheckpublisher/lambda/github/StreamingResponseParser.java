@@ -0,0 +1,260 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Commit;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Tree;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Streaming parsers for the large github responses. They pull out the few fields that we use and skip the rest without
+ * building strings or objects for them. The tree of a big repository has hundreds of thousands of entries and the
+ * commit response has a patch field with the diff for each file which can be megabytes.
+ *
+ * @author graywatson
+ */
+public class StreamingResponseParser {
+
+	private static final String TREE_TYPE = "tree";
+	private static final String BLOB_TYPE = "blob";
+	private static final String CONTENT_FILE_TYPE = "file";
+	private static final String CONTENT_DIR_TYPE = "dir";
+
+	/**
+	 * Parse the response from the get-a-tree request and return the files that are not directories. Only the path and
+	 * the type of each file are kept.
+	 */
+	public static List<TreeFile> parseTreeFiles(Reader reader) throws IOException {
+		return parseTree(reader, false).getFiles();
+	}
+
+	/**
+	 * Parse the response from the get-a-tree request. Only the path and the type of each file are kept.
+	 * 
+	 * @param keepDirectories
+	 *            If true then the path and sha of the directories are also returned so they can be fetched
+	 *            separately.
+	 */
+	public static ParsedTree parseTree(Reader reader, boolean keepDirectories) throws IOException {
+		ParsedTree parsedTree = new ParsedTree();
+		try (JsonReader jsonReader = new JsonReader(reader)) {
+			jsonReader.setLenient(true);
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				String name = jsonReader.nextName();
+				if (name.equals("tree") && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+					jsonReader.beginArray();
+					while (jsonReader.hasNext()) {
+						readTreeEntry(jsonReader, parsedTree, keepDirectories);
+					}
+					jsonReader.endArray();
+				} else if (name.equals("truncated") && jsonReader.peek() == JsonToken.BOOLEAN) {
+					parsedTree.truncated = jsonReader.nextBoolean();
+				} else {
+					jsonReader.skipValue();
+				}
+			}
+			jsonReader.endObject();
+		} catch (MalformedJsonException | IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		}
+		return parsedTree;
+	}
+
+	/**
+	 * Parse the response from the get-repository-content request for a directory and return the entries that are not
+	 * directories. If the path was not a directory then github returns an object and we return an empty list.
+	 */
+	public static List<TreeFile> parseDirectoryFiles(Reader reader) throws IOException {
+		List<TreeFile> files = new ArrayList<>();
+		try (JsonReader jsonReader = new JsonReader(reader)) {
+			jsonReader.setLenient(true);
+			if (jsonReader.peek() != JsonToken.BEGIN_ARRAY) {
+				jsonReader.skipValue();
+				return files;
+			}
+			jsonReader.beginArray();
+			while (jsonReader.hasNext()) {
+				String path = null;
+				String type = null;
+				jsonReader.beginObject();
+				while (jsonReader.hasNext()) {
+					String name = jsonReader.nextName();
+					if (name.equals("path")) {
+						path = readString(jsonReader);
+					} else if (name.equals("type")) {
+						type = readString(jsonReader);
+					} else {
+						jsonReader.skipValue();
+					}
+				}
+				jsonReader.endObject();
+				if (CONTENT_FILE_TYPE.equals(type)) {
+					// use the same type as the tree entries
+					files.add(new TreeFile(path, BLOB_TYPE, null));
+				} else if (!CONTENT_DIR_TYPE.equals(type)) {
+					files.add(new TreeFile(path, type, null));
+				}
+			}
+			jsonReader.endArray();
+		} catch (MalformedJsonException | IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		}
+		return files;
+	}
+
+	/**
+	 * Parse the response from the get-a-commit request keeping the commit and tree shas and the name and status of the
+	 * changed files.
+	 */
+	public static CommitInfoResponse parseCommitInfo(Reader reader) throws IOException {
+		String sha = null;
+		String treeSha = null;
+		List<ChangedFile> files = null;
+		try (JsonReader jsonReader = new JsonReader(reader)) {
+			jsonReader.setLenient(true);
+			jsonReader.beginObject();
+			while (jsonReader.hasNext()) {
+				String name = jsonReader.nextName();
+				if (name.equals("sha")) {
+					sha = readString(jsonReader);
+				} else if (name.equals("commit") && jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+					treeSha = readCommitTreeSha(jsonReader);
+				} else if (name.equals("files") && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+					files = new ArrayList<>();
+					jsonReader.beginArray();
+					while (jsonReader.hasNext()) {
+						files.add(readChangedFile(jsonReader));
+					}
+					jsonReader.endArray();
+				} else {
+					jsonReader.skipValue();
+				}
+			}
+			jsonReader.endObject();
+		} catch (MalformedJsonException | IllegalStateException e) {
+			throw new JsonSyntaxException(e);
+		}
+		return new CommitInfoResponse(sha, (treeSha == null ? null : new Commit(new Tree(treeSha))),
+				(files == null ? null : files.toArray(new ChangedFile[files.size()])));
+	}
+
+	/**
+	 * Read a tree entry and add it to the files or directories.
+	 */
+	private static void readTreeEntry(JsonReader jsonReader, ParsedTree parsedTree, boolean keepDirectories)
+			throws IOException {
+		String path = null;
+		String type = null;
+		String sha = null;
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name = jsonReader.nextName();
+			if (name.equals("path")) {
+				path = readString(jsonReader);
+			} else if (name.equals("type")) {
+				type = readString(jsonReader);
+			} else if (keepDirectories && name.equals("sha")) {
+				sha = readString(jsonReader);
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		if (!TREE_TYPE.equals(type)) {
+			// share the common type string instead of keeping a copy per file
+			parsedTree.files.add(new TreeFile(path, (BLOB_TYPE.equals(type) ? BLOB_TYPE : type), null));
+		} else if (keepDirectories) {
+			parsedTree.directories.add(new TreeFile(path, TREE_TYPE, sha));
+		}
+	}
+
+	private static String readCommitTreeSha(JsonReader jsonReader) throws IOException {
+		String treeSha = null;
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			if (jsonReader.nextName().equals("tree") && jsonReader.peek() == JsonToken.BEGIN_OBJECT) {
+				jsonReader.beginObject();
+				while (jsonReader.hasNext()) {
+					if (jsonReader.nextName().equals("sha")) {
+						treeSha = readString(jsonReader);
+					} else {
+						jsonReader.skipValue();
+					}
+				}
+				jsonReader.endObject();
+			} else {
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return treeSha;
+	}
+
+	private static ChangedFile readChangedFile(JsonReader jsonReader) throws IOException {
+		String filename = null;
+		String status = null;
+		jsonReader.beginObject();
+		while (jsonReader.hasNext()) {
+			String name = jsonReader.nextName();
+			if (name.equals("filename")) {
+				filename = readString(jsonReader);
+			} else if (name.equals("status")) {
+				status = readString(jsonReader);
+			} else {
+				// most importantly the patch
+				jsonReader.skipValue();
+			}
+		}
+		jsonReader.endObject();
+		return new ChangedFile(filename, status);
+	}
+
+	private static String readString(JsonReader jsonReader) throws IOException {
+		if (jsonReader.peek() == JsonToken.NULL) {
+			jsonReader.nextNull();
+			return null;
+		} else {
+			return jsonReader.nextString();
+		}
+	}
+
+	/**
+	 * Files and directories from a tree response.
+	 */
+	public static class ParsedTree {
+
+		final List<TreeFile> files = new ArrayList<>();
+		final List<TreeFile> directories = new ArrayList<>();
+		boolean truncated;
+
+		/**
+		 * Files that are not directories.
+		 */
+		public List<TreeFile> getFiles() {
+			return files;
+		}
+
+		/**
+		 * Directories with their shas if they were requested.
+		 */
+		public List<TreeFile> getDirectories() {
+			return directories;
+		}
+
+		/**
+		 * True if github did not return all of the entries because the tree was too big.
+		 */
+		public boolean isTruncated() {
+			return truncated;
+		}
+	}
+}
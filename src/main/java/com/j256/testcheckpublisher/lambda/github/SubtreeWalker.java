@@ -0,0 +1,201 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.http.StatusLine;
+
+import com.j256.testcheckpublisher.lambda.github.StreamingResponseParser.ParsedTree;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Walks a tree that is too big for a single recursive request. Github truncates recursive tree responses over a
+ * certain size so we get the top directory without recursion and then request each of its subtrees recursively. If a
+ * subtree is also truncated then it is split the same way. The subtree requests are run in parallel with a limit on how
+ * many are outstanding at once.
+ *
+ * @author graywatson
+ */
+public class SubtreeWalker {
+
+	private final TreeFetcher fetcher;
+	private final Executor executor;
+	private final int maxConcurrent;
+
+	private final List<TreeFile> files = new ArrayList<>();
+	private final Queue<Runnable> pendingTasks = new ArrayDeque<>();
+	// one party for the walk itself and one for each subtree that is outstanding
+	private final Phaser phaser = new Phaser(1);
+	private int runningCount;
+	private int requestCount;
+	private volatile StatusLine failedStatusLine;
+	// IOException or RuntimeException thrown by one of the requests
+	private volatile Exception failedException;
+
+	public SubtreeWalker(TreeFetcher fetcher, Executor executor, int maxConcurrent) {
+		this.fetcher = fetcher;
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+	}
+
+	/**
+	 * Walk the tree and return all of its files with paths from the root or null if one of the requests failed in which
+	 * case {@link #getFailedStatusLine()} has its status.
+	 */
+	public List<TreeFile> walk(String sha) throws IOException {
+		splitTree("", sha);
+		try {
+			phaser.awaitAdvanceInterruptibly(phaser.arrive());
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted walking tree " + sha);
+		}
+		if (failedException instanceof IOException) {
+			throw (IOException) failedException;
+		} else if (failedException != null) {
+			throw (RuntimeException) failedException;
+		}
+		if (failedStatusLine != null) {
+			return null;
+		}
+		synchronized (files) {
+			return new ArrayList<>(files);
+		}
+	}
+
+	/**
+	 * Status of the request that failed or null if none.
+	 */
+	public StatusLine getFailedStatusLine() {
+		return failedStatusLine;
+	}
+
+	/**
+	 * Number of tree requests that we made.
+	 */
+	public synchronized int getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * Get the directory without recursion, add its files, and queue up its subtrees.
+	 */
+	private void splitTree(String prefix, String sha) throws IOException {
+		ParsedTree parsedTree = fetch(sha, false);
+		if (parsedTree == null) {
+			return;
+		}
+		addFiles(prefix, parsedTree.getFiles());
+		for (TreeFile directory : parsedTree.getDirectories()) {
+			String path = prefix + directory.getPath() + "/";
+			String subSha = directory.getSha();
+			submit(() -> walkSubtree(path, subSha));
+		}
+	}
+
+	/**
+	 * Get the subtree with recursion and split it if it was truncated.
+	 */
+	private void walkSubtree(String prefix, String sha) throws IOException {
+		ParsedTree parsedTree = fetch(sha, true);
+		if (parsedTree == null) {
+			// already recorded
+		} else if (parsedTree.isTruncated()) {
+			splitTree(prefix, sha);
+		} else {
+			addFiles(prefix, parsedTree.getFiles());
+		}
+	}
+
+	private ParsedTree fetch(String sha, boolean recursive) throws IOException {
+		if (failedStatusLine != null || failedException != null) {
+			// no point continuing
+			return null;
+		}
+		synchronized (this) {
+			requestCount++;
+		}
+		GithubResult<ParsedTree> result = fetcher.fetchTree(sha, recursive);
+		if (result.getValue() == null) {
+			failedStatusLine = result.getStatusLine();
+		}
+		return result.getValue();
+	}
+
+	private void addFiles(String prefix, List<TreeFile> parsedFiles) {
+		synchronized (files) {
+			for (TreeFile file : parsedFiles) {
+				if (prefix.isEmpty()) {
+					files.add(file);
+				} else {
+					files.add(new TreeFile(prefix + file.getPath(), file.getType(), file.getSha()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Queue up the subtree work and start it if we are below our concurrency limit.
+	 */
+	private void submit(SubtreeTask task) {
+		phaser.register();
+		Runnable runnable = () -> {
+			try {
+				task.run();
+			} catch (IOException | RuntimeException e) {
+				// the tasks that are still pending see the failure and finish without requests
+				failedException = e;
+			} finally {
+				phaser.arriveAndDeregister();
+			}
+		};
+		synchronized (this) {
+			pendingTasks.add(runnable);
+			if (runningCount >= maxConcurrent) {
+				return;
+			}
+			runningCount++;
+		}
+		try {
+			executor.execute(this::runPendingTasks);
+		} catch (RejectedExecutionException ree) {
+			// run it in this thread instead
+			runPendingTasks();
+		}
+	}
+
+	private void runPendingTasks() {
+		while (true) {
+			Runnable runnable;
+			synchronized (this) {
+				runnable = pendingTasks.poll();
+				if (runnable == null) {
+					runningCount--;
+					return;
+				}
+			}
+			runnable.run();
+		}
+	}
+
+	/**
+	 * Gets a tree from github.
+	 */
+	public static interface TreeFetcher {
+		/**
+		 * Return the parsed tree with its directories or a null value with the status on error.
+		 */
+		public GithubResult<ParsedTree> fetchTree(String sha, boolean recursive) throws IOException;
+	}
+
+	private static interface SubtreeTask {
+		public void run() throws IOException;
+	}
+}
@@ -0,0 +1,312 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.j256.simplelogging.Logger;
+import com.j256.simplelogging.LoggerFactory;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Cache of tree file listings keyed by the tree SHA. Git trees are immutable so the entries never go stale.
+ * The in-memory portion is an LRU that is bounded by the number of path characters that it holds. There is an optional
+ * disk tier (ex: in /tmp) so a listing that was evicted from memory or downloaded by a previous container can be
+ * reused.
+ *
+ * @author graywatson
+ */
+public class TreeCache {
+
+	private static final long DEFAULT_MAX_PATH_CHARS = 16 * 1024 * 1024;
+	private static final long DEFAULT_MAX_DISK_BYTES = 128 * 1024 * 1024;
+	private static final int DISK_MAGIC = 0x54524545;
+	private static final int DISK_VERSION = 1;
+	private static final String DISK_FILE_SUFFIX = ".tree.gz";
+	// only cache real SHAs because branch and tag names can move
+	private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-fA-F]{40,64}");
+	private static final Logger logger = LoggerFactory.getLogger(TreeCache.class);
+
+	private final long maxPathChars;
+	private final File diskDir;
+	private final long maxDiskBytes;
+	private final LinkedHashMap<String, CachedTree> treeMap = new LinkedHashMap<>(16, 0.75F, true);
+	private long pathChars;
+	private long hitCount;
+	private long diskHitCount;
+	private long missCount;
+
+	/**
+	 * Create a memory only cache with the default size.
+	 */
+	public TreeCache() {
+		this(DEFAULT_MAX_PATH_CHARS, null, 0);
+	}
+
+	/**
+	 * Create a cache with the default sizes that also writes listings to a directory on disk.
+	 */
+	public TreeCache(File diskDir) {
+		this(DEFAULT_MAX_PATH_CHARS, diskDir, 0);
+	}
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxPathChars
+	 *            Maximum number of path characters that we hold in memory.
+	 * @param diskDir
+	 *            Directory where listings are written to disk or null for none.
+	 * @param maxDiskBytes
+	 *            Maximum number of bytes to keep on disk or 0 for the default.
+	 */
+	public TreeCache(long maxPathChars, File diskDir, long maxDiskBytes) {
+		this.maxPathChars = maxPathChars;
+		this.diskDir = diskDir;
+		if (maxDiskBytes <= 0) {
+			this.maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+		} else {
+			this.maxDiskBytes = maxDiskBytes;
+		}
+		if (diskDir != null && !diskDir.isDirectory() && !diskDir.mkdirs()) {
+			logger.warn("could not create tree cache directory: " + diskDir);
+		}
+	}
+
+	/**
+	 * Find the tree listing in memory or on disk or return null if not cached.
+	 */
+	public List<TreeFile> findTree(String sha) {
+		if (!isCacheable(sha)) {
+			return null;
+		}
+		synchronized (this) {
+			CachedTree cached = treeMap.get(sha);
+			if (cached != null) {
+				hitCount++;
+				return cached.treeFiles;
+			}
+		}
+		List<TreeFile> treeFiles = readFromDisk(sha);
+		synchronized (this) {
+			if (treeFiles == null) {
+				missCount++;
+			} else {
+				diskHitCount++;
+				addToMemory(sha, treeFiles);
+			}
+		}
+		return treeFiles;
+	}
+
+	/**
+	 * Add a tree listing to the cache.
+	 */
+	public void addTree(String sha, List<TreeFile> treeFiles) {
+		if (!isCacheable(sha) || treeFiles == null) {
+			return;
+		}
+		List<TreeFile> unmodifiable = Collections.unmodifiableList(new ArrayList<>(treeFiles));
+		synchronized (this) {
+			addToMemory(sha, unmodifiable);
+		}
+		writeToDisk(sha, unmodifiable);
+	}
+
+	/**
+	 * Number of path characters currently held in memory.
+	 */
+	public synchronized long getPathChars() {
+		return pathChars;
+	}
+
+	/**
+	 * Number of listings currently held in memory.
+	 */
+	public synchronized int getSize() {
+		return treeMap.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getDiskHitCount() {
+		return diskHitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Clear the in-memory portion of the cache.
+	 */
+	public synchronized void clear() {
+		treeMap.clear();
+		pathChars = 0;
+	}
+
+	private void addToMemory(String sha, List<TreeFile> treeFiles) {
+		long chars = countPathChars(treeFiles);
+		if (chars > maxPathChars) {
+			// too big for us to hold in memory
+			return;
+		}
+		CachedTree prev = treeMap.put(sha, new CachedTree(treeFiles, chars));
+		if (prev != null) {
+			pathChars -= prev.pathChars;
+		}
+		pathChars += chars;
+		// evict the least recently used entries until we fit
+		Iterator<CachedTree> iterator = treeMap.values().iterator();
+		while (pathChars > maxPathChars && iterator.hasNext()) {
+			CachedTree cached = iterator.next();
+			pathChars -= cached.pathChars;
+			iterator.remove();
+		}
+	}
+
+	private List<TreeFile> readFromDisk(String sha) {
+		if (diskDir == null) {
+			return null;
+		}
+		File file = new File(diskDir, sha + DISK_FILE_SUFFIX);
+		if (!file.exists()) {
+			return null;
+		}
+		try (DataInputStream dis =
+				new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));) {
+			if (dis.readInt() != DISK_MAGIC || dis.readInt() != DISK_VERSION) {
+				logger.warn("tree cache file has invalid header: " + file);
+				file.delete();
+				return null;
+			}
+			int count = dis.readInt();
+			List<TreeFile> treeFiles = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				String path = dis.readUTF();
+				String type = dis.readUTF();
+				String fileSha = dis.readUTF();
+				treeFiles.add(new TreeFile(path, type, (fileSha.isEmpty() ? null : fileSha)));
+			}
+			// touch it so pruning removes the least recently used files
+			file.setLastModified(System.currentTimeMillis());
+			return Collections.unmodifiableList(treeFiles);
+		} catch (IOException ioe) {
+			logger.warn(ioe, "could not read tree cache file: " + file);
+			file.delete();
+			return null;
+		}
+	}
+
+	private void writeToDisk(String sha, List<TreeFile> treeFiles) {
+		if (diskDir == null) {
+			return;
+		}
+		File file = new File(diskDir, sha + DISK_FILE_SUFFIX);
+		if (file.exists()) {
+			return;
+		}
+		// write to a temp file and rename so a reader never sees a partial file
+		File tmpFile = new File(diskDir, sha + DISK_FILE_SUFFIX + "." + Thread.currentThread().getId() + ".tmp");
+		try (DataOutputStream dos =
+				new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));) {
+			dos.writeInt(DISK_MAGIC);
+			dos.writeInt(DISK_VERSION);
+			dos.writeInt(treeFiles.size());
+			for (TreeFile treeFile : treeFiles) {
+				dos.writeUTF(nullToEmpty(treeFile.getPath()));
+				dos.writeUTF(nullToEmpty(treeFile.getType()));
+				dos.writeUTF(nullToEmpty(treeFile.getSha()));
+			}
+		} catch (IOException ioe) {
+			logger.warn(ioe, "could not write tree cache file: " + tmpFile);
+			tmpFile.delete();
+			return;
+		}
+		if (!tmpFile.renameTo(file)) {
+			tmpFile.delete();
+			return;
+		}
+		pruneDisk();
+	}
+
+	/**
+	 * Remove the oldest files from the disk tier until we are under our limit.
+	 */
+	private void pruneDisk() {
+		File[] files = diskDir.listFiles((dir, name) -> name.endsWith(DISK_FILE_SUFFIX));
+		if (files == null) {
+			return;
+		}
+		long totalBytes = 0;
+		for (File file : files) {
+			totalBytes += file.length();
+		}
+		if (totalBytes <= maxDiskBytes) {
+			return;
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (totalBytes <= maxDiskBytes) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				totalBytes -= length;
+			}
+		}
+	}
+
+	private static boolean isCacheable(String sha) {
+		return (sha != null && SHA_PATTERN.matcher(sha).matches());
+	}
+
+	private static long countPathChars(List<TreeFile> treeFiles) {
+		long chars = 0;
+		for (TreeFile treeFile : treeFiles) {
+			if (treeFile.getPath() != null) {
+				chars += treeFile.getPath().length();
+			}
+		}
+		return chars;
+	}
+
+	private static String nullToEmpty(String str) {
+		if (str == null) {
+			return "";
+		} else {
+			return str;
+		}
+	}
+
+	/**
+	 * Tree listing and its weight.
+	 */
+	private static class CachedTree {
+
+		final List<TreeFile> treeFiles;
+		final long pathChars;
+
+		public CachedTree(List<TreeFile> treeFiles, long pathChars) {
+			this.treeFiles = treeFiles;
+			this.pathChars = pathChars;
+		}
+	}
+}
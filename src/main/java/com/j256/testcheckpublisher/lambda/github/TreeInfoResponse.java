@@ -1,5 +1,6 @@
 package com.j256.testcheckpublisher.lambda.github;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 
 /**
@@ -7,6 +8,7 @@ import com.google.gson.annotations.SerializedName;
  * 
  * @author graywatson
  */
+@JsonAdapter(GithubTypeAdapters.TreeInfoResponseAdapter.class)
 public class TreeInfoResponse {
 
 	private String sha;
@@ -33,6 +35,7 @@ public class TreeInfoResponse {
 	/**
 	 * Information about a file in the tree.
 	 */
+	@JsonAdapter(GithubTypeAdapters.TreeFileAdapter.class)
 	public static class TreeFile {
 
 		private String path;
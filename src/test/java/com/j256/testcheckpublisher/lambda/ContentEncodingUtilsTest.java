@@ -0,0 +1,117 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.ContentEncodingUtils.BodyTooLargeException;
+
+public class ContentEncodingUtilsTest {
+
+	@Test
+	public void testFindContentEncoding() {
+		assertNull(ContentEncodingUtils.findContentEncoding(null));
+		assertNull(ContentEncodingUtils.findContentEncoding(Collections.emptyMap()));
+		assertNull(ContentEncodingUtils.findContentEncoding(Collections.singletonMap("content-encoding", "identity")));
+		assertNull(ContentEncodingUtils.findContentEncoding(Collections.singletonMap("content-encoding", " ")));
+		Map<String, String> headers = new HashMap<>();
+		headers.put("content-type", "application/json");
+		headers.put("Content-Encoding", " GZip ");
+		assertEquals("gzip", ContentEncodingUtils.findContentEncoding(headers));
+	}
+
+	@Test
+	public void testIsSupported() {
+		assertTrue(ContentEncodingUtils.isSupported(null));
+		assertTrue(ContentEncodingUtils.isSupported("gzip"));
+		assertTrue(ContentEncodingUtils.isSupported("x-gzip"));
+		assertTrue(ContentEncodingUtils.isSupported("deflate"));
+		assertFalse(ContentEncodingUtils.isSupported("zstd"));
+		assertFalse(ContentEncodingUtils.isSupported("br"));
+		assertFalse(ContentEncodingUtils.isSupported("gzip, deflate"));
+	}
+
+	@Test
+	public void testDecompress() throws IOException {
+		byte[] bytes = new byte[10000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i % 10);
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream outputStream = new GZIPOutputStream(baos);) {
+			outputStream.write(bytes);
+		}
+		byte[] gzipped = baos.toByteArray();
+		InputStream inputStream =
+				ContentEncodingUtils.decompressStream(new ByteArrayInputStream(gzipped), "gzip", bytes.length);
+		assertArrayEquals(bytes, readAll(inputStream));
+
+		baos.reset();
+		try (OutputStream outputStream = new DeflaterOutputStream(baos);) {
+			outputStream.write(bytes);
+		}
+		assertArrayEquals(bytes, readAll(ContentEncodingUtils
+				.decompressStream(new ByteArrayInputStream(baos.toByteArray()), "deflate", bytes.length)));
+
+		// no encoding is still limited
+		assertArrayEquals(bytes,
+				readAll(ContentEncodingUtils.decompressStream(new ByteArrayInputStream(bytes), null, bytes.length)));
+		try {
+			readAll(ContentEncodingUtils.decompressStream(new ByteArrayInputStream(bytes), null, bytes.length - 1));
+			fail("should have thrown");
+		} catch (BodyTooLargeException btle) {
+			assertTrue(ContentEncodingUtils.isTooLarge(new IOException(btle)));
+		}
+	}
+
+	@Test
+	public void testTooLarge() throws IOException {
+		// a small compressed body that gets really big
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream outputStream = new GZIPOutputStream(baos);) {
+			outputStream.write(new byte[1024 * 1024]);
+		}
+		assertTrue(baos.size() < 10 * 1024);
+		try (InputStream inputStream =
+				ContentEncodingUtils.decompressStream(new ByteArrayInputStream(baos.toByteArray()), "gzip", 100000);) {
+			readAll(inputStream);
+			fail("should have thrown");
+		} catch (BodyTooLargeException btle) {
+			// expected
+		}
+		assertFalse(ContentEncodingUtils.isTooLarge(new IOException("other")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupported() throws IOException {
+		ContentEncodingUtils.decompressStream(new ByteArrayInputStream(new byte[0]), "zstd", 100);
+	}
+
+	private static byte[] readAll(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		while (true) {
+			int num = inputStream.read(buffer);
+			if (num < 0) {
+				return baos.toByteArray();
+			}
+			baos.write(buffer, 0, num);
+		}
+	}
+}
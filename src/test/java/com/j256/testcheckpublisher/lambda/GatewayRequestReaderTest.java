@@ -0,0 +1,186 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+
+public class GatewayRequestReaderTest {
+
+	private static final Predicate<String> RESULTS_PREDICATE = path -> path.startsWith("/results");
+
+	private final Gson gson = new Gson();
+
+	@Test
+	public void testJsonBody() throws IOException {
+		String body = resultsJson("owner", "repo");
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/results\", \"body\": " + gson.toJson(body)
+				+ ", \"isBase64Encoded\": false, \"rawQueryString\": \"x=1\"}");
+		assertTrue(request.isBodyStreamed());
+		assertNull(request.getBody());
+		assertNull(request.getBodyParseException());
+		assertResults(request.getPublishedResults(), "owner", "repo");
+		// fields after the body are still read
+		assertEquals("x=1", request.getRawQueryString());
+		assertFalse(request.isBodyBase64Encoded());
+	}
+
+	@Test
+	public void testBase64Body() throws IOException {
+		// non-ascii to make sure that the bytes are decoded as utf-8
+		String body = resultsJson("owner", "caf\u00e9");
+		String base64 = Base64.encodeBase64String(body.getBytes(StandardCharsets.UTF_8));
+		ApiGatewayRequest request =
+				readRequest("{\"rawPath\":\"/results\",\"body\":\"" + base64 + "\",\"isBase64Encoded\":true}");
+		assertTrue(request.isBodyStreamed());
+		assertResults(request.getPublishedResults(), "owner", "caf\u00e9");
+		assertTrue(request.isBodyBase64Encoded());
+	}
+
+	@Test
+	public void testEscapes() throws IOException {
+		String body = resultsJson("own\"er", "re\\po\u2603");
+		// escape the non-ascii character as well
+		String json = gson.toJson(body).replace("\u2603", "\\u2603");
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/results\",\"body\":" + json + "}");
+		assertResults(request.getPublishedResults(), "own\"er", "re\\po\u2603");
+	}
+
+	@Test
+	public void testBodyBeforePath() throws IOException {
+		String body = resultsJson("owner", "repo");
+		ApiGatewayRequest request = readRequest("{\"body\":" + gson.toJson(body) + ",\"rawPath\":\"/results\"}");
+		// we don't know the path yet so it is copied
+		assertFalse(request.isBodyStreamed());
+		assertEquals(body, request.getBody());
+		assertEquals("/results", request.getRawPath());
+	}
+
+	@Test
+	public void testOtherPath() throws IOException {
+		String body = resultsJson("owner", "repo");
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/install\",\"body\":" + gson.toJson(body) + "}");
+		assertFalse(request.isBodyStreamed());
+		assertEquals(body, request.getBody());
+	}
+
+	@Test
+	public void testNotBase64() throws IOException {
+		// base64 characters but the flag says it isn't encoded
+		ApiGatewayRequest request =
+				readRequest("{\"rawPath\":\"/results\",\"isBase64Encoded\":false,\"body\":\"abc\"}");
+		assertFalse(request.isBodyStreamed());
+		assertEquals("abc", request.getBody());
+		// not json or base64
+		request = readRequest("{\"rawPath\":\"/results\",\"body\":\"!!!\"}");
+		assertFalse(request.isBodyStreamed());
+		assertEquals("!!!", request.getBody());
+	}
+
+	@Test
+	public void testEmptyBody() throws IOException {
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/results\",\"body\":\"\",\"rawQueryString\":\"\"}");
+		assertFalse(request.isBodyStreamed());
+		assertEquals("", request.getBody());
+		request = readRequest("{\"rawPath\":\"/results\",\"body\":null}");
+		assertFalse(request.isBodyStreamed());
+		assertNull(request.getBody());
+		assertNull(readRequest("  "));
+	}
+
+	@Test
+	public void testInvalidBody() throws IOException {
+		ApiGatewayRequest request =
+				readRequest("{\"rawPath\":\"/results\",\"body\":\"{ not json\",\"rawQueryString\":\"x=1\"}");
+		assertTrue(request.isBodyStreamed());
+		assertNull(request.getPublishedResults());
+		assertNotNull(request.getBodyParseException());
+		// the rest of the body was skipped
+		assertEquals("x=1", request.getRawQueryString());
+	}
+
+	@Test
+	public void testNestedFields() throws IOException {
+		String body = resultsJson("owner", "repo");
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/results\",\"headers\":{\"a\":\"b,}\"},"
+				+ "\"requestContext\":{\"requestId\":\"id\",\"http\":{\"method\":\"POST\"}},\"body\":"
+				+ gson.toJson(body) + "}");
+		assertEquals("b,}", request.getHeaders().get("a"));
+		assertEquals("id", request.getRequestContext().getRequestId());
+		assertEquals("POST", request.getRequestContext().getHttpContext().getMethod());
+		assertResults(request.getPublishedResults(), "owner", "repo");
+	}
+
+	@Test
+	public void testCompressedBody() throws IOException {
+		byte[] bytes = resultsJson("owner", "repo").getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (OutputStream outputStream = new DeflaterOutputStream(baos);) {
+			outputStream.write(bytes);
+		}
+		String base64 = Base64.encodeBase64String(baos.toByteArray());
+		String json = "{\"rawPath\":\"/results\",\"headers\":{\"content-encoding\":\"deflate\"},\"body\":\"" + base64
+				+ "\",\"isBase64Encoded\":true}";
+		ApiGatewayRequest request = readRequest(json);
+		assertTrue(request.isBodyStreamed());
+		assertResults(request.getPublishedResults(), "owner", "repo");
+		assertEquals("deflate", request.getHeaders().get("content-encoding"));
+
+		// too large
+		request = GatewayRequestReader.readRequest(new StringReader(json), gson, RESULTS_PREDICATE, bytes.length - 1);
+		assertTrue(request.isBodyStreamed());
+		assertNull(request.getPublishedResults());
+		assertTrue(ContentEncodingUtils.isTooLarge(request.getBodyParseException()));
+		assertTrue(request.isBodyBase64Encoded());
+
+		// unsupported encodings are skipped
+		request = readRequest(json.replace("deflate", "br"));
+		assertTrue(request.isBodyStreamed());
+		assertNull(request.getPublishedResults());
+		assertNull(request.getBodyParseException());
+		assertNull(request.getBody());
+	}
+
+	@Test
+	public void testBadCompressedBody() throws IOException {
+		// not gzip data
+		String base64 = Base64.encodeBase64String(resultsJson("owner", "repo").getBytes(StandardCharsets.UTF_8));
+		ApiGatewayRequest request = readRequest("{\"rawPath\":\"/results\",\"headers\":{\"content-encoding\":\"gzip\"},"
+				+ "\"body\":\"" + base64 + "\",\"rawQueryString\":\"x=1\"}");
+		assertTrue(request.isBodyStreamed());
+		assertNull(request.getPublishedResults());
+		assertNotNull(request.getBodyParseException());
+		assertFalse(ContentEncodingUtils.isTooLarge(request.getBodyParseException()));
+		assertEquals("x=1", request.getRawQueryString());
+	}
+
+	private ApiGatewayRequest readRequest(String json) throws IOException {
+		return GatewayRequestReader.readRequest(new StringReader(json), gson, RESULTS_PREDICATE, Long.MAX_VALUE);
+	}
+
+	private String resultsJson(String owner, String repository) {
+		return gson.toJson(new PublishedTestResults(owner, repository, "sha", null, null, null));
+	}
+
+	private static void assertResults(PublishedTestResults results, String owner, String repository) {
+		assertNotNull(results);
+		assertEquals(owner, results.getOwner());
+		assertEquals(repository, results.getRepository());
+		assertEquals("sha", results.getCommitSha());
+	}
+}
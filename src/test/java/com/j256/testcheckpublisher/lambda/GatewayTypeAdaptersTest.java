@@ -0,0 +1,87 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.HttpContext;
+import com.j256.testcheckpublisher.lambda.ApiGatewayRequest.RequestContext;
+import com.j256.testcheckpublisher.lambda.UploadStatus.State;
+import com.j256.testcheckpublisher.lambda.github.GsonUtils;
+import com.j256.testcheckpublisher.lambda.github.ReflectiveGson;
+
+public class GatewayTypeAdaptersTest {
+
+	private final Gson gson = GsonUtils.getGson();
+	private final Gson reflectiveGson = ReflectiveGson.create();
+
+	@Test
+	public void testRequest() {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("content-type", "application/json");
+		headers.put("x-null", null);
+		RequestContext requestContext = new RequestContext("domain", "id",
+				new HttpContext("POST", "/results", "1.2.3.4", "agent \"quoted\""));
+		assertRoundTrip(new ApiGatewayRequest("/results", "a=b&c", headers, requestContext, "{\"body\":\"\u2603\"}",
+				false), ApiGatewayRequest.class);
+		assertRoundTrip(new ApiGatewayRequest("/results", null, null, new RequestContext(), "ZW5jb2RlZA==", true),
+				ApiGatewayRequest.class);
+		assertRoundTrip(new ApiGatewayRequest(), ApiGatewayRequest.class);
+	}
+
+	@Test
+	public void testRequestRead() {
+		// what the gateway sends with unknown fields
+		assertReadSame("{\"version\":\"2.0\",\"routeKey\":\"$default\",\"rawPath\":\"/results\","
+				+ "\"rawQueryString\":\"\",\"cookies\":[\"a=b\"],\"headers\":{\"content-length\":\"10\",\"x\":null},"
+				+ "\"requestContext\":{"
+				+ "\"accountId\":\"123\",\"domainName\":\"d\",\"http\":{\"method\":\"POST\",\"protocol\":\"HTTP/1.1\"},"
+				+ "\"requestId\":\"id\",\"timeEpoch\":1583348638390},\"body\":\"b\",\"isBase64Encoded\":\"true\"}",
+				ApiGatewayRequest.class);
+		assertReadSame("{\"isBase64Encoded\":null,\"headers\":null,\"requestContext\":{\"http\":null}}",
+				ApiGatewayRequest.class);
+		assertNull(gson.fromJson("null", ApiGatewayRequest.class));
+	}
+
+	@Test
+	public void testResponse() {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", "text/html");
+		assertRoundTrip(new ApiGatewayResponse(200, new String[] { "a=b", null }, headers, "<html>\u2603</html>",
+				false), ApiGatewayResponse.class);
+		assertRoundTrip(new ApiGatewayResponse(302, null, null, null, true), ApiGatewayResponse.class);
+		assertReadSame("{\"statusCode\":\"404\",\"cookies\":null,\"multiValueHeaders\":{\"a\":[\"b\"]}}",
+				ApiGatewayResponse.class);
+	}
+
+	@Test
+	public void testUploadStatus() {
+		for (State state : State.values()) {
+			assertRoundTrip(new UploadStatus("id", state, 200, "message"), UploadStatus.class);
+		}
+		assertRoundTrip(new UploadStatus(null, null, 0, null), UploadStatus.class);
+		assertReadSame("{\"id\":\"i\",\"state\":\"bogus\",\"statusCode\":null,\"extra\":1}", UploadStatus.class);
+	}
+
+	/**
+	 * Make sure that the adapter writes the same as reflection and reads it back into the same object.
+	 */
+	private <T> void assertRoundTrip(T value, Class<T> clazz) {
+		String json = reflectiveGson.toJson(value);
+		assertEquals(json, gson.toJson(value));
+		assertReadSame(json, clazz);
+	}
+
+	/**
+	 * Make sure that the adapter reads the json into the same object as reflection.
+	 */
+	private <T> void assertReadSame(String json, Class<T> clazz) {
+		assertEquals(reflectiveGson.toJson(reflectiveGson.fromJson(json, clazz)),
+				reflectiveGson.toJson(gson.fromJson(json, clazz)));
+	}
+}
@@ -2,21 +2,32 @@ package com.j256.testcheckpublisher.lambda;
 
 import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.message.BasicStatusLine;
@@ -152,10 +163,8 @@ public class LambdaHandlerTest {
 		Commit commit = new Commit(new Tree(treeSha));
 		ChangedFile[] changesFiles = new ChangedFile[] { new ChangedFile(filePath, "added") };
 		CommitInfoResponse commitResponse = new CommitInfoResponse(commitSha, commit, changesFiles);
+		// the test file is in the commit so we don't need the tree
 		expect(github.requestCommitInfo(commitSha)).andReturn(commitResponse);
-		List<TreeFile> treeFiles = new ArrayList<>();
-		treeFiles.add(new TreeFile(filePath, "added", "filesha"));
-		expect(github.requestTreeFiles(treeSha)).andReturn(treeFiles);
 
 		List<CheckRunAnnotation> annotations = new ArrayList<>();
 		annotations.add(new CheckRunAnnotation(filePath, startLine, startLine, CheckLevel.fromTestLevel(testLevel),
@@ -213,6 +222,111 @@ public class LambdaHandlerTest {
 		verify(github);
 	}
 
+	@Test
+	public void testUploadTreeCallFailed() throws IOException, GeneralSecurityException {
+		LambdaHandler.setInstallationIdSecret(1234);
+		LambdaHandler.setApplicationKey(KeyHandlingTest.readPrivateKey());
+		LambdaHandler handler = new LambdaHandler();
+
+		GithubClient github = createMock(GithubClient.class);
+		handler.setTestGithub(github);
+
+		List<TestFileResult> testFileResults = new ArrayList<>();
+		testFileResults.add(new TestFileResult("com/foo/FooTest.java", 10, 10, TestLevel.ERROR, 0.1F, "title",
+				"message", "details"));
+		FrameworkTestResults frameworkResults = new FrameworkTestResults("name", 478, 11, 23, 34, testFileResults);
+
+		int installationId = 10;
+		String hash = handler.createInstallationHash(installationId);
+
+		String owner = "owner";
+		// different repo so we don't know any of its source roots
+		String repo = "tree-failed";
+		String commitSha = "12345";
+		PublishedTestResults results =
+				new PublishedTestResults(owner, repo, commitSha, hash, "format", frameworkResults);
+
+		ApiGatewayRequest request = createRequest("/results", null, gson.toJson(results));
+
+		expect(github.login(owner, repo)).andReturn(true);
+		expect(github.getInstallationId()).andReturn(installationId);
+		ChangedFile[] changesFiles = new ChangedFile[] { new ChangedFile("README.md", "modified") };
+		CommitInfoResponse commitResponse = new CommitInfoResponse(commitSha, new Commit(new Tree("446")), changesFiles);
+		expect(github.requestCommitInfo(commitSha)).andReturn(commitResponse);
+		// test file isn't in the commit so we have to list the tree which fails
+		expect(github.requestTreeFiles("446")).andReturn(null);
+		expect(github.getLastStatusLine())
+				.andReturn(new BasicStatusLine(HTTP_PROTOCOL_VERSION, HttpStatus.SC_FORBIDDEN, "forbidden"));
+
+		replay(github);
+
+		ApiGatewayResponse response = doRequest(handler, request);
+		assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusCode());
+		assertTrue(response.getBody(), response.getBody().contains("not get file information for tree 446"));
+
+		verify(github);
+	}
+
+	@Test
+	public void testUploadStoredIndex() throws IOException, GeneralSecurityException {
+		LambdaHandler.setInstallationIdSecret(1234);
+		LambdaHandler.setApplicationKey(KeyHandlingTest.readPrivateKey());
+		LambdaHandler handler = new LambdaHandler();
+
+		GithubClient github = createMock(GithubClient.class);
+		handler.setTestGithub(github);
+
+		File dir = File.createTempFile(getClass().getSimpleName(), ".dir");
+		dir.delete();
+		PathIndexStore store = new PathIndexStore(dir);
+		LambdaHandler.setPathIndexStore(store);
+		try {
+			List<TestFileResult> testFileResults = new ArrayList<>();
+			testFileResults.add(new TestFileResult("com/foo/FooTest.java", 10, 10, TestLevel.ERROR, 0.1F, "title",
+					"message", "details"));
+			FrameworkTestResults frameworkResults =
+					new FrameworkTestResults("name", 478, 11, 23, 34, testFileResults);
+
+			int installationId = 10;
+			String hash = handler.createInstallationHash(installationId);
+
+			String owner = "owner";
+			// different repo so we don't know any of its source roots
+			String repo = "stored-index";
+			String commitSha = "12345";
+			PublishedTestResults results =
+					new PublishedTestResults(owner, repo, commitSha, hash, "format", frameworkResults);
+
+			ChangedFile[] changesFiles = new ChangedFile[] { new ChangedFile("README.md", "modified") };
+			CommitInfoResponse commitResponse = new CommitInfoResponse(commitSha,
+					new Commit(new Tree("0123456789abcdef0123456789abcdef01234567")), changesFiles);
+			expect(github.login(owner, repo)).andReturn(true).times(2);
+			expect(github.getInstallationId()).andReturn(installationId).times(2);
+			expect(github.requestCommitInfo(commitSha)).andReturn(commitResponse).times(2);
+			// only the first upload lists the tree
+			expect(github.requestTreeFiles(commitResponse.getTreeSha())).andReturn(
+					Arrays.asList(new TreeFile("src/test/java/com/foo/FooTest.java", "blob", null)));
+			expect(github.addCheckRun(isA(CheckRunRequest.class))).andReturn(true).times(2);
+
+			replay(github);
+
+			for (int i = 0; i < 2; i++) {
+				ApiGatewayResponse response =
+						doRequest(handler, createRequest("/results", null, gson.toJson(results)));
+				assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+			}
+			assertEquals(1, store.getHitCount());
+
+			verify(github);
+		} finally {
+			LambdaHandler.setPathIndexStore(null);
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
 	@Test
 	public void testUploadLoginFailed() throws IOException, GeneralSecurityException {
 		LambdaHandler.setInstallationIdSecret(1234);
@@ -377,9 +491,158 @@ public class LambdaHandlerTest {
 				doRequest(handler, createRequest("/results", null, "")).getStatusCode());
 		assertEquals(HttpStatus.SC_BAD_REQUEST,
 				doRequest(handler, createRequest("/results", null, "bad-content")).getStatusCode());
+		ApiGatewayResponse response = doRequest(handler, createRequest("/results", null, "{\"magic\":1234}"));
+		assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		assertEquals("Invalid JSON posted to the server: invalid magic value: 1234", response.getBody());
 		doRequest(handler, createRequest("/results", null, "not base 64 !!!~^__ZZzz", true));
 	}
 
+	@Test
+	public void testCompressedUpload() throws IOException {
+		LambdaHandler.setInstallationIdSecret(1234);
+		LambdaHandler handler = new LambdaHandler();
+		// no framework name is the first check after the results are parsed
+		FrameworkTestResults frameworkResults = new FrameworkTestResults("", 1, 0, 0, 0, null);
+		String json = gson.toJson(new PublishedTestResults("owner", "repo", "sha", "hash", "format", frameworkResults));
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(baos);) {
+			gzipStream.write(bytes);
+		}
+		String gzipped = Base64.encodeBase64String(baos.toByteArray());
+		Map<String, String> gzipHeaders = Collections.singletonMap("content-encoding", "gzip");
+
+		ApiGatewayResponse response = doRequest(handler, createRequest("/results", gzipped, true, gzipHeaders));
+		assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		assertEquals("No framework name supplied.", response.getBody());
+
+		// too large once it is decompressed
+		LambdaHandler.setMaxBodySize(bytes.length - 1);
+		try {
+			// header names aren't case sensitive
+			response = doRequest(handler,
+					createRequest("/results", gzipped, true, Collections.singletonMap("Content-Encoding", "GZIP")));
+			assertEquals(HttpStatus.SC_REQUEST_TOO_LONG, response.getStatusCode());
+		} finally {
+			LambdaHandler.setMaxBodySize(Long.MAX_VALUE);
+		}
+
+		// not actually compressed
+		response =
+				doRequest(handler, createRequest("/results", Base64.encodeBase64String(bytes), true, gzipHeaders));
+		assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+		assertTrue(response.getBody(), response.getBody().startsWith("Invalid JSON"));
+
+		response = doRequest(handler, createRequest("/results", Base64.encodeBase64String(bytes), true,
+				Collections.singletonMap("content-encoding", "zstd")));
+		assertEquals(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, response.getStatusCode());
+	}
+
+	@Test
+	public void testAsyncUpload() throws IOException, GeneralSecurityException, InterruptedException {
+		LambdaHandler.setInstallationIdSecret(1234);
+		LambdaHandler.setApplicationKey(KeyHandlingTest.readPrivateKey());
+		LambdaHandler handler = new LambdaHandler();
+
+		GithubClient github = createMock(GithubClient.class);
+		handler.setTestGithub(github);
+
+		int installationId = 10;
+		String hash = handler.createInstallationHash(installationId);
+		String owner = "owner";
+		String repo = "async";
+		String commitSha = "12345";
+		List<TestFileResult> testFileResults = new ArrayList<>();
+		testFileResults.add(new TestFileResult("1/2/3.java", 10, 10, TestLevel.ERROR, 0.1F, "title", "message", null));
+		PublishedTestResults results = new PublishedTestResults(owner, repo, commitSha, hash, "format",
+				new FrameworkTestResults("name", 1, 0, 1, 0, testFileResults));
+
+		// the installation and secret are checked before accepting and the login is done again to post
+		expect(github.login(owner, repo)).andReturn(true).times(6);
+		expect(github.getInstallationId()).andReturn(installationId).times(4);
+		CommitInfoResponse commitResponse = new CommitInfoResponse(commitSha, new Commit(new Tree("446")),
+				new ChangedFile[] { new ChangedFile("1/2/3.java", "added") });
+		expect(github.requestCommitInfo(commitSha)).andReturn(commitResponse).times(2);
+		CountDownLatch latch = new CountDownLatch(1);
+		expect(github.addCheckRun(isA(CheckRunRequest.class))).andAnswer(() -> {
+			// hold the first upload so we can look at what was saved
+			return latch.await(10000, TimeUnit.MILLISECONDS);
+		});
+		expect(github.addCheckRun(isA(CheckRunRequest.class))).andReturn(false);
+		expect(github.getLastStatusLine()).andReturn(new BasicStatusLine(HTTP_PROTOCOL_VERSION, 502, "bad gateway"));
+
+		replay(github);
+
+		File dir = File.createTempFile(getClass().getSimpleName(), ".dir");
+		dir.delete();
+		UploadQueue queue = new UploadQueue(1, dir);
+		LambdaHandler.setUploadQueue(queue);
+		try {
+			ApiGatewayResponse response =
+					doRequest(handler, createRequest("/prod/results", null, gson.toJson(results)));
+			assertEquals(HttpStatus.SC_ACCEPTED, response.getStatusCode());
+			UploadStatus accepted = gson.fromJson(response.getBody(), UploadStatus.class);
+			String id = accepted.getId();
+			assertTrue(UploadQueue.isValidId(id));
+			assertEquals("/prod/status/" + id, response.getHeaders().get("Location"));
+			// the secret was validated so it isn't saved
+			String saved = new String(Files.readAllBytes(new File(dir, id + ".json").toPath()), StandardCharsets.UTF_8);
+			assertTrue(saved, saved.contains(commitSha));
+			assertFalse(saved, saved.contains(hash));
+			latch.countDown();
+
+			// invalid uploads are still rejected before they are accepted
+			FrameworkTestResults noName = new FrameworkTestResults("", 1, 0, 0, 0, null);
+			response = doRequest(handler, createRequest("/results", null,
+					gson.toJson(new PublishedTestResults(owner, repo, commitSha, hash, "format", noName))));
+			assertEquals(HttpStatus.SC_BAD_REQUEST, response.getStatusCode());
+			response = doRequest(handler, createRequest("/results", null, gson.toJson(new PublishedTestResults(owner,
+					repo, commitSha, "wrong", "format", results.getResults()))));
+			assertEquals(HttpStatus.SC_FORBIDDEN, response.getStatusCode());
+			// this one fails to post
+			response = doRequest(handler, createRequest("/results", null, gson.toJson(results)));
+			assertEquals(HttpStatus.SC_ACCEPTED, response.getStatusCode());
+			String failedId = gson.fromJson(response.getBody(), UploadStatus.class).getId();
+			assertTrue(handler.shutdownUploads(10000));
+
+			response = doRequest(handler, createRequest("/prod/status/" + id, null, null));
+			assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+			UploadStatus status = gson.fromJson(response.getBody(), UploadStatus.class);
+			assertEquals(id, status.getId());
+			assertEquals(UploadStatus.State.POSTED, status.getState());
+			assertEquals(HttpStatus.SC_OK, status.getStatusCode());
+
+			response = doRequest(handler, createRequest("/status/" + failedId, null, null));
+			status = gson.fromJson(response.getBody(), UploadStatus.class);
+			assertEquals(UploadStatus.State.FAILED, status.getState());
+			assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, status.getStatusCode());
+			assertTrue(status.getMessage(), status.getMessage().contains("bad gateway"));
+
+			response = doRequest(handler, createRequest("/status/0123456789abcdef0123456789abcdef", null, null));
+			assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+			response = doRequest(handler, createRequest("/status/..", null, null));
+			assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+
+			// no room in the queue
+			LambdaHandler.setUploadQueue(new UploadQueue(1, 0, Long.MAX_VALUE, null));
+			response = doRequest(handler, createRequest("/results", null, gson.toJson(results)));
+			assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusCode());
+
+			verify(github);
+		} finally {
+			LambdaHandler.setUploadQueue(null);
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+
+		// not found when we aren't queueing
+		ApiGatewayResponse response = doRequest(handler, createRequest("/status", null, null));
+		assertEquals(HttpStatus.SC_NOT_FOUND, response.getStatusCode());
+		assertTrue(handler.shutdownUploads(0));
+	}
+
 	private ApiGatewayRequest createRequest(String rawPath, String rawQueryString, String body) {
 		return createRequest(rawPath, rawQueryString, body, false);
 	}
@@ -392,6 +655,13 @@ public class LambdaHandlerTest {
 				isBodyBase64Encoded);
 	}
 
+	private ApiGatewayRequest createRequest(String rawPath, String body, boolean isBodyBase64Encoded,
+			Map<String, String> headers) {
+		HttpContext httpContext = new HttpContext("method", rawPath, "source-ip", "agent");
+		RequestContext requestContext = new RequestContext("domain", "request-id", httpContext);
+		return new ApiGatewayRequest(rawPath, null, headers, requestContext, body, isBodyBase64Encoded);
+	}
+
 	private ApiGatewayResponse doRequest(LambdaHandler handler, ApiGatewayRequest request) throws IOException {
 
 		StringWriter writer = new StringWriter();
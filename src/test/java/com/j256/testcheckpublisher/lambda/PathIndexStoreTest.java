@@ -0,0 +1,113 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class PathIndexStoreTest {
+
+	private static final String TREE_SHA = "0123456789abcdef0123456789abcdef01234567";
+
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		dir = File.createTempFile(getClass().getSimpleName(), ".dir");
+		dir.delete();
+	}
+
+	@After
+	public void after() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testStuff() {
+		PathIndexStore store = new PathIndexStore(dir);
+		assertTrue(dir.isDirectory());
+		assertNull(store.findIndex("owner", "repo", TREE_SHA));
+		assertEquals(1, store.getMissCount());
+
+		PathIndex index = store.addIndex("owner", "repo", TREE_SHA, treeFiles());
+		assertNotNull(index);
+		assertEquals(1, dir.listFiles().length);
+		assertEquals(index, store.findIndex("owner", "repo", TREE_SHA));
+		assertEquals(1, store.getHitCount());
+		// case doesn't matter
+		assertEquals(index, store.findIndex("Owner", "REPO", TREE_SHA.toUpperCase()));
+		assertNull(store.findIndex("owner", "other", TREE_SHA));
+
+		// a new store maps the file
+		store = new PathIndexStore(dir);
+		index = store.findIndex("owner", "repo", TREE_SHA);
+		assertNotNull(index);
+		assertEquals(1, store.getDiskHitCount());
+		assertEquals("src/test/java/com/foo/FooTest.java", index.findPath("com/foo/FooTest.java"));
+		assertEquals("src/main/java/com/foo/Foo.java", index.findPath("Foo"));
+	}
+
+	@Test
+	public void testInvalidKeys() {
+		PathIndexStore store = new PathIndexStore(dir);
+		// not real shas or names that are safe to use in a file name
+		assertNull(store.addIndex("owner", "repo", "master", treeFiles()));
+		assertNull(store.addIndex("owner", "../repo", TREE_SHA, treeFiles()));
+		assertNull(store.addIndex("owner", "repo", null, treeFiles()));
+		assertNull(store.findIndex("owner", "repo", null));
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void testCorrupt() throws IOException {
+		PathIndexStore store = new PathIndexStore(dir);
+		store.addIndex("owner", "repo", TREE_SHA, treeFiles());
+		File file = dir.listFiles()[0];
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");) {
+			randomAccessFile.seek(randomAccessFile.length() - 1);
+			randomAccessFile.write('x');
+		}
+
+		store = new PathIndexStore(dir);
+		assertNull(store.findIndex("owner", "repo", TREE_SHA));
+		assertEquals(1, store.getInvalidCount());
+		assertFalse(file.exists());
+
+		// rebuilds it
+		assertNotNull(store.addIndex("owner", "repo", TREE_SHA, treeFiles()));
+		store.clear();
+		assertNotNull(store.findIndex("owner", "repo", TREE_SHA));
+	}
+
+	@Test
+	public void testPrune() {
+		PathIndexStore store = new PathIndexStore(dir, 1);
+		store.addIndex("owner", "repo", TREE_SHA, treeFiles());
+		// more than our limit so it gets removed
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	private List<TreeFile> treeFiles() {
+		return Arrays.asList(new TreeFile("src/main/java/com/foo/Foo.java", "blob", null),
+				new TreeFile("src/test/java/com/foo/FooTest.java", "blob", null));
+	}
+}
@@ -0,0 +1,243 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class PathIndexTest {
+
+	@Test
+	public void testStuff() {
+		PathIndex index = new PathIndex(files("src/main/java/com/foo/Foo.java", "src/test/java/com/foo/FooTest.java",
+				"src/test/java/com/bar/FooTest.java", "README.md"));
+		assertEquals(4, index.getFileCount());
+
+		assertEquals("src/main/java/com/foo/Foo.java", index.findPath("src/main/java/com/foo/Foo.java"));
+		assertEquals("src/main/java/com/foo/Foo.java", index.findPath("com/foo/Foo.java"));
+		assertEquals("src/main/java/com/foo/Foo.java", index.findPath("Foo.java"));
+		assertEquals("src/main/java/com/foo/Foo.java", index.findPath("Foo"));
+		assertEquals("src/test/java/com/foo/FooTest.java", index.findPath("foo/FooTest.java"));
+		// the last one in the tree wins
+		assertEquals("src/test/java/com/bar/FooTest.java", index.findPath("FooTest.java"));
+		assertEquals("README.md", index.findPath("README"));
+
+		// has to start at a segment
+		assertNull(index.findPath("oo/Foo.java"));
+		assertNull(index.findPath("other/com/foo/Foo.java"));
+		assertNull(index.findPath("com/foo/Foo"));
+		assertNull(index.findPath("Bar.java"));
+		// directories aren't files
+		assertNull(index.findPath("com/foo"));
+	}
+
+	@Test
+	public void testBackslashes() {
+		PathIndex index = new PathIndex(files("src/com\\foo\\Foo.java", "dir\\sub/Bar.java"));
+		assertEquals("src/com\\foo\\Foo.java", index.findPath("foo\\Foo.java"));
+		assertEquals("src/com\\foo\\Foo.java", index.findPath("Foo"));
+		// backslashes only split after the last slash
+		assertEquals("dir\\sub/Bar.java", index.findPath("dir\\sub/Bar.java"));
+		assertNull(index.findPath("sub/Bar.java"));
+		// and the separators have to match
+		assertNull(index.findPath("foo/Foo.java"));
+	}
+
+	@Test
+	public void testNullPath() {
+		PathIndex index = new PathIndex(Arrays.asList(new TreeFile(null, "blob", null),
+				new TreeFile("Foo.java", "blob", null)));
+		assertEquals(1, index.getFileCount());
+		assertEquals("Foo.java", index.findPath("Foo"));
+	}
+
+	@Test
+	public void testSharedNodes() {
+		List<TreeFile> treeFiles = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			treeFiles.add(new TreeFile("src/test/java/com/foo/File" + i + ".java", "blob", null));
+		}
+		PathIndex index = new PathIndex(treeFiles);
+		// 5 directories and the files
+		assertEquals(105, index.getNodeCount());
+		// 5 directories, 100 names, and 100 names without extensions
+		assertEquals(205, index.getSegmentCount());
+	}
+
+	@Test
+	public void testMatchesNameMap() {
+		Random random = new Random(1);
+		String[] segments = new String[] { "src", "main", "test", "java", "com", "foo", "bar", "Foo.java", "Foo",
+				"Bar.java", "a.b.c", ".hidden", "x\\y", "FooTest.java", "" };
+		List<TreeFile> treeFiles = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			treeFiles.add(new TreeFile(randomPath(random, segments), "blob", null));
+		}
+		Map<String, String> nameMap = createNameMap(treeFiles);
+		PathIndex index = new PathIndex(treeFiles);
+		for (String key : nameMap.keySet()) {
+			assertEquals(key, nameMap.get(key), index.findPath(key));
+		}
+		for (int i = 0; i < 2000; i++) {
+			String key = randomPath(random, segments);
+			assertEquals(key, nameMap.get(key), index.findPath(key));
+		}
+	}
+
+	@Test
+	public void testNameSet() {
+		List<TreeFile> treeFiles = files("src/main/java/com/foo/Foo.java", "src/test/java/com/foo/FooTest.java",
+				"src/test/java/com/foo/BarTest.java", "src/com\\foo\\Baz.java", "README.md");
+		Set<String> nameSet = new HashSet<>();
+		nameSet.add(PathIndex.fileName("com/foo/FooTest.java"));
+		nameSet.add(PathIndex.fileName("com\\foo\\Baz.java"));
+		nameSet.add(PathIndex.fileName("README"));
+		assertEquals(new HashSet<>(Arrays.asList("FooTest.java", "Baz.java", "README")), nameSet);
+
+		PathIndex index = new PathIndex(treeFiles, nameSet);
+		assertEquals(3, index.getFileCount());
+		assertEquals("src/test/java/com/foo/FooTest.java", index.findPath("com/foo/FooTest.java"));
+		assertEquals("src/com\\foo\\Baz.java", index.findPath("foo\\Baz.java"));
+		assertEquals("README.md", index.findPath("README"));
+		assertNull(index.findPath("BarTest.java"));
+	}
+
+	@Test
+	public void testNameSetMatchesFullIndex() {
+		Random random = new Random(2);
+		String[] segments = new String[] { "src", "test", "java", "com", "foo", "Foo.java", "Foo", "FooTest.java",
+				"a.b", "a", "x\\y" };
+		List<TreeFile> treeFiles = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			treeFiles.add(new TreeFile(randomPath(random, segments), "blob", null));
+		}
+		PathIndex fullIndex = new PathIndex(treeFiles);
+		List<String> keys = new ArrayList<>();
+		Set<String> nameSet = new HashSet<>();
+		for (int i = 0; i < 20; i++) {
+			String key = randomPath(random, segments);
+			keys.add(key);
+			nameSet.add(PathIndex.fileName(key));
+		}
+		PathIndex index = new PathIndex(treeFiles, nameSet);
+		for (String key : keys) {
+			assertEquals(key, fullIndex.findPath(key), index.findPath(key));
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() throws IOException {
+		List<TreeFile> treeFiles = files("src/main/java/com/foo/Foo.java", "src/test/java/com/foo/FooTest.java",
+				"src/com\\foo\\Baz.java", "docs/caf\u00e9/Menu.md");
+		PathIndex index = new PathIndex(treeFiles);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		index.writeTo(baos);
+		byte[] bytes = baos.toByteArray();
+		assertEquals(index.getByteCount(), bytes.length);
+
+		PathIndex readIndex = PathIndex.fromBuffer(ByteBuffer.wrap(bytes));
+		assertEquals(4, readIndex.getFileCount());
+		assertEquals(index.getNodeCount(), readIndex.getNodeCount());
+		assertEquals("src/test/java/com/foo/FooTest.java", readIndex.findPath("com/foo/FooTest.java"));
+		assertEquals("src/com\\foo\\Baz.java", readIndex.findPath("Baz"));
+		assertEquals("docs/caf\u00e9/Menu.md", readIndex.findPath("caf\u00e9/Menu.md"));
+		assertNull(readIndex.findPath("Bar.java"));
+
+		// empty index
+		baos.reset();
+		new PathIndex(new ArrayList<TreeFile>()).writeTo(baos);
+		assertNull(PathIndex.fromBuffer(ByteBuffer.wrap(baos.toByteArray())).findPath("Foo.java"));
+	}
+
+	@Test
+	public void testReadInvalid() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		new PathIndex(files("src/main/java/com/foo/Foo.java")).writeTo(baos);
+		byte[] bytes = baos.toByteArray();
+
+		// flip a bit in the paths
+		byte[] corrupt = bytes.clone();
+		corrupt[corrupt.length - 1] ^= 1;
+		assertInvalid(corrupt, "checksum");
+		// another version
+		byte[] version = bytes.clone();
+		version[7] = 2;
+		assertInvalid(version, "version");
+		assertInvalid(Arrays.copyOf(bytes, bytes.length - 1), "length");
+		assertInvalid(new byte[] { 1, 2, 3 }, "not a path index");
+	}
+
+	private static void assertInvalid(byte[] bytes, String message) {
+		try {
+			PathIndex.fromBuffer(ByteBuffer.wrap(bytes));
+			fail("should have thrown");
+		} catch (IOException ioe) {
+			assertTrue(ioe.getMessage(), ioe.getMessage().contains(message));
+		}
+	}
+
+	private static String randomPath(Random random, String[] segments) {
+		StringBuilder sb = new StringBuilder();
+		int count = 1 + random.nextInt(5);
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(random.nextInt(4) == 0 ? '\\' : '/');
+			}
+			sb.append(segments[random.nextInt(segments.length)]);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The map of path portions that the index replaced.
+	 */
+	private static Map<String, String> createNameMap(List<TreeFile> treeFiles) {
+		Map<String, String> nameMap = new HashMap<>();
+		for (TreeFile treeFile : treeFiles) {
+			String path = treeFile.getPath();
+			nameMap.put(path, path);
+			int index = 0;
+			while (true) {
+				int nextIndex = path.indexOf('/', index);
+				if (nextIndex < 0) {
+					nextIndex = path.indexOf('\\', index);
+					if (nextIndex < 0) {
+						break;
+					}
+				}
+				index = nextIndex + 1;
+				nameMap.put(path.substring(index), path);
+			}
+			String fileName = path.substring(index);
+			index = fileName.indexOf('.');
+			if (index > 0) {
+				nameMap.put(fileName.substring(0, index), path);
+			}
+		}
+		return nameMap;
+	}
+
+	private static List<TreeFile> files(String... paths) {
+		List<TreeFile> treeFiles = new ArrayList<>();
+		for (String path : paths) {
+			treeFiles.add(new TreeFile(path, "blob", null));
+		}
+		return treeFiles;
+	}
+}
@@ -0,0 +1,187 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.GithubClient;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class PathResolverTest {
+
+	private static final String OWNER = "owner";
+	private static final String REPO = "repo";
+	private static final String SHA = "12345";
+	private static final String TREE_SHA = "446";
+
+	private final ResolvedPathCache cache = new ResolvedPathCache();
+
+	@Test
+	public void testTiers() throws IOException {
+		GithubClient github = createMock(GithubClient.class);
+
+		// in the commit
+		replay(github);
+		PathResolver resolver = new PathResolver(github, cache, "label");
+		Collection<TreeFile> files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA,
+				Arrays.asList("README.md", "src/test/java/com/foo/FooTest.java"),
+				Arrays.asList("com/foo/FooTest.java"));
+		assertEquals(Arrays.asList("src/test/java/com/foo/FooTest.java"), paths(files));
+		assertEquals(1, resolver.getCommitCount());
+		assertFalse(resolver.isTreeFetched());
+		verify(github);
+		// another module may have the same file outside of the commit so it isn't remembered
+		assertNull(cache.findPath(OWNER, REPO, "com/foo/FooTest.java"));
+
+		// not in the commit the next time so we list the tree
+		reset(github);
+		expect(github.requestTreeFiles(TREE_SHA))
+				.andReturn(Arrays.asList(new TreeFile("src/test/java/com/foo/FooTest.java", "blob", null)));
+		replay(github);
+		resolver = new PathResolver(github, cache, "label");
+		files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Collections.<String> emptyList(),
+				Arrays.asList("com/foo/FooTest.java"));
+		assertEquals(Arrays.asList("src/test/java/com/foo/FooTest.java"), paths(files));
+		assertTrue(resolver.isTreeFetched());
+		verify(github);
+
+		// from the cache the time after that
+		reset(github);
+		replay(github);
+		resolver = new PathResolver(github, cache, "label");
+		files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Collections.<String> emptyList(),
+				Arrays.asList("com/foo/FooTest.java"));
+		assertEquals(Arrays.asList("src/test/java/com/foo/FooTest.java"), paths(files));
+		assertEquals(1, resolver.getCacheCount());
+		verify(github);
+
+		// in the directory under the root that we learned, without an extension
+		reset(github);
+		Map<String, Collection<TreeFile>> directoryFilesMap = new HashMap<>();
+		directoryFilesMap.put("src/test/java/com/bar",
+				Arrays.asList(new TreeFile("src/test/java/com/bar/BarTest.java", "blob", null),
+						new TreeFile("src/test/java/com/bar/OtherTest.java", "blob", null)));
+		expect(github.requestDirectoriesFiles(SHA, Collections.singleton("src/test/java/com/bar")))
+				.andReturn(directoryFilesMap);
+		replay(github);
+		resolver = new PathResolver(github, cache, "label");
+		files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Collections.<String> emptyList(),
+				Arrays.asList("com/foo/FooTest.java", "com/bar/BarTest"));
+		assertEquals(Arrays.asList("src/test/java/com/foo/FooTest.java", "src/test/java/com/bar/BarTest.java"),
+				paths(files));
+		assertEquals(1, resolver.getCacheCount());
+		assertEquals(1, resolver.getDirectoryCount());
+		assertFalse(resolver.isTreeFetched());
+		verify(github);
+		assertEquals("src/test/java/com/bar/BarTest.java", cache.findPath(OWNER, REPO, "com/bar/BarTest"));
+	}
+
+	@Test
+	public void testTreeFallback() throws IOException {
+		cache.addPath(OWNER, REPO, "com/foo/FooTest.java", "src/test/java/com/foo/FooTest.java");
+		GithubClient github = createMock(GithubClient.class);
+		// not in the directory that we guessed
+		expect(github.requestDirectoriesFiles(SHA, Collections.singleton("src/test/java/org")))
+				.andReturn(Collections.singletonMap("src/test/java/org", Collections.<TreeFile> emptyList()));
+		List<TreeFile> treeFiles = Arrays.asList(new TreeFile("README.md", "blob", null),
+				new TreeFile("src/test/java/com/foo/FooTest.java", "blob", null),
+				new TreeFile("module/src/org/Other.java", "blob", null));
+		expect(github.requestTreeFiles(TREE_SHA)).andReturn(treeFiles);
+		replay(github);
+
+		PathResolver resolver = new PathResolver(github, cache, "label");
+		Collection<TreeFile> files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Collections.<String> emptyList(),
+				Arrays.asList("com/foo/FooTest.java", "org/Other.java"));
+		assertTrue(resolver.isTreeFetched());
+		assertEquals(treeFiles, files);
+		verify(github);
+
+		// learned from the tree
+		assertEquals("module/src/org/Other.java", cache.findPath(OWNER, REPO, "org/Other.java"));
+		assertTrue(cache.findRoots(OWNER, REPO).contains("module/src/"));
+	}
+
+	@Test
+	public void testAmbiguous() throws IOException {
+		GithubClient github = createMock(GithubClient.class);
+		List<TreeFile> treeFiles = Arrays.asList(new TreeFile("a/Foo.java", "blob", null),
+				new TreeFile("b/Foo.java", "blob", null));
+		expect(github.requestTreeFiles(TREE_SHA)).andReturn(treeFiles);
+		replay(github);
+
+		// matches both so we leave it to the fuzzy matching
+		PathResolver resolver = new PathResolver(github, cache, "label");
+		Collection<TreeFile> files = resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA,
+				Arrays.asList("a/Foo.java", "b/Foo.java"), Arrays.asList("Foo.java"));
+		assertEquals(treeFiles, files);
+		assertEquals(0, resolver.getCommitCount());
+		verify(github);
+		assertNull(cache.findPath(OWNER, REPO, "Foo.java"));
+	}
+
+	@Test
+	public void testTreeFailed() throws IOException {
+		GithubClient github = createMock(GithubClient.class);
+		expect(github.requestTreeFiles(TREE_SHA)).andReturn(null);
+		expect(github.getLastStatusLine())
+				.andReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_FORBIDDEN, "forbidden"));
+		replay(github);
+
+		PathResolver resolver = new PathResolver(github, cache, "label");
+		assertNull(resolver.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Collections.<String> emptyList(),
+				Arrays.asList("com/foo/FooTest.java")));
+		assertTrue(resolver.getError(), resolver.getError().contains("not get file information"));
+		verify(github);
+	}
+
+	@Test
+	public void testNoTestPaths() throws IOException {
+		GithubClient github = createMock(GithubClient.class);
+		replay(github);
+		PathResolver resolver = new PathResolver(github, cache, "label");
+		assertEquals(0, resolver
+				.resolveFiles(OWNER, REPO, SHA, TREE_SHA, Arrays.asList("README.md"), Collections.<String> emptyList())
+				.size());
+		verify(github);
+	}
+
+	@Test
+	public void testFindRoot() {
+		assertEquals("src/test/java/",
+				PathResolver.findRoot("com/foo/FooTest.java", "src/test/java/com/foo/FooTest.java"));
+		assertEquals("src/", PathResolver.findRoot("com\\foo\\FooTest.java", "src/com/foo/FooTest.java"));
+		assertEquals("src/", PathResolver.findRoot("com/foo/FooTest", "src/com/foo/FooTest.java"));
+		assertEquals("", PathResolver.findRoot("FooTest.java", "FooTest.java"));
+		assertNull(PathResolver.findRoot("oo/FooTest.java", "src/foo/FooTest.java"));
+		assertNull(PathResolver.findRoot("com/foo/FooTest.java", "src/com/foo/BarTest.java"));
+		assertNull(PathResolver.findRoot("com/foo/FooTest.ja", "src/com/foo/FooTest.java"));
+	}
+
+	private List<String> paths(Collection<TreeFile> files) {
+		List<String> paths = new ArrayList<>();
+		for (TreeFile file : files) {
+			paths.add(file.getPath());
+		}
+		return paths;
+	}
+}
@@ -0,0 +1,47 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class ResolvedPathCacheTest {
+
+	@Test
+	public void testStuff() {
+		ResolvedPathCache cache = new ResolvedPathCache();
+		assertNull(cache.findPath("owner", "repo", "com/foo/FooTest.java"));
+		assertEquals(0, cache.findRoots("owner", "repo").size());
+
+		cache.addPath("owner", "repo", "com/foo/FooTest.java", "src/test/java/com/foo/FooTest.java");
+		// case doesn't matter for the repository
+		assertEquals("src/test/java/com/foo/FooTest.java", cache.findPath("Owner", "REPO", "com/foo/FooTest.java"));
+		assertNull(cache.findPath("owner", "other", "com/foo/FooTest.java"));
+		assertEquals(Collections.singleton("src/test/java/"), cache.findRoots("owner", "repo"));
+
+		// the roots are a copy
+		cache.findRoots("owner", "repo").add("foo/");
+		assertEquals(1, cache.findRoots("owner", "repo").size());
+
+		cache.clear();
+		assertEquals(0, cache.getRepositoryCount());
+	}
+
+	@Test
+	public void testLimits() throws InterruptedException {
+		ResolvedPathCache cache = new ResolvedPathCache(2, 50);
+		cache.addPath("owner", "repo1", "Foo.java", "src/Foo.java");
+		cache.addPath("owner", "repo2", "Foo.java", "src/Foo.java");
+		cache.addPath("owner", "repo3", "Foo.java", "src/Foo.java");
+		assertEquals(2, cache.getRepositoryCount());
+		assertNull(cache.findPath("owner", "repo1", "Foo.java"));
+		assertTrue(cache.findPath("owner", "repo3", "Foo.java") != null);
+
+		Thread.sleep(100);
+		// expired
+		assertNull(cache.findPath("owner", "repo3", "Foo.java"));
+	}
+}
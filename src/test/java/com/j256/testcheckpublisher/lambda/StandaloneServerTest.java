@@ -0,0 +1,166 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpStatus;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.FrameworkTestResults;
+
+public class StandaloneServerTest {
+
+	private static StandaloneServer server;
+
+	private final Gson gson = new Gson();
+
+	@BeforeClass
+	public static void beforeClass() throws IOException {
+		LambdaHandler.setInstallationIdSecret(1234);
+		server = new StandaloneServer(new LambdaHandler(), 0, 2);
+		server.start();
+	}
+
+	@AfterClass
+	public static void afterClass() {
+		server.stop();
+	}
+
+	@Test
+	public void testFile() throws IOException {
+		HttpURLConnection connection = openConnection("/files/logo.png");
+		assertEquals(HttpStatus.SC_OK, connection.getResponseCode());
+		assertEquals("image/png", connection.getContentType());
+		byte[] expected;
+		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("files/logo.png");) {
+			expected = readFully(inputStream);
+		}
+		// no base64 encoding without the gateway
+		assertArrayEquals(expected, readBody(connection));
+	}
+
+	@Test
+	public void testInstallation() throws IOException {
+		HttpURLConnection connection = openConnection("/install?queryString");
+		assertEquals(HttpStatus.SC_OK, connection.getResponseCode());
+		assertEquals("text/html", connection.getContentType());
+		String body = readBodyString(connection);
+		assertTrue(body, body.contains("not in the format"));
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		HttpURLConnection connection = openConnection("/prod/unknown");
+		assertEquals(HttpStatus.SC_NOT_FOUND, connection.getResponseCode());
+		assertEquals("Path not found: /unknown", readBodyString(connection));
+		connection = openConnection("/status/0123456789abcdef0123456789abcdef");
+		assertEquals(HttpStatus.SC_NOT_FOUND, connection.getResponseCode());
+	}
+
+	@Test
+	public void testResultsGet() throws IOException {
+		HttpURLConnection connection = openConnection("/results");
+		assertEquals(HttpStatus.SC_MOVED_PERMANENTLY, connection.getResponseCode());
+		assertEquals("https://github.com/apps/test-check-publisher", connection.getHeaderField("Location"));
+	}
+
+	@Test
+	public void testUpload() throws IOException {
+		// no framework name is the first check after the results are parsed
+		FrameworkTestResults frameworkResults = new FrameworkTestResults("", 1, 0, 0, 0, null);
+		String json = gson.toJson(new PublishedTestResults("owner", "repo", "sha", "hash", "format", frameworkResults));
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+		HttpURLConnection connection = post("/results", bytes, null);
+		assertEquals(HttpStatus.SC_BAD_REQUEST, connection.getResponseCode());
+		assertEquals("No framework name supplied.", readBodyString(connection));
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzipStream = new GZIPOutputStream(baos);) {
+			gzipStream.write(bytes);
+		}
+		connection = post("/test/results", baos.toByteArray(), "gzip");
+		assertEquals(HttpStatus.SC_BAD_REQUEST, connection.getResponseCode());
+		assertEquals("No framework name supplied.", readBodyString(connection));
+
+		connection = post("/results", baos.toByteArray(), "zstd");
+		assertEquals(HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE, connection.getResponseCode());
+
+		connection = post("/results", "{ not json".getBytes(StandardCharsets.UTF_8), null);
+		assertEquals(HttpStatus.SC_BAD_REQUEST, connection.getResponseCode());
+		assertTrue(readBodyString(connection).startsWith("Invalid JSON"));
+
+		// uncompressed bodies are limited as well
+		LambdaHandler.setMaxBodySize(bytes.length - 1);
+		try {
+			connection = post("/results", bytes, null);
+			assertEquals(HttpStatus.SC_REQUEST_TOO_LONG, connection.getResponseCode());
+		} finally {
+			LambdaHandler.setMaxBodySize(Long.MAX_VALUE);
+		}
+	}
+
+	private HttpURLConnection openConnection(String path) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setInstanceFollowRedirects(false);
+		return connection;
+	}
+
+	private HttpURLConnection post(String path, byte[] body, String encoding) throws IOException {
+		HttpURLConnection connection = openConnection(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		if (encoding != null) {
+			connection.setRequestProperty("Content-Encoding", encoding);
+		}
+		try (OutputStream outputStream = connection.getOutputStream();) {
+			outputStream.write(body);
+		}
+		return connection;
+	}
+
+	private static String readBodyString(HttpURLConnection connection) throws IOException {
+		return new String(readBody(connection), StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readBody(HttpURLConnection connection) throws IOException {
+		InputStream inputStream;
+		if (connection.getResponseCode() < HttpStatus.SC_BAD_REQUEST) {
+			inputStream = connection.getInputStream();
+		} else {
+			inputStream = connection.getErrorStream();
+		}
+		try {
+			return readFully(inputStream);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		while (true) {
+			int num = inputStream.read(buf);
+			if (num < 0) {
+				return baos.toByteArray();
+			}
+			baos.write(buf, 0, num);
+		}
+	}
+}
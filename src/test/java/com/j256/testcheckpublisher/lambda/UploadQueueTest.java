@@ -0,0 +1,203 @@
+package com.j256.testcheckpublisher.lambda;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpStatus;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.UploadStatus.State;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+
+public class UploadQueueTest {
+
+	private static final long TIMEOUT_MILLIS = 10000;
+
+	private File dir;
+
+	@Before
+	public void before() throws IOException {
+		dir = File.createTempFile(getClass().getSimpleName(), ".dir");
+		dir.delete();
+	}
+
+	@After
+	public void after() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testStuff() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(2, null);
+		PublishedTestResults results = createResults();
+		AtomicReference<String> label = new AtomicReference<>();
+		String id = queue.submit(results, "owner/repo", (postResults, postLabel) -> {
+			label.set(postLabel);
+			return new UploadResult(HttpStatus.SC_OK, "posted");
+		});
+		assertTrue(UploadQueue.isValidId(id));
+		assertNotNull(queue.getStatus(id));
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+
+		UploadStatus status = queue.getStatus(id);
+		assertEquals(id, status.getId());
+		assertEquals(State.POSTED, status.getState());
+		assertTrue(status.isDone());
+		assertEquals(HttpStatus.SC_OK, status.getStatusCode());
+		assertEquals("posted", status.getMessage());
+		assertEquals("owner/repo", label.get());
+		assertNull(queue.getStatus("unknown"));
+	}
+
+	@Test
+	public void testFailed() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(1, null);
+		String failedId = queue.submit(createResults(), "label",
+				(results, label) -> new UploadResult(HttpStatus.SC_FORBIDDEN, "bad secret"));
+		String threwId = queue.submit(createResults(), "label", (results, label) -> {
+			throw new IllegalStateException("oops");
+		});
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+
+		UploadStatus status = queue.getStatus(failedId);
+		assertEquals(State.FAILED, status.getState());
+		assertEquals(HttpStatus.SC_FORBIDDEN, status.getStatusCode());
+		assertEquals("bad secret", status.getMessage());
+
+		status = queue.getStatus(threwId);
+		assertEquals(State.FAILED, status.getState());
+		assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, status.getStatusCode());
+		assertTrue(status.getMessage(), status.getMessage().contains("oops"));
+	}
+
+	@Test
+	public void testSavedUploads() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(1, dir);
+		assertTrue(dir.isDirectory());
+		CountDownLatch latch = new CountDownLatch(1);
+		// stuck posting, like a restart happened
+		String id = queue.submit(createResults(), "label", (results, label) -> {
+			try {
+				latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			return new UploadResult(HttpStatus.SC_OK, "posted");
+		});
+		assertTrue(new File(dir, id + ".json").exists());
+		// the first upload already looked for saved ones
+		assertEquals(0, queue.requeueSaved((results, label) -> null));
+
+		UploadQueue restarted = new UploadQueue(1, dir);
+		AtomicReference<PublishedTestResults> posted = new AtomicReference<>();
+		AtomicReference<String> postedLabel = new AtomicReference<>();
+		assertEquals(1, restarted.requeueSaved((results, label) -> {
+			posted.set(results);
+			postedLabel.set(label);
+			return new UploadResult(HttpStatus.SC_OK, "posted again");
+		}));
+		// only done once
+		assertEquals(0, restarted.requeueSaved((results, label) -> null));
+		assertTrue(restarted.shutdown(TIMEOUT_MILLIS));
+		assertEquals(State.POSTED, restarted.getStatus(id).getState());
+		assertEquals("owner", posted.get().getOwner());
+		assertTrue(posted.get().isMagicCorrect());
+		assertEquals("owner/repo", postedLabel.get());
+		assertFalse(new File(dir, id + ".json").exists());
+
+		latch.countDown();
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+		assertEquals("posted", queue.getStatus(id).getMessage());
+		// nothing left to requeue
+		assertEquals(0, new UploadQueue(1, dir).requeueSaved((results, label) -> null));
+	}
+
+	@Test
+	public void testMaxQueued() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(1, 1, Long.MAX_VALUE, null);
+		CountDownLatch postingLatch = new CountDownLatch(1);
+		CountDownLatch latch = new CountDownLatch(1);
+		String postingId = queue.submit(createResults(), "label", (results, label) -> {
+			postingLatch.countDown();
+			try {
+				latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			return new UploadResult(HttpStatus.SC_OK, "posted");
+		});
+		assertTrue(postingLatch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		// one can wait while the other is posting
+		String queuedId = queue.submit(createResults(), "label",
+				(results, label) -> new UploadResult(HttpStatus.SC_OK, "posted"));
+		try {
+			queue.submit(createResults(), "label", (results, label) -> null);
+			fail("should have been rejected");
+		} catch (RejectedExecutionException ree) {
+			// expected
+		}
+		latch.countDown();
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+		assertEquals(State.POSTED, queue.getStatus(postingId).getState());
+		assertEquals(State.POSTED, queue.getStatus(queuedId).getState());
+	}
+
+	@Test
+	public void testMaxSavedBytes() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(1, 10, 1, dir);
+		try {
+			queue.submit(createResults(), "label", (results, label) -> null);
+			fail("should have been rejected");
+		} catch (RejectedExecutionException ree) {
+			// expected
+		}
+		assertEquals(0, dir.listFiles().length);
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+	}
+
+	@Test
+	public void testSubmitAfterShutdown() throws InterruptedException {
+		UploadQueue queue = new UploadQueue(1, dir);
+		assertTrue(queue.shutdown(TIMEOUT_MILLIS));
+		try {
+			queue.submit(createResults(), "label", (results, label) -> null);
+			fail("should have been rejected");
+		} catch (RejectedExecutionException ree) {
+			// expected
+		}
+		// nothing saved that would be posted again after a restart
+		assertEquals(0, dir.listFiles().length);
+	}
+
+	@Test
+	public void testIsValidId() {
+		assertTrue(UploadQueue.isValidId("0123456789abcdef0123456789abcdef"));
+		assertFalse(UploadQueue.isValidId(null));
+		assertFalse(UploadQueue.isValidId(""));
+		assertFalse(UploadQueue.isValidId("../../etc/passwd"));
+		assertFalse(UploadQueue.isValidId("0123456789ABCDEF0123456789ABCDEF"));
+	}
+
+	private static PublishedTestResults createResults() {
+		return new PublishedTestResults("owner", "repo", "sha", "secret", "format", null);
+	}
+}
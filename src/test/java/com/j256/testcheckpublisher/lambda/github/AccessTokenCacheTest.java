@@ -0,0 +1,61 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class AccessTokenCacheTest {
+
+	@Test
+	public void testStuff() {
+		long marginMillis = 1000;
+		AccessTokenCache cache = new AccessTokenCache(marginMillis);
+		int installationId = 1231;
+		String token = "fewpjfewpfjewp";
+		long nowMillis = 100000;
+
+		assertNull(cache.findToken(installationId, nowMillis));
+		cache.addToken(installationId, token, nowMillis + 10 * marginMillis);
+		assertEquals(1, cache.size());
+		assertEquals(token, cache.findToken(installationId, nowMillis));
+		assertNull(cache.findToken(installationId + 1, nowMillis));
+
+		// inside of the refresh margin it should be dropped
+		assertNull(cache.findToken(installationId, nowMillis + 9 * marginMillis));
+		assertEquals(0, cache.size());
+
+		cache.addToken(installationId, token, nowMillis + 10 * marginMillis);
+		cache.invalidate(installationId);
+		assertNull(cache.findToken(installationId, nowMillis));
+
+		cache.addToken(installationId, token, nowMillis + 10 * marginMillis);
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testAddResponse() {
+		AccessTokenCache cache = new AccessTokenCache();
+		int installationId = 3;
+		AccessTokenResponse response = new AccessTokenResponse();
+		String token = "fewjpfwejfpwe";
+		response.setToken(token);
+		// no expires-at so we use the default
+		cache.addToken(installationId, response);
+		assertEquals(token, cache.findToken(installationId));
+
+		// expired a long time ago
+		response.setExpiresAt("2016-07-11T22:14:10Z");
+		cache.addToken(installationId, response);
+		assertNull(cache.findToken(installationId));
+	}
+
+	@Test
+	public void testParseExpires() {
+		long nowMillis = 1000;
+		assertEquals(1468275250000L, AccessTokenCache.parseExpiresMillis("2016-07-11T22:14:10Z", nowMillis));
+		long defaultMillis = AccessTokenCache.parseExpiresMillis(null, nowMillis);
+		assertEquals(defaultMillis, AccessTokenCache.parseExpiresMillis("not a date", nowMillis));
+	}
+}
@@ -2,9 +2,13 @@ package com.j256.testcheckpublisher.lambda.github;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 import org.junit.Test;
 
+import com.google.gson.Gson;
+
 public class AccessTokenRequestTest {
 
 	@Test
@@ -19,5 +23,11 @@ public class AccessTokenRequestTest {
 		request = new AccessTokenRequest(id, repos);
 		assertEquals(id, request.getInstallationId());
 		assertArrayEquals(repos, request.getRepositories());
+
+		request = new AccessTokenRequest(id);
+		assertEquals(id, request.getInstallationId());
+		assertNull(request.getRepositories());
+		// no repositories means all repositories so it should not be in the json
+		assertFalse(new Gson().toJson(request).contains("repositories"));
 	}
 }
@@ -12,5 +12,8 @@ public class AccessTokenResponseTest {
 		String token = "fjwpofewj";
 		response.setToken(token);
 		assertEquals(token, response.getToken());
+		String expiresAt = "2016-07-11T22:14:10Z";
+		response.setExpiresAt(expiresAt);
+		assertEquals(expiresAt, response.getExpiresAt());
 	}
 }
@@ -0,0 +1,425 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.KeyHandlingTest;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckLevel;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class AsyncGithubClientImplTest {
+
+	private static final String OWNER = "owner";
+	private static final String REPO = "repo";
+	private static final String COMMIT_SHA = "0123456789012345678901234567890123456789";
+	private static final String TREE_SHA = "1123456789012345678901234567890123456789";
+
+	private PrivateKey key;
+
+	@Before
+	public void before() throws Exception {
+		AsyncGithubClientImpl.setGithubAppId("id");
+		AsyncGithubClientImpl.setTreeCache(new TreeCache());
+		AsyncGithubClientImpl.setCommitInfoCache(new CommitInfoCache());
+		key = KeyHandlingTest.readPrivateKey();
+	}
+
+	@Test(timeout = 10000)
+	public void testComposed() throws Exception {
+		// unique so the shared token cache does not interfere
+		int installationId = 8100;
+		StubTransport transport = new StubTransport(request -> handleRequest(request, installationId));
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+
+		// login, then get the commit and the tree in parallel, then post the check-run
+		CompletableFuture<GithubResult<Boolean>> future = client.login(OWNER, REPO).thenCompose(login -> {
+			assertTrue(login.isSuccess());
+			assertEquals(HttpStatus.SC_CREATED, login.getStatusLine().getStatusCode());
+			return client.requestCommitInfo(COMMIT_SHA)
+					.thenCombine(client.requestTreeFiles(COMMIT_SHA), (commitInfo, treeFiles) -> {
+						assertEquals(TREE_SHA, commitInfo.getValue().getTreeSha());
+						assertEquals(1, treeFiles.getValue().size());
+						return commitInfo.getValue().getSha();
+					});
+		}).thenCompose(sha -> client.addCheckRun(new CheckRunRequest("name", sha, new CheckRunOutput("title",
+				"summary", "text", Collections.<CheckRunAnnotation> emptyList(), 1, 0, 0))));
+
+		GithubResult<Boolean> result = future.get();
+		assertTrue(result.isSuccess());
+		assertEquals(HttpStatus.SC_CREATED, result.getStatusLine().getStatusCode());
+		assertEquals(installationId, client.getInstallationId());
+		assertEquals(5, transport.getRequestLines().size());
+		assertEquals(4321, client.getRateLimitBudget().getRemaining());
+
+		// second time around the commit and tree come from the caches and have no status
+		GithubResult<Collection<TreeFile>> treeResult = client.requestTreeFiles(COMMIT_SHA).get();
+		assertTrue(treeResult.isSuccess());
+		assertNull(treeResult.getStatusLine());
+		assertEquals(5, transport.getRequestLines().size());
+	}
+
+	@Test(timeout = 10000)
+	public void testCheckRunBatches() throws Exception {
+		int installationId = 8102;
+		List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+		AtomicInteger patchStatus = new AtomicInteger(HttpStatus.SC_OK);
+		StubTransport transport = new StubTransport(request -> {
+			if (request instanceof HttpEntityEnclosingRequest) {
+				bodies.add(request.getMethod() + " "
+						+ EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity()));
+			}
+			if (request.getMethod().equals("PATCH")) {
+				assertEquals("/repos/" + OWNER + "/" + REPO + "/check-runs/12345678901", request.getURI().getPath());
+				return StubTransport.response(patchStatus.get(), "{}");
+			} else if (request.getURI().getPath().endsWith("/check-runs")) {
+				return StubTransport.response(HttpStatus.SC_CREATED, "{\"id\":12345678901}");
+			} else {
+				return handleRequest(request, installationId);
+			}
+		});
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO).get().isSuccess());
+
+		List<CheckRunAnnotation> annotations = new ArrayList<>();
+		for (int i = 0; i < 120; i++) {
+			annotations.add(new CheckRunAnnotation("path" + i, i, i, CheckLevel.FAILURE, "title", "message", "details"));
+		}
+		CheckRunRequest request = new CheckRunRequest("name", COMMIT_SHA,
+				new CheckRunOutput("title", "summary", "big text", annotations, 120, 120, 0));
+		bodies.clear();
+		GithubResult<Boolean> result = client.addCheckRun(request).get();
+		assertTrue(result.isSuccess());
+		assertEquals(HttpStatus.SC_OK, result.getStatusLine().getStatusCode());
+		// the request was not changed
+		assertEquals(120, request.getOutput().getAnnotations().size());
+
+		// one create and 2 patches
+		assertEquals(3, bodies.size());
+		int patchCount = 0;
+		int annotationCount = 0;
+		for (String body : bodies) {
+			annotationCount += countMatches(body, "\"path\":");
+			if (body.startsWith("PATCH ")) {
+				patchCount++;
+				assertFalse(body, body.contains("big text"));
+				assertTrue(body, body.contains("\"title\":\"title\",\"summary\":\"summary\""));
+			} else {
+				assertTrue(body, body.startsWith("POST "));
+				assertEquals(50, countMatches(body, "\"path\":"));
+				assertTrue(body, body.contains("big text"));
+			}
+		}
+		assertEquals(2, patchCount);
+		assertEquals(120, annotationCount);
+
+		// patch failure is reported
+		patchStatus.set(HttpStatus.SC_UNPROCESSABLE_ENTITY);
+		result = client.addCheckRun(request).get();
+		assertFalse(result.isSuccess());
+		assertEquals(HttpStatus.SC_UNPROCESSABLE_ENTITY, result.getStatusLine().getStatusCode());
+	}
+
+	@Test(timeout = 10000)
+	public void testCheckRunPatchesNotSpaced() throws Exception {
+		int installationId = 8107;
+		AtomicInteger patchCount = new AtomicInteger();
+		// a second between creates like github asks for
+		RateLimitScheduler scheduler = new RateLimitScheduler(1000, 0, 100, 5000);
+		StubTransport transport = new StubTransport(request -> {
+			if (request.getMethod().equals("PATCH")) {
+				patchCount.incrementAndGet();
+				return StubTransport.response(HttpStatus.SC_OK, "{}");
+			} else {
+				return handleRequest(request, installationId);
+			}
+		}, scheduler);
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO).get().isSuccess());
+
+		List<CheckRunAnnotation> annotations = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			annotations.add(
+					new CheckRunAnnotation("path" + i, i, i, CheckLevel.FAILURE, "title", "message", "details"));
+		}
+		CheckRunRequest request = new CheckRunRequest("name", COMMIT_SHA,
+				new CheckRunOutput("title", "summary", "text", annotations, 2000, 2000, 0));
+		long start = System.currentTimeMillis();
+		assertTrue(client.addCheckRun(request).get().isSuccess());
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(39, patchCount.get());
+		// only the create post takes a write slot so the patches don't wait a second each
+		assertTrue(Long.toString(elapsed), elapsed < 1000);
+
+		// the next create waits for its slot
+		start = System.currentTimeMillis();
+		assertTrue(client.addCheckRun(request).get().isSuccess());
+		elapsed = System.currentTimeMillis() - start;
+		assertTrue(Long.toString(elapsed), elapsed >= 500);
+		assertEquals(78, patchCount.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testTruncatedTree() throws Exception {
+		int installationId = 8103;
+		String treesPath = "/repos/" + OWNER + "/" + REPO + "/git/trees/";
+		StubTransport transport = new StubTransport(request -> {
+			String path = request.getURI().getPath();
+			String query = request.getURI().getQuery();
+			if (path.equals(treesPath + COMMIT_SHA)) {
+				if (query == null) {
+					return StubTransport.response(HttpStatus.SC_OK, "{\"tree\":[{\"path\":\"README\",\"type\":\"blob\"},"
+							+ "{\"path\":\"src\",\"type\":\"tree\",\"sha\":\"src-sha\"},"
+							+ "{\"path\":\"lib\",\"type\":\"tree\",\"sha\":\"lib-sha\"}],\"truncated\":false}");
+				} else {
+					return StubTransport.response(HttpStatus.SC_OK,
+							"{\"tree\":[{\"path\":\"README\",\"type\":\"blob\"}],\"truncated\":true}");
+				}
+			} else if (path.equals(treesPath + "src-sha")) {
+				return StubTransport.response(HttpStatus.SC_OK, "{\"tree\":[{\"path\":\"main\",\"type\":\"tree\"},"
+						+ "{\"path\":\"main/Foo.java\",\"type\":\"blob\"}],\"truncated\":false}");
+			} else if (path.equals(treesPath + "lib-sha")) {
+				return StubTransport.response(HttpStatus.SC_OK,
+						"{\"tree\":[{\"path\":\"Bar.java\",\"type\":\"blob\"}],\"truncated\":false}");
+			} else {
+				return handleRequest(request, installationId);
+			}
+		});
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO).get().isSuccess());
+
+		GithubResult<Collection<TreeFile>> result = client.requestTreeFiles(COMMIT_SHA).get();
+		assertTrue(result.isSuccess());
+		List<String> paths = new ArrayList<>();
+		for (TreeFile treeFile : result.getValue()) {
+			paths.add(treeFile.getPath());
+		}
+		Collections.sort(paths);
+		assertEquals(Arrays.asList("README", "lib/Bar.java", "src/main/Foo.java"), paths);
+	}
+
+	@Test(timeout = 10000)
+	public void testDirectoryFiles() throws Exception {
+		int installationId = 8104;
+		String contentsPath = "/repos/" + OWNER + "/" + REPO + "/contents/";
+		StubTransport transport = new StubTransport(request -> {
+			String path = request.getURI().getPath();
+			if (path.equals(contentsPath + "src/test dir")) {
+				assertEquals("ref=" + COMMIT_SHA, request.getURI().getQuery());
+				return StubTransport.response(HttpStatus.SC_OK,
+						"[{\"path\":\"src/test dir/FooTest.java\",\"type\":\"file\",\"size\":10},"
+								+ "{\"path\":\"src/test dir/sub\",\"type\":\"dir\"}]");
+			} else if (path.startsWith(contentsPath)) {
+				return StubTransport.response(HttpStatus.SC_NOT_FOUND, "{}");
+			} else {
+				return handleRequest(request, installationId);
+			}
+		});
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO).get().isSuccess());
+
+		GithubResult<Collection<TreeFile>> result = client.requestDirectoryFiles(COMMIT_SHA, "src/test dir").get();
+		assertTrue(result.isSuccess());
+		assertEquals(1, result.getValue().size());
+		TreeFile file = result.getValue().iterator().next();
+		assertEquals("src/test dir/FooTest.java", file.getPath());
+		assertEquals("blob", file.getType());
+
+		// missing directory is just empty
+		result = client.requestDirectoryFiles(COMMIT_SHA, "nope").get();
+		assertTrue(result.isSuccess());
+		assertEquals(0, result.getValue().size());
+
+		// both at once
+		GithubResult<Map<String, Collection<TreeFile>>> mapResult =
+				client.requestDirectoriesFiles(COMMIT_SHA, Arrays.asList("src/test dir", "nope")).get();
+		assertTrue(mapResult.isSuccess());
+		assertEquals(Arrays.asList("src/test dir", "nope"), new ArrayList<>(mapResult.getValue().keySet()));
+		assertEquals(1, mapResult.getValue().get("src/test dir").size());
+		assertEquals(0, mapResult.getValue().get("nope").size());
+	}
+
+	@Test(timeout = 10000)
+	public void testCommitPages() throws Exception {
+		int installationId = 8106;
+		String commitPath = "/repos/" + OWNER + "/" + REPO + "/commits/" + COMMIT_SHA;
+		String commitUrl = "https://api.github.com" + commitPath;
+		AtomicInteger failPage = new AtomicInteger();
+		StubTransport transport = new StubTransport(request -> {
+			String path = request.getURI().getPath();
+			String query = request.getURI().getQuery();
+			if (!path.equals(commitPath)) {
+				return handleRequest(request, installationId);
+			}
+			// commit pages are not conditional so their patch text is not stored
+			assertNull(request.getFirstHeader("If-None-Match"));
+			int page = (query == null ? 1 : Integer.parseInt(query.substring("page=".length())));
+			if (page == failPage.get()) {
+				return StubTransport.response(HttpStatus.SC_BAD_GATEWAY, "{}");
+			}
+			CloseableHttpResponse response = StubTransport.response(HttpStatus.SC_OK, "{\"sha\":\"" + COMMIT_SHA
+					+ "\",\"files\":[{\"filename\":\"file" + page + "a\",\"status\":\"added\"},"
+					+ "{\"filename\":\"file" + page + "b\",\"status\":\"removed\"}]}");
+			response.addHeader("ETag", "\"page" + page + "\"");
+			if (page < 4) {
+				response.addHeader("Link", "<" + commitUrl + "?page=" + (page + 1) + ">; rel=\"next\", <" + commitUrl
+						+ "?page=4>; rel=\"last\"");
+			}
+			return response;
+		});
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO).get().isSuccess());
+
+		GithubResult<CommitInfoResponse> result = client.requestCommitInfo(COMMIT_SHA).get();
+		assertTrue(result.isSuccess());
+		List<String> names = new ArrayList<>();
+		for (ChangedFile file : result.getValue().getFiles()) {
+			names.add(file.getFilename());
+		}
+		// the cache drops the removed files
+		assertEquals(Arrays.asList("file1a", "file2a", "file3a", "file4a"), names);
+		int commitRequests = 0;
+		for (String line : transport.getRequestLines()) {
+			if (line.startsWith("GET " + commitUrl)) {
+				commitRequests++;
+			}
+		}
+		assertEquals(4, commitRequests);
+
+		// a second lookup goes back to github without validators
+		AsyncGithubClientImpl.setCommitInfoCache(new CommitInfoCache());
+		assertTrue(client.requestCommitInfo(COMMIT_SHA).get().isSuccess());
+
+		// a missing page fails the lookup instead of leaving out files
+		AsyncGithubClientImpl.setCommitInfoCache(new CommitInfoCache());
+		failPage.set(3);
+		result = client.requestCommitInfo(COMMIT_SHA).get();
+		assertNull(result.getValue());
+		assertEquals(HttpStatus.SC_BAD_GATEWAY, result.getStatusLine().getStatusCode());
+	}
+
+	@Test
+	public void testNotInstalled() throws Exception {
+		StubTransport transport = new StubTransport(request -> {
+			fail("should not have made request: " + request.getURI());
+			return null;
+		});
+		InstallationDirectory directory = new InstallationDirectory();
+		directory.addNotInstalled(OWNER, REPO);
+		AsyncGithubClientImpl client = AsyncGithubClientImpl.createClient(transport, directory, key, "label");
+		GithubResult<Boolean> result = client.login(OWNER, REPO).get();
+		assertFalse(result.isSuccess());
+		assertEquals(HttpStatus.SC_NOT_FOUND, result.getStatusLine().getStatusCode());
+		assertEquals(-1, client.getInstallationId());
+		assertFalse(client.requestCommitInfo(COMMIT_SHA).get().isSuccess());
+	}
+
+	@Test
+	public void testIoException() throws Exception {
+		StubTransport transport = new StubTransport(request -> {
+			throw new IOException("network down");
+		});
+		AsyncGithubClientImpl client =
+				AsyncGithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		try {
+			client.findInstallationOwner(8101).get();
+			fail("should have thrown");
+		} catch (ExecutionException ee) {
+			assertEquals(IOException.class, ee.getCause().getClass());
+		}
+
+		// the blocking adapter throws the original exception
+		GithubClient blocking = GithubClientImpl.createClient(transport, new InstallationDirectory(), key, "label");
+		try {
+			blocking.login(OWNER, REPO);
+			fail("should have thrown");
+		} catch (IOException ioe) {
+			assertEquals("network down", ioe.getMessage());
+		}
+	}
+
+	@Test
+	public void testRejected() throws Exception {
+		AsyncGithubClientImpl client = AsyncGithubClientImpl.createClient(new StubTransport(null),
+				new InstallationDirectory(), key, "label", runnable -> {
+					throw new RejectedExecutionException("full");
+				});
+		try {
+			client.login(OWNER, REPO).get();
+			fail("should have thrown");
+		} catch (ExecutionException ee) {
+			assertEquals(RejectedExecutionException.class, ee.getCause().getClass());
+		}
+	}
+
+	@Test
+	public void testCoverage() {
+		AsyncGithubClientImpl.setGithubAppId(null);
+		assertNull(AsyncGithubClientImpl.createClient(null, null, key, "label"));
+		AsyncGithubClientImpl.setGithubAppId("id");
+		assertNull(AsyncGithubClientImpl.createClient(null, null, null, "label"));
+	}
+
+	private int countMatches(String str, String match) {
+		int count = 0;
+		for (int index = str.indexOf(match); index >= 0; index = str.indexOf(match, index + 1)) {
+			count++;
+		}
+		return count;
+	}
+
+	private CloseableHttpResponse handleRequest(HttpUriRequest request, int installationId) {
+		String path = request.getURI().getPath();
+		if (path.equals("/repos/" + OWNER + "/" + REPO + "/installation")) {
+			return StubTransport.response(HttpStatus.SC_OK, "{\"id\":" + installationId + "}");
+		} else if (path.equals("/app/installations/" + installationId + "/access_tokens")) {
+			return StubTransport.response(HttpStatus.SC_CREATED, "{\"token\":\"tok\"}");
+		} else if (path.equals("/repos/" + OWNER + "/" + REPO + "/commits/" + COMMIT_SHA)) {
+			return StubTransport.response(HttpStatus.SC_OK,
+					"{\"sha\":\"" + COMMIT_SHA + "\",\"commit\":{\"tree\":{\"sha\":\"" + TREE_SHA
+							+ "\"}},\"files\":[{\"filename\":\"src/Foo.java\",\"status\":\"modified\"}]}");
+		} else if (path.equals("/repos/" + OWNER + "/" + REPO + "/git/trees/" + COMMIT_SHA)) {
+			return StubTransport.response(HttpStatus.SC_OK,
+					"{\"sha\":\"" + TREE_SHA + "\",\"tree\":[{\"path\":\"src\",\"type\":\"tree\",\"sha\":\"" + TREE_SHA
+							+ "\"},{\"path\":\"src/Foo.java\",\"type\":\"blob\",\"sha\":\"" + TREE_SHA + "\"}]}");
+		} else if (path.equals("/repos/" + OWNER + "/" + REPO + "/check-runs")) {
+			CloseableHttpResponse response = StubTransport.response(HttpStatus.SC_CREATED, "{\"id\":1}");
+			response.addHeader("X-RateLimit-Remaining", "4321");
+			return response;
+		} else {
+			return StubTransport.response(HttpStatus.SC_NOT_FOUND, "{}");
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.util.Base64;
+
+import org.apache.http.Header;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.j256.testcheckpublisher.lambda.KeyHandlingTest;
+
+public class BearerTokenSignerTest {
+
+	@Test
+	public void testStuff() throws IOException, GeneralSecurityException {
+		PrivateKey key = KeyHandlingTest.readPrivateKey();
+		String appId = "12321";
+		BearerTokenSigner signer = BearerTokenSigner.forKey(key, appId);
+		assertSame(signer, BearerTokenSigner.forKey(key, appId));
+		assertNotSame(signer, BearerTokenSigner.forKey(key, "other-id"));
+		signer = BearerTokenSigner.forKey(key, appId);
+
+		long nowMillis = System.currentTimeMillis();
+		Header header = signer.getBearerTokenHeader(nowMillis);
+		long signCount = signer.getSignCount();
+		assertEquals("Authorization", header.getName());
+		assertTrue(header.getValue().startsWith("Bearer "));
+
+		// shared across calls
+		assertSame(header, signer.getBearerTokenHeader(nowMillis));
+		assertSame(header, signer.getBearerTokenHeader(nowMillis + 60 * 1000));
+		assertEquals(signCount, signer.getSignCount());
+
+		JsonObject claims = extractClaims(header);
+		assertEquals(appId, claims.get("iss").getAsString());
+		long issuedSecs = claims.get("iat").getAsLong();
+		long expiresSecs = claims.get("exp").getAsLong();
+		// backdated for clock skew
+		assertTrue(issuedSecs * 1000 < nowMillis - 30 * 1000);
+		assertEquals(10 * 60, expiresSecs - issuedSecs);
+		// github requires the expiration to be no more than 10 minutes in the future
+		assertTrue(expiresSecs * 1000 <= nowMillis + 10 * 60 * 1000);
+	}
+
+	@Test
+	public void testExpired() throws IOException, GeneralSecurityException {
+		BearerTokenSigner signer = BearerTokenSigner.forKey(KeyHandlingTest.readPrivateKey(), "expired");
+		long nowMillis = System.currentTimeMillis();
+		Header header = signer.getBearerTokenHeader(nowMillis);
+		long signCount = signer.getSignCount();
+		// past the expiration so it has to be signed right now
+		Header other = signer.getBearerTokenHeader(nowMillis + 20 * 60 * 1000);
+		assertNotEquals(header.getValue(), other.getValue());
+		assertEquals(signCount + 1, signer.getSignCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testBackgroundRefresh() throws Exception {
+		BearerTokenSigner signer = BearerTokenSigner.forKey(KeyHandlingTest.readPrivateKey(), "background");
+		long nowMillis = System.currentTimeMillis();
+		Header header = signer.getBearerTokenHeader(nowMillis);
+		long signCount = signer.getSignCount();
+		// close to expiring we get the old one back but a new one is signed in the background
+		assertSame(header, signer.getBearerTokenHeader(nowMillis + 7 * 60 * 1000));
+		while (signer.getSignCount() == signCount) {
+			Thread.sleep(10);
+		}
+		assertNotSame(header, signer.getBearerTokenHeader(nowMillis));
+	}
+
+	private JsonObject extractClaims(Header header) {
+		String token = header.getValue().substring("Bearer ".length());
+		String[] parts = token.split("\\.");
+		assertEquals(3, parts.length);
+		String json = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+		return new Gson().fromJson(json, JsonObject.class);
+	}
+}
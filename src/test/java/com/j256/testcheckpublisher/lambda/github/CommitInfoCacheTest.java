@@ -0,0 +1,243 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Commit;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Tree;
+
+public class CommitInfoCacheTest {
+
+	private static final String SHA1 = "0123456789012345678901234567890123456789";
+	private static final String SHA2 = "1123456789012345678901234567890123456789";
+	private static final String TREE_SHA = "2123456789012345678901234567890123456789";
+	private static final ProtocolVersion HTTP_PROTOCOL_VERSION = new ProtocolVersion("HTTP", 1, 1);
+	private static final StatusLine OK_STATUS_LINE = new BasicStatusLine(HTTP_PROTOCOL_VERSION, HttpStatus.SC_OK, "OK");
+	private static final StatusLine NOT_FOUND_STATUS_LINE =
+			new BasicStatusLine(HTTP_PROTOCOL_VERSION, HttpStatus.SC_NOT_FOUND, "Not Found");
+
+	@Test
+	public void testStuff() throws IOException {
+		CommitInfoCache cache = new CommitInfoCache();
+		AtomicInteger fetchCount = new AtomicInteger();
+		GithubResult<CommitInfoResponse> result = cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+			fetchCount.incrementAndGet();
+			return createResult(sha);
+		});
+		assertSame(OK_STATUS_LINE, result.getStatusLine());
+		CommitInfoResponse response = result.getValue();
+		assertNotNull(response);
+		assertEquals(SHA1, response.getSha());
+		assertEquals(TREE_SHA, response.getTreeSha());
+		// removed file is trimmed
+		assertEquals(2, response.getFiles().length);
+		assertEquals("added.java", response.getFiles()[0].getFilename());
+		assertEquals("modified.java", response.getFiles()[1].getFilename());
+		assertEquals(1, cache.getMissCount());
+
+		// owner and repo are case insensitive
+		result = cache.findCommitInfo("Owner", "Repo", SHA1, sha -> {
+			fail("should not be fetched");
+			return null;
+		});
+		assertSame(response, result.getValue());
+		// no status line from the cache
+		assertNull(result.getStatusLine());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, fetchCount.get());
+
+		// different repo is a different entry
+		cache.findCommitInfo("owner", "other", SHA1, sha -> {
+			fetchCount.incrementAndGet();
+			return createResult(sha);
+		});
+		assertEquals(2, fetchCount.get());
+		assertEquals(2, cache.getSize());
+
+		cache.clear();
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testNotCached() throws IOException {
+		CommitInfoCache cache = new CommitInfoCache();
+		AtomicInteger fetchCount = new AtomicInteger();
+		// errors are not cached
+		assertNull(cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+			fetchCount.incrementAndGet();
+			return new GithubResult<>(null, NOT_FOUND_STATUS_LINE);
+		}).getValue());
+		assertNull(cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+			fetchCount.incrementAndGet();
+			return new GithubResult<>(null, NOT_FOUND_STATUS_LINE);
+		}).getValue());
+		assertEquals(2, fetchCount.get());
+
+		// branches can move so they are not cached
+		for (int i = 0; i < 2; i++) {
+			assertNotNull(cache.findCommitInfo("owner", "repo", "master", sha -> {
+				fetchCount.incrementAndGet();
+				return createResult(sha);
+			}).getValue());
+		}
+		assertEquals(4, fetchCount.get());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		CommitInfoCache cache = new CommitInfoCache(1);
+		cache.findCommitInfo("owner", "repo", SHA1, this::createResult);
+		cache.findCommitInfo("owner", "repo", SHA2, this::createResult);
+		assertEquals(1, cache.getSize());
+		AtomicInteger fetchCount = new AtomicInteger();
+		cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+			fetchCount.incrementAndGet();
+			return createResult(sha);
+		});
+		assertEquals(1, fetchCount.get());
+	}
+
+	@Test(timeout = 10000)
+	public void testSharedFetch() throws Exception {
+		CommitInfoCache cache = new CommitInfoCache();
+		AtomicInteger fetchCount = new AtomicInteger();
+		CountDownLatch fetchStarted = new CountDownLatch(1);
+		CountDownLatch releaseFetch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<GithubResult<CommitInfoResponse>> first =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+						fetchCount.incrementAndGet();
+						fetchStarted.countDown();
+						try {
+							releaseFetch.await();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+						return createResult(sha);
+					}));
+			fetchStarted.await();
+			Future<GithubResult<CommitInfoResponse>> second =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+						fetchCount.incrementAndGet();
+						return createResult(sha);
+					}));
+			// wait for the second to be waiting on the first
+			while (cache.getSharedFetchCount() == 0) {
+				Thread.sleep(10);
+			}
+			releaseFetch.countDown();
+			assertSame(first.get().getValue(), second.get().getValue());
+			assertEquals(1, fetchCount.get());
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSharedFetchThrows() throws Exception {
+		CommitInfoCache cache = new CommitInfoCache();
+		CountDownLatch fetchStarted = new CountDownLatch(1);
+		CountDownLatch releaseFetch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<GithubResult<CommitInfoResponse>> first =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+						fetchStarted.countDown();
+						try {
+							releaseFetch.await();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+						throw new IOException("failed");
+					}));
+			fetchStarted.await();
+			Future<GithubResult<CommitInfoResponse>> second =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, this::createResult));
+			while (cache.getSharedFetchCount() == 0) {
+				Thread.sleep(10);
+			}
+			releaseFetch.countDown();
+			assertIoException(first);
+			assertIoException(second);
+			assertEquals(0, cache.getSize());
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSharedFetchFailed() throws Exception {
+		CommitInfoCache cache = new CommitInfoCache();
+		CountDownLatch fetchStarted = new CountDownLatch(1);
+		CountDownLatch releaseFetch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<GithubResult<CommitInfoResponse>> first =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, sha -> {
+						fetchStarted.countDown();
+						try {
+							releaseFetch.await();
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+						}
+						return new GithubResult<>(null, NOT_FOUND_STATUS_LINE);
+					}));
+			fetchStarted.await();
+			Future<GithubResult<CommitInfoResponse>> second =
+					executor.submit(() -> cache.findCommitInfo("owner", "repo", SHA1, this::createResult));
+			while (cache.getSharedFetchCount() == 0) {
+				Thread.sleep(10);
+			}
+			releaseFetch.countDown();
+			// the waiter gets the status line of the request that failed
+			assertNull(second.get().getValue());
+			assertSame(NOT_FOUND_STATUS_LINE, second.get().getStatusLine());
+			assertSame(NOT_FOUND_STATUS_LINE, first.get().getStatusLine());
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+	}
+
+	private void assertIoException(Future<GithubResult<CommitInfoResponse>> future) throws InterruptedException {
+		try {
+			future.get();
+			fail("should have thrown");
+		} catch (ExecutionException ee) {
+			assertEquals(IOException.class, ee.getCause().getClass());
+		}
+	}
+
+	private GithubResult<CommitInfoResponse> createResult(String sha) {
+		return new GithubResult<>(createResponse(sha), OK_STATUS_LINE);
+	}
+
+	private CommitInfoResponse createResponse(String sha) {
+		return new CommitInfoResponse(sha, new Commit(new Tree(TREE_SHA)), new ChangedFile[] {
+				new ChangedFile("added.java", "added"), new ChangedFile("removed.java", "removed"),
+				new ChangedFile("modified.java", "modified") });
+	}
+}
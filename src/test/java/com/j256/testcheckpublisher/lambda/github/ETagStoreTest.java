@@ -0,0 +1,56 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.http.Header;
+import org.junit.Test;
+
+public class ETagStoreTest {
+
+	@Test
+	public void testStuff() {
+		ETagStore store = new ETagStore();
+		assertNull(store.findEntry("key"));
+		ETagStore.Entry entry = new ETagStore.Entry("\"etag\"", null, new Header[0], new byte[10]);
+		store.addEntry("key", entry);
+		assertEquals(entry, store.findEntry("key"));
+		assertEquals("\"etag\"", store.findEntry("key").getEtag());
+		assertNull(store.findEntry("key").getLastModified());
+		assertEquals(10, store.getBytes());
+
+		store.recordRevalidated(entry);
+		store.recordRevalidated(entry);
+		assertEquals(2, store.getRevalidatedCount());
+		assertEquals(20, store.getRevalidatedBytes());
+
+		// replacing adjusts the bytes
+		store.addEntry("key", new ETagStore.Entry(null, "date", new Header[0], new byte[5]));
+		assertEquals(5, store.getBytes());
+		assertEquals(1, store.getSize());
+
+		store.clear();
+		assertEquals(0, store.getSize());
+		assertEquals(0, store.getBytes());
+	}
+
+	@Test
+	public void testEviction() {
+		ETagStore store = new ETagStore(20);
+		store.addEntry("key1", new ETagStore.Entry("1", null, new Header[0], new byte[10]));
+		store.addEntry("key2", new ETagStore.Entry("2", null, new Header[0], new byte[10]));
+		// touch the first one so the second is the least recently used
+		assertNotNull(store.findEntry("key1"));
+		store.addEntry("key3", new ETagStore.Entry("3", null, new Header[0], new byte[10]));
+		assertNotNull(store.findEntry("key1"));
+		assertNull(store.findEntry("key2"));
+		assertNotNull(store.findEntry("key3"));
+		assertEquals(20, store.getBytes());
+
+		// too big
+		store.addEntry("big", new ETagStore.Entry("4", null, new Header[0], new byte[21]));
+		assertNull(store.findEntry("big"));
+		assertEquals(2, store.getSize());
+	}
+}
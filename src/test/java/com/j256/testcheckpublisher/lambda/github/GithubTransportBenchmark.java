@@ -0,0 +1,92 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.j256.testcheckpublisher.lambda.github.StubHttpServer.StubResponse;
+
+/**
+ * Simulates lambda invocations that each make a handful of github calls against a local stub and reports how many
+ * connections (and so TLS handshakes against the real github) each approach makes. Run with:
+ *
+ * <pre>
+ * java ... GithubTransportBenchmark [invocations] [calls-per-invocation] [threads]
+ * </pre>
+ */
+public class GithubTransportBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int invocations = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+		int callsPerInvocation = (args.length > 1 ? Integer.parseInt(args[1]) : 5);
+		int threads = (args.length > 2 ? Integer.parseInt(args[2]) : 4);
+
+		try (StubHttpServer server = new StubHttpServer(request -> new StubResponse(200, "{\"sha\":\"1234\"}"));) {
+			String url = server.getUrl("/repos/owner/repo/commits/1234");
+
+			// client per invocation which is what we get when nothing is shared
+			long start = System.currentTimeMillis();
+			runInvocations(invocations, threads, () -> {
+				try (CloseableHttpClient httpclient = HttpClients.createDefault();) {
+					runCalls(new GithubTransport(httpclient), url, callsPerInvocation);
+				}
+			});
+			report("client per invocation", server, invocations * callsPerInvocation, start);
+
+			// shared pooled transport
+			int prevConnections = server.getConnectionCount();
+			int prevRequests = server.getRequestCount();
+			start = System.currentTimeMillis();
+			try (GithubTransport transport = new GithubTransport();) {
+				runInvocations(invocations, threads, () -> runCalls(transport, url, callsPerInvocation));
+			}
+			System.out.println(String.format("%-25s %6d requests %6d connections %6d ms", "shared pooled transport",
+					server.getRequestCount() - prevRequests, server.getConnectionCount() - prevConnections,
+					System.currentTimeMillis() - start));
+		}
+	}
+
+	private static void runInvocations(int invocations, int threads, Invocation invocation) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < invocations; i++) {
+				futures.add(executor.submit(() -> {
+					invocation.run();
+					return null;
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static void runCalls(GithubTransport transport, String url, int calls) throws IOException {
+		for (int i = 0; i < calls; i++) {
+			try (CloseableHttpResponse response = transport.execute(new HttpGet(url));) {
+				EntityUtils.consume(response.getEntity());
+			}
+		}
+	}
+
+	private static void report(String label, StubHttpServer server, int requests, long start) {
+		System.out.println(String.format("%-25s %6d requests %6d connections %6d ms", label, requests,
+				server.getConnectionCount(), System.currentTimeMillis() - start));
+	}
+
+	private static interface Invocation {
+		public void run() throws IOException;
+	}
+}
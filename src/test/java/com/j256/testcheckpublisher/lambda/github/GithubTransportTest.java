@@ -0,0 +1,143 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.StubHttpServer.StubResponse;
+
+public class GithubTransportTest {
+
+	@Test(timeout = 10000)
+	public void testConnectionReuse() throws IOException {
+		try (StubHttpServer server = new StubHttpServer(request -> new StubResponse(200, "{}"));
+				GithubTransport transport = new GithubTransport();) {
+			for (int i = 0; i < 10; i++) {
+				assertEquals("{}", get(transport, server.getUrl("/repos/owner/repo")));
+			}
+			assertEquals(10, server.getRequestCount());
+			assertEquals(1, server.getConnectionCount());
+			assertNotNull(transport.getPoolStats());
+			assertEquals(1, transport.getPoolStats().getAvailable());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testStaleConnection() throws Exception {
+		try (StubHttpServer server = new StubHttpServer(request -> new StubResponse(200, "{}"));
+				GithubTransport transport = new GithubTransport();) {
+			// the server drops the connection behind our back
+			server.setCloseAfterResponse(true);
+			assertEquals("{}", get(transport, server.getUrl("/")));
+			// long enough for the pool to validate the idle connection
+			Thread.sleep(2500);
+			assertEquals("{}", get(transport, server.getUrl("/")));
+			assertEquals(2, server.getRequestCount());
+			assertEquals(2, server.getConnectionCount());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testSocketTimeout() throws IOException {
+		try (StubHttpServer server = new StubHttpServer(request -> new StubResponse(200, "{}"));
+				GithubTransport transport = new GithubTransport(2, 1000, 100);) {
+			server.setResponseDelayMillis(1000);
+			try {
+				get(transport, server.getUrl("/"));
+				fail("should have timed out");
+			} catch (SocketTimeoutException ste) {
+				// expected
+			}
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConditionalGet() throws IOException {
+		String etag = "\"abc123\"";
+		try (StubHttpServer server = new StubHttpServer(request -> {
+			if (etag.equals(request.getHeader("If-None-Match"))) {
+				return new StubResponse(304, "").withHeader("X-RateLimit-Remaining", "4999");
+			} else {
+				return new StubResponse(200, "{\"id\":1}").withHeader("ETag", etag)
+						.withHeader("Content-Type", "application/json")
+						.withHeader("X-RateLimit-Remaining", "5000");
+			}
+		}); GithubTransport transport = new GithubTransport();) {
+			String url = server.getUrl("/repos/owner/repo/installation");
+			assertEquals("{\"id\":1}", getConditional(transport, url, "5000"));
+			assertEquals(0, transport.getSavedDownloadCount());
+			for (int i = 0; i < 3; i++) {
+				assertEquals("{\"id\":1}", getConditional(transport, url, "4999"));
+			}
+			assertEquals(3, transport.getSavedDownloadCount());
+			assertEquals(3 * "{\"id\":1}".length(), transport.getSavedDownloadBytes());
+			assertEquals(4, server.getRequestCount());
+
+			// no validators means nothing is stored
+			server.setHandler(request -> new StubResponse(200, "{}"));
+			String otherUrl = server.getUrl("/app/installations/1");
+			assertEquals("{}", getConditional(transport, otherUrl, null));
+			assertEquals("{}", getConditional(transport, otherUrl, null));
+			assertEquals(3, transport.getSavedDownloadCount());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testConditionalLargeBody() throws IOException {
+		String etag = "\"big\"";
+		char[] chars = new char[1024 * 1024 + 1];
+		Arrays.fill(chars, 'x');
+		String body = new String(chars);
+		try (StubHttpServer server = new StubHttpServer(request -> {
+			if (request.getHeader("If-None-Match") != null) {
+				return new StubResponse(304, "");
+			} else {
+				return new StubResponse(200, body).withHeader("ETag", etag);
+			}
+		}); GithubTransport transport = new GithubTransport();) {
+			String url = server.getUrl("/repos/owner/repo/commits/sha");
+			// too large to store so it is downloaded both times
+			assertEquals(body, getConditional(transport, url, null));
+			assertEquals(body, getConditional(transport, url, null));
+			assertEquals(0, transport.getSavedDownloadCount());
+			assertEquals(2, server.getRequestCount());
+		}
+	}
+
+	@Test
+	public void testWrapped() throws IOException {
+		try (GithubTransport transport = new GithubTransport(HttpClients.createDefault());) {
+			assertNull(transport.getPoolStats());
+		}
+		// coverage
+		new GithubTransport(null).close();
+		GithubTransport.fromEnvironment().close();
+	}
+
+	private String getConditional(GithubTransport transport, String url, String remaining) throws IOException {
+		try (CloseableHttpResponse response = transport.executeConditional(new HttpGet(url));) {
+			assertEquals(200, response.getStatusLine().getStatusCode());
+			if (remaining != null) {
+				assertEquals(remaining, response.getFirstHeader("X-RateLimit-Remaining").getValue());
+			}
+			return EntityUtils.toString(response.getEntity());
+		}
+	}
+
+	private String get(GithubTransport transport, String url) throws IOException {
+		try (CloseableHttpResponse response = transport.execute(new HttpGet(url));) {
+			return EntityUtils.toString(response.getEntity());
+		}
+	}
+}
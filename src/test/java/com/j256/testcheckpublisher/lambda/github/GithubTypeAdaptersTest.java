@@ -0,0 +1,163 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.j256.testcheckpublisher.lambda.github.AsyncGithubClientImpl.CheckRunPatch;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckLevel;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.Conclusion;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.Status;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Commit;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.Tree;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.Data;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.GraphqlError;
+import com.j256.testcheckpublisher.lambda.github.GraphqlTreesResponse.TreeEntry;
+import com.j256.testcheckpublisher.lambda.github.InstallationResponse.Account;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class GithubTypeAdaptersTest {
+
+	private final Gson gson = GsonUtils.getGson();
+	private final Gson reflectiveGson = ReflectiveGson.create();
+
+	@Test
+	public void testCheckRunRequest() {
+		CheckRunOutput output = new CheckRunOutput("title", "summary \"quoted\"", "text\n", null, 10, 1, 2);
+		CheckRunAnnotation annotation =
+				new CheckRunAnnotation("src/Foo.java", 10, 12, CheckLevel.FAILURE, "title", "message", "details");
+		annotation.startColumn = 4;
+		annotation.endColumn = 20;
+		output.addAnnotation(annotation);
+		// errors are posted as failures
+		output.addAnnotation(new CheckRunAnnotation("src/Bar.java", 1, 1, CheckLevel.ERROR, null, "m", null));
+		output.addAnnotation(new CheckRunAnnotation(null, 0, 0, CheckLevel.NOTICE, "t", null, "d\u2603"));
+		assertRoundTrip(new CheckRunRequest("name", "sha", output), CheckRunRequest.class);
+		assertRoundTrip(new CheckRunRequest("name", null, new CheckRunOutput()), CheckRunRequest.class);
+		for (Status status : Status.values()) {
+			for (Conclusion conclusion : Conclusion.values()) {
+				assertRoundTrip(new CheckRunRequest("n", "s", null, status, conclusion), CheckRunRequest.class);
+			}
+		}
+		assertRoundTrip(new CheckRunRequest(null, null, null, null, null), CheckRunRequest.class);
+		assertRoundTrip(new CheckRunPatch(output, output.annotations), CheckRunPatch.class);
+		assertRoundTrip(new CheckRunPatch(null), CheckRunPatch.class);
+	}
+
+	@Test
+	public void testCheckRunRead() {
+		// unknown fields, nulls, numbers as strings, and unknown enum names
+		assertReadSame("{\"name\":\"n\",\"unknown\":{\"a\":[1,2]},\"status\":\"bogus\",\"conclusion\":\"skipped\","
+				+ "\"output\":{\"title\":null,\"annotations\":[null,{\"start_line\":\"5\",\"end_line\":null,"
+				+ "\"annotation_level\":\"failure\",\"raw_details\":true}]}}", CheckRunRequest.class);
+		assertReadSame("{\"output\":{\"annotations\":null}}", CheckRunRequest.class);
+		assertReadSame("{\"output\":{\"text\":\"t\",\"summary\":\"s\",\"annotations\":[]}}", CheckRunPatch.class);
+		assertNull(gson.fromJson("null", CheckRunRequest.class));
+	}
+
+	@Test
+	public void testTreeInfoResponse() {
+		TreeFile[] treeFiles = new TreeFile[] { new TreeFile("src/Foo.java", "blob", "sha1"),
+				new TreeFile("src", "tree", "sha2"), new TreeFile(null, null, null) };
+		assertRoundTrip(new TreeInfoResponse("sha", treeFiles), TreeInfoResponse.class);
+		assertRoundTrip(new TreeInfoResponse("sha", new TreeFile[0]), TreeInfoResponse.class);
+		assertRoundTrip(new TreeInfoResponse(), TreeInfoResponse.class);
+		assertReadSame("{\"sha\":\"s\",\"truncated\":false,\"url\":\"u\",\"tree\":[{\"path\":\"p\",\"mode\":\"100644\","
+				+ "\"type\":\"blob\",\"size\":10}]}", TreeInfoResponse.class);
+	}
+
+	@Test
+	public void testCommitInfoResponse() {
+		ChangedFile[] files = new ChangedFile[] { new ChangedFile("src/Foo.java", "modified"), new ChangedFile() };
+		assertRoundTrip(new CommitInfoResponse("sha", new Commit(new Tree("tree")), files), CommitInfoResponse.class);
+		assertRoundTrip(new CommitInfoResponse("sha", new Commit(), null), CommitInfoResponse.class);
+		assertRoundTrip(new CommitInfoResponse(), CommitInfoResponse.class);
+		assertReadSame("{\"sha\":\"s\",\"commit\":{\"message\":\"m\",\"tree\":{\"sha\":\"t\",\"url\":\"u\"}},"
+				+ "\"files\":[{\"filename\":\"f\",\"status\":\"added\",\"additions\":1}],\"stats\":{}}",
+				CommitInfoResponse.class);
+	}
+
+	@Test
+	public void testAccessTokens() {
+		assertRoundTrip(new AccessTokenRequest(123), AccessTokenRequest.class);
+		assertRoundTrip(new AccessTokenRequest(123, "repo"), AccessTokenRequest.class);
+		assertRoundTrip(new AccessTokenRequest(123, new String[] { "repo1", null }), AccessTokenRequest.class);
+		AccessTokenResponse response = new AccessTokenResponse();
+		assertRoundTrip(response, AccessTokenResponse.class);
+		response.setToken("token");
+		response.setExpiresAt("2016-07-11T22:14:10Z");
+		assertRoundTrip(response, AccessTokenResponse.class);
+		assertReadSame("{\"token\":\"t\",\"expires_at\":\"e\",\"permissions\":{\"checks\":\"write\"}}",
+				AccessTokenResponse.class);
+	}
+
+	@Test
+	public void testIdAndInstallationResponses() {
+		IdResponse idResponse = new IdResponse();
+		idResponse.setId(1234);
+		assertRoundTrip(idResponse, IdResponse.class);
+		assertReadSame("{\"id\":\"12\",\"node_id\":\"x\"}", IdResponse.class);
+		assertReadSame("{\"id\":null}", IdResponse.class);
+
+		assertRoundTrip(new InstallationResponse(1, new Account("owner"), "all"), InstallationResponse.class);
+		assertRoundTrip(new InstallationResponse(1, new Account(), null), InstallationResponse.class);
+		assertRoundTrip(new InstallationResponse(), InstallationResponse.class);
+		assertRoundTrip(new InstallationResponse[] { new InstallationResponse(1, null, "selected") },
+				InstallationResponse[].class);
+		assertReadSame("[{\"id\":1,\"account\":{\"login\":\"l\",\"id\":2},\"repository_selection\":\"all\"}]",
+				InstallationResponse[].class);
+	}
+
+	@Test
+	public void testGraphqlTreesResponse() {
+		Map<String, GraphqlTreesResponse.Tree> repository = new LinkedHashMap<>();
+		repository.put("d0", new GraphqlTreesResponse.Tree(
+				new TreeEntry[] { new TreeEntry("Foo.java", "blob"), new TreeEntry("sub", "tree") }));
+		repository.put("d1", null);
+		repository.put("d2", new GraphqlTreesResponse.Tree(null));
+		GraphqlTreesResponse response = new GraphqlTreesResponse(new Data(repository),
+				new GraphqlError[] { new GraphqlError("bad"), new GraphqlError(null) });
+		assertRoundTrip(response, GraphqlTreesResponse.class);
+		assertRoundTrip(new GraphqlTreesResponse(new Data(null), null), GraphqlTreesResponse.class);
+		assertRoundTrip(new GraphqlTreesResponse(null, null), GraphqlTreesResponse.class);
+
+		String json = "{\"data\":{\"repository\":{\"d0\":{\"entries\":[{\"name\":\"n\",\"type\":\"blob\",\"oid\":1}]},"
+				+ "\"d1\":null}},\"errors\":[{\"message\":\"m\",\"path\":[\"d1\"]}]}";
+		assertReadSame(json, GraphqlTreesResponse.class);
+		GraphqlTreesResponse read = gson.fromJson(json, GraphqlTreesResponse.class);
+		assertEquals("n", read.findTree("d0").getEntries()[0].getName());
+		assertNull(read.findTree("d1"));
+		assertEquals("m", read.getErrorMessages());
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testGraphqlDuplicateAlias() {
+		gson.fromJson("{\"data\":{\"repository\":{\"d0\":{},\"d0\":{}}}}", GraphqlTreesResponse.class);
+	}
+
+	/**
+	 * Make sure that the adapter writes the same as reflection and reads it back into the same object.
+	 */
+	private <T> void assertRoundTrip(T value, Class<T> clazz) {
+		String json = reflectiveGson.toJson(value);
+		assertEquals(json, gson.toJson(value));
+		assertReadSame(json, clazz);
+	}
+
+	/**
+	 * Make sure that the adapter reads the json into the same object as reflection.
+	 */
+	private <T> void assertReadSame(String json, Class<T> clazz) {
+		assertEquals(reflectiveGson.toJson(reflectiveGson.fromJson(json, clazz)),
+				reflectiveGson.toJson(gson.fromJson(json, clazz)));
+	}
+}
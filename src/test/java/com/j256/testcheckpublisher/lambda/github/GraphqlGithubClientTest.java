@@ -0,0 +1,168 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.j256.testcheckpublisher.lambda.KeyHandlingTest;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class GraphqlGithubClientTest {
+
+	private static final String OWNER = "owner";
+	private static final String REPO = "repo";
+	private static final String COMMIT_SHA = "0123456789012345678901234567890123456789";
+	private static final String GRAPHQL_URL = "http://localhost/graphql";
+
+	private PrivateKey key;
+	private final AtomicReference<String> graphqlBody = new AtomicReference<>();
+	private volatile String graphqlResponse;
+	private volatile int graphqlStatus = HttpStatus.SC_OK;
+
+	@Before
+	public void before() throws Exception {
+		AsyncGithubClientImpl.setGithubAppId("id");
+		AsyncGithubClientImpl.setCommitInfoCache(new CommitInfoCache());
+		GraphqlGithubClient.setGraphqlUrl(GRAPHQL_URL);
+		key = KeyHandlingTest.readPrivateKey();
+	}
+
+	@After
+	public void after() {
+		GraphqlGithubClient.setGraphqlUrl("https://api.github.com/graphql");
+	}
+
+	@Test(timeout = 10000)
+	public void testDirectories() throws IOException {
+		StubTransport transport = new StubTransport(this::handleRequest);
+		GraphqlGithubClient client =
+				GraphqlGithubClient.createClient(transport, new InstallationDirectory(), key, "label");
+		assertTrue(client.login(OWNER, REPO));
+
+		graphqlResponse = "{\"data\":{\"repository\":{"
+				+ "\"d0\":{\"entries\":[{\"name\":\"FooTest.java\",\"type\":\"blob\"},"
+				+ "{\"name\":\"sub\",\"type\":\"tree\"},{\"name\":\"lib\",\"type\":\"commit\"}]},"
+				+ "\"d1\":null,\"d2\":{}}}}";
+		Map<String, Collection<TreeFile>> filesMap =
+				client.requestDirectoriesFiles(COMMIT_SHA, Arrays.asList("src/test", "nope", "README.md"));
+		assertEquals(3, filesMap.size());
+		assertEquals(Arrays.asList("src/test/FooTest.java", "src/test/lib"), paths(filesMap.get("src/test")));
+		assertEquals(0, filesMap.get("nope").size());
+		// a file and not a directory
+		assertEquals(0, filesMap.get("README.md").size());
+		assertEquals(HttpStatus.SC_OK, client.getLastStatusLine().getStatusCode());
+
+		// one request with the expressions passed as variables
+		assertEquals(1, countGraphqlRequests(transport));
+		JsonObject body = new JsonParser().parse(graphqlBody.get()).getAsJsonObject();
+		assertTrue(body.get("query").getAsString().contains("d2: object(expression: $e2)"));
+		JsonObject variables = body.getAsJsonObject("variables");
+		assertEquals(OWNER, variables.get("owner").getAsString());
+		assertEquals(REPO, variables.get("name").getAsString());
+		assertEquals(COMMIT_SHA + ":src/test", variables.get("e0").getAsString());
+
+		// root directory
+		graphqlResponse =
+				"{\"data\":{\"repository\":{\"d0\":{\"entries\":[{\"name\":\"pom.xml\",\"type\":\"blob\"}]}}}}";
+		assertEquals(Arrays.asList("pom.xml"), paths(client.requestDirectoryFiles(COMMIT_SHA, "")));
+
+		// commit information still comes from the rest api
+		CommitInfoResponse commitInfo = client.requestCommitInfo(COMMIT_SHA);
+		assertEquals("src/Foo.java", commitInfo.getFiles()[0].getFilename());
+	}
+
+	@Test(timeout = 10000)
+	public void testErrors() throws IOException {
+		StubTransport transport = new StubTransport(this::handleRequest);
+		GraphqlGithubClient client =
+				GraphqlGithubClient.createClient(transport, new InstallationDirectory(), key, "label");
+		List<String> directories = Collections.singletonList("src");
+		// not logged in
+		assertNull(client.requestDirectoriesFiles(COMMIT_SHA, directories));
+
+		assertTrue(client.login(OWNER, REPO));
+		assertEquals(0, client.requestDirectoriesFiles(COMMIT_SHA, Collections.<String> emptyList()).size());
+
+		// errors come back with a 200
+		graphqlResponse =
+				"{\"data\":{\"repository\":null},\"errors\":[{\"type\":\"NOT_FOUND\",\"message\":\"nope\"}]}";
+		assertNull(client.requestDirectoriesFiles(COMMIT_SHA, directories));
+
+		graphqlResponse = "{\"data\":";
+		assertNull(client.requestDirectoriesFiles(COMMIT_SHA, directories));
+
+		graphqlStatus = HttpStatus.SC_BAD_GATEWAY;
+		graphqlResponse = "{}";
+		assertNull(client.requestDirectoriesFiles(COMMIT_SHA, directories));
+		assertEquals(HttpStatus.SC_BAD_GATEWAY, client.getLastStatusLine().getStatusCode());
+	}
+
+	@Test
+	public void testBuildQuery() {
+		String query =
+				GraphqlGithubClient.buildTreesQuery("o", "r", "sha", Arrays.asList("a \"quoted\" dir", "b"));
+		JsonObject body = new JsonParser().parse(query).getAsJsonObject();
+		assertEquals("query($owner: String!, $name: String!, $e0: String!, $e1: String!) "
+				+ "{ repository(owner: $owner, name: $name) {"
+				+ " d0: object(expression: $e0) { ... on Tree { entries { name type } } }"
+				+ " d1: object(expression: $e1) { ... on Tree { entries { name type } } } } }",
+				body.get("query").getAsString());
+		assertEquals("sha:a \"quoted\" dir", body.getAsJsonObject("variables").get("e0").getAsString());
+	}
+
+	private CloseableHttpResponse handleRequest(HttpUriRequest request) throws IOException {
+		String path = request.getURI().getPath();
+		if (request.getURI().toString().equals(GRAPHQL_URL)) {
+			graphqlBody.set(EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity()));
+			return StubTransport.response(graphqlStatus, graphqlResponse);
+		} else if (path.equals("/repos/" + OWNER + "/" + REPO + "/installation")) {
+			return StubTransport.response(HttpStatus.SC_OK, "{\"id\":8105}");
+		} else if (path.equals("/app/installations/8105/access_tokens")) {
+			return StubTransport.response(HttpStatus.SC_CREATED, "{\"token\":\"tok\"}");
+		} else if (path.equals("/repos/" + OWNER + "/" + REPO + "/commits/" + COMMIT_SHA)) {
+			return StubTransport.response(HttpStatus.SC_OK, "{\"sha\":\"" + COMMIT_SHA
+					+ "\",\"commit\":{},\"files\":[{\"filename\":\"src/Foo.java\",\"status\":\"modified\"}]}");
+		} else {
+			return StubTransport.response(HttpStatus.SC_NOT_FOUND, "{}");
+		}
+	}
+
+	private int countGraphqlRequests(StubTransport transport) {
+		int count = 0;
+		for (String line : transport.getRequestLines()) {
+			if (line.equals("POST " + GRAPHQL_URL)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private List<String> paths(Collection<TreeFile> files) {
+		List<String> paths = new ArrayList<>();
+		for (TreeFile file : files) {
+			paths.add(file.getPath());
+		}
+		return paths;
+	}
+}
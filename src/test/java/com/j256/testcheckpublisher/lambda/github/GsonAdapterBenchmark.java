@@ -0,0 +1,93 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckLevel;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.FrameworkTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult.TestLevel;
+
+/**
+ * Compares gson binding through reflection with our type adapters on the work of an upload: reading the published
+ * results and writing the check-run request. The first pass with a new gson is the cold start which is what a new
+ * lambda container pays. Since the classes are only loaded once per JVM, run it once per binding to compare the cold
+ * starts:
+ *
+ * <pre>
+ * java ... GsonAdapterBenchmark [reflective|adapters] [file-results] [iterations]
+ * </pre>
+ */
+public class GsonAdapterBenchmark {
+
+	public static void main(String[] args) {
+		boolean reflectiveFirst = (args.length == 0 || args[0].equals("reflective"));
+		int numFileResults = (args.length > 1 ? Integer.parseInt(args[1]) : 500);
+		int iterations = (args.length > 2 ? Integer.parseInt(args[2]) : 2000);
+
+		String resultsJson = buildResultsJson(numFileResults);
+		System.out.println("results json " + resultsJson.length() + " chars");
+
+		// cold start of the first binding only, the second has its classes loaded already
+		long start = System.nanoTime();
+		Gson gson = (reflectiveFirst ? ReflectiveGson.create() : GsonUtils.getGson());
+		doUpload(gson, resultsJson);
+		System.out.printf("%-10s cold start %8d us%n", (reflectiveFirst ? "reflective" : "adapters"),
+				(System.nanoTime() - start) / 1000);
+
+		Gson reflectiveGson = ReflectiveGson.create();
+		Gson adapterGson = GsonUtils.getGson();
+		for (int i = 0; i < 3; i++) {
+			measure("reflective", reflectiveGson, resultsJson, iterations);
+			measure("adapters", adapterGson, resultsJson, iterations);
+		}
+	}
+
+	private static void measure(String label, Gson gson, String resultsJson, int iterations) {
+		long chars = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			chars += doUpload(gson, resultsJson);
+		}
+		long nanos = System.nanoTime() - start;
+		System.out.printf("%-10s %8d uploads/s, %6d us each, %d chars written%n", label,
+				iterations * 1000000000L / nanos, nanos / iterations / 1000, chars / iterations);
+	}
+
+	/**
+	 * Read the results, turn them into a check-run and write it like an upload does.
+	 */
+	private static int doUpload(Gson gson, String resultsJson) {
+		PublishedTestResults results = gson.fromJson(resultsJson, PublishedTestResults.class);
+		CheckRunOutput output = new CheckRunOutput();
+		for (TestFileResult fileResult : results.getResults().getFileResults()) {
+			output.addAnnotation(new CheckRunAnnotation(fileResult.getPath(), fileResult.getStartLineNumber(),
+					fileResult.getEndLineNumber(), CheckLevel.fromTestLevel(fileResult.getTestLevel()),
+					fileResult.getTestName(), fileResult.getMessage(), fileResult.getDetails()));
+		}
+		CheckRunRequest request = new CheckRunRequest("name", results.getCommitSha(), output);
+		Map<String, String> response = Collections.singletonMap("status", "ok");
+		return gson.toJson(request).length() + gson.toJson(response).length();
+	}
+
+	private static String buildResultsJson(int numFileResults) {
+		List<TestFileResult> fileResults = new ArrayList<>();
+		for (int i = 0; i < numFileResults; i++) {
+			TestLevel level = TestLevel.values()[i % TestLevel.values().length];
+			fileResults.add(new TestFileResult("src/test/java/com/example/Foo" + i + "Test.java", i, i + 2, level,
+					0.125F * i, "testMethod" + i, "expected:<" + i + "> but was:<" + (i + 1) + ">",
+					"java.lang.AssertionError: expected\n\tat org.junit.Assert.fail(Assert.java:89)\n\tat "
+							+ "com.example.Foo" + i + "Test.testMethod" + i + "(Foo" + i + "Test.java:" + i + ")"));
+		}
+		FrameworkTestResults frameworkResults =
+				new FrameworkTestResults("surefire", numFileResults, numFileResults / 3, 0, 0, fileResults);
+		return new Gson().toJson(new PublishedTestResults("owner", "repository",
+				"0123456789012345678901234567890123456789", "secret", "surefire", frameworkResults));
+	}
+}
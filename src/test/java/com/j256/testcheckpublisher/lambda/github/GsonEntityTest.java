@@ -0,0 +1,63 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckLevel;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunAnnotation;
+import com.j256.testcheckpublisher.lambda.github.CheckRunRequest.CheckRunOutput;
+
+public class GsonEntityTest {
+
+	private final Gson gson = new Gson();
+
+	@Test
+	public void testStuff() throws IOException {
+		// non-ascii test names should come through intact
+		String title = "t\u00e9st \u65e5\u672c \ud83d\ude00";
+		CheckRunRequest request = new CheckRunRequest("name", "sha",
+				new CheckRunOutput(title, "summary", "text", Arrays.asList(new CheckRunAnnotation("path", 1, 2,
+						CheckLevel.FAILURE, title, "message", "details")), 1, 1, 0));
+		String expected = gson.toJson(request);
+		byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+
+		GsonEntity entity = new GsonEntity(gson, request);
+		assertTrue(entity.isRepeatable());
+		assertFalse(entity.isStreaming());
+		assertEquals("application/json; charset=UTF-8", entity.getContentType().getValue());
+		assertEquals(expectedBytes.length, entity.getContentLength());
+
+		// can be written more than once for retries
+		for (int i = 0; i < 2; i++) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			entity.writeTo(baos);
+			assertEquals(expected, new String(baos.toByteArray(), StandardCharsets.UTF_8));
+		}
+		assertEquals(expected, EntityUtils.toString(entity));
+	}
+
+	@Test(expected = IOException.class)
+	public void testWriteFailed() throws IOException {
+		// bigger than the writer's buffer so the failure happens inside of gson instead of in the flush
+		char[] chars = new char[100000];
+		Arrays.fill(chars, 'x');
+		GsonEntity entity = new GsonEntity(gson, new String(chars));
+		entity.writeTo(new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("connection reset");
+			}
+		});
+	}
+}
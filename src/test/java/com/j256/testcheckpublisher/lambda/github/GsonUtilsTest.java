@@ -0,0 +1,138 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.j256.testcheckpublisher.plugin.PublishedTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.FrameworkTestResults;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult;
+import com.j256.testcheckpublisher.plugin.frameworks.TestFileResult.TestLevel;
+
+public class GsonUtilsTest {
+
+	private final Gson gson = GsonUtils.getGson();
+	private final Gson reflectiveGson = ReflectiveGson.create();
+
+	@Test
+	public void testSharedInstance() {
+		assertSame(gson, GsonUtils.getGson());
+	}
+
+	@Test
+	public void testPublishedResults() {
+		TestFileResult fileResult =
+				new TestFileResult("src/Foo.java", 10, 12, TestLevel.FAILURE, 1.25F, "testFoo", "msg", "at Foo\n\t");
+		FrameworkTestResults frameworkResults = new FrameworkTestResults("surefire", 10, 1, 2, 3,
+				Arrays.asList(fileResult, new TestFileResult("Bar.java", 0, 0, TestLevel.ERROR, 0, null, null, null),
+						new TestFileResult(null, 1, 1, TestLevel.NOTICE, 0.001F, "t\u2603", "", "")));
+		PublishedTestResults results =
+				new PublishedTestResults("owner", "repo", "sha", "secret", "format", frameworkResults);
+		String json = reflectiveGson.toJson(results);
+		assertReadSame(json);
+		PublishedTestResults read = gson.fromJson(json, PublishedTestResults.class);
+		assertTrue(read.isMagicCorrect());
+		assertEquals("owner", read.getOwner());
+		assertEquals(3, read.getResults().getFileResults().size());
+		assertEquals(fileResult, read.getResults().getFileResults().iterator().next());
+
+		// what the adapter writes is read the same
+		assertReadSame(gson.toJson(results));
+		assertReadSame(reflectiveGson.toJson(new PublishedTestResults(null, null, null, null, null, null)));
+	}
+
+	@Test
+	public void testPublishedResultsRead() {
+		assertReadSame("{\"magic\":\"" + PublishedTestResults.MAGIC_VALUE + "\",\"owner\":true,\"extra\":[{}],"
+				+ "\"results\":{\"numTests\":\"5\",\"numFailures\":null,\"fileResults\":[null,{\"testLevel\":\"BOGUS\","
+				+ "\"timeSeconds\":\"1.5\",\"startLineNumber\":7}]}}");
+		assertReadSame("{\"magic\":" + PublishedTestResults.MAGIC_VALUE + ",\"results\":{\"fileResults\":null}}");
+		assertNull(gson.fromJson("null", PublishedTestResults.class));
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testBadMagic() {
+		gson.fromJson("{\"magic\":1234,\"owner\":\"o\"}", PublishedTestResults.class);
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testMissingMagic() {
+		gson.fromJson("{\"owner\":\"o\"}", PublishedTestResults.class);
+	}
+
+	@Test
+	public void testReadValues() throws IOException {
+		JsonReader in = new JsonReader(new StringReader("[null,1,true,\"s\",null,\"2\",null,3,null,\"1.5\",null,"
+				+ "\"true\",false]"));
+		in.beginArray();
+		assertNull(GsonUtils.readString(in));
+		assertEquals("1", GsonUtils.readString(in));
+		assertEquals("true", GsonUtils.readString(in));
+		assertEquals("s", GsonUtils.readString(in));
+		assertEquals(10, GsonUtils.readInt(in, 10));
+		assertEquals(2, GsonUtils.readInt(in, 10));
+		assertEquals(20L, GsonUtils.readLong(in, 20L));
+		assertEquals(3L, GsonUtils.readLong(in, 20L));
+		assertEquals(0.5F, GsonUtils.readFloat(in, 0.5F), 0);
+		assertEquals(1.5F, GsonUtils.readFloat(in, 0.5F), 0);
+		assertTrue(GsonUtils.readBoolean(in, true));
+		assertTrue(GsonUtils.readBoolean(in, false));
+		assertFalse(GsonUtils.readBoolean(in, true));
+		in.endArray();
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testReadIntNotNumber() throws IOException {
+		JsonReader in = new JsonReader(new StringReader("\"abc\""));
+		GsonUtils.readInt(in, 0);
+	}
+
+	@Test
+	public void testStringMap() throws IOException {
+		Map<String, String> map = new LinkedHashMap<>();
+		map.put("a", "b");
+		map.put("c", null);
+		map.put("d", "e\"");
+		StringWriter writer = new StringWriter();
+		JsonWriter out = new JsonWriter(writer);
+		// like gson's writer
+		out.setSerializeNulls(false);
+		GsonUtils.writeStringMap(out, map);
+		assertEquals(gson.toJson(map), writer.toString());
+
+		Map<String, String> read = GsonUtils.readStringMap(new JsonReader(new StringReader(writer.toString())));
+		assertEquals("b", read.get("a"));
+		assertFalse(read.containsKey("c"));
+		assertEquals("e\"", read.get("d"));
+		assertNull(GsonUtils.readStringMap(new JsonReader(new StringReader("null"))));
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testStringMapDuplicateKey() throws IOException {
+		GsonUtils.readStringMap(new JsonReader(new StringReader("{\"a\":\"b\",\"a\":\"c\"}")));
+	}
+
+	/**
+	 * Make sure that the adapter reads the json into the same results as reflection. The results are compared through
+	 * reflection because the adapter doesn't write the line-number which the plugin doesn't let us set.
+	 */
+	private void assertReadSame(String json) {
+		assertEquals(reflectiveGson.toJson(reflectiveGson.fromJson(json, PublishedTestResults.class)),
+				reflectiveGson.toJson(gson.fromJson(json, PublishedTestResults.class)));
+	}
+}
@@ -0,0 +1,110 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.InstallationResponse.Account;
+
+public class InstallationDirectoryTest {
+
+	@Test
+	public void testStuff() {
+		InstallationDirectory directory = new InstallationDirectory();
+		String owner = "owner";
+		String repo = "repo";
+		int installationId = 1234;
+
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId(owner, repo));
+		assertNull(directory.findOwner(installationId));
+
+		directory.addRepository(owner, repo, installationId);
+		assertEquals(installationId, directory.findInstallationId(owner, repo));
+		// case insensitive
+		assertEquals(installationId, directory.findInstallationId("OWNER", "Repo"));
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId(owner, "other"));
+		assertEquals(1, directory.getRepositoryCount());
+
+		directory.addInstallation(installationId, owner, false);
+		assertEquals(owner, directory.findOwner(installationId));
+		assertEquals(1, directory.getInstallationCount());
+
+		directory.removeInstallation(installationId);
+		assertNull(directory.findOwner(installationId));
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId(owner, repo));
+	}
+
+	@Test
+	public void testAllRepositories() {
+		InstallationDirectory directory = new InstallationDirectory();
+		String owner = "owner";
+		int installationId = 1234;
+		directory.addInstallations(Arrays.asList(new InstallationResponse(installationId, new Account(owner), "all"),
+				new InstallationResponse(5678, new Account("selected"), "selected"),
+				new InstallationResponse(0, null, "all")));
+		assertEquals(2, directory.getInstallationCount());
+		assertEquals(installationId, directory.findInstallationId(owner, "any-repo"));
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId("selected", "repo"));
+		assertEquals("selected", directory.findOwner(5678));
+
+		// changed to selected
+		directory.addInstallation(installationId, owner, false);
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId(owner, "any-repo"));
+	}
+
+	@Test
+	public void testNotInstalled() throws InterruptedException {
+		long ttlMillis = 50;
+		InstallationDirectory directory = new InstallationDirectory(null, ttlMillis);
+		String owner = "owner";
+		String repo = "repo";
+		directory.addNotInstalled(owner, repo);
+		assertEquals(InstallationDirectory.NOT_INSTALLED, directory.findInstallationId(owner, repo));
+		Thread.sleep(ttlMillis * 2);
+		assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId(owner, repo));
+
+		directory.addNotInstalled(owner, repo);
+		directory.addRepository(owner, repo, 10);
+		assertEquals(10, directory.findInstallationId(owner, repo));
+	}
+
+	@Test
+	public void testPersist() throws IOException {
+		File file = File.createTempFile(getClass().getSimpleName(), ".json");
+		file.delete();
+		try {
+			InstallationDirectory directory = new InstallationDirectory(file);
+			assertFalse(file.exists());
+			directory.addRepository("owner", "repo", 10);
+			directory.addInstallation(20, "all-owner", true);
+			directory.addInstallation(10, "owner", false);
+			directory.addNotInstalled("owner", "missing");
+			assertTrue(file.exists());
+
+			directory = new InstallationDirectory(file);
+			assertEquals(10, directory.findInstallationId("owner", "repo"));
+			assertEquals(20, directory.findInstallationId("all-owner", "repo"));
+			assertEquals("owner", directory.findOwner(10));
+			assertEquals("all-owner", directory.findOwner(20));
+			// not-installed entries are not persisted
+			assertEquals(InstallationDirectory.UNKNOWN, directory.findInstallationId("owner", "missing"));
+
+			try (PrintWriter writer = new PrintWriter(file);) {
+				writer.print("not json [[[");
+			}
+			directory = new InstallationDirectory(file);
+			assertEquals(0, directory.getInstallationCount());
+			assertFalse(new InstallationDirectory().load());
+		} finally {
+			file.delete();
+		}
+	}
+}
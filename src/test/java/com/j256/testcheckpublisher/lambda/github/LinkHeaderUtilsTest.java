@@ -0,0 +1,47 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class LinkHeaderUtilsTest {
+
+	@Test
+	public void testStuff() {
+		String next = "https://api.github.com/app/installations?per_page=100&page=2";
+		String last = "https://api.github.com/app/installations?per_page=100&page=5";
+		String value = "<" + next + ">; rel=\"next\", <" + last + ">; rel=\"last\"";
+		assertEquals(next, LinkHeaderUtils.findRelUrl(value, "next"));
+		assertEquals(last, LinkHeaderUtils.findRelUrl(value, "last"));
+		assertNull(LinkHeaderUtils.findRelUrl(value, "prev"));
+		assertNull(LinkHeaderUtils.findRelUrl((String) null, "next"));
+		assertNull(LinkHeaderUtils.findRelUrl("garbage; rel=\"next\"", "next"));
+
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+		assertNull(LinkHeaderUtils.findRelUrl(response, "next"));
+		response.addHeader("Link", value);
+		assertEquals(next, LinkHeaderUtils.findRelUrl(response, "next"));
+		// coverage
+		new LinkHeaderUtils();
+	}
+
+	@Test
+	public void testBuildPageUrls() {
+		String url = "https://api.github.com/repos/o/r/commits/abc?page=";
+		assertEquals(Arrays.asList(url + "2", url + "3", url + "4"), LinkHeaderUtils.buildPageUrls(url + "2", url + "4"));
+		assertEquals(Arrays.asList(url + "2"), LinkHeaderUtils.buildPageUrls(url + "2", url + "2"));
+		// other parameters are left alone
+		assertEquals(Arrays.asList("https://x?per_page=100&page=3&foo=1", "https://x?per_page=100&page=4&foo=1"),
+				LinkHeaderUtils.buildPageUrls("https://x?per_page=100&page=3&foo=1", "https://x?per_page=100&page=4"));
+		assertNull(LinkHeaderUtils.buildPageUrls(url + "2", null));
+		assertNull(LinkHeaderUtils.buildPageUrls(url + "2", "https://x?cursor=abc"));
+		assertNull(LinkHeaderUtils.buildPageUrls(url + "4", url + "2"));
+	}
+}
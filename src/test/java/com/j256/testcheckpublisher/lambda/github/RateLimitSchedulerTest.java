@@ -0,0 +1,190 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class RateLimitSchedulerTest {
+
+	private static final BasicHeader TOKEN_HEADER = new BasicHeader("Authorization", "token abc");
+
+	@Test
+	public void testBudget() {
+		RateLimitScheduler scheduler = new RateLimitScheduler();
+		assertNull(scheduler.getBudget(TOKEN_HEADER));
+		assertNull(scheduler.getBudget(null));
+		HttpGet get = new HttpGet("https://api.github.com/");
+		get.addHeader(TOKEN_HEADER);
+		scheduler.recordResponse(get, response(HttpStatus.SC_OK, "4990", "1600000000"));
+		RateLimitScheduler.Budget budget = scheduler.getBudget(TOKEN_HEADER);
+		assertNotNull(budget);
+		assertEquals(5000, budget.getLimit());
+		assertEquals(4990, budget.getRemaining());
+		assertEquals(1600000000000L, budget.getResetMillis());
+		assertNull(scheduler.getBudget(new BasicHeader("Authorization", "token other")));
+
+		// no authorization is not tracked
+		scheduler.recordResponse(new HttpGet("https://api.github.com/"), response(HttpStatus.SC_OK, "1", "0"));
+		assertEquals(4990, scheduler.getBudget(TOKEN_HEADER).getRemaining());
+	}
+
+	@Test
+	public void testRetryDelay() {
+		RateLimitScheduler scheduler = new RateLimitScheduler(0, 2, 100, 10000);
+		HttpGet get = new HttpGet("https://api.github.com/");
+		HttpPost post = new HttpPost("https://api.github.com/");
+		post.setEntity(new StringEntity("{}", "UTF-8"));
+
+		assertEquals(-1, scheduler.findRetryDelayMillis(get, response(HttpStatus.SC_OK, null, null), 1));
+		assertEquals(-1, scheduler.findRetryDelayMillis(get, response(HttpStatus.SC_NOT_FOUND, null, null), 1));
+		// regular forbidden is not retried
+		assertEquals(-1, scheduler.findRetryDelayMillis(get, response(HttpStatus.SC_FORBIDDEN, "10", null), 1));
+
+		// server errors back off with jitter
+		long delay = scheduler.findRetryDelayMillis(get, response(HttpStatus.SC_BAD_GATEWAY, null, null), 2);
+		assertTrue(delay >= 0 && delay <= 200);
+		// writes only retry if the service was unavailable
+		assertEquals(-1, scheduler.findRetryDelayMillis(post, response(HttpStatus.SC_BAD_GATEWAY, null, null), 1));
+		delay = scheduler.findRetryDelayMillis(post, response(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null), 1);
+		assertTrue(delay >= 0 && delay <= 100);
+		// too many attempts
+		assertEquals(-1, scheduler.findRetryDelayMillis(get, response(HttpStatus.SC_BAD_GATEWAY, null, null), 3));
+
+		// secondary rate limit
+		HttpResponse response = response(HttpStatus.SC_FORBIDDEN, "10", null);
+		response.addHeader("Retry-After", "3");
+		assertEquals(3000, scheduler.findRetryDelayMillis(post, response, 1));
+		response = response(429, null, null);
+		response.addHeader("Retry-After", "60");
+		// too long to wait
+		assertEquals(-1, scheduler.findRetryDelayMillis(post, response, 1));
+
+		// primary rate limit waits for the reset
+		long resetSecs = System.currentTimeMillis() / 1000 + 5;
+		delay = scheduler.findRetryDelayMillis(get,
+				response(HttpStatus.SC_FORBIDDEN, "0", Long.toString(resetSecs)), 1);
+		assertTrue(Long.toString(delay), delay > 3000 && delay <= 5000);
+
+		// streams can't be sent again
+		HttpPost streamPost = new HttpPost("https://api.github.com/");
+		streamPost.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[0])));
+		assertEquals(-1, scheduler.findRetryDelayMillis(streamPost,
+				response(HttpStatus.SC_SERVICE_UNAVAILABLE, null, null), 1));
+
+		assertEquals(4, scheduler.getRetryCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteSpacing() throws Exception {
+		RateLimitScheduler scheduler = new RateLimitScheduler(100, 0, 100, 1000);
+		HttpPost post = new HttpPost("https://api.github.com/");
+		post.addHeader(TOKEN_HEADER);
+		HttpGet get = new HttpGet("https://api.github.com/");
+		get.addHeader(TOKEN_HEADER);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 4; i++) {
+			scheduler.awaitTurn(post);
+			// reads are not spaced
+			scheduler.awaitTurn(get);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(Long.toString(elapsed), elapsed >= 300);
+		assertTrue(scheduler.getWaitMillis() >= 250);
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteSpacingLimits() throws Exception {
+		RateLimitScheduler scheduler = new RateLimitScheduler(1000, 0, 100, 200);
+		HttpPost post = new HttpPost("https://api.github.com/repos/owner/repo/check-runs");
+		post.addHeader(TOKEN_HEADER);
+		HttpPatch patch = new HttpPatch("https://api.github.com/repos/owner/repo/check-runs/1");
+		patch.addHeader(TOKEN_HEADER);
+		HttpPost tokenPost = new HttpPost("https://api.github.com/app/installations/1/access_tokens");
+		tokenPost.addHeader(TOKEN_HEADER);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 3; i++) {
+			scheduler.awaitTurn(post);
+			// updates and access-tokens are not spaced
+			scheduler.awaitTurn(patch);
+			scheduler.awaitTurn(tokenPost);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		// the posts never wait more than the max-wait
+		assertTrue(Long.toString(elapsed), elapsed >= 350 && elapsed < 1000);
+	}
+
+	@Test(timeout = 10000)
+	public void testExhaustedBudget() throws Exception {
+		RateLimitScheduler scheduler = new RateLimitScheduler(0, 0, 100, 1000);
+		HttpGet get = new HttpGet("https://api.github.com/");
+		get.addHeader(TOKEN_HEADER);
+		// resets in a bit so we wait for it
+		long resetSecs = (System.currentTimeMillis() + 1000) / 1000;
+		scheduler.recordResponse(get, response(HttpStatus.SC_OK, "0", Long.toString(resetSecs)));
+		long start = System.currentTimeMillis();
+		scheduler.awaitTurn(get);
+		assertTrue(System.currentTimeMillis() >= resetSecs * 1000);
+		assertTrue(System.currentTimeMillis() - start <= 1000);
+
+		// too far away so we just go ahead
+		resetSecs = System.currentTimeMillis() / 1000 + 3600;
+		scheduler.recordResponse(get, response(HttpStatus.SC_OK, "0", Long.toString(resetSecs)));
+		start = System.currentTimeMillis();
+		scheduler.awaitTurn(get);
+		assertTrue(System.currentTimeMillis() - start < 500);
+	}
+
+	@Test(timeout = 10000)
+	public void testTransportRetries() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		StubTransport transport = new StubTransport(request -> {
+			if (count.incrementAndGet() < 3) {
+				CloseableHttpResponse response = StubTransport.response(HttpStatus.SC_FORBIDDEN, "{}");
+				response.addHeader("Retry-After", "0");
+				return response;
+			} else {
+				CloseableHttpResponse response = StubTransport.response(HttpStatus.SC_CREATED, "{}");
+				response.addHeader("X-RateLimit-Remaining", "4999");
+				return response;
+			}
+		}, new RateLimitScheduler(0, 3, 10, 1000));
+		HttpPost post = new HttpPost("https://api.github.com/repos/owner/repo/check-runs");
+		post.addHeader(TOKEN_HEADER);
+		post.setEntity(new StringEntity("{}", "UTF-8"));
+		try (CloseableHttpResponse response = transport.execute(post);) {
+			assertEquals(HttpStatus.SC_CREATED, response.getStatusLine().getStatusCode());
+		}
+		assertEquals(3, transport.getRequestLines().size());
+		assertEquals(2, transport.getRetryCount());
+		assertEquals(4999, transport.getBudget(TOKEN_HEADER).getRemaining());
+	}
+
+	private HttpResponse response(int status, String remaining, String reset) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "status");
+		if (remaining != null) {
+			response.addHeader("X-RateLimit-Limit", "5000");
+			response.addHeader("X-RateLimit-Remaining", remaining);
+		}
+		if (reset != null) {
+			response.addHeader("X-RateLimit-Reset", reset);
+		}
+		return response;
+	}
+}
@@ -0,0 +1,43 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.util.Collections;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.internal.ConstructorConstructor;
+import com.google.gson.internal.Excluder;
+import com.google.gson.internal.bind.JsonAdapterAnnotationTypeAdapterFactory;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Gson which binds our classes and the plugin's through reflection, ignoring the @JsonAdapter annotations, so we can
+ * compare it to the hand-written type adapters.
+ */
+public class ReflectiveGson {
+
+	private ReflectiveGson() {
+		// only static methods
+	}
+
+	public static Gson create() {
+		ConstructorConstructor constructorConstructor = new ConstructorConstructor(Collections.emptyMap());
+		final TypeAdapterFactory reflectiveFactory = new ReflectiveTypeAdapterFactory(constructorConstructor,
+				FieldNamingPolicy.IDENTITY, Excluder.DEFAULT,
+				new JsonAdapterAnnotationTypeAdapterFactory(constructorConstructor));
+		return new GsonBuilder().registerTypeAdapterFactory(new TypeAdapterFactory() {
+			@Override
+			public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+				Class<? super T> clazz = type.getRawType();
+				if (clazz.isEnum() || !clazz.getName().startsWith("com.j256.")) {
+					return null;
+				} else {
+					return reflectiveFactory.create(gson, type);
+				}
+			}
+		}).create();
+	}
+}
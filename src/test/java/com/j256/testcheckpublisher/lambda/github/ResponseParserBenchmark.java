@@ -0,0 +1,109 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+/**
+ * Compares the memory used by parsing big tree and commit responses with gson data binding and with our streaming
+ * parser. Run with:
+ *
+ * <pre>
+ * java ... ResponseParserBenchmark [tree-entries] [commit-files] [patch-size]
+ * </pre>
+ */
+public class ResponseParserBenchmark {
+
+	private static final Gson gson = new Gson();
+
+	public static void main(String[] args) throws Exception {
+		int treeEntries = (args.length > 0 ? Integer.parseInt(args[0]) : 200000);
+		int commitFiles = (args.length > 1 ? Integer.parseInt(args[1]) : 300);
+		int patchSize = (args.length > 2 ? Integer.parseInt(args[2]) : 20000);
+
+		String treeJson = buildTreeJson(treeEntries);
+		String commitJson = buildCommitJson(commitFiles, patchSize);
+		System.out.println("tree json " + treeJson.length() + " chars, commit json " + commitJson.length() + " chars");
+
+		for (int i = 0; i < 3; i++) {
+			measure("tree gson", () -> {
+				TreeInfoResponse response = gson.fromJson(new StringReader(treeJson), TreeInfoResponse.class);
+				List<TreeFile> treeFiles = new ArrayList<>();
+				for (TreeFile treeFile : response.getTreeFiles()) {
+					if (!"tree".equals(treeFile.getType())) {
+						treeFiles.add(treeFile);
+					}
+				}
+				return treeFiles;
+			});
+			measure("tree streaming", () -> StreamingResponseParser.parseTreeFiles(new StringReader(treeJson)));
+			measure("commit gson", () -> gson.fromJson(new StringReader(commitJson), CommitInfoResponse.class));
+			measure("commit streaming", () -> StreamingResponseParser.parseCommitInfo(new StringReader(commitJson)));
+		}
+	}
+
+	private static void measure(String label, Parse parse) throws IOException {
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+		long allocatedBefore = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long start = System.nanoTime();
+		Object result = parse.parse();
+		long micros = (System.nanoTime() - start) / 1000;
+		long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBefore;
+		System.gc();
+		long retained = runtime.totalMemory() - runtime.freeMemory() - usedBefore;
+		System.out.printf("%-17s %8d us, allocated %,12d bytes, retained %,12d bytes%n", label, micros, allocated,
+				retained);
+		// keep the result reachable until we measure it
+		if (result == null) {
+			System.out.println("no result");
+		}
+	}
+
+	private static String buildTreeJson(int numEntries) {
+		StringBuilder sb = new StringBuilder("{\"sha\":\"0123456789012345678901234567890123456789\",\"tree\":[");
+		for (int i = 0; i < numEntries; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			boolean dir = (i % 10 == 0);
+			sb.append("{\"path\":\"src/main/java/com/example/dir").append(i / 10).append(dir ? "" : "/File" + i + ".java")
+					.append("\",\"mode\":\"").append(dir ? "040000" : "100644")
+					.append("\",\"type\":\"").append(dir ? "tree" : "blob")
+					.append("\",\"sha\":\"").append(String.format("%040d", i))
+					.append("\",\"size\":1234,\"url\":\"https://api.github.com/repos/owner/repo/git/blobs/")
+					.append(String.format("%040d", i)).append("\"}");
+		}
+		return sb.append("],\"truncated\":false}").toString();
+	}
+
+	private static String buildCommitJson(int numFiles, int patchSize) {
+		StringBuilder patch = new StringBuilder();
+		while (patch.length() < patchSize) {
+			patch.append("+    some changed line of code\\n");
+		}
+		StringBuilder sb = new StringBuilder("{\"sha\":\"0123456789012345678901234567890123456789\",\"commit\":{"
+				+ "\"message\":\"message\",\"tree\":{\"sha\":\"1123456789012345678901234567890123456789\"}},\"files\":[");
+		for (int i = 0; i < numFiles; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append("{\"sha\":\"").append(String.format("%040d", i)).append("\",\"filename\":\"src/File").append(i)
+					.append(".java\",\"status\":\"modified\",\"additions\":10,\"deletions\":2,\"patch\":\"")
+					.append(patch).append("\"}");
+		}
+		return sb.append("]}").toString();
+	}
+
+	private static interface Parse {
+		public Object parse() throws IOException;
+	}
+}
@@ -0,0 +1,113 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+import com.j256.testcheckpublisher.lambda.github.CommitInfoResponse.ChangedFile;
+import com.j256.testcheckpublisher.lambda.github.StreamingResponseParser.ParsedTree;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class StreamingResponseParserTest {
+
+	@Test
+	public void testTreeFiles() throws IOException {
+		String json = "{\"sha\":\"abc\",\"url\":\"https://api.github.com/x\",\"tree\":["
+				+ "{\"path\":\"src\",\"mode\":\"040000\",\"type\":\"tree\",\"sha\":\"1\",\"url\":\"u\"},"
+				+ "{\"path\":\"src/Foo.java\",\"mode\":\"100644\",\"type\":\"blob\",\"sha\":\"2\",\"size\":30,"
+				+ "\"url\":\"u\"},"
+				+ "{\"path\":\"lib\",\"mode\":\"160000\",\"type\":\"commit\",\"sha\":\"3\",\"extra\":{\"a\":[1,2]}},"
+				+ "{\"path\":null,\"type\":\"blob\"}"
+				+ "],\"truncated\":false}";
+		List<TreeFile> treeFiles = StreamingResponseParser.parseTreeFiles(new StringReader(json));
+		assertEquals(3, treeFiles.size());
+		assertEquals("src/Foo.java", treeFiles.get(0).getPath());
+		assertEquals("blob", treeFiles.get(0).getType());
+		// we don't keep the shas
+		assertNull(treeFiles.get(0).getSha());
+		assertEquals("lib", treeFiles.get(1).getPath());
+		assertEquals("commit", treeFiles.get(1).getType());
+		assertNull(treeFiles.get(2).getPath());
+
+		assertEquals(0, StreamingResponseParser.parseTreeFiles(new StringReader("{\"sha\":\"abc\"}")).size());
+
+		// directories are kept when asked for
+		ParsedTree parsedTree = StreamingResponseParser.parseTree(new StringReader(json), true);
+		assertFalse(parsedTree.isTruncated());
+		assertEquals(3, parsedTree.getFiles().size());
+		assertEquals(1, parsedTree.getDirectories().size());
+		assertEquals("src", parsedTree.getDirectories().get(0).getPath());
+		assertEquals("1", parsedTree.getDirectories().get(0).getSha());
+		parsedTree = StreamingResponseParser.parseTree(new StringReader(json.replace("false", "true")), false);
+		assertTrue(parsedTree.isTruncated());
+		assertEquals(0, parsedTree.getDirectories().size());
+	}
+
+	@Test
+	public void testCommitInfo() throws IOException {
+		String json = "{\"sha\":\"c1\",\"node_id\":\"n\",\"commit\":{\"author\":{\"name\":\"x\"},\"message\":\"m\","
+				+ "\"tree\":{\"sha\":\"t1\",\"url\":\"u\"}},\"parents\":[{\"sha\":\"p\"}],"
+				+ "\"stats\":{\"total\":3},\"files\":["
+				+ "{\"sha\":\"f1\",\"filename\":\"src/Foo.java\",\"status\":\"modified\",\"additions\":1,"
+				+ "\"patch\":\"@@ -1,1 +1,1 @@\\n-foo\\n+bar\\n\"},"
+				+ "{\"filename\":\"src/Bar.java\",\"status\":\"removed\",\"patch\":null}]}";
+		CommitInfoResponse response = StreamingResponseParser.parseCommitInfo(new StringReader(json));
+		assertEquals("c1", response.getSha());
+		assertEquals("t1", response.getTreeSha());
+		ChangedFile[] files = response.getFiles();
+		assertEquals(2, files.length);
+		assertEquals("src/Foo.java", files[0].getFilename());
+		assertEquals("modified", files[0].getStatus());
+		assertEquals("src/Bar.java", files[1].getFilename());
+		assertEquals("removed", files[1].getStatus());
+
+		response = StreamingResponseParser.parseCommitInfo(new StringReader("{\"sha\":null,\"commit\":{}}"));
+		assertNull(response.getSha());
+		assertNull(response.getTreeSha());
+		assertNull(response.getFiles());
+	}
+
+	@Test
+	public void testDirectoryFiles() throws IOException {
+		String json = "[{\"name\":\"Foo.java\",\"path\":\"src/Foo.java\",\"sha\":\"1\",\"size\":30,"
+				+ "\"type\":\"file\",\"_links\":{\"self\":\"u\"}},"
+				+ "{\"name\":\"sub\",\"path\":\"src/sub\",\"type\":\"dir\"},"
+				+ "{\"name\":\"lib\",\"path\":\"src/lib\",\"type\":\"submodule\"}]";
+		List<TreeFile> files = StreamingResponseParser.parseDirectoryFiles(new StringReader(json));
+		assertEquals(2, files.size());
+		assertEquals("src/Foo.java", files.get(0).getPath());
+		assertEquals("blob", files.get(0).getType());
+		assertEquals("src/lib", files.get(1).getPath());
+		assertEquals("submodule", files.get(1).getType());
+
+		// a path to a file returns an object instead of a list
+		assertEquals(0, StreamingResponseParser
+				.parseDirectoryFiles(new StringReader("{\"path\":\"src/Foo.java\",\"type\":\"file\"}"))
+				.size());
+	}
+
+	@Test
+	public void testBadJson() throws IOException {
+		try {
+			StreamingResponseParser.parseTreeFiles(new StringReader("[1,2]"));
+			fail("should have thrown");
+		} catch (JsonSyntaxException jse) {
+			// expected
+		}
+		try {
+			StreamingResponseParser.parseCommitInfo(new StringReader("{\"files\":[{\"filename\":}]}"));
+			fail("should have thrown");
+		} catch (JsonSyntaxException jse) {
+			// expected
+		}
+	}
+}
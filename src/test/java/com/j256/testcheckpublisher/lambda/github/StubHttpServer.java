@@ -0,0 +1,254 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tiny keep-alive HTTP/1.1 server on localhost that we use to stand in for github. It counts the connections that are
+ * made to it so we can see how many handshakes would have been made.
+ */
+public class StubHttpServer implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, StubHttpServer.class.getSimpleName());
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicInteger connectionCount = new AtomicInteger();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private volatile Handler handler;
+	private volatile long responseDelayMillis;
+	private volatile boolean closeAfterResponse;
+
+	public StubHttpServer(Handler handler) throws IOException {
+		this.handler = handler;
+		this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		executor.execute(this::acceptLoop);
+	}
+
+	/**
+	 * Return a http://localhost:port url with the path appended.
+	 */
+	public String getUrl(String path) {
+		return "http://localhost:" + serverSocket.getLocalPort() + path;
+	}
+
+	public int getConnectionCount() {
+		return connectionCount.get();
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	public void setHandler(Handler handler) {
+		this.handler = handler;
+	}
+
+	public void setResponseDelayMillis(long responseDelayMillis) {
+		this.responseDelayMillis = responseDelayMillis;
+	}
+
+	/**
+	 * Close the connection after each response without telling the client, like a server that dropped our idle
+	 * connection while we were frozen.
+	 */
+	public void setCloseAfterResponse(boolean closeAfterResponse) {
+		this.closeAfterResponse = closeAfterResponse;
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		executor.shutdownNow();
+	}
+
+	private void acceptLoop() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				connectionCount.incrementAndGet();
+				executor.execute(() -> handleConnection(socket));
+			} catch (IOException ioe) {
+				// closed
+			}
+		}
+	}
+
+	private void handleConnection(Socket socket) {
+		try (Socket connection = socket;
+				InputStream input = new BufferedInputStream(connection.getInputStream());
+				OutputStream output = connection.getOutputStream();) {
+			while (true) {
+				StubRequest request = readRequest(input);
+				if (request == null) {
+					return;
+				}
+				requestCount.incrementAndGet();
+				if (responseDelayMillis > 0) {
+					Thread.sleep(responseDelayMillis);
+				}
+				StubResponse response = handler.handle(request);
+				writeResponse(output, response);
+				if (closeAfterResponse || "close".equalsIgnoreCase(request.getHeader("connection"))) {
+					return;
+				}
+			}
+		} catch (SocketException se) {
+			// client went away
+		} catch (IOException | InterruptedException e) {
+			// ignored
+		}
+	}
+
+	private StubRequest readRequest(InputStream input) throws IOException {
+		String requestLine = readLine(input);
+		if (requestLine == null || requestLine.isEmpty()) {
+			return null;
+		}
+		String[] parts = requestLine.split(" ");
+		Map<String, String> headers = new HashMap<>();
+		while (true) {
+			String line = readLine(input);
+			if (line == null || line.isEmpty()) {
+				break;
+			}
+			int index = line.indexOf(':');
+			if (index > 0) {
+				headers.put(line.substring(0, index).trim().toLowerCase(Locale.US), line.substring(index + 1).trim());
+			}
+		}
+		byte[] body = new byte[0];
+		String lengthStr = headers.get("content-length");
+		if (lengthStr != null) {
+			body = new byte[Integer.parseInt(lengthStr)];
+			int offset = 0;
+			while (offset < body.length) {
+				int num = input.read(body, offset, body.length - offset);
+				if (num < 0) {
+					return null;
+				}
+				offset += num;
+			}
+		}
+		return new StubRequest(parts[0], parts[1], headers, body);
+	}
+
+	private String readLine(InputStream input) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		while (true) {
+			int ch = input.read();
+			if (ch < 0) {
+				return (baos.size() == 0 ? null : baos.toString("ISO-8859-1"));
+			} else if (ch == '\n') {
+				break;
+			} else if (ch != '\r') {
+				baos.write(ch);
+			}
+		}
+		return baos.toString("ISO-8859-1");
+	}
+
+	private void writeResponse(OutputStream output, StubResponse response) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append("HTTP/1.1 ").append(response.status).append(" Stub\r\n");
+		for (Map.Entry<String, String> entry : response.headers.entrySet()) {
+			sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+		}
+		sb.append("Content-Length: ").append(response.body.length).append("\r\n\r\n");
+		// one write so we don't get stuck in nagle/delayed-ack
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+		baos.write(response.body);
+		output.write(baos.toByteArray());
+		output.flush();
+	}
+
+	/**
+	 * Handles the requests to the server.
+	 */
+	public static interface Handler {
+		public StubResponse handle(StubRequest request) throws IOException;
+	}
+
+	/**
+	 * Request that was sent to the server.
+	 */
+	public static class StubRequest {
+
+		private final String method;
+		private final String path;
+		private final Map<String, String> headers;
+		private final byte[] body;
+
+		public StubRequest(String method, String path, Map<String, String> headers, byte[] body) {
+			this.method = method;
+			this.path = path;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		public String getMethod() {
+			return method;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public String getHeader(String name) {
+			return headers.get(name.toLowerCase(Locale.US));
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getBodyString() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Response that the server sends back.
+	 */
+	public static class StubResponse {
+
+		final int status;
+		final Map<String, String> headers;
+		final byte[] body;
+
+		public StubResponse(int status, String body) {
+			this(status, Collections.<String, String> emptyMap(), body.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public StubResponse(int status, Map<String, String> headers, byte[] body) {
+			this.status = status;
+			this.headers = new LinkedHashMap<>(headers);
+			this.body = body;
+		}
+
+		public StubResponse withHeader(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+
+/**
+ * Transport that answers our github requests in memory so we can test the clients without the network.
+ */
+public class StubTransport extends GithubTransport {
+
+	private final Handler handler;
+	private final List<String> requestLines = Collections.synchronizedList(new ArrayList<String>());
+
+	public StubTransport(Handler handler) {
+		super((CloseableHttpClient) null);
+		this.handler = handler;
+	}
+
+	public StubTransport(Handler handler, RateLimitScheduler scheduler) {
+		super(null, scheduler);
+		this.handler = handler;
+	}
+
+	@Override
+	protected CloseableHttpResponse sendRequest(HttpUriRequest request) throws IOException {
+		requestLines.add(request.getMethod() + " " + request.getURI());
+		return handler.handle(request);
+	}
+
+	/**
+	 * Return the method and url of the requests that we have seen.
+	 */
+	public List<String> getRequestLines() {
+		synchronized (requestLines) {
+			return new ArrayList<>(requestLines);
+		}
+	}
+
+	/**
+	 * Create a response with a JSON body.
+	 */
+	public static CloseableHttpResponse response(int status, String body) {
+		StubResponse response = new StubResponse(status);
+		if (body != null) {
+			response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+		}
+		return response;
+	}
+
+	/**
+	 * Answers the requests.
+	 */
+	public static interface Handler {
+		public CloseableHttpResponse handle(HttpUriRequest request) throws IOException;
+	}
+
+	private static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+		public StubResponse(int status) {
+			super(HttpVersion.HTTP_1_1, status, "Stub");
+		}
+
+		@Override
+		public void close() {
+			// nothing to do
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.After;
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.StreamingResponseParser.ParsedTree;
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class SubtreeWalkerTest {
+
+	private static final BasicStatusLine OK = new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	// sha -> entries in that directory
+	private final Map<String, List<TreeFile>> directoryMap = new HashMap<>();
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+	@After
+	public void after() {
+		executor.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void testWalk() throws IOException {
+		// root with 6 directories of 3 directories of 10 files
+		Set<String> expected = new HashSet<>();
+		List<TreeFile> rootEntries = new ArrayList<>();
+		rootEntries.add(new TreeFile("README", "blob", "readme"));
+		expected.add("README");
+		for (int i = 0; i < 6; i++) {
+			List<TreeFile> dirEntries = new ArrayList<>();
+			for (int j = 0; j < 3; j++) {
+				List<TreeFile> subEntries = new ArrayList<>();
+				for (int k = 0; k < 10; k++) {
+					subEntries.add(new TreeFile("File" + k + ".java", "blob", "f" + i + j + k));
+					expected.add("dir" + i + "/sub" + j + "/File" + k + ".java");
+				}
+				directoryMap.put("s" + i + j, subEntries);
+				dirEntries.add(new TreeFile("sub" + j, "tree", "s" + i + j));
+			}
+			directoryMap.put("d" + i, dirEntries);
+			rootEntries.add(new TreeFile("dir" + i, "tree", "d" + i));
+		}
+		directoryMap.put("root", rootEntries);
+
+		// big enough for the sub directories but not the dir ones
+		SubtreeWalker walker = new SubtreeWalker(fetcher(20), executor, 2);
+		List<TreeFile> files = walker.walk("root");
+		Set<String> paths = new HashSet<>();
+		for (TreeFile file : files) {
+			paths.add(file.getPath());
+		}
+		assertEquals(expected.size(), files.size());
+		assertEquals(expected, paths);
+		// root, 6 truncated dirs, 6 split dirs, and 18 subs
+		assertEquals(31, walker.getRequestCount());
+		assertTrue(maxConcurrent.get() <= 2);
+		assertNull(walker.getFailedStatusLine());
+	}
+
+	@Test(timeout = 10000)
+	public void testFailure() throws IOException {
+		List<TreeFile> rootEntries = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			rootEntries.add(new TreeFile("dir" + i, "tree", "d" + i));
+			directoryMap.put("d" + i, new ArrayList<TreeFile>());
+		}
+		directoryMap.put("root", rootEntries);
+		// missing directory
+		directoryMap.remove("d3");
+		SubtreeWalker walker = new SubtreeWalker(fetcher(100), executor, 2);
+		assertNull(walker.walk("root"));
+		assertEquals(HttpStatus.SC_NOT_FOUND, walker.getFailedStatusLine().getStatusCode());
+
+		walker = new SubtreeWalker((sha, recursive) -> {
+			if (sha.equals("root")) {
+				return fetcher(100).fetchTree(sha, recursive);
+			} else {
+				throw new IOException("network down");
+			}
+		}, executor, 2);
+		try {
+			walker.walk("root");
+			fail("should have thrown");
+		} catch (IOException ioe) {
+			assertEquals("network down", ioe.getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testRuntimeException() throws IOException {
+		List<TreeFile> rootEntries = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			rootEntries.add(new TreeFile("dir" + i, "tree", "d" + i));
+			directoryMap.put("d" + i, new ArrayList<TreeFile>());
+		}
+		directoryMap.put("root", rootEntries);
+		// one at a time so the other subtrees are still pending when it throws
+		SubtreeWalker walker = new SubtreeWalker((sha, recursive) -> {
+			if (sha.equals("d1")) {
+				throw new IllegalStateException("pool closed");
+			}
+			return fetcher(100).fetchTree(sha, recursive);
+		}, executor, 1);
+		try {
+			walker.walk("root");
+			fail("should have thrown");
+		} catch (IllegalStateException ise) {
+			assertEquals("pool closed", ise.getMessage());
+		}
+		// root, d0, and d1 but none of the pending ones
+		assertEquals(3, walker.getRequestCount());
+	}
+
+	@Test(timeout = 10000)
+	public void testRejected() throws IOException {
+		List<TreeFile> rootEntries = new ArrayList<>();
+		rootEntries.add(new TreeFile("dir", "tree", "d"));
+		directoryMap.put("root", rootEntries);
+		List<TreeFile> dirEntries = new ArrayList<>();
+		dirEntries.add(new TreeFile("File.java", "blob", "f"));
+		directoryMap.put("d", dirEntries);
+		SubtreeWalker walker = new SubtreeWalker(fetcher(100), runnable -> {
+			throw new RejectedExecutionException("full");
+		}, 2);
+		List<TreeFile> files = walker.walk("root");
+		assertEquals(1, files.size());
+		assertEquals("dir/File.java", files.get(0).getPath());
+	}
+
+	/**
+	 * Fetcher which truncates recursive responses with more than max entries.
+	 */
+	private SubtreeWalker.TreeFetcher fetcher(int maxEntries) {
+		return (sha, recursive) -> {
+			int current = concurrent.incrementAndGet();
+			maxConcurrent.accumulateAndGet(current, Math::max);
+			try {
+				// give the other threads a chance to overlap
+				Thread.sleep(5);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				List<TreeFile> entries = directoryMap.get(sha);
+				if (entries == null) {
+					return new GithubResult<>(null,
+							new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Not Found"));
+				}
+				ParsedTree parsedTree = new ParsedTree();
+				if (recursive) {
+					addRecursive(parsedTree, "", entries);
+					if (parsedTree.files.size() > maxEntries) {
+						parsedTree.files.subList(maxEntries, parsedTree.files.size()).clear();
+						parsedTree.truncated = true;
+					}
+				} else {
+					for (TreeFile entry : entries) {
+						if (entry.getType().equals("tree")) {
+							parsedTree.directories.add(entry);
+						} else {
+							parsedTree.files.add(entry);
+						}
+					}
+				}
+				return new GithubResult<>(parsedTree, OK);
+			} finally {
+				concurrent.decrementAndGet();
+			}
+		};
+	}
+
+	private void addRecursive(ParsedTree parsedTree, String prefix, List<TreeFile> entries) {
+		for (TreeFile entry : entries) {
+			if (entry.getType().equals("tree")) {
+				addRecursive(parsedTree, prefix + entry.getPath() + "/", directoryMap.get(entry.getSha()));
+			} else {
+				parsedTree.files.add(new TreeFile(prefix + entry.getPath(), entry.getType(), null));
+			}
+		}
+	}
+}
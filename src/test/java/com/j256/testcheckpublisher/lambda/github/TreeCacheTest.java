@@ -0,0 +1,142 @@
+package com.j256.testcheckpublisher.lambda.github;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.j256.testcheckpublisher.lambda.github.TreeInfoResponse.TreeFile;
+
+public class TreeCacheTest {
+
+	private static final String SHA1 = "0123456789012345678901234567890123456789";
+	private static final String SHA2 = "1123456789012345678901234567890123456789";
+	private static final String SHA3 = "2123456789012345678901234567890123456789";
+
+	@Test
+	public void testStuff() {
+		TreeCache cache = new TreeCache();
+		assertNull(cache.findTree(SHA1));
+		assertEquals(1, cache.getMissCount());
+
+		List<TreeFile> treeFiles = createTreeFiles("path/", 10);
+		cache.addTree(SHA1, treeFiles);
+		List<TreeFile> result = cache.findTree(SHA1);
+		assertEquals(treeFiles.size(), result.size());
+		assertSame(result, cache.findTree(SHA1));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(countChars(treeFiles), cache.getPathChars());
+
+		// branch names are not cached because they can move
+		cache.addTree("master", treeFiles);
+		assertNull(cache.findTree("master"));
+		assertNull(cache.findTree(null));
+		cache.addTree(SHA2, null);
+
+		cache.clear();
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getPathChars());
+	}
+
+	@Test
+	public void testEviction() {
+		List<TreeFile> treeFiles1 = createTreeFiles("a/", 10);
+		List<TreeFile> treeFiles2 = createTreeFiles("b/", 10);
+		long chars = countChars(treeFiles1);
+		// room for 2 listings
+		TreeCache cache = new TreeCache(chars * 2, null, 0);
+		cache.addTree(SHA1, treeFiles1);
+		cache.addTree(SHA2, treeFiles2);
+		assertEquals(2, cache.getSize());
+		// touch the first one so the second is the least recently used
+		assertNotNull(cache.findTree(SHA1));
+		cache.addTree(SHA3, createTreeFiles("c/", 10));
+		assertEquals(2, cache.getSize());
+		assertEquals(chars * 2, cache.getPathChars());
+		assertNotNull(cache.findTree(SHA1));
+		assertNull(cache.findTree(SHA2));
+		assertNotNull(cache.findTree(SHA3));
+
+		// too big to fit at all
+		cache.addTree(SHA2, createTreeFiles("big/", 100));
+		assertNull(cache.findTree(SHA2));
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	public void testDisk() throws IOException {
+		File dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		try {
+			List<TreeFile> treeFiles = createTreeFiles("path/", 10);
+			TreeCache cache = new TreeCache(dir);
+			cache.addTree(SHA1, treeFiles);
+
+			// new cache with an empty memory tier
+			cache = new TreeCache(dir);
+			List<TreeFile> result = cache.findTree(SHA1);
+			assertNotNull(result);
+			assertEquals(1, cache.getDiskHitCount());
+			assertEquals(treeFiles.size(), result.size());
+			for (int i = 0; i < treeFiles.size(); i++) {
+				assertEquals(treeFiles.get(i).getPath(), result.get(i).getPath());
+				assertEquals(treeFiles.get(i).getType(), result.get(i).getType());
+				assertEquals(treeFiles.get(i).getSha(), result.get(i).getSha());
+			}
+			// now in memory
+			assertSame(result, cache.findTree(SHA1));
+
+			// corrupt file
+			try (FileOutputStream fos = new FileOutputStream(new File(dir, SHA2 + ".tree.gz"));) {
+				fos.write(new byte[] { 1, 2, 3 });
+			}
+			assertNull(new TreeCache(dir).findTree(SHA2));
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testDiskPrune() throws IOException {
+		File dir = Files.createTempDirectory(getClass().getSimpleName()).toFile();
+		try {
+			// tiny disk limit so only the latest file is kept
+			TreeCache cache = new TreeCache(0, dir, 1);
+			cache.addTree(SHA1, createTreeFiles("a/", 10));
+			cache.addTree(SHA2, createTreeFiles("b/", 10));
+			assertEquals(0, dir.listFiles().length);
+		} finally {
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private List<TreeFile> createTreeFiles(String prefix, int num) {
+		List<TreeFile> treeFiles = new ArrayList<>();
+		for (int i = 0; i < num; i++) {
+			treeFiles.add(new TreeFile(prefix + "file" + i + ".java", "blob", (i % 2 == 0 ? "sha" + i : null)));
+		}
+		return treeFiles;
+	}
+
+	private long countChars(List<TreeFile> treeFiles) {
+		long chars = 0;
+		for (TreeFile treeFile : treeFiles) {
+			chars += treeFile.getPath().length();
+		}
+		return chars;
+	}
+}